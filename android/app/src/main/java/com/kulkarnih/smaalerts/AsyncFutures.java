@@ -0,0 +1,175 @@
+package com.kulkarnih.smaalerts;
+
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The few ListenableFuture combinators the async worker needs, built on
+ * CallbackToFutureAdapter (minSdk 23 has no CompletableFuture, and the app does not
+ * ship Guava).
+ *
+ * Every step runs from a listener when its input completes, so nothing ever blocks in
+ * get(). Cancelling a composed future cancels the step it is waiting on.
+ */
+final class AsyncFutures {
+
+    /** Runs listeners on the thread that completed the future; for short, non-blocking steps. */
+    static final Executor DIRECT = Runnable::run;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "future-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** A synchronous step. */
+    interface Function<A, B> {
+        B apply(A input) throws Exception;
+    }
+
+    /** A step that itself returns a future. */
+    interface AsyncFunction<A, B> {
+        ListenableFuture<B> apply(A input) throws Exception;
+    }
+
+    private AsyncFutures() {}
+
+    static <T> ListenableFuture<T> immediate(T value) {
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            completer.set(value);
+            return "immediate";
+        });
+    }
+
+    /** {@code input}'s value passed through {@code function} on {@code executor}. */
+    static <A, B> ListenableFuture<B> transform(ListenableFuture<A> input, Function<A, B> function, Executor executor) {
+        return transformAsync(input, value -> immediate(function.apply(value)), executor);
+    }
+
+    /** The future returned by {@code function} once {@code input} has a value. */
+    static <A, B> ListenableFuture<B> transformAsync(ListenableFuture<A> input, AsyncFunction<A, B> function, Executor executor) {
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            completer.addCancellationListener(() -> input.cancel(false), DIRECT);
+            input.addListener(() -> {
+                ListenableFuture<B> next;
+                try {
+                    next = function.apply(getDone(input));
+                } catch (CancellationException e) {
+                    completer.setCancelled();
+                    return;
+                } catch (ExecutionException e) {
+                    completer.setException(e.getCause());
+                    return;
+                } catch (Exception e) {
+                    completer.setException(e);
+                    return;
+                }
+                completer.addCancellationListener(() -> next.cancel(false), DIRECT);
+                propagate(next, completer);
+            }, executor);
+            return "transformAsync";
+        });
+    }
+
+    /** {@code input}, or {@code fallback}'s value for its failure. Cancellation is not caught. */
+    static <T> ListenableFuture<T> catching(ListenableFuture<T> input, Function<Throwable, T> fallback, Executor executor) {
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            completer.addCancellationListener(() -> input.cancel(false), DIRECT);
+            input.addListener(() -> {
+                try {
+                    completer.set(getDone(input));
+                } catch (CancellationException e) {
+                    completer.setCancelled();
+                } catch (ExecutionException e) {
+                    try {
+                        completer.set(fallback.apply(e.getCause()));
+                    } catch (Exception fallbackError) {
+                        completer.setException(fallbackError);
+                    }
+                }
+            }, executor);
+            return "catching";
+        });
+    }
+
+    /** Runs {@code task} on the timeout thread after {@code delayMillis}; it must not block. */
+    static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return TIMER.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@code input}, failing with a TimeoutException if it is not done within
+     * {@code timeoutMillis}; {@code input} is then cancelled.
+     */
+    static <T> ListenableFuture<T> withTimeout(ListenableFuture<T> input, long timeoutMillis) {
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            AtomicBoolean timedOut = new AtomicBoolean();
+            // Cancel the input first, so it has stopped by the time the timeout is reported
+            ScheduledFuture<?> timer = TIMER.schedule(() -> {
+                timedOut.set(true);
+                input.cancel(false);
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            completer.addCancellationListener(() -> {
+                timer.cancel(false);
+                input.cancel(false);
+            }, DIRECT);
+            input.addListener(() -> {
+                timer.cancel(false);
+                if (input.isCancelled() && timedOut.get()) {
+                    completer.setException(new TimeoutException("Timed out after " + timeoutMillis + " ms"));
+                } else {
+                    copy(input, completer);
+                }
+            }, DIRECT);
+            return "withTimeout";
+        });
+    }
+
+    /**
+     * The value of a future that is already done. Never waits: callers only use it
+     * from the future's own listeners.
+     */
+    static <T> T getDone(ListenableFuture<T> future) throws ExecutionException {
+        if (!future.isDone()) {
+            throw new IllegalStateException("Future is not done");
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // Cannot block on a done future; keep the flag for the caller
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> void propagate(ListenableFuture<T> from, CallbackToFutureAdapter.Completer<T> to) {
+        from.addListener(() -> copy(from, to), DIRECT);
+    }
+
+    private static <T> void copy(ListenableFuture<T> from, CallbackToFutureAdapter.Completer<T> to) {
+        try {
+            to.set(getDone(from));
+        } catch (CancellationException e) {
+            to.setCancelled();
+        } catch (ExecutionException e) {
+            to.setException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.ListenableWorker;
+import androidx.work.WorkerParameters;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The daily analysis as a chain of futures, so no WorkManager thread waits on the
+ * network.
+ *
+ * load and plan (see {@link VolatilityGate}) → batch quotes for the entries the plan
+ * keeps → evaluate them → notify and reschedule. Each step starts from the previous
+ * one's completion listener. The HTTP requests still block a thread each, on the retry
+ * engine's attempt pool, at most WatchlistEvaluator.MAX_PARALLEL symbols at a time.
+ * Nothing waits on them: retries and the hedge between sources are driven by timers
+ * and listeners (see {@link DataSource#fetchAsync}), so a symbol holds one thread, or
+ * two while hedged. Every network step has its own timeout, and the whole run has one
+ * that ends well inside WorkManager's ten-minute limit. The quick local steps
+ * (preferences, notifications) run on the worker's background executor.
+ *
+ * Shares its steps with {@link SMAWorker}, the blocking variant.
+ */
+public class AsyncSMAWorker extends ListenableWorker {
+    private static final String TAG = "AsyncSMAWorker";
+
+    /** The batch request's retry deadline plus a little slack. */
+    static final long QUOTES_TIMEOUT_MS = RetryEngine.Policy.WORKER.deadlineMillis + 5_000;
+    static final long RUN_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(8);
+
+    private volatile ListenableFuture<Result> run;
+
+    public AsyncSMAWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<Result> startWork() {
+        Context ctx = getApplicationContext();
+        Executor background = getBackgroundExecutor();
+        ListenableFuture<Result> result = AsyncFutures.withTimeout(analyze(ctx, background), RUN_TIMEOUT_MS);
+        run = result;
+        return AsyncFutures.catching(result, error -> {
+            Log.e(TAG, "Analysis failed", error);
+            // Try again later with exponential backoff; that run schedules the next one
+            return Result.retry();
+        }, background);
+    }
+
+    @Override
+    public void onStopped() {
+        ListenableFuture<Result> current = run;
+        if (current != null) {
+            Log.w(TAG, "Stopped by WorkManager, cancelling the run");
+            current.cancel(false);
+        }
+    }
+
+    /** The whole run; package-private so tests can drive it without WorkManager. */
+    static ListenableFuture<Result> analyze(Context ctx, Executor background) {
+        ListenableFuture<VolatilityGate.Plan> planned = AsyncFutures.transform(AsyncFutures.immediate(ctx), context -> {
+            HttpCache.install(context);
+            List<Watchlist.Entry> entries = Watchlist.load(context);
+            Log.i(TAG, "Evaluating " + entries.size() + " symbol(s): " + entries);
+            SMAWorker.loadSourceState(context);
+            return VolatilityGate.plan(context, entries, System.currentTimeMillis());
+        }, background);
+
+        return AsyncFutures.transformAsync(planned, plan -> {
+            List<Watchlist.Entry> active = plan.active();
+            ListenableFuture<Map<String, BatchQuoteClient.Quote>> quotes = fetchQuotes(active);
+            ListenableFuture<List<WatchlistEvaluator.Evaluation>> evaluated = AsyncFutures.transformAsync(quotes, fetched -> {
+                DataSource source = SMAWorker.openSources(ctx, active, fetched);
+                return WatchlistEvaluator.evaluateAllAsync(active, entry -> plan.decision(entry) == VolatilityGate.Decision.QUOTE
+                                ? evaluateQuoteFirst(ctx, entry, fetched, source, background)
+                                : evaluate(entry, source),
+                        WatchlistEvaluator.MAX_PARALLEL, WatchlistEvaluator.SYMBOL_TIMEOUT_MS);
+            }, background);
+            return AsyncFutures.transform(evaluated, results -> SMAWorker.finishRun(ctx, plan, results), background);
+        }, AsyncFutures.DIRECT);
+    }
+
+    /** Batch quotes for every entry; an empty map if the request fails, times out or Yahoo's breaker is open. */
+    private static ListenableFuture<Map<String, BatchQuoteClient.Quote>> fetchQuotes(List<Watchlist.Entry> entries) {
+        Map<String, BatchQuoteClient.Quote> none = Collections.emptyMap();
+        if (entries.isEmpty() || CircuitBreaker.of(SymbolMap.YAHOO).isOpen(System.currentTimeMillis())) {
+            return AsyncFutures.immediate(none);
+        }
+        ListenableFuture<RetryEngine.Outcome<Map<String, BatchQuoteClient.Quote>>> outcome = AsyncFutures.withTimeout(
+                RetryEngine.shared().submit("batch quotes", RetryEngine.Policy.WORKER,
+                        SMAWorker.quoteAttempt(SMAWorker.yahooSymbols(entries))),
+                QUOTES_TIMEOUT_MS);
+        ListenableFuture<Map<String, BatchQuoteClient.Quote>> quotes =
+                AsyncFutures.transform(outcome, fetched -> fetched.isSuccess() ? fetched.value : none, AsyncFutures.DIRECT);
+        return AsyncFutures.catching(quotes, error -> {
+            Log.w(TAG, "Batch quotes failed: " + error);
+            return none;
+        }, AsyncFutures.DIRECT);
+    }
+
+    /** The batched quote alone when it suffices (local reads only, on {@code background}), otherwise the full fetch. */
+    private static ListenableFuture<WatchlistEvaluator.Evaluation> evaluateQuoteFirst(Context ctx, Watchlist.Entry entry,
+            Map<String, BatchQuoteClient.Quote> quotes, DataSource source, Executor background) {
+        return AsyncFutures.transformAsync(AsyncFutures.immediate(entry), e -> {
+            WatchlistEvaluator.Evaluation checked = VolatilityGate.quoteCheck(ctx, e, quotes);
+            return checked != null ? AsyncFutures.immediate(checked) : evaluate(e, source);
+        }, background);
+    }
+
+    private static ListenableFuture<WatchlistEvaluator.Evaluation> evaluate(Watchlist.Entry entry, DataSource source) {
+        ListenableFuture<RetryEngine.Outcome<DataSource.Reading>> outcome = RetryEngine.shared().submitAsync(
+                "evaluate " + entry.symbol, RetryEngine.Policy.WORKER,
+                (attempt, budgetMillis, executor) -> source.fetchAsync(entry.symbol, entry.smaPeriod, executor));
+        return AsyncFutures.transform(outcome, fetched -> SMAWorker.toEvaluation(entry, fetched), AsyncFutures.DIRECT);
+    }
+}
@@ -0,0 +1,60 @@
+package com.kulkarnih.smaalerts;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * Price and moving average scraped from the barchart.com technical-analysis page,
+ * read through the {@link MarketDataRepository} so the UI and the worker share it.
+ *
+ * The page lists a fixed set of periods, {@link BarchartPageScanner#PERIODS}; this
+ * source does not support any other.
+ */
+final class BarchartDataSource implements DataSource {
+    private static final String TAG = "BarchartDataSource";
+
+    private final MarketDataRepository repository;
+
+    BarchartDataSource(MarketDataRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public String name() {
+        return SymbolMap.BARCHART;
+    }
+
+    @Override
+    public boolean supports(int smaPeriod) {
+        for (int period : BarchartPageScanner.PERIODS) {
+            if (period == smaPeriod) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Reading fetch(String symbol, int smaPeriod) throws IOException {
+        String barchart = repository.barchartData(SymbolMap.forSource(SymbolMap.BARCHART, symbol));
+        if (barchart == null) {
+            // Unreachable, an HTTP error, a bot challenge or a page without the table
+            throw new IOException("No data from barchart.com for " + symbol);
+        }
+        try {
+            JSONObject data = new JSONObject(barchart);
+            if (!data.has("sma" + smaPeriod)) {
+                // The page answered, just without this row
+                Log.w(TAG, "SMA period " + smaPeriod + " not available from barchart.com for symbol: " + symbol);
+                return null;
+            }
+            return new Reading(symbol, data.getDouble("currentPrice"), data.getDouble("sma" + smaPeriod), smaPeriod,
+                    name(), Reading.LIVE);
+        } catch (JSONException e) {
+            Log.e(TAG, "Malformed barchart.com data for symbol: " + symbol, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.kulkarnih.smaalerts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming extractor for the barchart.com technical-analysis page.
+ * Scans the response bytes as they arrive and stops reading as soon as both the
+ * last price and the full 200-Day row of the moving-average table have been found,
+ * so the rest of the page is never downloaded or held in memory.
+ *
+ * Every marker (price keys, moving-average row labels, table cell tags and known
+ * bot-challenge strings) is recognised by a single {@link BytePatternMatcher}, so the
+ * page is read exactly once no matter how many values we extract.
+ */
+final class BarchartPageScanner {
+    private static final int BUFFER_SIZE = 8192;
+    // Bot-challenge and error pages identify themselves near the top of the document
+    static final int CHALLENGE_WINDOW_BYTES = 16 * 1024;
+    // Hard cap so a misbehaving server cannot keep us reading forever
+    static final int MAX_PAGE_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_VALUE_CHARS = 32;
+
+    /** Moving-average periods listed in the page's table, in page order. */
+    static final int[] PERIODS = {5, 20, 50, 100, 200};
+    private static final int PERIOD_200_INDEX = 4;
+
+    // Value columns after the period label, in page order
+    static final int COL_AVERAGE = 0;
+    static final int COL_PRICE_CHANGE = 1;
+    static final int COL_PERCENT_CHANGE = 2;
+    static final int COL_AVERAGE_VOLUME = 3;
+    static final int COLUMNS = 4;
+
+    private static final String[] CHALLENGE_MARKERS = {
+            "px-captcha",
+            "_cf_chl_opt",
+            "Just a moment...",
+            "Pardon Our Interruption",
+            "<title>Access Denied</title>"
+    };
+
+    // Pattern ids in MATCHER
+    private static final int P_LAST_PRICE = 0;
+    private static final int P_CURRENT_SYMBOL = 1;
+    private static final int P_TD_CLOSE = 2;
+    private static final int P_TD_OPEN = 3;
+    private static final int P_TR_CLOSE = 4;
+    private static final int P_ROW_200_BARE = 5;
+    private static final int P_FIRST_ROW = 6; // two labels ("N-Day", "N Day") per period
+    private static final int P_FIRST_CHALLENGE = P_FIRST_ROW + 2 * PERIODS.length;
+
+    static final BytePatternMatcher MATCHER = new BytePatternMatcher(buildPatterns());
+
+    // Value capture states
+    private static final int IDLE = 0;
+    private static final int PRICE_START = 1;
+    private static final int PRICE_VALUE = 2;
+    private static final int ROW_SEEK_TD_CLOSE = 3;
+    private static final int ROW_SEEK_TD_OPEN = 4;
+    private static final int ROW_SEEK_GT = 5;
+    private static final int ROW_CELL = 6;
+
+    private BarchartPageScanner() {}
+
+    private static String[] buildPatterns() {
+        String[] patterns = new String[P_FIRST_CHALLENGE + CHALLENGE_MARKERS.length];
+        patterns[P_LAST_PRICE] = "\"lastPrice\":";
+        patterns[P_CURRENT_SYMBOL] = "\"currentSymbol\":";
+        patterns[P_TD_CLOSE] = "</td>";
+        patterns[P_TD_OPEN] = "<td";
+        patterns[P_TR_CLOSE] = "</tr>";
+        patterns[P_ROW_200_BARE] = "200-Day";
+        for (int i = 0; i < PERIODS.length; i++) {
+            patterns[P_FIRST_ROW + 2 * i] = "<td>" + PERIODS[i] + "-Day</td>";
+            patterns[P_FIRST_ROW + 2 * i + 1] = "<td>" + PERIODS[i] + " Day</td>";
+        }
+        System.arraycopy(CHALLENGE_MARKERS, 0, patterns, P_FIRST_CHALLENGE, CHALLENGE_MARKERS.length);
+        return patterns;
+    }
+
+    /**
+     * Outcome of a scan. Prices and averages that were not found are 0; the optional
+     * change and volume columns are NaN when the page did not have them.
+     */
+    static final class Result {
+        final double currentPrice;
+        final double sma200;
+        final long bytesRead;
+        final boolean challenge;
+        final boolean earlyExit;
+        final boolean priceFromCurrentSymbol;
+        private final double[][] rows;
+
+        Result(double currentPrice, double[][] rows, long bytesRead, boolean challenge,
+               boolean earlyExit, boolean priceFromCurrentSymbol) {
+            this.currentPrice = currentPrice;
+            this.rows = rows;
+            this.sma200 = rows[PERIOD_200_INDEX][COL_AVERAGE];
+            this.bytesRead = bytesRead;
+            this.challenge = challenge;
+            this.earlyExit = earlyExit;
+            this.priceFromCurrentSymbol = priceFromCurrentSymbol;
+        }
+
+        boolean isValid() {
+            return !challenge && currentPrice > 0 && sma200 > 0;
+        }
+
+        /** Moving average for one of {@link #PERIODS}, or 0 if the row was not found. */
+        double movingAverage(int period) {
+            return column(period, COL_AVERAGE);
+        }
+
+        /**
+         * One value column of the row for {@code period}; 0 or NaN when missing
+         * (see the class comment).
+         */
+        double column(int period, int column) {
+            for (int i = 0; i < PERIODS.length; i++) {
+                if (PERIODS[i] == period) return rows[i][column];
+            }
+            return column == COL_AVERAGE ? 0.0 : Double.NaN;
+        }
+    }
+
+    /**
+     * Reads the page from the stream until the last price and the 200-Day row have been
+     * extracted, a bot-challenge page is recognised, or the stream ends. Rows that come
+     * before the 200-Day row (5/20/50/100-Day) are captured on the way, each with its
+     * price change, percent change and average volume columns where present.
+     * The caller owns the stream and is responsible for closing it.
+     */
+    static Result scan(InputStream in) throws IOException {
+        BytePatternMatcher matcher = MATCHER;
+        int state = matcher.start();
+
+        double currentPrice = 0.0;
+        boolean priceFromCurrentSymbol = false;
+        long currentSymbolEnd = -1;
+        double[][] rows = emptyRows();
+        boolean[] rowDone = new boolean[PERIODS.length];
+        double bare200 = 0.0;
+
+        int priceState = IDLE;
+        byte priceQuote = 0;
+        boolean priceInSymbol = false;
+        StringBuilder priceValue = new StringBuilder(MAX_VALUE_CHARS);
+
+        int rowState = IDLE;
+        int rowPeriod = -1; // index into PERIODS, or -1 for the bare "200-Day" fallback
+        int rowColumn = 0;
+        boolean cellInTag = false;
+        StringBuilder cellValue = new StringBuilder(MAX_VALUE_CHARS);
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                byte b = buffer[i];
+                long offset = total + i;
+
+                // Advance value captures with the byte before looking at markers it completes
+                if (priceState != IDLE) {
+                    if (priceState == PRICE_START) {
+                        if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                            // skip whitespace between the key and its value
+                        } else if (b == '"' || b == '\'') {
+                            priceQuote = b;
+                            priceState = PRICE_VALUE;
+                        } else {
+                            priceQuote = 0;
+                            priceState = PRICE_VALUE;
+                            priceValue.append((char) b);
+                        }
+                    } else {
+                        boolean end = priceQuote != 0
+                                ? b == priceQuote
+                                : (b == ',' || b == '}' || b == '\n' || b == '\r');
+                        if (end) {
+                            currentPrice = parseNumber(priceValue);
+                            priceFromCurrentSymbol = currentPrice > 0 && priceInSymbol;
+                            priceState = IDLE;
+                            if (currentPrice > 0 && rowDone[PERIOD_200_INDEX]) {
+                                return new Result(currentPrice, rows, offset + 1, false, true, priceFromCurrentSymbol);
+                            }
+                        } else if (priceValue.length() >= MAX_VALUE_CHARS) {
+                            priceState = IDLE;
+                        } else {
+                            priceValue.append((char) b);
+                        }
+                    }
+                }
+
+                if (rowState == ROW_SEEK_GT) {
+                    if (b == '>') {
+                        rowState = ROW_CELL;
+                        cellInTag = false;
+                        cellValue.setLength(0);
+                    }
+                } else if (rowState == ROW_CELL) {
+                    // Collect the cell's text, skipping any nested markup such as <span>
+                    if (cellInTag) {
+                        if (b == '>') cellInTag = false;
+                    } else if (b == '<') {
+                        cellInTag = true;
+                    } else if (cellValue.length() < MAX_VALUE_CHARS) {
+                        cellValue.append((char) b);
+                    }
+                }
+
+                state = matcher.step(state, b);
+                int[] hits = matcher.matches(state);
+                if (hits.length == 0) {
+                    continue;
+                }
+                for (int h = 0; h < hits.length; h++) {
+                    int id = hits[h];
+                    if (id == P_LAST_PRICE) {
+                        if (currentPrice <= 0) {
+                            priceState = PRICE_START;
+                            priceInSymbol = offset <= currentSymbolEnd;
+                            priceValue.setLength(0);
+                        }
+                    } else if (id == P_CURRENT_SYMBOL) {
+                        // Same bound the old "method 2" lookup used for the symbol's own lastPrice
+                        currentSymbolEnd = offset + 5000;
+                    } else if (id == P_TD_CLOSE) {
+                        if (rowState == ROW_SEEK_TD_CLOSE) {
+                            rowState = ROW_SEEK_TD_OPEN;
+                        } else if (rowState == ROW_CELL) {
+                            double value = parseNumber(cellValue);
+                            if (rowPeriod < 0) {
+                                // Bare label fallback only ever yields the average
+                                if (bare200 <= 0) bare200 = value;
+                                rowState = IDLE;
+                            } else {
+                                rows[rowPeriod][rowColumn] = rowColumn == COL_AVERAGE || cellValue.length() > 0
+                                        ? value : Double.NaN;
+                                rowColumn++;
+                                rowState = rowColumn < COLUMNS ? ROW_SEEK_TD_OPEN : IDLE;
+                                if (rowState == IDLE) rowDone[rowPeriod] = true;
+                            }
+                        }
+                    } else if (id == P_TD_OPEN) {
+                        if (rowState == ROW_SEEK_TD_OPEN) rowState = ROW_SEEK_GT;
+                    } else if (id == P_TR_CLOSE) {
+                        if (rowState != IDLE && rowPeriod >= 0) rowDone[rowPeriod] = true;
+                        rowState = IDLE;
+                    } else if (id == P_ROW_200_BARE) {
+                        if (rowState == IDLE && !rowDone[PERIOD_200_INDEX] && bare200 <= 0) {
+                            rowState = ROW_SEEK_TD_CLOSE;
+                            rowPeriod = -1;
+                        }
+                    } else if (id < P_FIRST_CHALLENGE) {
+                        int period = (id - P_FIRST_ROW) / 2;
+                        if (rowState != IDLE && rowPeriod >= 0) rowDone[rowPeriod] = true;
+                        if (!rowDone[period]) {
+                            // The label cell is already closed; the values are in the following cells
+                            rowState = ROW_SEEK_TD_OPEN;
+                            rowPeriod = period;
+                            rowColumn = COL_AVERAGE;
+                        } else {
+                            rowState = IDLE;
+                        }
+                    } else if (offset < CHALLENGE_WINDOW_BYTES) {
+                        return new Result(0.0, emptyRows(), offset + 1, true, true, false);
+                    }
+                }
+
+                if (rowDone[PERIOD_200_INDEX] && currentPrice > 0) {
+                    return new Result(currentPrice, rows, offset + 1, false, true, priceFromCurrentSymbol);
+                }
+            }
+            total += n;
+            if (total >= MAX_PAGE_BYTES) {
+                break;
+            }
+        }
+        if (rows[PERIOD_200_INDEX][COL_AVERAGE] <= 0) {
+            rows[PERIOD_200_INDEX][COL_AVERAGE] = bare200;
+        }
+        return new Result(currentPrice, rows, total, false, false, priceFromCurrentSymbol);
+    }
+
+    private static double[][] emptyRows() {
+        double[][] rows = new double[PERIODS.length][COLUMNS];
+        for (double[] row : rows) {
+            Arrays.fill(row, Double.NaN);
+            row[COL_AVERAGE] = 0.0;
+        }
+        return rows;
+    }
+
+    /**
+     * Parses a table or JSON number such as "$6,734.11", "+1.25%" or "2.35M".
+     * Returns 0 when the text is not a number.
+     */
+    static double parseNumber(CharSequence raw) {
+        String s = raw.toString().trim().replace(",", "").replace("$", "").replace("%", "");
+        if (s.isEmpty()) return 0.0;
+        double scale = 1.0;
+        char suffix = Character.toUpperCase(s.charAt(s.length() - 1));
+        if (suffix == 'K' || suffix == 'M' || suffix == 'B') {
+            scale = suffix == 'K' ? 1e3 : suffix == 'M' ? 1e6 : 1e9;
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return Double.parseDouble(s) * scale;
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+}
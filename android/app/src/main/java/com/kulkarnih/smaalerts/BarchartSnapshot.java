@@ -0,0 +1,153 @@
+package com.kulkarnih.smaalerts;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable view of one download of the barchart.com technical-analysis page:
+ * the last price plus every row of the moving-average table.
+ *
+ * Snapshots are cached per symbol, so any supported SMA period (or several alerts on
+ * different periods) is answered from a single download. The moving averages hold for
+ * the trading day, but the last price does not: a snapshot is only served while its
+ * price is as fresh as {@link MarketDataRepository} would keep a barchart.com value,
+ * so a refresh there always reaches the page.
+ */
+final class BarchartSnapshot {
+    private static final ZoneId NY_ZONE = ZoneId.of("America/New_York");
+
+    private static final ConcurrentHashMap<String, BarchartSnapshot> CACHE = new ConcurrentHashMap<>();
+
+    /** One row of the moving-average table. Optional columns are NaN when the page omits them. */
+    static final class MovingAverageRow {
+        final int period;
+        final double average;
+        final double priceChange;
+        final double percentChange;
+        final double averageVolume;
+
+        MovingAverageRow(int period, double average, double priceChange, double percentChange, double averageVolume) {
+            this.period = period;
+            this.average = average;
+            this.priceChange = priceChange;
+            this.percentChange = percentChange;
+            this.averageVolume = averageVolume;
+        }
+
+        boolean hasVolume() {
+            return !Double.isNaN(averageVolume);
+        }
+    }
+
+    final String symbol;
+    final double lastPrice;
+    final long tradingDay; // epoch day in America/New_York
+    final long fetchedAtMillis;
+    private final MovingAverageRow[] rows; // indexed like BarchartPageScanner.PERIODS, null when missing
+
+    private BarchartSnapshot(String symbol, double lastPrice, long tradingDay, long fetchedAtMillis, MovingAverageRow[] rows) {
+        this.symbol = symbol;
+        this.lastPrice = lastPrice;
+        this.tradingDay = tradingDay;
+        this.fetchedAtMillis = fetchedAtMillis;
+        this.rows = rows;
+    }
+
+    /**
+     * Builds a snapshot from a scan, or returns null if the scan did not yield a usable
+     * price and 200-day average.
+     */
+    static BarchartSnapshot fromScan(String symbol, BarchartPageScanner.Result page, long nowMillis) {
+        if (page == null || !page.isValid()) return null;
+        int[] periods = BarchartPageScanner.PERIODS;
+        MovingAverageRow[] rows = new MovingAverageRow[periods.length];
+        for (int i = 0; i < periods.length; i++) {
+            double average = page.movingAverage(periods[i]);
+            if (average > 0) {
+                rows[i] = new MovingAverageRow(periods[i], average,
+                        page.column(periods[i], BarchartPageScanner.COL_PRICE_CHANGE),
+                        page.column(periods[i], BarchartPageScanner.COL_PERCENT_CHANGE),
+                        page.column(periods[i], BarchartPageScanner.COL_AVERAGE_VOLUME));
+            }
+        }
+        return new BarchartSnapshot(symbol, page.currentPrice, tradingDay(nowMillis), nowMillis, rows);
+    }
+
+    static long tradingDay(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(NY_ZONE).toLocalDate().toEpochDay();
+    }
+
+    boolean supports(int period) {
+        return row(period) != null;
+    }
+
+    /** Row for {@code period}, or null if the page did not list it. */
+    MovingAverageRow row(int period) {
+        int[] periods = BarchartPageScanner.PERIODS;
+        for (int i = 0; i < periods.length; i++) {
+            if (periods[i] == period) return rows[i];
+        }
+        return null;
+    }
+
+    /** Moving average for {@code period}, or 0 if the page did not list it. */
+    double movingAverage(int period) {
+        MovingAverageRow row = row(period);
+        return row != null ? row.average : 0.0;
+    }
+
+    /**
+     * JSON shape handed to the web UI: "currentPrice" and "sma200" as before, plus an
+     * "smaN" key for every other period found on the page.
+     */
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("currentPrice", lastPrice);
+        for (MovingAverageRow row : rows) {
+            if (row == null) continue;
+            json.put("sma" + row.period, row.average);
+            if (row.hasVolume()) {
+                json.put("avgVolume" + row.period, row.averageVolume);
+            }
+        }
+        return json;
+    }
+
+    // ===== Per-symbol, per-trading-day cache =====
+
+    /**
+     * Cached snapshot for {@code symbol} if it was taken on the current trading day and
+     * its price is still fresh.
+     */
+    static BarchartSnapshot cached(String symbol, long nowMillis) {
+        BarchartSnapshot snapshot = CACHE.get(symbol);
+        if (snapshot != null && snapshot.tradingDay == tradingDay(nowMillis) && nowMillis < snapshot.priceExpiresAt()) {
+            return snapshot;
+        }
+        return null;
+    }
+
+    /** When the last price stops being fresh: a few minutes while it moves, the next open otherwise. */
+    long priceExpiresAt() {
+        return MarketDataRepository.expiresAt(MarketDataRepository.Kind.BARCHART, fetchedAtMillis);
+    }
+
+    static void cache(BarchartSnapshot snapshot) {
+        CACHE.put(snapshot.symbol, snapshot);
+    }
+
+    static void clearCache() {
+        CACHE.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "BarchartSnapshot{" + symbol + " @" + LocalDate.ofEpochDay(tradingDay) + ", price=" + lastPrice
+                + ", sma200=" + movingAverage(200) + "}";
+    }
+}
@@ -0,0 +1,201 @@
+package com.kulkarnih.smaalerts;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fetches quotes for many symbols per HTTP request from Yahoo Finance's spark endpoint
+ * and splits the response back into per-symbol results.
+ *
+ * Each spark entry carries the same meta/timestamp/close layout as a chart response,
+ * so besides the live price every quote has the last few daily closes; on a normal day
+ * that is enough to roll an SMA window forward without a per-symbol history request.
+ *
+ * Symbols are sent in batches of {@code batchSize}. A batch that fails, or a symbol the
+ * response leaves out or reports without a price, only drops those symbols.
+ */
+final class BatchQuoteClient {
+    private static final String TAG = "BatchQuoteClient";
+
+    static final String YAHOO_BASE_URL = "https://query1.finance.yahoo.com";
+    /** Yahoo answers up to 20 symbols per spark request. */
+    static final int DEFAULT_BATCH_SIZE = 20;
+    /** Daily bars returned with each quote; covers a long weekend plus a holiday. */
+    static final String RECENT_RANGE = "5d";
+
+    /** Live price and recent daily closes for one symbol. */
+    static final class Quote {
+        final String symbol;
+        final double price;
+        final PriceSeries recent;
+
+        Quote(String symbol, double price, PriceSeries recent) {
+            this.symbol = symbol;
+            this.price = price;
+            this.recent = recent;
+        }
+
+        @Override
+        public String toString() {
+            return symbol + "=" + price;
+        }
+    }
+
+    private final String baseUrl;
+    private final int batchSize;
+
+    BatchQuoteClient(String baseUrl, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.baseUrl = baseUrl;
+        this.batchSize = batchSize;
+    }
+
+    static BatchQuoteClient yahoo() {
+        return new BatchQuoteClient(YAHOO_BASE_URL, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Quotes for as many of {@code symbols} as could be fetched, keyed by symbol.
+     * Symbols missing from the map failed; the reason is logged.
+     */
+    Map<String, Quote> fetch(Collection<String> symbols) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(symbols));
+        if (distinct.isEmpty()) return Collections.emptyMap();
+
+        Map<String, Quote> quotes = new HashMap<>();
+        for (int from = 0; from < distinct.size(); from += batchSize) {
+            List<String> batch = distinct.subList(from, Math.min(from + batchSize, distinct.size()));
+            try {
+                fetchBatch(batch, quotes);
+            } catch (IOException e) {
+                Log.e(TAG, "Quote batch failed for " + batch, e);
+            }
+        }
+        if (quotes.size() < distinct.size()) {
+            List<String> missing = new ArrayList<>();
+            for (String symbol : distinct) {
+                if (!quotes.containsKey(symbol)) missing.add(symbol);
+            }
+            Log.w(TAG, "No quote for " + missing);
+        }
+        return quotes;
+    }
+
+    /** Single-symbol convenience: the live price, or 0.0 if unavailable. */
+    double fetchPrice(String symbol) {
+        Quote quote = fetch(Collections.singletonList(symbol)).get(symbol);
+        return quote != null ? quote.price : 0.0;
+    }
+
+    private void fetchBatch(List<String> batch, Map<String, Quote> quotes) throws IOException {
+        // Set User-Agent to mimic a browser request (required by Yahoo Finance)
+        try (SharedHttpClient.Response response = HttpCache.fetch(sparkUrl(batch), HttpCache.YAHOO_QUOTE,
+                "User-Agent", SMAWorker.YAHOO_USER_AGENT, "Accept", "application/json")) {
+            if (!response.isOk()) {
+                throw new IOException("spark returned HTTP " + response.code);
+            }
+            int before = quotes.size();
+            decode(response.body(), batch, quotes);
+            Log.d(TAG, "Quote batch of " + batch.size() + " returned " + (quotes.size() - before) + " quotes");
+        }
+    }
+
+    String sparkUrl(List<String> batch) throws UnsupportedEncodingException {
+        StringBuilder url = new StringBuilder(baseUrl).append("/v7/finance/spark?symbols=");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) url.append("%2C");
+            url.append(URLEncoder.encode(batch.get(i), "UTF-8"));
+        }
+        return url.append("&range=").append(RECENT_RANGE).append("&interval=1d").toString();
+    }
+
+    /**
+     * Streams a spark response into {@code quotes}, keeping only symbols that were
+     * requested. Package-private for testing.
+     */
+    static void decode(InputStream in, Collection<String> requested, Map<String, Quote> quotes) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("spark".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("result".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            Quote quote = readEntry(reader);
+                            if (quote != null && requested.contains(quote.symbol)) {
+                                quotes.put(quote.symbol, quote);
+                            }
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /** One {"symbol": ..., "response": [chart result]} entry, or null if it has no usable price. */
+    private static Quote readEntry(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String symbol = null;
+        YahooChartDecoder.Chart chart = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("symbol".equals(name) && reader.peek() == JsonToken.STRING) {
+                symbol = reader.nextString();
+            } else if ("response".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    chart = YahooChartDecoder.readResult(reader);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (symbol == null || chart == null) return null;
+        PriceSeries recent = PriceSeries.fromChart(chart);
+        double price = chart.latestPrice();
+        if (price <= 0 && !recent.isEmpty()) {
+            price = recent.lastClose();
+        }
+        if (price <= 0) {
+            Log.w(TAG, "No price in quote for " + symbol);
+            return null;
+        }
+        return new Quote(symbol, price, recent);
+    }
+}
@@ -16,6 +16,7 @@ public class BootReceiver extends BroadcastReceiver {
             Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action)) {
             // Reschedule daily SMA work on boot completed
             WorkScheduler.scheduleDailyAnalysis(context);
+            IntradayMonitor.ensureScheduled(context);
         }
     }
 }
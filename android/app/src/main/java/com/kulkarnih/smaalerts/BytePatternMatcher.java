@@ -0,0 +1,150 @@
+package com.kulkarnih.smaalerts;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over raw bytes. Finds every occurrence of a fixed set of
+ * ASCII patterns in a single pass, one byte at a time, so it can be driven directly
+ * from a network stream without decoding the page into a String.
+ *
+ * The automaton is compiled into a dense transition table over a compressed
+ * alphabet (only bytes that occur in some pattern get their own column), which keeps
+ * each step to two array reads. Instances are immutable and can be shared between threads;
+ * the caller keeps the current state.
+ */
+final class BytePatternMatcher {
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final int[] byteClass = new int[256];
+    private final int classCount;
+    private final int[] transitions;
+    private final int[][] matches;
+    private final int[] patternLengths;
+
+    BytePatternMatcher(String... patterns) {
+        if (patterns.length == 0) {
+            throw new IllegalArgumentException("At least one pattern is required");
+        }
+        byte[][] encoded = new byte[patterns.length][];
+        patternLengths = new int[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            encoded[i] = patterns[i].getBytes(StandardCharsets.US_ASCII);
+            if (encoded[i].length == 0) {
+                throw new IllegalArgumentException("Empty pattern at index " + i);
+            }
+            patternLengths[i] = encoded[i].length;
+        }
+
+        // Alphabet compression: class 0 is "any byte not in a pattern"
+        int classes = 1;
+        for (byte[] p : encoded) {
+            for (byte b : p) {
+                if (byteClass[b & 0xFF] == 0) {
+                    byteClass[b & 0xFF] = classes++;
+                }
+            }
+        }
+        classCount = classes;
+
+        // Build the trie; -1 marks a missing edge until failure links fill it in
+        List<int[]> gotoRows = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        gotoRows.add(newRow());
+        out.add(new ArrayList<>());
+        for (int id = 0; id < encoded.length; id++) {
+            int state = 0;
+            for (byte b : encoded[id]) {
+                int c = byteClass[b & 0xFF];
+                if (gotoRows.get(state)[c] < 0) {
+                    gotoRows.get(state)[c] = gotoRows.size();
+                    gotoRows.add(newRow());
+                    out.add(new ArrayList<>());
+                }
+                state = gotoRows.get(state)[c];
+            }
+            out.get(state).add(id);
+        }
+
+        // Breadth-first pass: failure links, merged outputs and the full DFA table
+        int states = gotoRows.size();
+        transitions = new int[states * classCount];
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        int[] root = gotoRows.get(0);
+        for (int c = 0; c < classCount; c++) {
+            int next = root[c];
+            if (next < 0) {
+                transitions[c] = 0;
+            } else {
+                transitions[c] = next;
+                fail[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            out.get(state).addAll(out.get(fail[state]));
+            int[] row = gotoRows.get(state);
+            for (int c = 0; c < classCount; c++) {
+                int next = row[c];
+                if (next < 0) {
+                    transitions[state * classCount + c] = transitions[fail[state] * classCount + c];
+                } else {
+                    transitions[state * classCount + c] = next;
+                    fail[next] = transitions[fail[state] * classCount + c];
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        matches = new int[states][];
+        for (int s = 0; s < states; s++) {
+            List<Integer> ids = out.get(s);
+            if (ids.isEmpty()) {
+                matches[s] = NO_MATCHES;
+            } else {
+                int[] arr = new int[ids.size()];
+                for (int i = 0; i < arr.length; i++) arr[i] = ids.get(i);
+                Arrays.sort(arr);
+                matches[s] = arr;
+            }
+        }
+    }
+
+    private int[] newRow() {
+        int[] row = new int[classCount];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    /** Initial state, before any byte has been consumed. */
+    int start() {
+        return 0;
+    }
+
+    /** Advances the automaton by one byte. */
+    int step(int state, byte b) {
+        return transitions[state * classCount + byteClass[b & 0xFF]];
+    }
+
+    /**
+     * Ids (indexes into the constructor arguments) of every pattern that ends at the byte
+     * that led to {@code state}, in ascending order. Never null; do not modify.
+     */
+    int[] matches(int state) {
+        return matches[state];
+    }
+
+    int patternLength(int id) {
+        return patternLengths[id];
+    }
+
+    int patternCount() {
+        return patternLengths.length;
+    }
+}
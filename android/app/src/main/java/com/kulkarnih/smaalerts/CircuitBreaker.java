@@ -0,0 +1,205 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-source circuit breaker, so a provider that is down or blocking us stops costing
+ * a full connect-plus-read timeout on every run.
+ *
+ * <ul>
+ *   <li>CLOSED: requests pass; {@code failureThreshold} consecutive failures open it.</li>
+ *   <li>OPEN: requests are refused at once until the open period has passed.</li>
+ *   <li>HALF_OPEN: exactly one probe request is let through. Success closes the breaker;
+ *       failure opens it again for twice as long, up to {@code maxOpenMillis}; an empty
+ *       answer leaves it half-open for the next probe.</li>
+ * </ul>
+ *
+ * Breakers are shared per source name and their state is persisted between worker
+ * runs, so a provider that failed in the last run is not retried before its time.
+ */
+final class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** Thresholds; overridable through PrefsHelper.KEY_BREAKER_FAILURES and KEY_BREAKER_OPEN_MINUTES. */
+    static final class Config {
+        final int failureThreshold;
+        final long openMillis;
+        final long maxOpenMillis;
+
+        Config(int failureThreshold, long openMillis, long maxOpenMillis) {
+            if (failureThreshold <= 0 || openMillis <= 0 || maxOpenMillis < openMillis) {
+                throw new IllegalArgumentException("Invalid breaker config: " + failureThreshold + ", " + openMillis + ", " + maxOpenMillis);
+            }
+            this.failureThreshold = failureThreshold;
+            this.openMillis = openMillis;
+            this.maxOpenMillis = maxOpenMillis;
+        }
+
+        static final Config DEFAULT = new Config(3, TimeUnit.MINUTES.toMillis(5), TimeUnit.HOURS.toMillis(2));
+
+        /** DEFAULT with any thresholds set in preferences applied. */
+        static Config fromPrefs(Context ctx) {
+            int failures = PrefsHelper.getInt(ctx, PrefsHelper.KEY_BREAKER_FAILURES, DEFAULT.failureThreshold);
+            int minutes = PrefsHelper.getInt(ctx, PrefsHelper.KEY_BREAKER_OPEN_MINUTES, (int) TimeUnit.MILLISECONDS.toMinutes(DEFAULT.openMillis));
+            try {
+                long open = TimeUnit.MINUTES.toMillis(minutes);
+                return new Config(failures, open, Math.max(open, DEFAULT.maxOpenMillis));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring invalid breaker settings", e);
+                return DEFAULT;
+            }
+        }
+    }
+
+    private static final ConcurrentHashMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private Config config;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openUntil;
+    private long openMillis;
+    private boolean probing;
+
+    CircuitBreaker(String name, Config config) {
+        this.name = name;
+        this.config = config;
+        this.openMillis = config.openMillis;
+    }
+
+    /** The shared breaker for {@code source}. */
+    static CircuitBreaker of(String source) {
+        CircuitBreaker breaker = BREAKERS.get(source);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(source, Config.DEFAULT);
+            breaker = BREAKERS.putIfAbsent(source, created);
+            if (breaker == null) breaker = created;
+        }
+        return breaker;
+    }
+
+    synchronized void configure(Config config) {
+        this.config = config;
+        if (state == State.CLOSED) {
+            openMillis = config.openMillis;
+        }
+    }
+
+    /**
+     * Whether a request may go out now. In HALF_OPEN only the caller that gets true is
+     * the probe; it must report back through onSuccess, onNeutral or onFailure.
+     */
+    synchronized boolean allowRequest(long nowMillis) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nowMillis < openUntil) return false;
+                state = State.HALF_OPEN;
+                probing = true;
+                Log.i(TAG, name + " half-open, sending one probe");
+                return true;
+            default:
+                if (probing) return false;
+                probing = true;
+                return true;
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            Log.i(TAG, name + " recovered, closing breaker");
+        }
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+        openMillis = config.openMillis;
+    }
+
+    /**
+     * A request that neither proved nor disproved the source, such as a healthy answer
+     * with no data for the symbol. Releases a half-open probe and changes nothing else.
+     */
+    synchronized void onNeutral() {
+        probing = false;
+    }
+
+    synchronized void onFailure(long nowMillis) {
+        if (state == State.HALF_OPEN) {
+            // Probe failed: stay away twice as long
+            openMillis = Math.min(openMillis * 2, config.maxOpenMillis);
+            open(nowMillis);
+        } else if (state == State.CLOSED && ++failures >= config.failureThreshold) {
+            open(nowMillis);
+        }
+    }
+
+    private void open(long nowMillis) {
+        state = State.OPEN;
+        probing = false;
+        openUntil = nowMillis + openMillis;
+        Log.w(TAG, name + " open for " + TimeUnit.MILLISECONDS.toSeconds(openMillis) + " s after " + failures + " failure(s)");
+    }
+
+    /** True while requests would be refused; unlike allowRequest this never starts a probe. */
+    synchronized boolean isOpen(long nowMillis) {
+        return state == State.OPEN ? nowMillis < openUntil : state == State.HALF_OPEN && probing;
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    // ===== Persistence =====
+
+    /** "state,failures,openUntil,openMillis". A half-open breaker is saved as open and due. */
+    synchronized String encode() {
+        State saved = state == State.HALF_OPEN ? State.OPEN : state;
+        long until = state == State.HALF_OPEN ? 0 : openUntil;
+        return saved.name() + "," + failures + "," + until + "," + openMillis;
+    }
+
+    synchronized void decodeInto(String encoded) {
+        state = State.CLOSED;
+        failures = 0;
+        openUntil = 0;
+        openMillis = config.openMillis;
+        probing = false;
+        if (encoded == null || encoded.isEmpty()) return;
+        String[] parts = encoded.split(",");
+        try {
+            State saved = State.valueOf(parts[0]);
+            int savedFailures = Integer.parseInt(parts[1]);
+            long savedUntil = Long.parseLong(parts[2]);
+            long savedOpenMillis = Long.parseLong(parts[3]);
+            state = saved == State.HALF_OPEN ? State.OPEN : saved;
+            failures = savedFailures;
+            openUntil = savedUntil;
+            openMillis = Math.max(config.openMillis, Math.min(savedOpenMillis, config.maxOpenMillis));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Ignoring malformed breaker state for " + name + ": " + encoded);
+        }
+    }
+
+    /** Restores each named breaker's saved state and applies the configured thresholds. */
+    static void load(Context ctx, String... sources) {
+        Config config = Config.fromPrefs(ctx);
+        for (String source : sources) {
+            CircuitBreaker breaker = of(source);
+            breaker.configure(config);
+            breaker.decodeInto(PrefsHelper.getString(ctx, PrefsHelper.KEY_BREAKER_PREFIX + source, null));
+        }
+    }
+
+    static void save(Context ctx, String... sources) {
+        for (String source : sources) {
+            PrefsHelper.putString(ctx, PrefsHelper.KEY_BREAKER_PREFIX + source, of(source).encode());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.kulkarnih.smaalerts;
+
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A provider of a symbol's price and simple moving average.
+ *
+ * Callers always pass the app's own symbols (barchart.com style, e.g. "$SPX");
+ * each implementation translates them to its provider's tickers through
+ * {@link SymbolMap}. Implementations may block on I/O and must be safe to call
+ * from several threads at once.
+ */
+interface DataSource {
+
+    /** Short, stable name used for symbol mapping, latency stats and logs. */
+    String name();
+
+    /**
+     * Price and SMA for {@code symbol}, or null if the source answered but has no usable
+     * data for it (too little history, say). Transport and HTTP failures are thrown, so
+     * a {@link CircuitBreaker} only counts a provider that is actually failing.
+     */
+    Reading fetch(String symbol, int smaPeriod) throws Exception;
+
+    /**
+     * {@link #fetch} as a future, for callers that must not wait on it. The default runs
+     * fetch on {@code executor} under the calling thread's request deadline (see
+     * {@link SharedHttpClient#setCallDeadline}); a source that combines others overrides
+     * it so that no thread waits on their answers either.
+     */
+    default ListenableFuture<Reading> fetchAsync(String symbol, int smaPeriod, Executor executor) {
+        long deadline = SharedHttpClient.callDeadline();
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            executor.execute(() -> {
+                long outer = SharedHttpClient.callDeadline();
+                SharedHttpClient.setCallDeadline(deadline);
+                try {
+                    completer.set(fetch(symbol, smaPeriod));
+                } catch (Exception e) {
+                    completer.setException(e);
+                } finally {
+                    SharedHttpClient.setCallDeadline(outer);
+                }
+            });
+            return name() + " " + symbol;
+        });
+    }
+
+    /**
+     * Whether this source can supply an SMA over {@code smaPeriod} days at all. A source
+     * that cannot is never asked, rather than answering with a different average.
+     */
+    default boolean supports(int smaPeriod) {
+        return true;
+    }
+
+    /** One answer from a source. */
+    final class Reading {
+        /** asOfDay of a live price, as opposed to a stored close. */
+        static final int LIVE = Integer.MIN_VALUE;
+
+        final String symbol;
+        final double price;
+        final double sma;
+        final int smaPeriod;
+        final String source;
+        final int asOfDay; // New York epoch day of the price, or LIVE
+
+        Reading(String symbol, double price, double sma, int smaPeriod, String source, int asOfDay) {
+            this.symbol = symbol;
+            this.price = price;
+            this.sma = sma;
+            this.smaPeriod = smaPeriod;
+            this.source = source;
+            this.asOfDay = asOfDay;
+        }
+
+        @Override
+        public String toString() {
+            return symbol + " from " + source + ": price=" + price + ", SMA" + smaPeriod + "=" + sma;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.kulkarnih.smaalerts;
+
+import android.util.Log;
+
+/**
+ * A data source behind its {@link CircuitBreaker}. While the breaker is open, fetch
+ * returns null at once, so a {@link HedgedDataSource} moves straight on to its other
+ * source.
+ *
+ * Only an exception counts as a failure: sources throw on transport and HTTP errors.
+ * A null reading is a healthy answer without data, such as a symbol listed too
+ * recently for the period, and must not shut the provider off for every other symbol.
+ */
+final class GuardedDataSource implements DataSource {
+    private static final String TAG = "GuardedDataSource";
+
+    private final DataSource delegate;
+    private final CircuitBreaker breaker;
+
+    GuardedDataSource(DataSource delegate) {
+        this(delegate, CircuitBreaker.of(delegate.name()));
+    }
+
+    GuardedDataSource(DataSource delegate, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public String name() {
+        // Same name as the delegate so latency stats and symbol mapping carry over
+        return delegate.name();
+    }
+
+    @Override
+    public boolean supports(int smaPeriod) {
+        return delegate.supports(smaPeriod);
+    }
+
+    @Override
+    public Reading fetch(String symbol, int smaPeriod) throws Exception {
+        if (!breaker.allowRequest(System.currentTimeMillis())) {
+            Log.d(TAG, delegate.name() + " breaker is " + breaker.state() + ", skipping " + symbol);
+            return null;
+        }
+        Reading reading;
+        try {
+            reading = delegate.fetch(symbol, smaPeriod);
+        } catch (Exception e) {
+            breaker.onFailure(System.currentTimeMillis());
+            throw e;
+        }
+        if (reading != null) {
+            breaker.onSuccess();
+        } else {
+            breaker.onNeutral();
+        }
+        return reading;
+    }
+}
@@ -0,0 +1,209 @@
+package com.kulkarnih.smaalerts;
+
+import android.util.Log;
+
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asks a primary source first and hedges with a secondary one.
+ *
+ * If the primary has not answered by its observed p95 latency, the secondary is
+ * started too and whichever answers first wins; if the primary fails outright, the
+ * secondary is asked at once. A slow primary therefore costs at most its p95 plus the
+ * secondary's latency, instead of the full timeout.
+ *
+ * The losing request is not interrupted: the Yahoo source writes the history store
+ * and SMA window as it goes, and an interrupted file channel would close under it.
+ * It finishes in the background and its result only warms the caches.
+ *
+ * Both sources must compute the same quantity, so a source that does not support the
+ * requested period is left out and the other one is asked alone, without a hedge.
+ */
+final class HedgedDataSource implements DataSource {
+    private static final String TAG = "HedgedDataSource";
+
+    /** Hedge delay while the primary has too few samples for a p95. */
+    static final long DEFAULT_HEDGE_DELAY_MS = 3000;
+    /** Never hedge sooner than this, so a fast primary's jitter does not double traffic. */
+    static final long MIN_HEDGE_DELAY_MS = 250;
+    static final double HEDGE_PERCENTILE = 0.95;
+
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(daemonThreads());
+
+    private final DataSource primary;
+    private final DataSource secondary;
+    private final AtomicLong hedged = new AtomicLong();
+
+    HedgedDataSource(DataSource primary, DataSource secondary) {
+        this.primary = primary;
+        this.secondary = secondary;
+    }
+
+    @Override
+    public String name() {
+        return primary.name() + "+" + secondary.name();
+    }
+
+    /** How long the primary gets before the secondary is started. */
+    long hedgeDelayMillis() {
+        long p95 = LatencyTracker.of(primary.name()).percentile(HEDGE_PERCENTILE, DEFAULT_HEDGE_DELAY_MS);
+        return Math.max(MIN_HEDGE_DELAY_MS, p95);
+    }
+
+    /** Number of fetches that started the secondary because the primary was slow. */
+    long hedgedCount() {
+        return hedged.get();
+    }
+
+    /** Blocks the calling thread, and only it, until {@link #fetchAsync} has an answer. */
+    @Override
+    public Reading fetch(String symbol, int smaPeriod) throws Exception {
+        try {
+            return fetchAsync(symbol, smaPeriod, POOL).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * Runs the sources' requests on {@code executor} and settles from their listeners:
+     * the hedge is started by a timer, not by a thread waiting for the primary, so
+     * nothing but the requests themselves occupies a thread. Source failures are logged
+     * and treated as no data; the future holds null if neither source had any.
+     */
+    @Override
+    public ListenableFuture<Reading> fetchAsync(String symbol, int smaPeriod, Executor executor) {
+        boolean askPrimary = primary.supports(smaPeriod);
+        boolean askSecondary = secondary.supports(smaPeriod);
+        Race race = new Race(symbol, smaPeriod, executor);
+        ListenableFuture<Reading> result = CallbackToFutureAdapter.getFuture(completer -> {
+            race.completer = completer;
+            completer.addCancellationListener(race::cancel, AsyncFutures.DIRECT);
+            return "hedged " + symbol;
+        });
+        if (askPrimary && askSecondary) {
+            race.begin(primary, hedgeDelayMillis());
+        } else {
+            // Both sources must compute the same quantity; no hedge with a different one
+            race.begin(askSecondary ? secondary : primary, -1);
+        }
+        return result;
+    }
+
+    /** One fetch: the requests started so far and the answer, once there is one. */
+    private final class Race {
+        private final String symbol;
+        private final int smaPeriod;
+        private final Executor executor;
+        /** The caller's request deadline (a retry attempt's budget), for every request of the race. */
+        private final long deadline = SharedHttpClient.callDeadline();
+        private CallbackToFutureAdapter.Completer<Reading> completer;
+        private ScheduledFuture<?> timer;
+        private boolean canHedge;
+        private boolean secondaryStarted;
+        private boolean done;
+        private int running;
+
+        Race(String symbol, int smaPeriod, Executor executor) {
+            this.symbol = symbol;
+            this.smaPeriod = smaPeriod;
+            this.executor = executor;
+        }
+
+        /** Starts {@code first}, and the secondary after {@code hedgeDelay} ms unless it is -1. */
+        synchronized void begin(DataSource first, long hedgeDelay) {
+            canHedge = hedgeDelay >= 0;
+            start(first);
+            if (canHedge && !done && !secondaryStarted) {
+                timer = AsyncFutures.schedule(() -> hedge(hedgeDelay), hedgeDelay);
+            }
+        }
+
+        private synchronized void hedge(long delay) {
+            if (done || secondaryStarted) return;
+            hedged.incrementAndGet();
+            Log.i(TAG, primary.name() + " slower than " + delay + " ms for " + symbol + ", hedging with " + secondary.name());
+            start(secondary);
+        }
+
+        /** The caller gave up: no hedge is started, and running requests finish on their own. */
+        synchronized void cancel() {
+            done = true;
+            stopTimer();
+        }
+
+        private void stopTimer() {
+            if (timer != null) timer.cancel(false);
+        }
+
+        private synchronized void start(DataSource source) {
+            if (source == secondary) secondaryStarted = true;
+            running++;
+            long begin = System.nanoTime();
+            ListenableFuture<Reading> request;
+            long outer = SharedHttpClient.callDeadline();
+            SharedHttpClient.setCallDeadline(deadline);
+            try {
+                request = source.fetchAsync(symbol, smaPeriod, executor);
+            } finally {
+                SharedHttpClient.setCallDeadline(outer);
+            }
+            request.addListener(() -> finished(source, request, begin), AsyncFutures.DIRECT);
+        }
+
+        private synchronized void finished(DataSource source, ListenableFuture<Reading> request, long begin) {
+            running--;
+            Reading reading = null;
+            try {
+                reading = AsyncFutures.getDone(request);
+            } catch (ExecutionException | CancellationException e) {
+                Log.w(TAG, source.name() + " failed for " + symbol, e instanceof ExecutionException ? e.getCause() : e);
+            }
+            if (reading != null) {
+                LatencyTracker.of(source.name()).record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+                settle(reading);
+                return;
+            }
+            if (done) return;
+            if (source == primary && canHedge && !secondaryStarted) {
+                stopTimer();
+                Log.d(TAG, primary.name() + " had no data for " + symbol + ", asking " + secondary.name());
+                start(secondary);
+                return;
+            }
+            if (running == 0) {
+                settle(null);
+            }
+        }
+
+        private void settle(Reading reading) {
+            if (done) return;
+            done = true;
+            stopTimer();
+            completer.set(reading);
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "data-source-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
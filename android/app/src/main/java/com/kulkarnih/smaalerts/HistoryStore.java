@@ -0,0 +1,437 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-device store of daily closes, one file per symbol under
+ * files/history/.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   header  32 bytes: magic, version, record count, first day, last day, 2 reserved, CRC32 of the above
+ *   records 16 bytes: epoch day (int), close (double), CRC32 of day+close
+ * </pre>
+ * Records are sorted by day, so the header is the whole index: the count bounds the
+ * mapped region and first/last day answer freshness checks without touching records.
+ * Reads memory-map the file and pull primitives straight out of the mapping.
+ *
+ * Appends are crash-safe: new records go to a side journal that is forced to disk
+ * first, then copied into the data file, and only then is the header count (the
+ * commit point) rewritten. A journal left behind by a crash is replayed on next open;
+ * a torn journal tail fails its checksum and is dropped.
+ */
+final class HistoryStore {
+    private static final String TAG = "HistoryStore";
+
+    static final int NO_DAY = Integer.MIN_VALUE;
+
+    /** About ten years of trading days; older closes are compacted away. */
+    static final int MAX_RECORDS = 2600;
+    private static final int COMPACT_SLACK = 260;
+
+    private static final int MAGIC = 0x534D4148; // "SMAH"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 16;
+
+    private static HistoryStore instance;
+
+    private final File dir;
+    private final Set<String> recovered = new HashSet<>();
+    private final CRC32 crc = new CRC32();
+    private final byte[] crcScratch = new byte[HEADER_SIZE];
+
+    private static final class Header {
+        int count;
+        int firstDay = NO_DAY;
+        int lastDay = NO_DAY;
+    }
+
+    HistoryStore(File dir) {
+        this.dir = dir;
+    }
+
+    static synchronized HistoryStore get(Context ctx) {
+        if (instance == null) {
+            instance = new HistoryStore(new File(ctx.getApplicationContext().getFilesDir(), "history"));
+        }
+        return instance;
+    }
+
+    // ===== Reads =====
+
+    /** Every stored close for the symbol, or an empty series if none are stored. */
+    synchronized PriceSeries read(String symbol) {
+        return tail(symbol, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The newest {@code count} stored closes (fewer if fewer are stored).
+     * Returns null if the file is corrupt; it is then discarded so the next fetch rebuilds it.
+     */
+    synchronized PriceSeries tail(String symbol, int count) {
+        try {
+            Header header = open(symbol);
+            int n = Math.min(count, header.count);
+            if (n <= 0) return PriceSeries.EMPTY;
+            try (RandomAccessFile file = new RandomAccessFile(dataFile(symbol), "r")) {
+                MappedByteBuffer map = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                        HEADER_SIZE + (long) header.count * RECORD_SIZE);
+                int[] days = new int[n];
+                double[] closes = new double[n];
+                int offset = HEADER_SIZE + (header.count - n) * RECORD_SIZE;
+                for (int i = 0; i < n; i++, offset += RECORD_SIZE) {
+                    if (!recordValid(map, offset)) {
+                        throw new IOException("checksum mismatch in record " + (header.count - n + i));
+                    }
+                    days[i] = map.getInt(offset);
+                    closes[i] = map.getDouble(offset + 4);
+                }
+                return PriceSeries.of(days, closes);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Discarding corrupt history for " + symbol, e);
+            deleteFiles(symbol);
+            return null;
+        }
+    }
+
+    /** Epoch day of the newest stored close, or NO_DAY. */
+    synchronized int lastDay(String symbol) {
+        try {
+            return open(symbol).lastDay;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read history header for " + symbol, e);
+            return NO_DAY;
+        }
+    }
+
+    synchronized int size(String symbol) {
+        try {
+            return open(symbol).count;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read history header for " + symbol, e);
+            return 0;
+        }
+    }
+
+    // ===== Writes =====
+
+    /**
+     * Appends the closes in {@code series} that are newer than the newest stored day.
+     * A close for the newest stored day replaces it if it differs; older days are
+     * already stored and skipped. Returns the number of records written.
+     */
+    synchronized int append(String symbol, PriceSeries series) {
+        try {
+            Header header = open(symbol);
+            ByteBuffer pending = ByteBuffer.allocate(series.size() * RECORD_SIZE);
+            boolean replaceLast = false;
+            for (int i = 0; i < series.size(); i++) {
+                int day = series.dayAt(i);
+                if (day < header.lastDay) continue;
+                if (day == header.lastDay) {
+                    if (series.closeAt(i) == lastClose(symbol, header)) continue;
+                    replaceLast = true;
+                }
+                putRecord(pending, day, series.closeAt(i));
+            }
+            if (pending.position() == 0) return 0;
+            pending.flip();
+
+            // 1. Journal first, forced, so a crash below can be replayed
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+            File journal = journalFile(symbol);
+            try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+                FileChannel channel = file.getChannel();
+                channel.truncate(0);
+                writeFully(channel, pending.duplicate(), 0);
+                channel.force(true);
+            }
+
+            // 2. Apply to the data file and commit through the header
+            int written = pending.remaining() / RECORD_SIZE;
+            applyRecords(symbol, header, pending, written, replaceLast);
+
+            // 3. Journal no longer needed
+            if (!journal.delete()) {
+                Log.w(TAG, "Could not delete journal for " + symbol);
+            }
+
+            if (header.count > MAX_RECORDS + COMPACT_SLACK) {
+                compact(symbol, MAX_RECORDS);
+            }
+            return written;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append history for " + symbol, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Rewrites the symbol's file keeping only the newest {@code keepRecords} closes.
+     * The copy is written to a temp file and renamed over the original, so a crash
+     * leaves either the old file or the new one.
+     */
+    synchronized boolean compact(String symbol, int keepRecords) {
+        PriceSeries kept = tail(symbol, keepRecords);
+        if (kept == null) return false;
+        File temp = new File(dir, fileBase(symbol) + ".tmp");
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + kept.size() * RECORD_SIZE);
+            Header header = new Header();
+            header.count = kept.size();
+            if (!kept.isEmpty()) {
+                header.firstDay = kept.dayAt(0);
+                header.lastDay = kept.lastDay();
+            }
+            putHeader(buffer, header);
+            for (int i = 0; i < kept.size(); i++) {
+                putRecord(buffer, kept.dayAt(i), kept.closeAt(i));
+            }
+            buffer.flip();
+            try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+                FileChannel channel = file.getChannel();
+                channel.truncate(0);
+                writeFully(channel, buffer, 0);
+                channel.force(true);
+            }
+            if (!temp.renameTo(dataFile(symbol))) {
+                throw new IOException("rename failed");
+            }
+            Log.i(TAG, "Compacted history for " + symbol + " to " + kept.size() + " records");
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compact history for " + symbol, e);
+            if (!temp.delete()) {
+                Log.w(TAG, "Could not delete " + temp);
+            }
+            return false;
+        }
+    }
+
+    synchronized void delete(String symbol) {
+        deleteFiles(symbol);
+    }
+
+    // ===== Internals =====
+
+    private Header open(String symbol) throws IOException {
+        File data = dataFile(symbol);
+        if (!recovered.contains(symbol)) {
+            recover(symbol);
+            recovered.add(symbol);
+        }
+        Header header = new Header();
+        if (!data.exists()) return header;
+        try (RandomAccessFile file = new RandomAccessFile(data, "r")) {
+            if (!readHeader(file.getChannel(), header)) {
+                throw new IOException("bad header");
+            }
+        }
+        return header;
+    }
+
+    /** Repairs a bad header from the records and replays a leftover journal. */
+    private void recover(String symbol) throws IOException {
+        File data = dataFile(symbol);
+        File journal = journalFile(symbol);
+        if (!data.exists() && !journal.exists()) return;
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+
+        try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            FileChannel channel = file.getChannel();
+            Header header = new Header();
+            if (channel.size() > 0 && !readHeader(channel, header)) {
+                rebuildHeader(symbol, channel, header);
+            } else if (channel.size() == 0) {
+                ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+                putHeader(buffer, header);
+                buffer.flip();
+                writeFully(channel, buffer, 0);
+            }
+
+            if (journal.exists()) {
+                ByteBuffer records = validJournalRecords(journal);
+                int replayed = 0;
+                ByteBuffer pending = ByteBuffer.allocate(records.remaining());
+                boolean replaceLast = false;
+                while (records.remaining() >= RECORD_SIZE) {
+                    int day = records.getInt();
+                    double close = records.getDouble();
+                    records.getInt();
+                    if (day < header.lastDay || (day == header.lastDay && pending.position() > 0)) continue;
+                    if (day == header.lastDay) replaceLast = true;
+                    putRecord(pending, day, close);
+                    replayed++;
+                }
+                pending.flip();
+                if (replayed > 0) {
+                    applyRecords(channel, header, pending, replayed, replaceLast);
+                }
+                Log.i(TAG, "Replayed " + replayed + " journaled closes for " + symbol);
+                if (!journal.delete()) {
+                    Log.w(TAG, "Could not delete journal for " + symbol);
+                }
+            }
+        }
+    }
+
+    private void rebuildHeader(String symbol, FileChannel channel, Header header) throws IOException {
+        long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        header.count = 0;
+        for (long i = 0; i < records; i++) {
+            record.clear();
+            channel.read(record, HEADER_SIZE + i * RECORD_SIZE);
+            int day = record.getInt(0);
+            if (!recordValid(record, 0) || (header.count > 0 && day <= header.lastDay)) break;
+            if (header.count == 0) header.firstDay = day;
+            header.lastDay = day;
+            header.count++;
+        }
+        Log.w(TAG, "Rebuilt history header for " + symbol + " from " + header.count + " valid records");
+        writeHeader(channel, header);
+    }
+
+    private ByteBuffer validJournalRecords(File journal) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(journal, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() - channel.size() % RECORD_SIZE));
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+                // keep reading
+            }
+            buffer.flip();
+            int valid = 0;
+            while (valid + RECORD_SIZE <= buffer.limit() && recordValid(buffer, valid)) {
+                valid += RECORD_SIZE;
+            }
+            buffer.limit(valid);
+            return buffer;
+        }
+    }
+
+    private void applyRecords(String symbol, Header header, ByteBuffer records, int count, boolean replaceLast) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(dataFile(symbol), "rw")) {
+            applyRecords(file.getChannel(), header, records, count, replaceLast);
+        }
+    }
+
+    private void applyRecords(FileChannel channel, Header header, ByteBuffer records, int count, boolean replaceLast) throws IOException {
+        int start = replaceLast ? header.count - 1 : header.count;
+        writeFully(channel, records.duplicate(), HEADER_SIZE + (long) start * RECORD_SIZE);
+        channel.force(false);
+
+        int firstDay = records.getInt(records.position());
+        int lastDay = records.getInt(records.position() + (count - 1) * RECORD_SIZE);
+        if (header.count == 0) header.firstDay = firstDay;
+        header.count = start + count;
+        header.lastDay = lastDay;
+        writeHeader(channel, header);
+    }
+
+    private double lastClose(String symbol, Header header) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(dataFile(symbol), "r")) {
+            ByteBuffer close = ByteBuffer.allocate(8);
+            file.getChannel().read(close, HEADER_SIZE + (long) (header.count - 1) * RECORD_SIZE + 4);
+            return close.getDouble(0);
+        }
+    }
+
+    private void writeHeader(FileChannel channel, Header header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        putHeader(buffer, header);
+        buffer.flip();
+        writeFully(channel, buffer, 0);
+        channel.force(false);
+    }
+
+    private boolean readHeader(FileChannel channel, Header header) throws IOException {
+        if (channel.size() < HEADER_SIZE) return false;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // keep reading
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return false;
+        if (checksum(buffer, 0, HEADER_SIZE - 4) != buffer.getInt(HEADER_SIZE - 4)) return false;
+        header.count = buffer.getInt(8);
+        header.firstDay = buffer.getInt(12);
+        header.lastDay = buffer.getInt(16);
+        return header.count >= 0 && channel.size() >= HEADER_SIZE + (long) header.count * RECORD_SIZE;
+    }
+
+    private void putHeader(ByteBuffer buffer, Header header) {
+        int start = buffer.position();
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(header.count).putInt(header.firstDay).putInt(header.lastDay)
+                .putInt(0).putInt(0);
+        buffer.putInt(checksum(buffer, start, HEADER_SIZE - 4));
+    }
+
+    private void putRecord(ByteBuffer buffer, int day, double close) {
+        int start = buffer.position();
+        buffer.putInt(day).putDouble(close);
+        buffer.putInt(checksum(buffer, start, RECORD_SIZE - 4));
+    }
+
+    private boolean recordValid(ByteBuffer buffer, int offset) {
+        return checksum(buffer, offset, RECORD_SIZE - 4) == buffer.getInt(offset + RECORD_SIZE - 4);
+    }
+
+    private int checksum(ByteBuffer buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            crcScratch[i] = buffer.get(offset + i);
+        }
+        crc.reset();
+        crc.update(crcScratch, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void deleteFiles(String symbol) {
+        recovered.remove(symbol);
+        for (File file : new File[]{dataFile(symbol), journalFile(symbol)}) {
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Could not delete " + file);
+            }
+        }
+    }
+
+    private File dataFile(String symbol) {
+        return new File(dir, fileBase(symbol) + ".bin");
+    }
+
+    private File journalFile(String symbol) {
+        return new File(dir, fileBase(symbol) + ".jnl");
+    }
+
+    /** File-system safe name: letters, digits, '.', '-' kept; anything else as %XX. */
+    static String fileBase(String symbol) {
+        StringBuilder name = new StringBuilder(symbol.length() + 8);
+        for (int i = 0; i < symbol.length(); i++) {
+            char c = symbol.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '-') {
+                name.append(c);
+            } else {
+                name.append('%').append(String.format(Locale.US, "%02X", (int) c & 0xFF));
+            }
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,459 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk-backed cache of HTTP responses under cacheDir/http/, in front of
+ * {@link SharedHttpClient}.
+ *
+ * Every response is stored with an expiry chosen by the caller's {@link Policy}; until
+ * then it is served from disk without touching the network. After that, if the server
+ * sent an ETag or Last-Modified, the next request is conditional and a 304 just renews
+ * the stored copy. A worker retry, the UI bridge and a manual refresh within the same
+ * session therefore cost no bytes, or only the headers of a revalidation.
+ *
+ * Entry layout (big-endian): magic, version, fetched-at millis, expires-at millis, then
+ * the URL, ETag and Last-Modified as modified UTF-8 (empty when absent), then the
+ * decoded body to the end of the file. New entries are written to a temp file and
+ * renamed into place, so a reader never sees a partial body. Only a complete body is
+ * stored. A JSON decoder stops at the closing brace, short of the end of the stream, so
+ * closing a response reads up to REMAINDER_LIMIT_BYTES more to finish the copy; a
+ * streaming scan that stops well before the end abandons it instead, keeping its saving.
+ */
+final class HttpCache {
+    private static final String TAG = "HttpCache";
+
+    private static final int MAGIC = 0x534D4143; // "SMAC"
+    private static final int VERSION = 1;
+    private static final int EXPIRY_OFFSET = 8; // fetched-at and expires-at follow magic and version
+
+    static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+    /** Bodies larger than this are passed through without being stored. */
+    static final int MAX_ENTRY_BYTES = 2 * 1024 * 1024;
+    /** How much of an unread remainder closing a response reads to complete the copy. */
+    static final int REMAINDER_LIMIT_BYTES = 8 * 1024;
+
+    /** When a response fetched at a given time stops being fresh. */
+    interface Policy {
+        long expiresAt(long fetchedAtMillis);
+    }
+
+    static Policy ttl(long millis) {
+        return fetchedAt -> fetchedAt + millis;
+    }
+
+    /** {@code millis} while any session is trading, otherwise until the next one starts. */
+    static Policy whileTrading(long millis) {
+        return fetchedAt -> MarketCalendar.session(fetchedAt) == MarketCalendar.Session.CLOSED
+                ? MarketCalendar.nextSessionStart(fetchedAt)
+                : fetchedAt + millis;
+    }
+
+    // ===== Per-source freshness =====
+
+    /** Yahoo chart ranges: the closes are settled, only today's live bar moves. */
+    static final Policy YAHOO_HISTORY = whileTrading(TimeUnit.MINUTES.toMillis(5));
+    /** Yahoo live prices (chart range=1d and spark quotes). */
+    static final Policy YAHOO_QUOTE = whileTrading(TimeUnit.MINUTES.toMillis(1));
+
+    private static volatile HttpCache instance;
+
+    private final File dir;
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+
+    HttpCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /** Creates the app-wide cache on first call; later calls return the same instance. */
+    static synchronized HttpCache install(Context ctx) {
+        if (instance == null) {
+            instance = new HttpCache(new File(ctx.getApplicationContext().getCacheDir(), "http"), DEFAULT_MAX_BYTES);
+        }
+        return instance;
+    }
+
+    /**
+     * GET through the installed cache, or straight to the network if no cache has been
+     * installed or {@code policy} is null (responses that are never requested twice).
+     */
+    static SharedHttpClient.Response fetch(String url, Policy policy, String... headers) throws IOException {
+        HttpCache cache = instance;
+        if (cache == null || policy == null) {
+            return SharedHttpClient.get(url, headers);
+        }
+        return cache.get(url, policy, headers);
+    }
+
+    SharedHttpClient.Response get(String url, Policy policy, String... headers) throws IOException {
+        return get(url, policy, System.currentTimeMillis(), headers);
+    }
+
+    /** Package-private for testing with a fixed clock. */
+    SharedHttpClient.Response get(String url, Policy policy, long nowMillis, String... headers) throws IOException {
+        String key = key(url);
+        File file = new File(dir, key + ".entry");
+        Entry entry = readEntry(file, url);
+
+        if (entry != null && nowMillis < entry.expiresAt) {
+            SharedHttpClient.Response response = openBody(file, url);
+            if (response != null) {
+                hits.incrementAndGet();
+                return response;
+            }
+            entry = null;
+        }
+
+        String[] request = headers;
+        if (entry != null && (!entry.etag.isEmpty() || !entry.lastModified.isEmpty())) {
+            List<String> conditional = new ArrayList<>(Arrays.asList(headers));
+            if (!entry.etag.isEmpty()) {
+                conditional.add("If-None-Match");
+                conditional.add(entry.etag);
+            }
+            if (!entry.lastModified.isEmpty()) {
+                conditional.add("If-Modified-Since");
+                conditional.add(entry.lastModified);
+            }
+            request = conditional.toArray(new String[0]);
+        }
+
+        SharedHttpClient.Response network = SharedHttpClient.get(url, request);
+        if (network.code == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+            network.close();
+            renew(file, nowMillis, policy.expiresAt(nowMillis));
+            SharedHttpClient.Response response = openBody(file, url);
+            if (response != null) {
+                revalidated.incrementAndGet();
+                Log.d(TAG, "Revalidated " + url);
+                return response;
+            }
+            // Entry vanished between the two reads; fetch it unconditionally
+            network = SharedHttpClient.get(url, headers);
+        }
+
+        misses.incrementAndGet();
+        if (!network.isOk()) {
+            return network;
+        }
+        return store(network, file, url, nowMillis, policy.expiresAt(nowMillis));
+    }
+
+    /** {hits, misses, revalidations} since this cache was created or last reset. */
+    long[] stats() {
+        return new long[]{hits.get(), misses.get(), revalidated.get()};
+    }
+
+    void resetStats() {
+        hits.set(0);
+        misses.set(0);
+        revalidated.set(0);
+    }
+
+    /** Stats of the installed cache, or null if none is installed. */
+    static long[] installedStats() {
+        HttpCache cache = instance;
+        return cache != null ? cache.stats() : null;
+    }
+
+    void invalidate(String url) {
+        deleteQuietly(new File(dir, key(url) + ".entry"));
+    }
+
+    /** Removes every stored response. */
+    synchronized void clear() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.delete()) {
+                Log.w(TAG, "Could not delete " + file);
+            }
+        }
+    }
+
+    // ===== Entries =====
+
+    private static final class Entry {
+        long expiresAt;
+        String etag;
+        String lastModified;
+    }
+
+    /** Metadata of the stored entry for {@code url}, or null if there is none (or it is unreadable). */
+    private Entry readEntry(File file, String url) {
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 512))) {
+            Entry entry = readHeader(in, url);
+            if (entry == null) {
+                Log.w(TAG, "Discarding unreadable entry " + file.getName());
+                deleteQuietly(file);
+            }
+            return entry;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable entry " + file.getName(), e);
+            deleteQuietly(file);
+            return null;
+        }
+    }
+
+    private static Entry readHeader(DataInputStream in, String url) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+        in.readLong(); // fetched-at
+        Entry entry = new Entry();
+        entry.expiresAt = in.readLong();
+        if (!url.equals(in.readUTF())) return null;
+        entry.etag = in.readUTF();
+        entry.lastModified = in.readUTF();
+        return entry;
+    }
+
+    /** The stored body as a cached response, or null if the entry is gone or unreadable. */
+    private SharedHttpClient.Response openBody(File file, String url) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+            if (readHeader(in, url) == null) {
+                in.close();
+                return null;
+            }
+            file.setLastModified(System.currentTimeMillis()); // recency for eviction
+            return SharedHttpClient.Response.cached(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not open cached body for " + url, e);
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    private synchronized void renew(File file, long fetchedAt, long expiresAt) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(EXPIRY_OFFSET);
+            raf.writeLong(fetchedAt);
+            raf.writeLong(expiresAt);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not renew " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Wraps a 200 response so its body is copied to a temp file as the caller reads it.
+     * Closing the response finishes a short remainder the caller left unread, then moves
+     * the copy into place if the body was read to its end, and deletes it otherwise.
+     */
+    private SharedHttpClient.Response store(SharedHttpClient.Response network, File file, String url,
+                                            long fetchedAt, long expiresAt) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "Cache directory unavailable: " + dir);
+            return network;
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        DataOutputStream out;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 8192));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fetchedAt);
+            out.writeLong(expiresAt);
+            out.writeUTF(url);
+            out.writeUTF(orEmpty(network.header("ETag")));
+            out.writeUTF(orEmpty(network.header("Last-Modified")));
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            Log.w(TAG, "Could not start cache entry for " + url, e);
+            return network;
+        }
+        TeeInputStream tee = new TeeInputStream(network.body(), out);
+        return network.withBody(tee, () -> {
+            if (tee.copying() && !tee.ended()) {
+                tee.finish(REMAINDER_LIMIT_BYTES);
+            }
+            boolean complete = tee.copying() && tee.ended();
+            try {
+                out.close();
+            } catch (IOException e) {
+                complete = false;
+            }
+            if (complete && commit(temp, file)) {
+                Log.d(TAG, "Stored " + tee.copied + " bytes for " + url);
+            } else {
+                if (!tee.ended()) {
+                    Log.d(TAG, "Body for " + url + " not read to the end, not caching");
+                }
+                deleteQuietly(temp);
+            }
+            network.close();
+        });
+    }
+
+    private synchronized boolean commit(File temp, File file) {
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Could not move " + temp.getName() + " into place");
+            return false;
+        }
+        evict();
+        return true;
+    }
+
+    /** Deletes least recently used entries until the cache fits in maxBytes. */
+    private void evict() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".entry"));
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        if (total <= maxBytes) return;
+        long[] used = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            used[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(used[a], used[b]));
+        for (Integer i : order) {
+            if (total <= maxBytes) break;
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    static String key(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format(Locale.US, "%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always present on Android; fall back to something file-name safe
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    private static String orEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+
+    /**
+     * Copies everything read through it to {@code sink}, until the copy fails or grows
+     * too large, and notes whether the body was read to its end.
+     */
+    private static final class TeeInputStream extends FilterInputStream {
+        private final DataOutputStream sink;
+        private boolean copying = true;
+        private boolean ended;
+        long copied;
+
+        TeeInputStream(InputStream in, DataOutputStream sink) {
+            super(in);
+            this.sink = sink;
+        }
+
+        boolean copying() {
+            return copying;
+        }
+
+        boolean ended() {
+            return ended;
+        }
+
+        /** Reads on to the end of the body, unless more than {@code limit} bytes remain. */
+        void finish(int limit) {
+            byte[] buffer = new byte[Math.min(limit, 8192)];
+            int read = 0;
+            try {
+                while (!ended && read < limit) {
+                    int n = read(buffer, 0, buffer.length);
+                    if (n > 0) read += n;
+                }
+            } catch (IOException e) {
+                copying = false;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                copy(new byte[]{(byte) b}, 0, 1);
+            } else {
+                ended = true;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                copy(buffer, offset, n);
+            } else if (n == -1) {
+                ended = true;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must still reach the copy
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        private void copy(byte[] buffer, int offset, int length) {
+            if (!copying) return;
+            if (copied + length > MAX_ENTRY_BYTES) {
+                copying = false;
+                return;
+            }
+            try {
+                sink.write(buffer, offset, length);
+                copied += length;
+            } catch (IOException e) {
+                copying = false;
+            }
+        }
+    }
+}
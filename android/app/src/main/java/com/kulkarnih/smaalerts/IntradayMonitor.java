@@ -0,0 +1,197 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional intraday monitoring: during the regular session the watchlist is polled
+ * again and again, as often as a signal flip is likely.
+ *
+ * How likely is judged by the distance, in percentage points, from each symbol's gap
+ * to its SMA to the nearest {@link SMAWorker#determineSignal} boundary (buy, -sell, 30
+ * and 40). Near a boundary polls come every few minutes, and the interval doubles with
+ * every half point of distance up to a two-hour ceiling. Outside the regular session
+ * nothing runs, and a per-day cap bounds the requests whatever the market does.
+ *
+ * A poll costs one batch quote request per BatchQuoteClient batch (one for most
+ * watchlists) and is not retried. The SMA is the provisional value from the rolling
+ * window the daily run keeps, so entries without a saved window are skipped until the
+ * daily run has seeded one.
+ */
+final class IntradayMonitor {
+    private static final String TAG = "IntradayMonitor";
+    static final String UNIQUE_WORK_NAME = "SMA_INTRADAY_POLL";
+
+    static final int DEFAULT_MAX_REQUESTS = 40;
+    static final long MIN_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+    static final long MAX_INTERVAL_MS = TimeUnit.HOURS.toMillis(2);
+    /** Each half point further from a boundary doubles the interval. */
+    static final double DOUBLING_DISTANCE = 0.5;
+
+    private IntradayMonitor() {}
+
+    static boolean isEnabled(Context ctx) {
+        return PrefsHelper.settings(ctx).intradayEnabled;
+    }
+
+    /** Turns the mode on or off and schedules or cancels the polls to match. */
+    static void configure(Context ctx, boolean enabled, int maxRequestsPerDay) {
+        PrefsHelper.Batch batch = PrefsHelper.edit(ctx).putBoolean(PrefsHelper.KEY_INTRADAY_ENABLED, enabled);
+        if (maxRequestsPerDay > 0) {
+            batch.putInt(PrefsHelper.KEY_INTRADAY_MAX_REQUESTS, maxRequestsPerDay);
+        }
+        batch.apply();
+        if (enabled) {
+            schedule(ctx, delayUntil(nextPollAt(System.currentTimeMillis(), 0)), ExistingWorkPolicy.REPLACE);
+        } else {
+            cancel(ctx);
+        }
+    }
+
+    /** Makes sure a poll is pending when the mode is on; leaves an already pending one alone. */
+    static void ensureScheduled(Context ctx) {
+        if (isEnabled(ctx)) {
+            schedule(ctx, delayUntil(nextPollAt(System.currentTimeMillis(), 0)), ExistingWorkPolicy.KEEP);
+        }
+    }
+
+    // ===== Polling policy =====
+
+    /** Percentage points from {@code pct} to the nearest signal boundary. */
+    static double boundaryDistance(double pct, float buy, float sell) {
+        double distance = Math.min(Math.abs(pct - 40.0), Math.abs(pct - 30.0));
+        distance = Math.min(distance, Math.abs(pct - buy));
+        return Math.min(distance, Math.abs(pct + sell));
+    }
+
+    /** Poll interval for a watchlist whose closest symbol is {@code distance} points from a boundary. */
+    static long pollIntervalMillis(double distance) {
+        double doublings = Math.max(0.0, distance) / DOUBLING_DISTANCE;
+        if (doublings >= 30) return MAX_INTERVAL_MS;
+        return Math.min(MAX_INTERVAL_MS, (long) (MIN_INTERVAL_MS * Math.pow(2.0, doublings)));
+    }
+
+    /**
+     * When to poll next, {@code intervalMillis} after {@code nowMillis}: that moment if
+     * it is still in the regular session, otherwise the next regular open.
+     */
+    static long nextPollAt(long nowMillis, long intervalMillis) {
+        long at = nowMillis + intervalMillis;
+        if (MarketCalendar.session(at) == MarketCalendar.Session.REGULAR) {
+            return at;
+        }
+        return MarketCalendar.nextOpen(nowMillis);
+    }
+
+    /** Requests one poll of {@code entries} makes. */
+    static int requestsPerPoll(int entries) {
+        return Math.max(1, (entries + BatchQuoteClient.DEFAULT_BATCH_SIZE - 1) / BatchQuoteClient.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Counts {@code requests} against today's cap (the New York trading date). Returns
+     * false, counting nothing, if they do not fit.
+     */
+    static boolean tryAcquireRequests(Context ctx, long nowMillis, int requests) {
+        int today = (int) BarchartSnapshot.tradingDay(nowMillis);
+        int max = PrefsHelper.settings(ctx).intradayMaxRequests;
+        int used = PrefsHelper.getInt(ctx, PrefsHelper.KEY_INTRADAY_DAY, 0) == today
+                ? PrefsHelper.getInt(ctx, PrefsHelper.KEY_INTRADAY_REQUESTS, 0)
+                : 0;
+        if (used + requests > max) return false;
+        PrefsHelper.edit(ctx)
+                .putInt(PrefsHelper.KEY_INTRADAY_DAY, today)
+                .putInt(PrefsHelper.KEY_INTRADAY_REQUESTS, used + requests)
+                .apply();
+        return true;
+    }
+
+    // ===== Polls =====
+
+    /**
+     * Evaluates the watchlist against {@code quotes}, notifies on any signal change and
+     * returns the smallest boundary distance seen, or MAX_VALUE if no entry could be
+     * evaluated.
+     */
+    static double evaluate(Context ctx, List<Watchlist.Entry> entries, Map<String, BatchQuoteClient.Quote> quotes) {
+        String notifFrequency = PrefsHelper.settings(ctx).notifFrequency;
+        double closest = Double.MAX_VALUE;
+        for (Watchlist.Entry entry : entries) {
+            BatchQuoteClient.Quote quote = quotes.get(SMAWorker.yahooSymbol(entry.symbol));
+            RollingSma window = RollingSma.load(ctx, entry.symbol, entry.smaPeriod);
+            double sma = quote != null && window != null ? window.provisional(quote.price) : 0.0;
+            if (!(sma > 0)) {
+                Log.d(TAG, "No quote or SMA window for " + entry.symbol + ", skipped");
+                continue;
+            }
+            WatchlistEvaluator.Evaluation result = new WatchlistEvaluator.Evaluation(entry, quote.price, sma, entry.smaPeriod);
+            closest = Math.min(closest, boundaryDistance(result.percent, entry.buy, entry.sell));
+            notifyOnChange(ctx, result, notifFrequency, entries.size() > 1);
+        }
+        return closest;
+    }
+
+    /**
+     * Notifies when the signal differs from the last one recorded and records the new
+     * one, so the daily run does not announce the same change again.
+     */
+    private static void notifyOnChange(Context ctx, WatchlistEvaluator.Evaluation result, String notifFrequency, boolean labelled) {
+        Watchlist.Entry entry = result.entry;
+        String lastSignal = PrefsHelper.lastSignal(ctx, entry).signal;
+        if (lastSignal == null || lastSignal.isEmpty() || lastSignal.equals(result.signal)) {
+            return;
+        }
+        Log.i(TAG, "Intraday signal change for " + entry.symbol + ": " + lastSignal + " -> " + result.signal);
+        if (!"disabled".equals(notifFrequency)) {
+            NotificationHelper.createChannels(ctx);
+            String msg = String.format(Locale.US, "Intraday signal: %s (%.2f%% vs SMA)", result.signal, result.percent);
+            NotificationHelper.notifySignal(ctx, labelled ? "SMA Alerts: " + entry.symbol : "SMA Alerts", msg);
+        }
+        PrefsHelper.edit(ctx)
+                .putString(entry.stateKey(PrefsHelper.KEY_LAST_SIGNAL), result.signal)
+                .putFloat(entry.stateKey(PrefsHelper.KEY_LAST_PERCENT), (float) result.percent)
+                .apply();
+    }
+
+    // ===== Scheduling =====
+
+    static void schedule(Context ctx, long delayMillis, ExistingWorkPolicy policy) {
+        try {
+            OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(IntradayWorker.class)
+                    .setInitialDelay(delayMillis, TimeUnit.MILLISECONDS)
+                    .setConstraints(new Constraints.Builder()
+                            .setRequiredNetworkType(NetworkType.CONNECTED)
+                            .build())
+                    .addTag("sma_intraday")
+                    .build();
+            WorkManager.getInstance(ctx).enqueueUniqueWork(UNIQUE_WORK_NAME, policy, request);
+            Log.d(TAG, "Next intraday poll in " + (delayMillis / 1000 / 60) + " minutes");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to schedule intraday poll", e);
+        }
+    }
+
+    static void cancel(Context ctx) {
+        try {
+            WorkManager.getInstance(ctx).cancelUniqueWork(UNIQUE_WORK_NAME);
+            Log.i(TAG, "Intraday polls cancelled");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to cancel intraday polls", e);
+        }
+    }
+
+    static long delayUntil(long atMillis) {
+        return Math.max(0, atMillis - System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,111 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.ListenableWorker;
+import androidx.work.WorkerParameters;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One intraday poll, see {@link IntradayMonitor}: a batch quote for the watchlist,
+ * notifications for any signal change, then the next poll at an interval set by how
+ * close the nearest symbol is to a signal boundary.
+ *
+ * Each poll schedules its successor with APPEND_OR_REPLACE, so it starts after this
+ * run has finished instead of cancelling it. Failures are not retried by WorkManager:
+ * the next poll simply comes a little later.
+ */
+public class IntradayWorker extends ListenableWorker {
+    private static final String TAG = "IntradayWorker";
+
+    /** Next poll after a failed one. */
+    static final long FAILURE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(15);
+    /** A single attempt: a failed poll is simply made again later, within the same cap. */
+    static final RetryEngine.Policy POLL = new RetryEngine.Policy(1, 0, 0,
+            RetryEngine.Policy.WORKER.deadlineMillis, RetryEngine.Policy.WORKER.minAttemptMillis);
+
+    private volatile ListenableFuture<Result> run;
+
+    public IntradayWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<Result> startWork() {
+        Context ctx = getApplicationContext();
+        Executor background = getBackgroundExecutor();
+        ListenableFuture<Result> result = AsyncFutures.transformAsync(AsyncFutures.immediate(ctx), context -> {
+            long now = System.currentTimeMillis();
+            if (!IntradayMonitor.isEnabled(context)) {
+                Log.i(TAG, "Intraday monitoring is off");
+                return AsyncFutures.immediate(Result.success());
+            }
+            if (MarketCalendar.session(now) != MarketCalendar.Session.REGULAR) {
+                scheduleNext(context, IntradayMonitor.nextPollAt(now, 0));
+                return AsyncFutures.immediate(Result.success());
+            }
+            SMAWorker.loadSourceState(context);
+            if (CircuitBreaker.of(SymbolMap.YAHOO).isOpen(now)) {
+                Log.w(TAG, "Yahoo breaker open, skipping this poll");
+                scheduleNext(context, IntradayMonitor.nextPollAt(now, FAILURE_INTERVAL_MS));
+                return AsyncFutures.immediate(Result.success());
+            }
+            List<Watchlist.Entry> entries = Watchlist.load(context);
+            if (!IntradayMonitor.tryAcquireRequests(context, now, IntradayMonitor.requestsPerPoll(entries.size()))) {
+                Log.i(TAG, "Daily intraday request cap reached, resuming at the next open");
+                scheduleNext(context, MarketCalendar.nextOpen(now));
+                return AsyncFutures.immediate(Result.success());
+            }
+            return poll(context, entries, background);
+        }, background);
+        run = result;
+        return AsyncFutures.catching(result, error -> {
+            Log.e(TAG, "Intraday poll failed", error);
+            scheduleNext(ctx, IntradayMonitor.nextPollAt(System.currentTimeMillis(), FAILURE_INTERVAL_MS));
+            return Result.success();
+        }, background);
+    }
+
+    @Override
+    public void onStopped() {
+        ListenableFuture<Result> current = run;
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+
+    private static ListenableFuture<Result> poll(Context ctx, List<Watchlist.Entry> entries, Executor background) {
+        HttpCache.install(ctx);
+        ListenableFuture<RetryEngine.Outcome<Map<String, BatchQuoteClient.Quote>>> quotes = AsyncFutures.withTimeout(
+                RetryEngine.shared().submit("intraday quotes", POLL, SMAWorker.quoteAttempt(SMAWorker.yahooSymbols(entries))),
+                AsyncSMAWorker.QUOTES_TIMEOUT_MS);
+        return AsyncFutures.transform(quotes, outcome -> {
+            long interval;
+            if (outcome.isSuccess()) {
+                double distance = IntradayMonitor.evaluate(ctx, entries, outcome.value);
+                interval = IntradayMonitor.pollIntervalMillis(distance);
+                Log.i(TAG, "Closest symbol is " + distance + " points from a boundary, next poll in "
+                        + TimeUnit.MILLISECONDS.toMinutes(interval) + " minutes");
+            } else {
+                Log.w(TAG, "No quotes this poll: " + outcome.attempts);
+                interval = FAILURE_INTERVAL_MS;
+            }
+            scheduleNext(ctx, IntradayMonitor.nextPollAt(System.currentTimeMillis(), interval));
+            return Result.success();
+        }, background);
+    }
+
+    private static void scheduleNext(Context ctx, long atMillis) {
+        IntradayMonitor.schedule(ctx, IntradayMonitor.delayUntil(atMillis), ExistingWorkPolicy.APPEND_OR_REPLACE);
+    }
+}
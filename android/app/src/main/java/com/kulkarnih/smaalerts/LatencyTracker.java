@@ -0,0 +1,102 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recent response times of one data source, for picking hedge delays.
+ *
+ * Keeps the last {@link #CAPACITY} successful latencies in a ring. Trackers are
+ * shared per source name and persisted between worker runs, since a run on its own
+ * rarely makes enough requests to say anything about a tail.
+ */
+final class LatencyTracker {
+    private static final String TAG = "LatencyTracker";
+
+    static final int CAPACITY = 50;
+    /** Below this many samples a percentile is not trusted and the fallback is used. */
+    static final int MIN_SAMPLES = 5;
+
+    private static final ConcurrentHashMap<String, LatencyTracker> TRACKERS = new ConcurrentHashMap<>();
+
+    private final long[] samples = new long[CAPACITY];
+    private int head;
+    private int count;
+
+    LatencyTracker() {}
+
+    /** The shared tracker for {@code source}. */
+    static LatencyTracker of(String source) {
+        LatencyTracker tracker = TRACKERS.get(source);
+        if (tracker == null) {
+            LatencyTracker created = new LatencyTracker();
+            tracker = TRACKERS.putIfAbsent(source, created);
+            if (tracker == null) tracker = created;
+        }
+        return tracker;
+    }
+
+    synchronized void record(long millis) {
+        samples[head] = millis;
+        head = (head + 1) % CAPACITY;
+        if (count < CAPACITY) count++;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * The {@code p} quantile (0..1) of the recorded latencies, or {@code fallback}
+     * while there are fewer than MIN_SAMPLES.
+     */
+    synchronized long percentile(double p, long fallback) {
+        if (count < MIN_SAMPLES) return fallback;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /** Samples oldest first, comma-separated. */
+    synchronized String encode() {
+        StringBuilder sb = new StringBuilder();
+        int start = (head - count + CAPACITY) % CAPACITY;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(samples[(start + i) % CAPACITY]);
+        }
+        return sb.toString();
+    }
+
+    synchronized void decodeInto(String encoded) {
+        head = 0;
+        count = 0;
+        if (encoded == null || encoded.isEmpty()) return;
+        for (String part : encoded.split(",")) {
+            try {
+                record(Long.parseLong(part));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignoring malformed latency sample: " + part);
+            }
+        }
+    }
+
+    // ===== Persistence =====
+
+    /** Restores the saved samples of each named source's shared tracker. */
+    static void load(Context ctx, String... sources) {
+        for (String source : sources) {
+            of(source).decodeInto(PrefsHelper.getString(ctx, PrefsHelper.KEY_LATENCY_PREFIX + source, null));
+        }
+    }
+
+    static void save(Context ctx, String... sources) {
+        for (String source : sources) {
+            PrefsHelper.putString(ctx, PrefsHelper.KEY_LATENCY_PREFIX + source, of(source).encode());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.kulkarnih.smaalerts;
+
+/**
+ * Latest close and SMA from the closes stored on the device, without any network
+ * access. The reading is as of the last stored close, so it is an offline fallback for
+ * display rather than a basis for new signals.
+ */
+final class LocalFileDataSource implements DataSource {
+    private final HistoryStore store;
+
+    LocalFileDataSource(HistoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public String name() {
+        return SymbolMap.LOCAL;
+    }
+
+    /** Returns null if fewer than {@code smaPeriod} closes are stored. */
+    @Override
+    public Reading fetch(String symbol, int smaPeriod) {
+        PriceSeries stored = store.tail(SymbolMap.forSource(SymbolMap.LOCAL, symbol), smaPeriod);
+        if (stored == null || stored.size() < smaPeriod) {
+            return null;
+        }
+        return new Reading(symbol, stored.lastClose(), stored.sma(smaPeriod), smaPeriod, name(), stored.lastDay());
+    }
+}
@@ -14,24 +14,20 @@ import com.getcapacitor.BridgeActivity;
 import androidx.work.OneTimeWorkRequest;
 import androidx.work.WorkManager;
 
-import java.io.IOException;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import org.json.JSONObject;
-import org.json.JSONArray;
-
 public class MainActivity extends BridgeActivity {
     private static final String TAG = "MainActivity";
     
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
+        // Plugins must be registered before the bridge is created
+        registerPlugin(MarketDataPlugin.class);
         super.onCreate(savedInstanceState);
+        HttpCache.install(this);
 
         // Create notification channel and schedule first run
         NotificationHelper.createChannels(this);
         WorkScheduler.scheduleDailyAnalysis(this);
+        IntradayMonitor.ensureScheduled(this);
 
         // Request notification permission on Android 13+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
@@ -97,8 +93,6 @@ public class MainActivity extends BridgeActivity {
                     "  if (window.Android) {" +
                     "    console.log('Android interface is available');" +
                     "    console.log('rescheduleNotifications type:', typeof window.Android.rescheduleNotifications);" +
-                    "    console.log('getLatestPrice type:', typeof window.Android.getLatestPrice);" +
-                    "    console.log('getHistoricalData type:', typeof window.Android.getHistoricalData);" +
                     "    console.log('updateApiKey type:', typeof window.Android.updateApiKey);" +
                     "  } else {" +
                     "    console.warn('Android interface still not available');" +
@@ -216,6 +210,23 @@ public class MainActivity extends BridgeActivity {
         });
     }
 
+    /**
+     * Called from JavaScript to set the symbols watched alongside the selected index.
+     * Takes a JSON array such as [{"symbol":"QQQ","sma":200,"buy":4,"sell":3}];
+     * missing fields use the main settings. Returns false if the JSON is malformed.
+     * The watchlist is part of the schedule's fingerprint, so a saved change schedules
+     * the next run again.
+     */
+    @android.webkit.JavascriptInterface
+    public boolean setWatchlist(String json) {
+        Log.d(TAG, "setWatchlist() called from JavaScript: " + json);
+        if (!Watchlist.save(this, json)) {
+            return false;
+        }
+        WorkScheduler.scheduleDailyAnalysis(this);
+        return true;
+    }
+
     /**
      * Called from JavaScript when API key is updated
      * No longer needed - API key removed. Kept for backward compatibility.
@@ -227,177 +238,4 @@ public class MainActivity extends BridgeActivity {
         Log.d(TAG, "updateApiKey() called but API key is no longer needed");
         // No-op: API key is no longer used
     }
-
-    /**
-     * Called from JavaScript to get the latest real-time stock price from Yahoo Finance API.
-     * Returns the price as a string, or "0" if the price cannot be retrieved.
-     * 
-     * @param symbol The stock symbol (e.g., "$SPX", "$NASX", "URTH")
-     * @return The latest price as a string, or "0" if unavailable
-     */
-    @android.webkit.JavascriptInterface
-    public String getLatestPrice(String symbol) {
-        Log.i(TAG, "=== getLatestPrice() ENTRY POINT - called from JavaScript ===");
-        Log.i(TAG, "Symbol received: " + symbol);
-        Log.i(TAG, "Thread: " + Thread.currentThread().getName());
-        
-        try {
-            if (symbol == null || symbol.isEmpty()) {
-                Log.e(TAG, "Invalid symbol provided: " + symbol);
-                return "0";
-            }
-            
-            double price = fetchLatestPrice(symbol);
-            if (price <= 0) {
-                Log.w(TAG, "Failed to get latest price for symbol: " + symbol);
-                return "0";
-            }
-            
-            Log.i(TAG, "Got latest price from Yahoo Finance for " + symbol + ": " + price);
-            return String.valueOf(price);
-        } catch (Exception e) {
-            Log.e(TAG, "Error in getLatestPrice for symbol: " + symbol, e);
-            return "0";
-        }
-    }
-
-    /**
-     * Fetches the latest real-time stock price from Yahoo Finance API using direct HTTP request.
-     * Returns 0.0 if the price cannot be retrieved.
-     * 
-     * @param symbol The stock symbol (e.g., "$SPX", "$NASX", "URTH")
-     * @return The latest price, or 0.0 if unavailable
-     */
-    private double fetchLatestPrice(String symbol) {
-        HttpURLConnection connection = null;
-        BufferedReader reader = null;
-        try {
-            Log.d(TAG, "Fetching latest price from Yahoo Finance for symbol: " + symbol);
-            
-            // Yahoo Finance API endpoint
-            String urlString = "https://query1.finance.yahoo.com/v8/finance/chart/" + symbol + "?interval=1d&range=1d";
-            URL url = new URL(urlString);
-            connection = (HttpURLConnection) url.openConnection();
-            
-            // Set User-Agent to mimic a browser request (required by Yahoo Finance)
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(10000); // 10 seconds
-            connection.setReadTimeout(10000); // 10 seconds
-            
-            int responseCode = connection.getResponseCode();
-            Log.d(TAG, "Yahoo Finance API response code: " + responseCode);
-            
-            if (responseCode != HttpURLConnection.HTTP_OK) {
-                Log.e(TAG, "Yahoo Finance API returned error code: " + responseCode);
-                return 0.0;
-            }
-            
-            // Read response
-            reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            
-            // Parse JSON response
-            JSONObject jsonResponse = new JSONObject(response.toString());
-            JSONObject chart = jsonResponse.optJSONObject("chart");
-            if (chart == null) {
-                Log.e(TAG, "Invalid response structure from Yahoo Finance");
-                return 0.0;
-            }
-            
-            JSONArray result = chart.optJSONArray("result");
-            if (result == null || result.length() == 0) {
-                Log.e(TAG, "No result data from Yahoo Finance");
-                return 0.0;
-            }
-            
-            JSONObject resultObj = result.getJSONObject(0);
-            JSONObject meta = resultObj.optJSONObject("meta");
-            if (meta == null) {
-                Log.e(TAG, "No meta data from Yahoo Finance");
-                return 0.0;
-            }
-            
-            // Try to get regular market price first
-            double price = 0.0;
-            if (meta.has("regularMarketPrice")) {
-                price = meta.getDouble("regularMarketPrice");
-                Log.d(TAG, "Got regular market price: " + price);
-            } else if (meta.has("previousClose")) {
-                // Fallback to previous close if market is closed
-                price = meta.getDouble("previousClose");
-                Log.d(TAG, "Using previous close price: " + price);
-            } else if (meta.has("chartPreviousClose")) {
-                // Another fallback option
-                price = meta.getDouble("chartPreviousClose");
-                Log.d(TAG, "Using chart previous close price: " + price);
-            }
-            
-            if (price <= 0) {
-                Log.e(TAG, "Invalid price from Yahoo Finance for symbol: " + symbol);
-                return 0.0;
-            }
-            
-            Log.i(TAG, "Successfully fetched price from Yahoo Finance: " + price);
-            return price;
-            
-        } catch (IOException e) {
-            Log.e(TAG, "IO error fetching price from Yahoo Finance for symbol: " + symbol, e);
-            return 0.0;
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error fetching price from Yahoo Finance for symbol: " + symbol, e);
-            return 0.0;
-        } finally {
-            // Clean up resources
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    Log.w(TAG, "Error closing reader", e);
-                }
-            }
-            if (connection != null) {
-                connection.disconnect();
-            }
-        }
-    }
-
-    /**
-     * Called from JavaScript to get current price and 200-day SMA from barchart.com.
-     * Returns the data as a JSON string with "currentPrice" and "sma200" keys, or empty string if unavailable.
-     * 
-     * @param symbol The stock symbol (e.g., "$SPX", "$NASX", "URTH")
-     * @return Data as JSON string, or empty string if unavailable
-     */
-    @android.webkit.JavascriptInterface
-    public String getHistoricalData(String symbol) {
-        Log.i(TAG, "=== getHistoricalData() ENTRY POINT - called from JavaScript ===");
-        Log.i(TAG, "Symbol received: " + symbol);
-        
-        try {
-            if (symbol == null || symbol.isEmpty()) {
-                Log.e(TAG, "Invalid symbol provided: " + symbol);
-                return "";
-            }
-            
-            // Use the same method from SMAWorker
-            JSONObject barchartData = SMAWorker.getBarchartData(symbol);
-            if (barchartData == null || !barchartData.has("currentPrice") || !barchartData.has("sma200")) {
-                Log.w(TAG, "Failed to get data from barchart.com for symbol: " + symbol);
-                return "";
-            }
-            
-            Log.i(TAG, "Got data from barchart.com for " + symbol + " - Price: " + 
-                  barchartData.getDouble("currentPrice") + ", SMA200: " + barchartData.getDouble("sma200"));
-            return barchartData.toString();
-        } catch (Exception e) {
-            Log.e(TAG, "Error in getHistoricalData for symbol: " + symbol, e);
-            return "";
-        }
-    }
 }
@@ -0,0 +1,151 @@
+package com.kulkarnih.smaalerts;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/**
+ * NYSE trading calendar: which days the market is open, when it closes, and which
+ * session (pre-market, regular, post-market) a moment falls in.
+ *
+ * Holidays and 13:00 early closes come from a precomputed table of yyyymmdd dates,
+ * turned once into sorted epoch-day arrays, so a lookup is a weekday check and a
+ * binary search with no allocation. Years outside FIRST_YEAR..LAST_YEAR have no
+ * table: only weekends count as closed there.
+ */
+final class MarketCalendar {
+
+    static final ZoneId NY_ZONE = ZoneId.of("America/New_York");
+    private static final ZoneRules NY_RULES = NY_ZONE.getRules();
+
+    static final LocalTime PRE_MARKET_OPEN = LocalTime.of(4, 0);
+    static final LocalTime MARKET_OPEN = LocalTime.of(9, 30);
+    static final LocalTime MARKET_CLOSE = LocalTime.of(16, 0);
+    static final LocalTime EARLY_CLOSE = LocalTime.of(13, 0);
+    /** Post-market trading runs this long after the close, to 20:00 (17:00 on early-close days). */
+    private static final int POST_MARKET_MINUTES = 4 * 60;
+
+    static final int FIRST_YEAR = 2024;
+    static final int LAST_YEAR = 2035;
+
+    enum Session { PRE, REGULAR, POST, CLOSED }
+
+    /** Full-day closures, including the observed dates of weekend holidays and one-off closures. */
+    private static final int[] HOLIDAYS = epochDays(
+            20240101, 20240115, 20240219, 20240329, 20240527, 20240619, 20240704, 20240902, 20241128, 20241225,
+            20250101, 20250109, 20250120, 20250217, 20250418, 20250526, 20250619, 20250704, 20250901, 20251127, 20251225,
+            20260101, 20260119, 20260216, 20260403, 20260525, 20260619, 20260703, 20260907, 20261126, 20261225,
+            20270101, 20270118, 20270215, 20270326, 20270531, 20270618, 20270705, 20270906, 20271125, 20271224,
+            20280117, 20280221, 20280414, 20280529, 20280619, 20280704, 20280904, 20281123, 20281225,
+            20290101, 20290115, 20290219, 20290330, 20290528, 20290619, 20290704, 20290903, 20291122, 20291225,
+            20300101, 20300121, 20300218, 20300419, 20300527, 20300619, 20300704, 20300902, 20301128, 20301225,
+            20310101, 20310120, 20310217, 20310411, 20310526, 20310619, 20310704, 20310901, 20311127, 20311225,
+            20320101, 20320119, 20320216, 20320326, 20320531, 20320618, 20320705, 20320906, 20321125, 20321224,
+            20330117, 20330221, 20330415, 20330530, 20330620, 20330704, 20330905, 20331124, 20331226,
+            20340102, 20340116, 20340220, 20340407, 20340529, 20340619, 20340704, 20340904, 20341123, 20341225,
+            20350101, 20350115, 20350219, 20350323, 20350528, 20350619, 20350704, 20350903, 20351122, 20351225);
+
+    /** Days the regular session ends at 13:00. */
+    private static final int[] EARLY_CLOSES = epochDays(
+            20240703, 20241129, 20241224,
+            20250703, 20251128, 20251224,
+            20261127, 20261224,
+            20271126,
+            20280703, 20281124,
+            20290703, 20291123, 20291224,
+            20300703, 20301129, 20301224,
+            20310703, 20311128, 20311224,
+            20321126,
+            20331125,
+            20340703, 20341124,
+            20350703, 20351123, 20351224);
+
+    private MarketCalendar() {}
+
+    static boolean isTradingDay(LocalDate date) {
+        return isTradingDay(date.toEpochDay());
+    }
+
+    static boolean isTradingDay(long epochDay) {
+        // 1970-01-01 was a Thursday, so Monday is 0 here
+        int dayOfWeek = (int) Math.floorMod(epochDay + 3, 7L);
+        return dayOfWeek < 5 && Arrays.binarySearch(HOLIDAYS, (int) epochDay) < 0;
+    }
+
+    static boolean isEarlyClose(LocalDate date) {
+        return Arrays.binarySearch(EARLY_CLOSES, (int) date.toEpochDay()) >= 0;
+    }
+
+    /** The regular session's close on {@code date}, or null if the market is closed all day. */
+    static LocalTime closeTime(LocalDate date) {
+        if (!isTradingDay(date)) return null;
+        return isEarlyClose(date) ? EARLY_CLOSE : MARKET_CLOSE;
+    }
+
+    /** First trading day on or after {@code date}. */
+    static LocalDate nextTradingDay(LocalDate date) {
+        long day = date.toEpochDay();
+        while (!isTradingDay(day)) day++;
+        return LocalDate.ofEpochDay(day);
+    }
+
+    static Session session(long millis) {
+        long second = Math.floorDiv(millis, 1000L);
+        long local = second + NY_RULES.getOffset(Instant.ofEpochSecond(second)).getTotalSeconds();
+        long day = Math.floorDiv(local, 86400L);
+        if (!isTradingDay(day)) return Session.CLOSED;
+        int minute = (int) (Math.floorMod(local, 86400L) / 60);
+        int close = Arrays.binarySearch(EARLY_CLOSES, (int) day) >= 0 ? minuteOfDay(EARLY_CLOSE) : minuteOfDay(MARKET_CLOSE);
+        if (minute < minuteOfDay(PRE_MARKET_OPEN)) return Session.CLOSED;
+        if (minute < minuteOfDay(MARKET_OPEN)) return Session.PRE;
+        if (minute < close) return Session.REGULAR;
+        if (minute < close + POST_MARKET_MINUTES) return Session.POST;
+        return Session.CLOSED;
+    }
+
+    /** First regular-session open strictly after {@code millis}. */
+    static long nextOpen(long millis) {
+        return firstAfter(millis, date -> MARKET_OPEN);
+    }
+
+    /** First regular-session close strictly after {@code millis}, early closes included. */
+    static long nextClose(long millis) {
+        return firstAfter(millis, MarketCalendar::closeTime);
+    }
+
+    /** First pre-market open strictly after {@code millis}: when prices can next move. */
+    static long nextSessionStart(long millis) {
+        return firstAfter(millis, date -> PRE_MARKET_OPEN);
+    }
+
+    private interface TimeOnDay {
+        LocalTime on(LocalDate tradingDay);
+    }
+
+    private static long firstAfter(long millis, TimeOnDay time) {
+        LocalDate date = Instant.ofEpochMilli(millis).atZone(NY_ZONE).toLocalDate();
+        while (true) {
+            date = nextTradingDay(date);
+            long at = date.atTime(time.on(date)).atZone(NY_ZONE).toInstant().toEpochMilli();
+            if (at > millis) return at;
+            date = date.plusDays(1);
+        }
+    }
+
+    private static int minuteOfDay(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    private static int[] epochDays(int... yyyymmdd) {
+        int[] days = new int[yyyymmdd.length];
+        for (int i = 0; i < days.length; i++) {
+            int date = yyyymmdd[i];
+            days[i] = (int) LocalDate.of(date / 10000, date / 100 % 100, date % 100).toEpochDay();
+        }
+        Arrays.sort(days);
+        return days;
+    }
+}
@@ -0,0 +1,355 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+import android.webkit.WebView;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.WebViewListener;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Market data for the web page, as a Capacitor plugin ({@code Capacitor.Plugins.MarketData}).
+ *
+ * Every method resolves its call asynchronously from a bounded background pool, so
+ * the page's JavaScript never waits on the network the way it did with the blocking
+ * {@code window.Android} methods. Calls still pending when the page reloads are
+ * dropped; calls cancelled through {@code cancelPending()} are rejected with "cancelled".
+ *
+ * <ul>
+ *   <li>{@code getLatestPrice({symbol})} resolves {symbol, price}.</li>
+ *   <li>{@code getHistoricalData({symbol})} resolves {currentPrice, sma200}, plus "asOf"
+ *       when answered from closes stored on the device.</li>
+ *   <li>{@code getSignals({symbols, buy?, sell?})} resolves {results: [...]} with price,
+ *       SMA, percent difference and signal for each symbol, in one round trip.</li>
+ *   <li>{@code getSignalHistory({symbol?, from?, to?})} resolves {records: [...]} from
+ *       the daily run's {@link SignalLog}, oldest first; dates are yyyy-MM-dd and default
+ *       to the last year.</li>
+ *   <li>{@code getLastInSignal({symbol, signal})} resolves {record} for the latest day
+ *       the symbol was in that signal, without "record" if it never was.</li>
+ *   <li>{@code setIntradayMode({enabled, maxRequestsPerDay?})} turns intraday monitoring
+ *       on or off, see {@link IntradayMonitor}, and resolves the resulting
+ *       {enabled, maxRequestsPerDay}.</li>
+ * </ul>
+ */
+@CapacitorPlugin(name = "MarketData")
+public class MarketDataPlugin extends Plugin {
+    private static final String TAG = "MarketDataPlugin";
+
+    /** Most symbols accepted by one getSignals call. */
+    static final int MAX_BATCH = 20;
+    /** Rejection message of a call cancelled through cancelPending. */
+    static final String CANCELLED = "cancelled";
+
+    private final PluginTasks tasks = new PluginTasks();
+
+    @Override
+    public void load() {
+        getBridge().addWebViewListener(new WebViewListener() {
+            @Override
+            public void onPageStarted(WebView webView) {
+                // Nobody is left to receive the old page's results
+                tasks.dropAll();
+            }
+        });
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        tasks.shutdown();
+    }
+
+    @PluginMethod
+    public void getLatestPrice(PluginCall call) {
+        String symbol = call.getString("symbol");
+        if (symbol == null || symbol.isEmpty()) {
+            call.reject("Missing symbol");
+            return;
+        }
+        Context ctx = getContext();
+        run(call, () -> {
+            // Answered from memory or disk when the worker or an earlier call fetched it recently
+            double price = MarketDataRepository.get(ctx).latestPrice(symbol);
+            if (price <= 0) {
+                throw new Exception("No price available for " + symbol);
+            }
+            JSObject result = new JSObject();
+            result.put("symbol", symbol);
+            result.put("price", price);
+            return result;
+        });
+    }
+
+    @PluginMethod
+    public void getHistoricalData(PluginCall call) {
+        String symbol = call.getString("symbol");
+        if (symbol == null || symbol.isEmpty()) {
+            call.reject("Missing symbol");
+            return;
+        }
+        Context ctx = getContext();
+        run(call, () -> {
+            JSONObject data = marketData(ctx, symbol);
+            if (data == null) {
+                throw new Exception("No data available for " + symbol);
+            }
+            return new JSObject(data.toString());
+        });
+    }
+
+    @PluginMethod
+    public void getSignals(PluginCall call) {
+        JSArray symbols = call.getArray("symbols");
+        if (symbols == null || symbols.length() == 0) {
+            call.reject("Missing symbols");
+            return;
+        }
+        if (symbols.length() > MAX_BATCH) {
+            call.reject("At most " + MAX_BATCH + " symbols per call");
+            return;
+        }
+        Context ctx = getContext();
+        float buy = call.getFloat("buy", PrefsHelper.getFloat(ctx, PrefsHelper.KEY_BUY, 4.0f));
+        float sell = call.getFloat("sell", PrefsHelper.getFloat(ctx, PrefsHelper.KEY_SELL, 3.0f));
+
+        // One task per symbol so they load in parallel; the last one to finish resolves
+        int count = symbols.length();
+        JSONObject[] results = new JSONObject[count];
+        AtomicInteger remaining = new AtomicInteger(count);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            String symbol = symbols.optString(i, "");
+            PluginTasks.Callback<JSONObject> collect = new PluginTasks.Callback<JSONObject>() {
+                @Override
+                public void onResult(JSONObject result) {
+                    results[index] = result;
+                    if (remaining.decrementAndGet() == 0) resolveSignals(call, results);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    results[index] = failure(symbol, e.getMessage());
+                    if (remaining.decrementAndGet() == 0) resolveSignals(call, results);
+                }
+
+                @Override
+                public void onCancelled() {
+                    // A cancelled symbol never counts down, so the call is only settled here
+                    if (cancelled.compareAndSet(false, true)) call.reject(CANCELLED);
+                }
+            };
+            boolean queued = tasks.submit(call.getCallbackId() + "#" + i, () -> {
+                JSONObject data = marketData(ctx, symbol);
+                if (data == null) {
+                    return failure(symbol, "No data available");
+                }
+                return signal(symbol, data, buy, sell);
+            }, collect);
+            if (!queued) {
+                collect.onError(new Exception("Too many pending requests"));
+            }
+        }
+    }
+
+    @PluginMethod
+    public void getSignalHistory(PluginCall call) {
+        String symbol = call.getString("symbol");
+        LocalDate to;
+        LocalDate from;
+        try {
+            String toArg = call.getString("to");
+            String fromArg = call.getString("from");
+            to = toArg != null ? LocalDate.parse(toArg) : LocalDate.now(MarketCalendar.NY_ZONE);
+            from = fromArg != null ? LocalDate.parse(fromArg) : to.minusYears(1);
+        } catch (DateTimeParseException e) {
+            call.reject("Dates must be yyyy-MM-dd");
+            return;
+        }
+        Context ctx = getContext();
+        run(call, () -> {
+            JSArray records = new JSArray();
+            for (SignalLog.Record record : SignalLog.get(ctx).range((int) from.toEpochDay(), (int) to.toEpochDay(), symbol)) {
+                records.put(toJson(record));
+            }
+            JSObject result = new JSObject();
+            result.put("records", records);
+            return result;
+        });
+    }
+
+    @PluginMethod
+    public void getLastInSignal(PluginCall call) {
+        String symbol = call.getString("symbol");
+        String signal = call.getString("signal");
+        if (symbol == null || symbol.isEmpty() || signal == null || SignalLog.signalCode(signal) < 0) {
+            call.reject("Missing symbol or unknown signal");
+            return;
+        }
+        Context ctx = getContext();
+        run(call, () -> {
+            SignalLog.Record record = SignalLog.get(ctx).lastWithSignal(symbol, signal);
+            JSObject result = new JSObject();
+            if (record != null) {
+                result.put("record", toJson(record));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Turns intraday monitoring on or off. While on, the watchlist is polled during
+     * regular market hours, more often the closer a symbol is to a signal threshold.
+     * maxRequestsPerDay caps the polls; omitted or 0 keeps the current cap.
+     */
+    @PluginMethod
+    public void setIntradayMode(PluginCall call) {
+        Boolean enabled = call.getBoolean("enabled");
+        if (enabled == null) {
+            call.reject("Missing enabled");
+            return;
+        }
+        int maxRequestsPerDay = call.getInt("maxRequestsPerDay", 0);
+        if (maxRequestsPerDay < 0) {
+            call.reject("maxRequestsPerDay must not be negative");
+            return;
+        }
+        Context ctx = getContext();
+        // Only preferences and WorkManager's own queue, so no need for the background pool
+        IntradayMonitor.configure(ctx, enabled, maxRequestsPerDay);
+        PrefsHelper.Settings settings = PrefsHelper.settings(ctx);
+        JSObject result = new JSObject();
+        result.put("enabled", settings.intradayEnabled);
+        result.put("maxRequestsPerDay", settings.intradayMaxRequests);
+        call.resolve(result);
+    }
+
+    /**
+     * Cancels everything this page has pending, e.g. before it navigates away. Each
+     * cancelled call rejects with "cancelled".
+     */
+    @PluginMethod
+    public void cancelPending(PluginCall call) {
+        tasks.cancelAll();
+        call.resolve();
+    }
+
+    private void run(PluginCall call, Callable<JSObject> work) {
+        boolean queued = tasks.submit(call.getCallbackId(), work, new PluginTasks.Callback<JSObject>() {
+            @Override
+            public void onResult(JSObject result) {
+                call.resolve(result);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.w(TAG, call.getMethodName() + " failed: " + e.getMessage());
+                call.reject(e.getMessage(), e);
+            }
+
+            @Override
+            public void onCancelled() {
+                call.reject(CANCELLED);
+            }
+        });
+        if (!queued) {
+            call.reject("Too many pending requests");
+        }
+    }
+
+    private static void resolveSignals(PluginCall call, JSONObject[] results) {
+        JSArray array = new JSArray();
+        for (JSONObject result : results) {
+            array.put(result);
+        }
+        JSObject response = new JSObject();
+        response.put("results", array);
+        call.resolve(response);
+    }
+
+    /**
+     * Current price and 200-day SMA from barchart.com, falling back to the closes stored
+     * on the device when barchart.com is unreachable. Returns null if neither has data.
+     */
+    static JSONObject marketData(Context ctx, String symbol) throws JSONException {
+        // Same data the worker uses, cached for the market session
+        String cached = MarketDataRepository.get(ctx).barchartData(symbol);
+        JSONObject barchartData = cached != null ? new JSONObject(cached) : null;
+        if (barchartData != null && barchartData.has("currentPrice") && barchartData.has("sma200")) {
+            Log.i(TAG, "Got data from barchart.com for " + symbol + " - Price: "
+                    + barchartData.getDouble("currentPrice") + ", SMA200: " + barchartData.getDouble("sma200"));
+            return barchartData;
+        }
+        Log.w(TAG, "Failed to get data from barchart.com for symbol: " + symbol);
+        // Offline or blocked: answer from closes stored on the device, if any
+        DataSource.Reading stored = new LocalFileDataSource(HistoryStore.get(ctx)).fetch(symbol, 200);
+        if (stored == null) {
+            return null;
+        }
+        JSONObject json = new JSONObject();
+        json.put("currentPrice", stored.price);
+        json.put("sma200", stored.sma);
+        json.put("asOf", LocalDate.ofEpochDay(stored.asOfDay).toString());
+        Log.i(TAG, "Using stored history for " + symbol + " as of " + json.getString("asOf"));
+        return json;
+    }
+
+    /** One getSignals entry built from {@code data} as returned by marketData. */
+    static JSONObject signal(String symbol, JSONObject data, float buy, float sell) throws JSONException {
+        double price = data.getDouble("currentPrice");
+        double sma = data.getDouble("sma200");
+        if (price <= 0 || sma <= 0) {
+            return failure(symbol, "Invalid price or SMA");
+        }
+        double percent = ((price - sma) / sma) * 100.0;
+        JSONObject json = new JSONObject();
+        json.put("symbol", symbol);
+        json.put("price", price);
+        json.put("sma", sma);
+        json.put("percentDiff", percent);
+        json.put("signal", SMAWorker.determineSignal(percent, buy, sell));
+        if (data.has("asOf")) {
+            json.put("asOf", data.getString("asOf"));
+        }
+        return json;
+    }
+
+    static JSONObject toJson(SignalLog.Record record) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("date", LocalDate.ofEpochDay(record.day).toString());
+        json.put("symbol", record.symbol);
+        json.put("signal", record.signal);
+        json.put("price", record.price);
+        json.put("sma", record.sma);
+        json.put("smaPeriod", record.smaPeriod);
+        json.put("percentDiff", (double) record.percent);
+        if (record.latencyMillis >= 0) {
+            json.put("latencyMs", record.latencyMillis);
+        }
+        return json;
+    }
+
+    private static JSONObject failure(String symbol, String message) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("symbol", symbol);
+            json.put("error", message != null ? message : "Unknown error");
+        } catch (JSONException ignored) {
+            // Keys are non-null
+        }
+        return json;
+    }
+}
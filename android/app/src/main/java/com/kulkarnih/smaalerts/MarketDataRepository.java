@@ -0,0 +1,236 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the quote and SMA lookups shared by the web UI bridge and the worker.
+ *
+ * Lookups go through two tiers before the network: an in-memory LRU that answers a
+ * repeat call without I/O, and a small SharedPreferences tier that survives process
+ * death, so a worker run started by WorkManager can reuse what the UI fetched minutes
+ * earlier (and the other way round). How long a value stays fresh depends on the
+ * market session: seconds while the market is open, until the next open when it is
+ * closed.
+ *
+ * Network loads go through SMAWorker's fetchers, which already coalesce concurrent
+ * requests and sit on the HTTP cache.
+ */
+final class MarketDataRepository {
+    private static final String TAG = "MarketDataRepository";
+
+    private static final String PREFS = "market_data";
+    static final int MEMORY_CAPACITY = 64;
+
+    /** What is cached; each kind has its own key prefix and freshness per session. */
+    enum Kind {
+        /** Live price of a symbol, as a plain number. */
+        PRICE("price_", TimeUnit.SECONDS.toMillis(30), TimeUnit.MINUTES.toMillis(5)),
+        /** barchart.com price and moving averages, as the bridge's JSON. */
+        BARCHART("barchart_", TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(15));
+
+        final String prefix;
+        final long regularTtl;
+        final long postTtl;
+
+        Kind(String prefix, long regularTtl, long postTtl) {
+            this.prefix = prefix;
+            this.regularTtl = regularTtl;
+            this.postTtl = postTtl;
+        }
+    }
+
+    /** Network side of the repository. */
+    interface Source {
+        /** Live price, or 0 if unavailable. */
+        double fetchPrice(String symbol);
+
+        /** barchart.com JSON with "currentPrice" and "smaN" keys, or null if unavailable. */
+        String fetchBarchart(String symbol);
+    }
+
+    static final Source NETWORK = new Source() {
+        @Override
+        public double fetchPrice(String symbol) {
+            return SMAWorker.getLatestPrice(symbol);
+        }
+
+        @Override
+        public String fetchBarchart(String symbol) {
+            JSONObject json = SMAWorker.getBarchartData(symbol);
+            return json != null ? json.toString() : null;
+        }
+    };
+
+    private static final class CachedValue {
+        final String value;
+        final long expiresAt;
+
+        CachedValue(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static MarketDataRepository instance;
+
+    private final SharedPreferences disk;
+    private final Source source;
+    private final LinkedHashMap<String, CachedValue> memory = new LinkedHashMap<String, CachedValue>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedValue> eldest) {
+            return size() > MEMORY_CAPACITY;
+        }
+    };
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    MarketDataRepository(SharedPreferences disk, Source source) {
+        this.disk = disk;
+        this.source = source;
+    }
+
+    static synchronized MarketDataRepository get(Context ctx) {
+        if (instance == null) {
+            Context app = ctx.getApplicationContext();
+            instance = new MarketDataRepository(app.getSharedPreferences(PREFS, Context.MODE_PRIVATE), NETWORK);
+        }
+        return instance;
+    }
+
+    // ===== Lookups =====
+
+    /** Live price for {@code symbol}, or 0.0 if it is neither cached nor retrievable. */
+    double latestPrice(String symbol) {
+        return latestPrice(symbol, System.currentTimeMillis());
+    }
+
+    double latestPrice(String symbol, long nowMillis) {
+        String cached = lookup(Kind.PRICE, symbol, nowMillis);
+        if (cached != null) {
+            return Double.parseDouble(cached);
+        }
+        loads.incrementAndGet();
+        double price = source.fetchPrice(symbol);
+        if (price > 0) {
+            store(Kind.PRICE, symbol, Double.toString(price), nowMillis);
+        }
+        return price;
+    }
+
+    /**
+     * barchart.com price and moving averages for {@code symbol} as JSON, or null if
+     * they are neither cached nor retrievable.
+     */
+    String barchartData(String symbol) {
+        return barchartData(symbol, System.currentTimeMillis());
+    }
+
+    String barchartData(String symbol, long nowMillis) {
+        String cached = lookup(Kind.BARCHART, symbol, nowMillis);
+        if (cached != null) {
+            return cached;
+        }
+        loads.incrementAndGet();
+        String json = source.fetchBarchart(symbol);
+        if (json != null) {
+            store(Kind.BARCHART, symbol, json, nowMillis);
+        }
+        return json;
+    }
+
+    /** Records a price fetched elsewhere (the worker's batched quotes) so lookups can reuse it. */
+    void putPrice(String symbol, double price) {
+        if (price > 0) {
+            store(Kind.PRICE, symbol, Double.toString(price), System.currentTimeMillis());
+        }
+    }
+
+    void invalidate(String symbol) {
+        synchronized (memory) {
+            for (Kind kind : Kind.values()) {
+                memory.remove(kind.prefix + symbol);
+            }
+        }
+        SharedPreferences.Editor editor = disk.edit();
+        for (Kind kind : Kind.values()) {
+            editor.remove(kind.prefix + symbol);
+        }
+        editor.apply();
+    }
+
+    /** {memory hits, disk hits, network loads}. */
+    long[] stats() {
+        return new long[]{memoryHits.get(), diskHits.get(), loads.get()};
+    }
+
+    // ===== Tiers =====
+
+    private String lookup(Kind kind, String symbol, long nowMillis) {
+        String key = kind.prefix + symbol;
+        synchronized (memory) {
+            CachedValue value = memory.get(key);
+            if (value != null) {
+                if (nowMillis < value.expiresAt) {
+                    memoryHits.incrementAndGet();
+                    return value.value;
+                }
+                memory.remove(key);
+            }
+        }
+
+        // Stored as "<expiresAt>|<value>"
+        String stored = disk.getString(key, null);
+        if (stored == null) return null;
+        int bar = stored.indexOf('|');
+        try {
+            long expiresAt = Long.parseLong(stored.substring(0, bar));
+            if (nowMillis >= expiresAt) return null;
+            String value = stored.substring(bar + 1);
+            synchronized (memory) {
+                memory.put(key, new CachedValue(value, expiresAt));
+            }
+            diskHits.incrementAndGet();
+            return value;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Dropping malformed cached " + key + ": " + stored);
+            disk.edit().remove(key).apply();
+            return null;
+        }
+    }
+
+    private void store(Kind kind, String symbol, String value, long nowMillis) {
+        String key = kind.prefix + symbol;
+        long expiresAt = expiresAt(kind, nowMillis);
+        synchronized (memory) {
+            memory.put(key, new CachedValue(value, expiresAt));
+        }
+        disk.edit().putString(key, expiresAt + "|" + value).apply();
+    }
+
+    // ===== Freshness =====
+
+    /**
+     * When a value of {@code kind} fetched at {@code nowMillis} goes stale: a short TTL
+     * while prices move, and the next regular open while they cannot.
+     */
+    static long expiresAt(Kind kind, long nowMillis) {
+        switch (MarketCalendar.session(nowMillis)) {
+            case REGULAR:
+                return nowMillis + kind.regularTtl;
+            case POST:
+                return nowMillis + kind.postTtl;
+            default:
+                return MarketCalendar.nextOpen(nowMillis);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.kulkarnih.smaalerts;
+
+import android.util.Log;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded background executor for plugin calls from the web page.
+ *
+ * Work runs on a small fixed pool with a bounded queue; when the queue is full submit
+ * returns false and the caller rejects the call instead of piling up requests behind
+ * a slow provider. Every submitted task is answered exactly once: with its result or
+ * error, or with onCancelled when the page cancels it through cancelAll. Only dropAll,
+ * for a page reload, settles nothing, since the callbacks the results would answer no
+ * longer exist.
+ *
+ * Running work is not interrupted: the data paths write the history store through a
+ * file channel, which an interrupt would close.
+ */
+final class PluginTasks {
+    private static final String TAG = "PluginTasks";
+
+    static final int DEFAULT_THREADS = 3;
+    static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+    /**
+     * Receives the outcome of a task: onResult or onError on the pool thread that ran it,
+     * or onCancelled on the thread that called cancelAll.
+     */
+    interface Callback<T> {
+        void onResult(T result);
+
+        void onError(Exception e);
+
+        void onCancelled();
+    }
+
+    /** A submitted task; whoever removes it from {@link #pending} settles its callback. */
+    private static final class Task {
+        final Callback<?> callback;
+        FutureTask<Void> future;
+
+        Task(Callback<?> callback) {
+            this.callback = callback;
+        }
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final ConcurrentHashMap<String, Task> pending = new ConcurrentHashMap<>();
+
+    PluginTasks() {
+        this(DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    PluginTasks(int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "plugin-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs {@code work} in the background and reports to {@code callback}. Returns false
+     * if the queue is full or the executor is shut down; the callback is then never called.
+     */
+    <T> boolean submit(String id, Callable<T> work, Callback<T> callback) {
+        Task task = new Task(callback);
+        task.future = new FutureTask<>(() -> {
+            T result;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                if (pending.remove(id, task)) {
+                    callback.onError(e);
+                } else {
+                    Log.d(TAG, "Dropping error of cancelled call " + id);
+                }
+                return null;
+            }
+            if (pending.remove(id, task)) {
+                callback.onResult(result);
+            } else {
+                Log.d(TAG, "Dropping result of cancelled call " + id);
+            }
+            return null;
+        });
+        // Registered before it can run, so a fast task always finds itself
+        pending.put(id, task);
+        try {
+            pool.execute(task.future);
+            return true;
+        } catch (RejectedExecutionException e) {
+            pending.remove(id, task);
+            Log.w(TAG, "Too many pending calls, rejecting " + id);
+            return false;
+        }
+    }
+
+    /**
+     * Cancels queued work and answers every pending call with onCancelled at once; the
+     * results of work already running are dropped. For a page that is still there.
+     */
+    void cancelAll() {
+        int cancelled = clear(true);
+        if (cancelled > 0) {
+            Log.i(TAG, "Cancelled " + cancelled + " pending call(s)");
+        }
+    }
+
+    /**
+     * Like cancelAll, but without answering anyone, for a page that reloaded: its
+     * callbacks are gone with it.
+     */
+    void dropAll() {
+        int dropped = clear(false);
+        if (dropped > 0) {
+            Log.i(TAG, "Dropped " + dropped + " pending call(s) of a page that is gone");
+        }
+    }
+
+    private int clear(boolean notify) {
+        int count = 0;
+        for (Map.Entry<String, Task> entry : pending.entrySet()) {
+            Task task = entry.getValue();
+            if (!pending.remove(entry.getKey(), task)) continue; // Finished meanwhile
+            task.future.cancel(false);
+            if (notify) {
+                task.callback.onCancelled();
+            }
+            count++;
+        }
+        pool.purge();
+        return count;
+    }
+
+    /** Calls submitted and not finished yet. */
+    int pending() {
+        return pending.size();
+    }
+
+    void shutdown() {
+        dropAll();
+        pool.shutdown();
+    }
+}
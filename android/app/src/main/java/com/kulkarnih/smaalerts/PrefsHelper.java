@@ -3,6 +3,11 @@ package com.kulkarnih.smaalerts;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 public final class PrefsHelper {
     private static final String PREFS = "sma_alerts_prefs";
 
@@ -13,33 +18,285 @@ public final class PrefsHelper {
     public static final String KEY_SMA = "smaPeriod"; // int
     public static final String KEY_LAST_SIGNAL = "lastSignal"; // string
     public static final String KEY_LAST_PERCENT = "lastPercent"; // float
-    public static final String KEY_LAST_DATE = "lastDate"; // yyyy-MM-dd
+    public static final String KEY_LAST_DATE = "lastDate"; // yyyy-MM-dd, New York trading date
+    public static final String KEY_WATCHLIST = "watchlist"; // JSON array of extra symbols, see Watchlist
+    public static final String KEY_SMA_WINDOW_PREFIX = "smaWindow_"; // + symbol + "_" + period, encoded RollingSma
+    public static final String KEY_LATENCY_PREFIX = "latency_"; // + data source name, recent latencies in ms
+    public static final String KEY_BREAKER_PREFIX = "breaker_"; // + data source name, encoded CircuitBreaker state
+    public static final String KEY_BREAKER_FAILURES = "breakerFailures"; // int, consecutive failures that open a breaker
+    public static final String KEY_BREAKER_OPEN_MINUTES = "breakerOpenMinutes"; // int, first open period
+    public static final String KEY_SKIPPED_SIGNAL = "skippedSignal"; // string, per entry like KEY_LAST_SIGNAL: signal when VolatilityGate began skipping it
+    public static final String KEY_GATE_SKIPS = "gateSkips"; // int, entries skipped by VolatilityGate
+    public static final String KEY_GATE_WRONG_SKIPS = "gateWrongSkips"; // int, skips followed by a changed signal
 
     // Notification preferences
     public static final String KEY_NOTIF_FREQUENCY = "notifFrequency"; // string: "disabled", "on_change", "daily"
     public static final String KEY_NOTIF_HOUR = "notifHour"; // int, user's local time
     public static final String KEY_NOTIF_MIN = "notifMinute"; // int, user's local time
 
+    // Intraday monitoring, see IntradayMonitor
+    public static final String KEY_INTRADAY_ENABLED = "intradayEnabled"; // boolean
+    public static final String KEY_INTRADAY_MAX_REQUESTS = "intradayMaxRequests"; // int, polls per trading day
+    public static final String KEY_INTRADAY_DAY = "intradayDay"; // int, New York epoch day KEY_INTRADAY_REQUESTS counts for
+    public static final String KEY_INTRADAY_REQUESTS = "intradayRequests"; // int, polls made that day
+
+    // Scheduling state, see WorkScheduler
+    public static final String KEY_SCHEDULE_FINGERPRINT = "scheduleFingerprint"; // string, settings the pending run was scheduled for
+    public static final String KEY_SCHEDULE_RUN_AT = "scheduleRunAt"; // long, epoch ms the pending run is due
+
+    /** The keys {@link Settings} is loaded from; writes to any other key keep the snapshot. */
+    private static final Set<String> SETTINGS_KEYS = new HashSet<>(Arrays.asList(
+            KEY_INDEX, KEY_SMA, KEY_BUY, KEY_SELL, KEY_WATCHLIST, KEY_NOTIF_FREQUENCY, KEY_NOTIF_HOUR,
+            KEY_NOTIF_MIN, KEY_INTRADAY_ENABLED, KEY_INTRADAY_MAX_REQUESTS));
+
+    /**
+     * The settings a run reads, loaded from the preferences once and kept until one of
+     * them may have changed. Reading a field costs nothing, so hot paths take the
+     * snapshot from {@link #settings} instead of calling the getters key by key.
+     * Per-run state written to the same file (windows, breakers, last signals) does
+     * not drop it.
+     */
+    public static final class Settings {
+        public final String index; // as stored, may be "null" from JavaScript
+        public final int smaPeriod;
+        public final float buy;
+        public final float sell;
+        public final String watchlist; // JSON, or null
+        public final String notifFrequency;
+        public final int notifHour;
+        public final int notifMinute;
+        public final boolean intradayEnabled;
+        public final int intradayMaxRequests;
+
+        Settings(SharedPreferences prefs) {
+            index = prefs.getString(KEY_INDEX, "$SPX");
+            smaPeriod = prefs.getInt(KEY_SMA, 200);
+            buy = prefs.getFloat(KEY_BUY, 4.0f);
+            sell = prefs.getFloat(KEY_SELL, 3.0f);
+            watchlist = prefs.getString(KEY_WATCHLIST, null);
+            notifFrequency = prefs.getString(KEY_NOTIF_FREQUENCY, "on_change");
+            notifHour = prefs.getInt(KEY_NOTIF_HOUR, 15);
+            notifMinute = prefs.getInt(KEY_NOTIF_MIN, 30);
+            intradayEnabled = prefs.getBoolean(KEY_INTRADAY_ENABLED, false);
+            intradayMaxRequests = prefs.getInt(KEY_INTRADAY_MAX_REQUESTS, IntradayMonitor.DEFAULT_MAX_REQUESTS);
+        }
+    }
+
+    /**
+     * A watchlist entry's last daily result, the KEY_LAST_* keys SMAWorker writes
+     * together. Kept per entry by {@link #lastSignal} until one of those keys changes.
+     */
+    public static final class LastSignal {
+        public final String signal; // "" before the first run
+        public final float percent;
+        public final String date; // yyyy-MM-dd New York trading date, "" before the first run
+
+        LastSignal(SharedPreferences prefs, Watchlist.Entry entry) {
+            signal = prefs.getString(entry.stateKey(KEY_LAST_SIGNAL), "");
+            percent = prefs.getFloat(entry.stateKey(KEY_LAST_PERCENT), 0f);
+            date = prefs.getString(entry.stateKey(KEY_LAST_DATE), "");
+        }
+    }
+
+    /**
+     * Several changes written together: {@link #commit} or {@link #apply} stores all of
+     * them at once, as a single write to disk, or none of them.
+     */
+    public static final class Batch {
+        private final SharedPreferences.Editor editor;
+        private boolean settingsChanged;
+        private boolean signalsChanged;
+
+        Batch(SharedPreferences.Editor editor) {
+            this.editor = editor;
+        }
+
+        private void touched(String key) {
+            settingsChanged |= SETTINGS_KEYS.contains(key);
+            signalsChanged |= isLastSignalKey(key);
+        }
+
+        public Batch putString(String key, String value) {
+            editor.putString(key, value);
+            touched(key);
+            return this;
+        }
+
+        public Batch putFloat(String key, float value) {
+            editor.putFloat(key, value);
+            touched(key);
+            return this;
+        }
+
+        public Batch putInt(String key, int value) {
+            editor.putInt(key, value);
+            touched(key);
+            return this;
+        }
+
+        public Batch putLong(String key, long value) {
+            editor.putLong(key, value);
+            touched(key);
+            return this;
+        }
+
+        public Batch putBoolean(String key, boolean value) {
+            editor.putBoolean(key, value);
+            touched(key);
+            return this;
+        }
+
+        public Batch remove(String key) {
+            editor.remove(key);
+            touched(key);
+            return this;
+        }
+
+        /** Writes the changes and waits for the disk; for worker threads. Returns false if the write failed. */
+        public boolean commit() {
+            boolean written = editor.commit();
+            invalidate(settingsChanged, signalsChanged);
+            return written;
+        }
+
+        /** Makes the changes visible at once and writes them to disk in the background. */
+        public void apply() {
+            editor.apply();
+            invalidate(settingsChanged, signalsChanged);
+        }
+    }
+
+    private static final Object LOCK = new Object();
+    private static volatile Context cachedApp;
+    private static volatile SharedPreferences cachedPrefs;
+    private static volatile Settings cachedSettings;
+    private static int generation; // guarded by LOCK, bumped whenever cachedSettings may be stale
+    // Keyed by entry: "" for the primary entry, else its symbol
+    private static final ConcurrentHashMap<String, LastSignal> cachedSignals = new ConcurrentHashMap<>();
+    private static int signalGeneration; // guarded by LOCK, bumped whenever cachedSignals may be stale
+
+    // SharedPreferences only holds its listeners weakly. A null key means the file was cleared.
+    private static final SharedPreferences.OnSharedPreferenceChangeListener INVALIDATE = (prefs, key) ->
+            invalidate(key == null || SETTINGS_KEYS.contains(key), key == null || isLastSignalKey(key));
+
     private PrefsHelper() {}
 
     private static SharedPreferences prefs(Context ctx) {
-        return ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        Context app = ctx.getApplicationContext();
+        if (app == null) app = ctx;
+        SharedPreferences prefs = cachedPrefs;
+        if (prefs != null && cachedApp == app) {
+            return prefs;
+        }
+        synchronized (LOCK) {
+            if (cachedPrefs == null || cachedApp != app) {
+                if (cachedPrefs != null) {
+                    cachedPrefs.unregisterOnSharedPreferenceChangeListener(INVALIDATE);
+                }
+                SharedPreferences loaded = app.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+                loaded.registerOnSharedPreferenceChangeListener(INVALIDATE);
+                cachedPrefs = loaded;
+                cachedApp = app;
+                generation++;
+                cachedSettings = null;
+                signalGeneration++;
+                cachedSignals.clear();
+            }
+            return cachedPrefs;
+        }
+    }
+
+    private static boolean isLastSignalKey(String key) {
+        // Also matches the per-symbol copies, e.g. lastSignal_QQQ
+        return key.startsWith(KEY_LAST_SIGNAL) || key.startsWith(KEY_LAST_PERCENT) || key.startsWith(KEY_LAST_DATE);
+    }
+
+    private static void invalidate(boolean settings, boolean signals) {
+        if (!settings && !signals) return;
+        synchronized (LOCK) {
+            if (settings) {
+                generation++;
+                cachedSettings = null;
+            }
+            if (signals) {
+                signalGeneration++;
+                cachedSignals.clear();
+            }
+        }
+    }
+
+    /**
+     * The current settings snapshot. Writes through this class drop it at once; writes
+     * made elsewhere drop it through a change listener.
+     */
+    public static Settings settings(Context ctx) {
+        SharedPreferences prefs = prefs(ctx);
+        Settings settings = cachedSettings;
+        if (settings != null) {
+            return settings;
+        }
+        int loadedAt;
+        synchronized (LOCK) {
+            loadedAt = generation;
+        }
+        settings = new Settings(prefs);
+        synchronized (LOCK) {
+            // A write while loading may have been missed: use this snapshot once, but do not keep it
+            if (loadedAt == generation) {
+                cachedSettings = settings;
+            }
+        }
+        return settings;
+    }
+
+    /** The entry's last daily result, loaded once and kept until it is written again. */
+    public static LastSignal lastSignal(Context ctx, Watchlist.Entry entry) {
+        SharedPreferences prefs = prefs(ctx);
+        String cacheKey = entry.primary ? "" : entry.symbol;
+        LastSignal last = cachedSignals.get(cacheKey);
+        if (last != null) {
+            return last;
+        }
+        int loadedAt;
+        synchronized (LOCK) {
+            loadedAt = signalGeneration;
+        }
+        last = new LastSignal(prefs, entry);
+        synchronized (LOCK) {
+            if (loadedAt == signalGeneration) {
+                cachedSignals.put(cacheKey, last);
+            }
+        }
+        return last;
+    }
+
+    /** Starts a batch of changes, written together by {@link Batch#commit} or {@link Batch#apply}. */
+    public static Batch edit(Context ctx) {
+        return new Batch(prefs(ctx).edit());
     }
 
     public static void putString(Context ctx, String key, String value) {
-        prefs(ctx).edit().putString(key, value).apply();
+        edit(ctx).putString(key, value).apply();
     }
 
     public static void putFloat(Context ctx, String key, float value) {
-        prefs(ctx).edit().putFloat(key, value).apply();
+        edit(ctx).putFloat(key, value).apply();
     }
 
     public static void putInt(Context ctx, String key, int value) {
-        prefs(ctx).edit().putInt(key, value).apply();
+        edit(ctx).putInt(key, value).apply();
+    }
+
+    public static void putLong(Context ctx, String key, long value) {
+        edit(ctx).putLong(key, value).apply();
     }
 
     public static void putBoolean(Context ctx, String key, boolean value) {
-        prefs(ctx).edit().putBoolean(key, value).apply();
+        edit(ctx).putBoolean(key, value).apply();
+    }
+
+    public static void remove(Context ctx, String key) {
+        edit(ctx).remove(key).apply();
     }
 
     public static String getString(Context ctx, String key, String def) {
@@ -54,9 +311,11 @@ public final class PrefsHelper {
         return prefs(ctx).getInt(key, def);
     }
 
+    public static long getLong(Context ctx, String key, long def) {
+        return prefs(ctx).getLong(key, def);
+    }
+
     public static boolean getBoolean(Context ctx, String key, boolean def) {
         return prefs(ctx).getBoolean(key, def);
     }
 }
-
-
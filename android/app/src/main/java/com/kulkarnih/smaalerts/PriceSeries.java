@@ -0,0 +1,185 @@
+package com.kulkarnih.smaalerts;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/**
+ * Immutable daily close series held as two parallel primitive arrays: trading days
+ * (epoch days in America/New_York) in strictly ascending order, and their closes.
+ *
+ * Lookups by date are binary searches and indicator math runs over contiguous
+ * doubles, so nothing on the SMA path touches a map or boxes a value.
+ */
+final class PriceSeries {
+    private static final ZoneRules NY_RULES = ZoneId.of("America/New_York").getRules();
+
+    static final PriceSeries EMPTY = new PriceSeries(new int[0], new double[0]);
+
+    private final int[] days;
+    private final double[] closes;
+
+    private PriceSeries(int[] days, double[] closes) {
+        this.days = days;
+        this.closes = closes;
+    }
+
+    /**
+     * Builds a series from copies of the given arrays.
+     * Throws IllegalArgumentException if the lengths differ, days are not strictly
+     * ascending, or a close is not a positive number.
+     */
+    static PriceSeries of(int[] days, double[] closes) {
+        if (days.length != closes.length) {
+            throw new IllegalArgumentException("days and closes differ in length: " + days.length + " vs " + closes.length);
+        }
+        for (int i = 0; i < days.length; i++) {
+            if (i > 0 && days[i] <= days[i - 1]) {
+                throw new IllegalArgumentException("days not strictly ascending at index " + i);
+            }
+            if (!(closes[i] > 0)) {
+                throw new IllegalArgumentException("invalid close " + closes[i] + " at index " + i);
+            }
+        }
+        return new PriceSeries(days.clone(), closes.clone());
+    }
+
+    /**
+     * Converts a decoded Yahoo chart. Bars are keyed by their New York calendar date;
+     * if Yahoo reports two bars for the same date (the live bar next to the settled one),
+     * the later bar wins.
+     */
+    static PriceSeries fromChart(YahooChartDecoder.Chart chart) {
+        int n = chart.size();
+        int[] days = new int[n];
+        double[] closes = new double[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int day = nyEpochDay(chart.timestamps[i]);
+            if (count > 0 && day <= days[count - 1]) {
+                if (day < days[count - 1]) continue; // out of order bar, keep the series sorted
+                count--;
+            }
+            days[count] = day;
+            closes[count] = chart.closes[i];
+            count++;
+        }
+        if (count == 0) return EMPTY;
+        return new PriceSeries(Arrays.copyOf(days, count), Arrays.copyOf(closes, count));
+    }
+
+    static int nyEpochDay(long epochSecond) {
+        int offset = NY_RULES.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+        return (int) Math.floorDiv(epochSecond + offset, 86400L);
+    }
+
+    int size() {
+        return days.length;
+    }
+
+    boolean isEmpty() {
+        return days.length == 0;
+    }
+
+    int dayAt(int index) {
+        return days[index];
+    }
+
+    double closeAt(int index) {
+        return closes[index];
+    }
+
+    LocalDate dateAt(int index) {
+        return LocalDate.ofEpochDay(days[index]);
+    }
+
+    int lastDay() {
+        return days[days.length - 1];
+    }
+
+    double lastClose() {
+        return closes[closes.length - 1];
+    }
+
+    /** Index of {@code epochDay}, or {@code -(insertionPoint) - 1} like Arrays.binarySearch. */
+    int indexOf(int epochDay) {
+        return Arrays.binarySearch(days, epochDay);
+    }
+
+    /** Index of the last day on or before {@code epochDay}, or -1 if the series starts after it. */
+    int floorIndex(int epochDay) {
+        int index = indexOf(epochDay);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /** Close on exactly {@code epochDay}, or NaN if that day is not in the series. */
+    double closeOn(int epochDay) {
+        int index = indexOf(epochDay);
+        return index >= 0 ? closes[index] : Double.NaN;
+    }
+
+    /** Days {@code from} (inclusive) to {@code to} (exclusive) as a new series. */
+    PriceSeries slice(int from, int to) {
+        if (from == 0 && to == days.length) return this;
+        if (from >= to) return EMPTY;
+        return new PriceSeries(Arrays.copyOfRange(days, from, to), Arrays.copyOfRange(closes, from, to));
+    }
+
+    /**
+     * Union of this series and {@code newer}. Where both have a close for the same day,
+     * the close from {@code newer} wins (a re-fetched bar supersedes a stored one).
+     */
+    PriceSeries merge(PriceSeries newer) {
+        if (newer.isEmpty()) return this;
+        if (isEmpty()) return newer;
+        int[] mergedDays = new int[days.length + newer.days.length];
+        double[] mergedCloses = new double[mergedDays.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < days.length || j < newer.days.length) {
+            if (j == newer.days.length || (i < days.length && days[i] < newer.days[j])) {
+                mergedDays[n] = days[i];
+                mergedCloses[n++] = closes[i++];
+            } else {
+                if (i < days.length && days[i] == newer.days[j]) i++;
+                mergedDays[n] = newer.days[j];
+                mergedCloses[n++] = newer.closes[j++];
+            }
+        }
+        return new PriceSeries(Arrays.copyOf(mergedDays, n), Arrays.copyOf(mergedCloses, n));
+    }
+
+    /** Simple moving average of the most recent {@code period} closes. */
+    double sma(int period) {
+        return smaAt(days.length - 1, period);
+    }
+
+    /**
+     * Simple moving average of the {@code period} closes ending at {@code endIndex}
+     * (inclusive). Throws IllegalArgumentException if there are not enough closes.
+     */
+    double smaAt(int endIndex, int period) {
+        if (period <= 0 || endIndex >= days.length || endIndex + 1 < period) {
+            throw new IllegalArgumentException("Not enough data for SMA" + period + ": " + (endIndex + 1) + " closes");
+        }
+        double sum = 0.0;
+        for (int i = endIndex - period + 1; i <= endIndex; i++) {
+            sum += closes[i];
+        }
+        return sum / period;
+    }
+
+    /** Copy of the closes, oldest first. */
+    double[] closes() {
+        return closes.clone();
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) return "PriceSeries{empty}";
+        return "PriceSeries{" + size() + " days, " + dateAt(0) + ".." + dateAt(size() - 1) + ", last=" + lastClose() + "}";
+    }
+}
@@ -0,0 +1,493 @@
+package com.kulkarnih.smaalerts;
+
+import android.util.Log;
+
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * Retries calls with jittered exponential backoff inside one deadline for the whole call.
+ *
+ * {@link #execute} runs attempts on a cached pool, so a call never queues behind other
+ * calls' blocking attempts and its deadline is spent on its own requests. The waits
+ * between attempts are delays on a single timer thread, so no thread sleeps through a
+ * backoff. {@link #await} runs the attempts on the calling thread instead, which waits
+ * for the outcome anyway, and {@link #submitAsync} takes attempts that return a future,
+ * so no thread waits while one is in flight. The deadline is split across the attempts
+ * that are left: each attempt gets remaining / attemptsLeft, and requests made through
+ * {@link SharedHttpClient} on the attempt's thread have their timeouts cut to that
+ * share. Three attempts therefore can no longer add up to 3 x (connect + read).
+ *
+ * Whether a failure is worth retrying is decided by {@link #isRetryable}: timeouts,
+ * connection errors and 408/425/429/5xx are; other 4xx statuses, certificate and
+ * parse errors are not. A null result counts as a retryable miss.
+ */
+final class RetryEngine {
+    private static final String TAG = "RetryEngine";
+
+    /** Attempt count, backoff and deadline for one kind of call. */
+    static final class Policy {
+        final int maxAttempts;
+        final long baseDelayMillis;
+        final long maxDelayMillis;
+        final long deadlineMillis;
+        /** An attempt with less budget than this is not started. */
+        final long minAttemptMillis;
+
+        Policy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, long deadlineMillis, long minAttemptMillis) {
+            if (maxAttempts <= 0 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis
+                    || minAttemptMillis <= 0 || deadlineMillis < minAttemptMillis) {
+                throw new IllegalArgumentException("Invalid retry policy");
+            }
+            this.maxAttempts = maxAttempts;
+            this.baseDelayMillis = baseDelayMillis;
+            this.maxDelayMillis = maxDelayMillis;
+            this.deadlineMillis = deadlineMillis;
+            this.minAttemptMillis = minAttemptMillis;
+        }
+
+        /** Interactive fetches: three attempts within 45 s. */
+        static final Policy DEFAULT = new Policy(3, 1000, 8000, 45_000, 2000);
+        /** Per-symbol work in the worker; finishes inside WatchlistEvaluator.SYMBOL_TIMEOUT_MS. */
+        static final Policy WORKER = new Policy(2, 1000, 4000, 25_000, 3000);
+    }
+
+    /** One attempt of a call. {@code budgetMillis} is this attempt's share of the deadline. */
+    interface Attempt<T> {
+        T run(int attempt, long budgetMillis) throws Exception;
+    }
+
+    /**
+     * One attempt that answers through a future. Blocking work goes to {@code executor},
+     * the engine's attempt pool; the request deadline is set while start runs.
+     */
+    interface AsyncAttempt<T> {
+        ListenableFuture<T> start(int attempt, long budgetMillis, Executor executor) throws Exception;
+    }
+
+    interface Listener<T> {
+        /** Called once, when the call succeeds or gives up, on the thread that ended it. */
+        void onComplete(Outcome<T> outcome);
+    }
+
+    /** Timing and result of one attempt. */
+    static final class AttemptMetrics {
+        final int attempt;
+        /** Backoff waited before this attempt started. */
+        final long delayMillis;
+        final long budgetMillis;
+        final long durationMillis;
+        /** "ok", "null", or the exception's simple class name. */
+        final String result;
+
+        AttemptMetrics(int attempt, long delayMillis, long budgetMillis, long durationMillis, String result) {
+            this.attempt = attempt;
+            this.delayMillis = delayMillis;
+            this.budgetMillis = budgetMillis;
+            this.durationMillis = durationMillis;
+            this.result = result;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + attempt + " " + result + " in " + durationMillis + " ms (budget " + budgetMillis
+                    + " ms, waited " + delayMillis + " ms)";
+        }
+    }
+
+    /** The final value, or the last error, plus every attempt made. */
+    static final class Outcome<T> {
+        final T value;
+        final Exception error;
+        final List<AttemptMetrics> attempts;
+
+        Outcome(T value, Exception error, List<AttemptMetrics> attempts) {
+            this.value = value;
+            this.error = error;
+            this.attempts = Collections.unmodifiableList(new ArrayList<>(attempts));
+        }
+
+        boolean isSuccess() {
+            return value != null;
+        }
+    }
+
+    /** An HTTP response whose status says the request failed. */
+    static final class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int code;
+
+        HttpStatusException(int code) {
+            super("HTTP " + code);
+            this.code = code;
+        }
+    }
+
+    /**
+     * A running call. cancel stops any further attempts; an attempt already running
+     * finishes first. The listener then gets a CancellationException outcome.
+     */
+    static final class Handle {
+        private volatile boolean cancelled;
+        private volatile ScheduledFuture<?> next;
+        private volatile Runnable onCancel;
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> scheduled = next;
+            if (scheduled != null && scheduled.cancel(false) && onCancel != null) {
+                onCancel.run();
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static volatile RetryEngine shared;
+
+    private final ScheduledThreadPoolExecutor timer;
+    private final ExecutorService attemptPool;
+    private final Random random;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    RetryEngine(Random random) {
+        AtomicInteger count = new AtomicInteger();
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "retry-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+        // Unbounded like HedgedDataSource's pool: callers already limit how many calls they start
+        this.attemptPool = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "retry-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.random = random;
+    }
+
+    /** The engine shared by the app's fetches. */
+    static RetryEngine shared() {
+        RetryEngine engine = shared;
+        if (engine == null) {
+            synchronized (RetryEngine.class) {
+                engine = shared;
+                if (engine == null) {
+                    engine = new RetryEngine(new Random());
+                    shared = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /** Whether a call that failed with {@code e} may succeed if tried again. */
+    static boolean isRetryable(Exception e) {
+        if (e instanceof HttpStatusException) {
+            int code = ((HttpStatusException) e).code;
+            return code == 408 || code == 425 || code == 429 || code >= 500;
+        }
+        if (e instanceof MalformedURLException || e instanceof SSLPeerUnverifiedException
+                || e instanceof SSLHandshakeException) {
+            return false;
+        }
+        // Timeouts, refused or reset connections, DNS hiccups
+        return e instanceof IOException;
+    }
+
+    /**
+     * Backoff before attempt {@code attempt} (2 or later): a uniformly random delay up to
+     * base * 2^(attempt - 2), capped at maxDelayMillis ("full jitter"), so clients that
+     * failed together do not retry together.
+     */
+    long backoffMillis(Policy policy, int attempt) {
+        int doublings = Math.min(attempt - 2, 20);
+        long ceiling = Math.min(policy.maxDelayMillis, policy.baseDelayMillis << doublings);
+        if (ceiling <= 0) return 0;
+        synchronized (random) {
+            return (long) (random.nextDouble() * ceiling);
+        }
+    }
+
+    /** Starts {@code call} and returns at once; {@code listener} gets the outcome. */
+    <T> Handle execute(String name, Policy policy, Attempt<T> call, Listener<T> listener) {
+        return start(name, policy, call, null, listener);
+    }
+
+    private <T> Handle start(String name, Policy policy, Attempt<T> call, AsyncAttempt<T> asyncCall, Listener<T> listener) {
+        calls.incrementAndGet();
+        Handle handle = new Handle();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.deadlineMillis);
+        Run<T> run = new Run<>(name, policy, call, asyncCall, listener, handle, deadline);
+        handle.onCancel = () -> run.finish(null);
+        attemptPool.execute(() -> run.step(1, 0));
+        return handle;
+    }
+
+    /**
+     * {@link #execute} as a future, for composing with other steps. Cancelling the
+     * future cancels the call.
+     */
+    <T> ListenableFuture<Outcome<T>> submit(String name, Policy policy, Attempt<T> call) {
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            Handle handle = execute(name, policy, call, completer::set);
+            completer.addCancellationListener(handle::cancel, AsyncFutures.DIRECT);
+            return name;
+        });
+    }
+
+    /**
+     * {@link #submit} for attempts that answer through a future. The next attempt
+     * starts from the previous one's listener, after a backoff on the timer.
+     */
+    <T> ListenableFuture<Outcome<T>> submitAsync(String name, Policy policy, AsyncAttempt<T> call) {
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            Handle handle = start(name, policy, null, call, completer::set);
+            completer.addCancellationListener(handle::cancel, AsyncFutures.DIRECT);
+            return name;
+        });
+    }
+
+    /**
+     * Runs {@code call} on this thread and returns its outcome, for callers that are
+     * already on a background thread. Backoffs are slept here; interruption ends the call.
+     */
+    <T> Outcome<T> await(String name, Policy policy, Attempt<T> call) {
+        calls.incrementAndGet();
+        Object[] result = new Object[1];
+        Handle handle = new Handle();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.deadlineMillis);
+        Run<T> run = new Run<>(name, policy, call, null, outcome -> result[0] = outcome, handle, deadline);
+        int attempt = 1;
+        long waited = 0;
+        while ((waited = run.attempt(attempt, waited)) >= 0) {
+            try {
+                Thread.sleep(waited);
+            } catch (InterruptedException e) {
+                handle.cancel();
+                run.finish(null);
+                Thread.currentThread().interrupt();
+                break;
+            }
+            attempt++;
+        }
+        @SuppressWarnings("unchecked")
+        Outcome<T> outcome = (Outcome<T>) result[0];
+        return outcome;
+    }
+
+    /** {calls, attempts, retries, calls that gave up} since start. */
+    long[] stats() {
+        return new long[]{calls.get(), attempts.get(), retries.get(), failures.get()};
+    }
+
+    private final class Run<T> {
+        private final String name;
+        private final Policy policy;
+        private final Attempt<T> call; // null when asyncCall is set
+        private final AsyncAttempt<T> asyncCall;
+        private final Listener<T> listener;
+        private final Handle handle;
+        private final long deadlineNanos;
+        private final List<AttemptMetrics> metrics = new ArrayList<>();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile Exception lastError;
+
+        Run(String name, Policy policy, Attempt<T> call, AsyncAttempt<T> asyncCall, Listener<T> listener,
+            Handle handle, long deadlineNanos) {
+            this.name = name;
+            this.policy = policy;
+            this.call = call;
+            this.asyncCall = asyncCall;
+            this.listener = listener;
+            this.handle = handle;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private long remainingMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        }
+
+        /**
+         * Runs attempt {@code attempt} on a pool thread, or starts it when it is
+         * asynchronous, and schedules the next one, if any.
+         */
+        void step(int attempt, long waitedMillis) {
+            if (asyncCall != null) {
+                startAsync(attempt, waitedMillis);
+                return;
+            }
+            long delay = attempt(attempt, waitedMillis);
+            if (delay >= 0) scheduleNext(attempt, delay);
+        }
+
+        private void scheduleNext(int attempt, long delay) {
+            Runnable step = () -> step(attempt + 1, delay);
+            // An asynchronous attempt only starts its requests, so the timer thread can do that
+            ScheduledFuture<?> next = timer.schedule(
+                    asyncCall != null ? step : () -> attemptPool.execute(step), delay, TimeUnit.MILLISECONDS);
+            handle.next = next;
+            if (handle.isCancelled() && next.cancel(false)) {
+                finish(null);
+            }
+        }
+
+        /**
+         * Runs one attempt on this thread. Returns the backoff before the next attempt,
+         * or -1 once the call has finished.
+         */
+        long attempt(int attempt, long waitedMillis) {
+            if (handle.isCancelled()) {
+                finish(null);
+                return -1;
+            }
+            long budget = budgetMillis(attempt);
+            attempts.incrementAndGet();
+            long start = System.nanoTime();
+            T value = null;
+            Exception error = null;
+            long outer = enterDeadline(budget);
+            try {
+                value = call.run(attempt, budget);
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                SharedHttpClient.setCallDeadline(outer);
+            }
+            return settle(attempt, waitedMillis, budget, start, value, error);
+        }
+
+        /** Starts one asynchronous attempt; its listener settles it and schedules the next. */
+        private void startAsync(int attempt, long waitedMillis) {
+            if (handle.isCancelled()) {
+                finish(null);
+                return;
+            }
+            long budget = budgetMillis(attempt);
+            attempts.incrementAndGet();
+            long start = System.nanoTime();
+            ListenableFuture<T> pending;
+            long outer = enterDeadline(budget);
+            try {
+                pending = asyncCall.start(attempt, budget, attemptPool);
+            } catch (Exception e) {
+                long delay = settle(attempt, waitedMillis, budget, start, null, e);
+                if (delay >= 0) scheduleNext(attempt, delay);
+                return;
+            } finally {
+                SharedHttpClient.setCallDeadline(outer);
+            }
+            pending.addListener(() -> {
+                T value = null;
+                Exception error = null;
+                try {
+                    value = AsyncFutures.getDone(pending);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    error = cause instanceof Exception ? (Exception) cause : e;
+                } catch (CancellationException e) {
+                    error = e;
+                }
+                long delay = settle(attempt, waitedMillis, budget, start, value, error);
+                if (delay >= 0) scheduleNext(attempt, delay);
+            }, AsyncFutures.DIRECT);
+        }
+
+        private long budgetMillis(int attempt) {
+            long budget = remainingMillis() / (policy.maxAttempts - attempt + 1);
+            return Math.max(budget, Math.min(policy.minAttemptMillis, remainingMillis()));
+        }
+
+        /** Sets this thread's request deadline for an attempt; returns the one to restore. */
+        private long enterDeadline(long budget) {
+            // await may run inside a call that already has a deadline; keep the earlier one
+            long outer = SharedHttpClient.callDeadline();
+            long own = System.currentTimeMillis() + budget;
+            SharedHttpClient.setCallDeadline(outer > 0 ? Math.min(outer, own) : own);
+            return outer;
+        }
+
+        /**
+         * Records an attempt's result and finishes the call or returns the backoff before
+         * the next attempt; -1 once the call has finished.
+         */
+        private long settle(int attempt, long waitedMillis, long budget, long start, T value, Exception error) {
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            String result = value != null ? "ok" : error != null ? error.getClass().getSimpleName() : "null";
+            AttemptMetrics attemptMetrics = new AttemptMetrics(attempt, waitedMillis, budget, duration, result);
+            metrics.add(attemptMetrics);
+            Log.d(TAG, name + " attempt " + attemptMetrics);
+
+            if (value != null) {
+                finish(value);
+                return -1;
+            }
+            if (error != null) lastError = error;
+            if (handle.isCancelled()) {
+                finish(null);
+                return -1;
+            }
+            if (error != null && !isRetryable(error)) {
+                Log.w(TAG, name + " failed with a non-retryable error: " + error.getMessage());
+                finish(null);
+                return -1;
+            }
+            if (attempt >= policy.maxAttempts) {
+                finish(null);
+                return -1;
+            }
+            long delay = backoffMillis(policy, attempt + 1);
+            if (remainingMillis() - delay < policy.minAttemptMillis) {
+                Log.w(TAG, name + " out of time after " + attempt + " attempt(s)");
+                finish(null);
+                return -1;
+            }
+            retries.incrementAndGet();
+            return delay;
+        }
+
+        void finish(T value) {
+            if (!finished.compareAndSet(false, true)) return;
+            if (value == null) {
+                failures.incrementAndGet();
+                if (handle.isCancelled()) {
+                    lastError = new CancellationException(name + " cancelled");
+                }
+            }
+            try {
+                listener.onComplete(new Outcome<>(value, value == null ? lastError : null, metrics));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Listener for " + name + " failed", e);
+            }
+        }
+    }
+}
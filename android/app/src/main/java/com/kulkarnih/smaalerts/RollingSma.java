@@ -0,0 +1,188 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Rolling simple moving average over the last N daily closes.
+ *
+ * Closes live in a ring buffer next to a Kahan-compensated running sum, so each new
+ * close is O(1) and the sum does not drift no matter how many days are pushed through.
+ * The window is persisted per symbol and period between worker runs, which means a
+ * daily evaluation only has to learn the closes it has not seen yet.
+ *
+ * Not thread-safe; each worker run loads, updates and saves its own instance.
+ */
+final class RollingSma {
+    private static final String TAG = "RollingSma";
+
+    static final int NO_DAY = Integer.MIN_VALUE;
+
+    private static final int FORMAT_VERSION = 1;
+
+    final int period;
+    private final double[] ring;
+    private int head;  // next write slot; the oldest close when the window is full
+    private int count;
+    private double sum;
+    private double compensation;
+    private int lastDay = NO_DAY; // epoch day of the newest committed close
+
+    RollingSma(int period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        this.period = period;
+        this.ring = new double[period];
+    }
+
+    /** New window holding the last {@code period} closes of the series. */
+    static RollingSma seed(PriceSeries series, int period) {
+        RollingSma window = new RollingSma(period);
+        for (int i = Math.max(0, series.size() - period); i < series.size(); i++) {
+            window.push(series.dayAt(i), series.closeAt(i));
+        }
+        return window;
+    }
+
+    /**
+     * Commits the close for {@code epochDay}. A second close for the newest day replaces
+     * it (a late correction); closes older than the newest day are ignored.
+     * Returns false if the close was ignored.
+     */
+    boolean push(int epochDay, double close) {
+        if (count > 0 && epochDay < lastDay) {
+            return false;
+        }
+        if (count > 0 && epochDay == lastDay) {
+            int newest = (head + period - 1) % period;
+            add(-ring[newest]);
+            add(close);
+            ring[newest] = close;
+            return true;
+        }
+        if (count == period) {
+            add(-ring[head]);
+        } else {
+            count++;
+        }
+        add(close);
+        ring[head] = close;
+        head = (head + 1) % period;
+        lastDay = epochDay;
+        return true;
+    }
+
+    private void add(double value) {
+        double y = value - compensation;
+        double t = sum + y;
+        compensation = (t - sum) - y;
+        sum = t;
+    }
+
+    boolean isReady() {
+        return count == period;
+    }
+
+    int size() {
+        return count;
+    }
+
+    int lastDay() {
+        return lastDay;
+    }
+
+    /** Newest committed close, or 0 if the window is empty. */
+    double lastClose() {
+        return count > 0 ? ring[(head + period - 1) % period] : 0.0;
+    }
+
+    /** SMA of the committed closes, or 0 until the window holds {@code period} of them. */
+    double value() {
+        return isReady() ? sum / period : 0.0;
+    }
+
+    /**
+     * SMA as it would be if {@code livePrice} were today's close: the newest
+     * {@code period - 1} committed closes plus the live price. Nothing is committed.
+     * Returns 0 if fewer than {@code period - 1} closes are committed.
+     */
+    double provisional(double livePrice) {
+        if (count == period) {
+            return (sum - ring[head] + livePrice) / period;
+        }
+        if (count == period - 1) {
+            return (sum + livePrice) / period;
+        }
+        return 0.0;
+    }
+
+    // ===== Persistence =====
+
+    /** Compact form: version, period, last day, count, then the closes oldest first. */
+    String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(16 + count * 8);
+        buffer.putInt(FORMAT_VERSION).putInt(period).putInt(lastDay).putInt(count);
+        int start = (head + period - count) % period;
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(ring[(start + i) % period]);
+        }
+        return Base64.encodeToString(buffer.array(), Base64.NO_WRAP);
+    }
+
+    /**
+     * Rebuilds a window from {@link #encode()}, recomputing the sum from the stored closes.
+     * Returns null if the data is corrupt or was saved for a different period.
+     */
+    static RollingSma decode(String encoded, int period) {
+        if (encoded == null || encoded.isEmpty()) return null;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.decode(encoded, Base64.NO_WRAP));
+            if (buffer.getInt() != FORMAT_VERSION || buffer.getInt() != period) return null;
+            int lastDay = buffer.getInt();
+            int count = buffer.getInt();
+            if (count < 0 || count > period || buffer.remaining() != count * 8) return null;
+            RollingSma window = new RollingSma(period);
+            for (int i = 0; i < count; i++) {
+                double close = buffer.getDouble();
+                if (!(close > 0)) return null;
+                window.ring[i] = close;
+                window.add(close);
+            }
+            window.count = count;
+            window.head = count % period;
+            window.lastDay = count > 0 ? lastDay : NO_DAY;
+            return window;
+        } catch (IllegalArgumentException | BufferUnderflowException | BufferOverflowException e) {
+            Log.w(TAG, "Discarding unreadable SMA window", e);
+            return null;
+        }
+    }
+
+    private static String key(String symbol, int period) {
+        return PrefsHelper.KEY_SMA_WINDOW_PREFIX + symbol + "_" + period;
+    }
+
+    /** Saved window for the symbol and period, or null if none was saved. */
+    static RollingSma load(Context ctx, String symbol, int period) {
+        return decode(PrefsHelper.getString(ctx, key(symbol, period), null), period);
+    }
+
+    void save(Context ctx, String symbol) {
+        PrefsHelper.putString(ctx, key(symbol, period), encode());
+    }
+
+    static void clear(Context ctx, String symbol, int period) {
+        PrefsHelper.remove(ctx, key(symbol, period));
+    }
+
+    @Override
+    public String toString() {
+        return "RollingSma{" + count + "/" + period + ", lastDay=" + lastDay + ", value=" + value() + "}";
+    }
+}
@@ -9,24 +9,25 @@ import androidx.work.WorkerParameters;
 
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.TimeZone;
+import java.util.Map;
 import java.io.IOException;
-import org.json.JSONArray;
+import java.time.LocalDate;
 
 public class SMAWorker extends Worker {
     private static final String TAG = "SMAWorker";
 
+    static final String BARCHART_USER_AGENT = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/142.0.0.0 Safari/537.36";
+    static final String YAHOO_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
+
+    // One in-flight download per (source, symbol) across the worker and the JS bridge
+    private static final SingleFlight<BarchartSnapshot> BARCHART_FLIGHTS = new SingleFlight<>("barchart");
+    private static final SingleFlight<PriceSeries> HISTORY_FLIGHTS = new SingleFlight<>("yahoo-history");
+    private static final SingleFlight<Double> PRICE_FLIGHTS = new SingleFlight<>("yahoo-price");
+
     public SMAWorker(@NonNull Context context, @NonNull WorkerParameters params) {
         super(context, params);
     }
@@ -35,104 +36,300 @@ public class SMAWorker extends Worker {
     @Override
     public Result doWork() {
         try {
-            // Read settings
-            String index = PrefsHelper.getString(getApplicationContext(), PrefsHelper.KEY_INDEX, "$SPX");
-            int smaPeriod = PrefsHelper.getInt(getApplicationContext(), PrefsHelper.KEY_SMA, 200);
-            float buy = PrefsHelper.getFloat(getApplicationContext(), PrefsHelper.KEY_BUY, 4.0f);
-            float sell = PrefsHelper.getFloat(getApplicationContext(), PrefsHelper.KEY_SELL, 3.0f);
-
-            // Handle case where index might be stored as string "null" from JavaScript
-            String symbol = "$SPX"; // Default
-            if (index != null && !index.isEmpty() && !"null".equalsIgnoreCase(index)) {
-                symbol = index;
-            }
+            Context ctx = getApplicationContext();
+            HttpCache.install(ctx);
+            List<Watchlist.Entry> entries = Watchlist.load(ctx);
+            Log.i(TAG, "Evaluating " + entries.size() + " symbol(s): " + entries);
+            loadSourceState(ctx);
+            VolatilityGate.Plan plan = VolatilityGate.plan(ctx, entries, System.currentTimeMillis());
+            List<Watchlist.Entry> active = plan.active();
 
-            // Fetch current price and 200-day SMA from barchart.com
-            Log.i(TAG, "Fetching data from barchart.com for symbol: " + symbol);
-            JSONObject barchartData = getBarchartData(symbol);
-            
-            if (barchartData == null || !barchartData.has("currentPrice") || !barchartData.has("sma200")) {
-                Log.e(TAG, "Failed to fetch data from barchart.com");
-                String notifFrequency = PrefsHelper.getString(getApplicationContext(), PrefsHelper.KEY_NOTIF_FREQUENCY, "on_change");
-                if (!"disabled".equals(notifFrequency)) {
-                    NotificationHelper.createChannels(getApplicationContext());
-                    NotificationHelper.notifySignal(getApplicationContext(), "SMA Alerts", "Failed to fetch data from barchart.com. Will retry later.");
-                }
-                WorkScheduler.scheduleDailyAnalysis(getApplicationContext());
-                return Result.retry();
+            // One batched request for every symbol's live price and last few closes
+            Map<String, BatchQuoteClient.Quote> quotes = active.isEmpty() || CircuitBreaker.of(SymbolMap.YAHOO).isOpen(System.currentTimeMillis())
+                    ? Collections.emptyMap()
+                    : fetchQuotes(yahooSymbols(active));
+            DataSource source = openSources(ctx, active, quotes);
+            List<WatchlistEvaluator.Evaluation> results = WatchlistEvaluator.evaluateAll(active,
+                    entry -> plan.decision(entry) == VolatilityGate.Decision.QUOTE
+                            ? evaluateQuoteFirst(ctx, entry, quotes, source)
+                            : evaluate(entry, source),
+                    WatchlistEvaluator.MAX_PARALLEL, WatchlistEvaluator.SYMBOL_TIMEOUT_MS);
+            return finishRun(ctx, plan, results);
+        } catch (Exception e) {
+            Log.e(TAG, "Unexpected error in SMAWorker", e);
+            // Try again later with exponential backoff; that run schedules the next one
+            return Result.retry();
+        }
+    }
+
+    /** Restores the per-source latency samples and circuit breakers saved by the last run. */
+    static void loadSourceState(Context ctx) {
+        LatencyTracker.load(ctx, SymbolMap.YAHOO, SymbolMap.BARCHART);
+        CircuitBreaker.load(ctx, SymbolMap.YAHOO, SymbolMap.BARCHART);
+    }
+
+    static List<String> yahooSymbols(List<Watchlist.Entry> entries) {
+        List<String> yahooSymbols = new ArrayList<>();
+        for (Watchlist.Entry entry : entries) {
+            yahooSymbols.add(yahooSymbol(entry.symbol));
+        }
+        return yahooSymbols;
+    }
+
+    /**
+     * Shares the batch quotes with the UI and returns the source a run evaluates with:
+     * the rolling window over Yahoo closes first, barchart.com when Yahoo fails or lags
+     * and the page lists the entry's period.
+     * A source whose breaker is open is skipped without a request.
+     */
+    static DataSource openSources(Context ctx, List<Watchlist.Entry> entries, Map<String, BatchQuoteClient.Quote> quotes) {
+        // Share the fresh prices with the UI's getLatestPrice
+        MarketDataRepository repository = MarketDataRepository.get(ctx);
+        for (Watchlist.Entry entry : entries) {
+            BatchQuoteClient.Quote quote = quotes.get(yahooSymbol(entry.symbol));
+            if (quote != null) {
+                repository.putPrice(entry.symbol, quote.price);
             }
-            
-            // Extract current price and SMA from barchart data
-            double current = barchartData.getDouble("currentPrice");
-            double sma = barchartData.getDouble("sma200");
-            
-            Log.i(TAG, "Got data from barchart.com - Price: " + current + ", SMA200: " + sma);
-            double pct = ((current - sma) / sma) * 100.0;
-            String signal = determineSignal(pct, buy, sell);
+        }
+        return new HedgedDataSource(
+                new GuardedDataSource(new YahooDataSource(ctx, quotes)),
+                new GuardedDataSource(new BarchartDataSource(repository)));
+    }
 
-            // Compare with yesterday
-            String lastSignal = PrefsHelper.getString(getApplicationContext(), PrefsHelper.KEY_LAST_SIGNAL, "");
-            String lastDate = PrefsHelper.getString(getApplicationContext(), PrefsHelper.KEY_LAST_DATE, "");
-            String notifFrequency = PrefsHelper.getString(getApplicationContext(), PrefsHelper.KEY_NOTIF_FREQUENCY, "on_change");
+    /**
+     * Saves the source state, notifies, persists and logs each evaluated entry, and schedules
+     * the next run. {@code results} are for the plan's active entries. Returns retry
+     * when entries were due but none could be evaluated.
+     */
+    static Result finishRun(Context ctx, VolatilityGate.Plan plan, List<WatchlistEvaluator.Evaluation> results) {
+        List<Watchlist.Entry> entries = plan.entries;
+        LatencyTracker.save(ctx, SymbolMap.YAHOO, SymbolMap.BARCHART);
+        CircuitBreaker.save(ctx, SymbolMap.YAHOO, SymbolMap.BARCHART);
 
-            Log.d(TAG, "Current signal: " + signal + " (" + String.format(Locale.US, "%.2f%%", pct) + ")");
-            Log.d(TAG, "Last signal: " + lastSignal + " on " + lastDate);
-            Log.d(TAG, "Notification frequency: " + notifFrequency);
+        String notifFrequency = PrefsHelper.settings(ctx).notifFrequency;
+        Log.d(TAG, "Notification frequency: " + notifFrequency);
+        int evaluated = 0;
+        for (WatchlistEvaluator.Evaluation result : results) {
+            if (result != null) {
+                VolatilityGate.recordEvaluation(ctx, result);
+                applySignal(ctx, result, notifFrequency, entries.size() > 1);
+                evaluated++;
+            }
+        }
+        if (evaluated > 0) {
+            // History for auditing and charting; the prefs only keep the last signal
+            SignalLog.get(ctx).append((int) BarchartSnapshot.tradingDay(System.currentTimeMillis()), results);
+        }
 
-            boolean shouldNotify = false;
-            
-            if ("disabled".equals(notifFrequency)) {
-                Log.d(TAG, "Notifications disabled, skipping notification");
-            } else if ("daily".equals(notifFrequency)) {
-                // Send notification every day regardless of signal change
-                shouldNotify = true;
-                Log.d(TAG, "Daily notification mode: sending notification");
-            } else if ("on_change".equals(notifFrequency)) {
-                // Only send notification when signal changes (default behavior)
-                // On first run (empty lastSignal), don't notify (no change detected)
-                if (lastSignal == null || lastSignal.isEmpty()) {
-                    Log.d(TAG, "First run - no previous signal to compare, skipping notification");
-                } else if (!signal.equals(lastSignal)) {
-                    shouldNotify = true;
-                    Log.d(TAG, "Signal change detected: " + lastSignal + " -> " + signal);
-                } else {
-                    Log.d(TAG, "No signal change, no notification sent");
-                }
+        if (evaluated == 0 && !plan.active().isEmpty()) {
+            Log.e(TAG, "Failed to fetch data for any symbol");
+            if (!"disabled".equals(notifFrequency)) {
+                NotificationHelper.createChannels(ctx);
+                NotificationHelper.notifySignal(ctx, "SMA Alerts", "Failed to fetch market data. Will retry later.");
             }
+            // The retry runs this worker again, and that run schedules the next one
+            return Result.retry();
+        }
+        if (evaluated < plan.active().size()) {
+            Log.w(TAG, "Evaluated " + evaluated + " of " + plan.active().size() + " symbols; the rest are retried next run");
+        }
+        int[] gateStats = VolatilityGate.stats(ctx);
+        Log.i(TAG, "Volatility gate: " + plan.skipped() + " skipped this run, " + gateStats[0] + " in total, "
+                + gateStats[1] + " possibly wrong");
+        long[] cacheStats = HttpCache.installedStats();
+        if (cacheStats != null) {
+            Log.i(TAG, "HTTP cache: " + cacheStats[0] + " hits, " + cacheStats[1] + " misses, " + cacheStats[2] + " revalidated");
+        }
+        long[] retryStats = RetryEngine.shared().stats();
+        Log.i(TAG, "Retries: " + retryStats[1] + " attempts for " + retryStats[0] + " calls, " + retryStats[3] + " gave up");
+
+        // Reschedule the next run
+        WorkScheduler.rescheduleAfterRun(ctx);
+        return Result.success();
+    }
+
+    /**
+     * Fetches price and SMA for one watchlist entry from {@code source}.
+     * Returns null if the source has no data. Safe to call for several entries at once.
+     */
+    static WatchlistEvaluator.Evaluation evaluate(Watchlist.Entry entry, DataSource source) throws Exception {
+        // A miss is retried once after a short jittered backoff, within the symbol's time budget
+        RetryEngine.Outcome<DataSource.Reading> outcome = RetryEngine.shared().await("evaluate " + entry.symbol,
+                RetryEngine.Policy.WORKER, (attempt, budgetMillis) -> source.fetch(entry.symbol, entry.smaPeriod));
+        if (outcome.value == null && outcome.error != null) {
+            Log.e(TAG, "No data source could supply " + entry.symbol + ": " + outcome.attempts);
+            throw outcome.error;
+        }
+        return toEvaluation(entry, outcome);
+    }
+
+    /** A downgraded entry: the batched quote alone if it suffices, otherwise the full fetch. */
+    static WatchlistEvaluator.Evaluation evaluateQuoteFirst(Context ctx, Watchlist.Entry entry,
+                                                           Map<String, BatchQuoteClient.Quote> quotes, DataSource source) throws Exception {
+        WatchlistEvaluator.Evaluation checked = VolatilityGate.quoteCheck(ctx, entry, quotes);
+        return checked != null ? checked : evaluate(entry, source);
+    }
+
+    /** The evaluation for a finished fetch of {@code entry}, or null if it got no reading. */
+    static WatchlistEvaluator.Evaluation toEvaluation(Watchlist.Entry entry, RetryEngine.Outcome<DataSource.Reading> outcome) {
+        DataSource.Reading reading = outcome.value;
+        if (reading == null) {
+            Log.e(TAG, "No data source could supply " + entry.symbol + ": " + outcome.attempts);
+            return null;
+        }
+        Log.i(TAG, "Got " + reading);
+        return new WatchlistEvaluator.Evaluation(entry, reading.price, reading.sma, reading.smaPeriod);
+    }
+
+    /** Live quotes for {@code yahooSymbols}, retrying once if the batch request returns nothing. */
+    private static Map<String, BatchQuoteClient.Quote> fetchQuotes(List<String> yahooSymbols) {
+        RetryEngine.Outcome<Map<String, BatchQuoteClient.Quote>> outcome = RetryEngine.shared().await("batch quotes",
+                RetryEngine.Policy.WORKER, quoteAttempt(yahooSymbols));
+        return outcome.isSuccess() ? outcome.value : Collections.emptyMap();
+    }
+
+    /** One batch quote request; an empty answer counts as a miss so it is retried. */
+    static RetryEngine.Attempt<Map<String, BatchQuoteClient.Quote>> quoteAttempt(List<String> yahooSymbols) {
+        return (attempt, budgetMillis) -> {
+            Map<String, BatchQuoteClient.Quote> quotes = BatchQuoteClient.yahoo().fetch(yahooSymbols);
+            return quotes.isEmpty() ? null : quotes;
+        };
+    }
+
+    /** Notifies according to the frequency setting and persists the entry's signal state. */
+    private static void applySignal(Context ctx, WatchlistEvaluator.Evaluation result, String notifFrequency, boolean labelled) {
+        Watchlist.Entry entry = result.entry;
+        String signal = result.signal;
+        double pct = result.percent;
 
-            if (shouldNotify) {
-                NotificationHelper.createChannels(getApplicationContext());
-                String msg = String.format(Locale.US, "Signal: %s (%.2f%% vs SMA)", signal, pct);
-                NotificationHelper.notifySignal(getApplicationContext(), "SMA Alerts", msg);
-                Log.i(TAG, "Notification sent: " + msg);
+        // Compare with yesterday
+        PrefsHelper.LastSignal last = PrefsHelper.lastSignal(ctx, entry);
+        String lastSignal = last.signal;
+        String lastDate = last.date;
+
+        Log.d(TAG, entry.symbol + " current signal: " + signal + " (" + String.format(Locale.US, "%.2f%%", pct) + ")");
+        Log.d(TAG, entry.symbol + " last signal: " + lastSignal + " on " + lastDate);
+
+        boolean shouldNotify = false;
+
+        if ("disabled".equals(notifFrequency)) {
+            Log.d(TAG, "Notifications disabled, skipping notification");
+        } else if ("daily".equals(notifFrequency)) {
+            // Send notification every day regardless of signal change
+            shouldNotify = true;
+            Log.d(TAG, "Daily notification mode: sending notification");
+        } else if ("on_change".equals(notifFrequency)) {
+            // Only send notification when signal changes (default behavior)
+            // On first run (empty lastSignal), don't notify (no change detected)
+            if (lastSignal == null || lastSignal.isEmpty()) {
+                Log.d(TAG, "First run - no previous signal to compare, skipping notification");
+            } else if (!signal.equals(lastSignal)) {
+                shouldNotify = true;
+                Log.d(TAG, "Signal change detected: " + lastSignal + " -> " + signal);
+            } else {
+                Log.d(TAG, "No signal change, no notification sent");
             }
+        }
 
-            // Persist as today's signal
-            PrefsHelper.putString(getApplicationContext(), PrefsHelper.KEY_LAST_SIGNAL, signal);
-            PrefsHelper.putFloat(getApplicationContext(), PrefsHelper.KEY_LAST_PERCENT, (float) pct);
-            PrefsHelper.putString(getApplicationContext(), PrefsHelper.KEY_LAST_DATE, today());
+        if (shouldNotify) {
+            NotificationHelper.createChannels(ctx);
+            String msg = String.format(Locale.US, "Signal: %s (%.2f%% vs SMA)", signal, pct);
+            String title = labelled ? "SMA Alerts: " + entry.symbol : "SMA Alerts";
+            NotificationHelper.notifySignal(ctx, title, msg);
+            Log.i(TAG, "Notification sent: " + title + " - " + msg);
+        }
 
-            // Reschedule the next run
-            WorkScheduler.scheduleDailyAnalysis(getApplicationContext());
-            return Result.success();
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error in SMAWorker", e);
-            // Try again later with exponential backoff
-            WorkScheduler.scheduleDailyAnalysis(getApplicationContext());
-            return Result.retry();
+        // Persist as today's signal, all three or none
+        boolean saved = PrefsHelper.edit(ctx)
+                .putString(entry.stateKey(PrefsHelper.KEY_LAST_SIGNAL), signal)
+                .putFloat(entry.stateKey(PrefsHelper.KEY_LAST_PERCENT), (float) pct)
+                .putString(entry.stateKey(PrefsHelper.KEY_LAST_DATE), tradingDate(System.currentTimeMillis()))
+                .commit();
+        if (!saved) {
+            Log.w(TAG, "Failed to save the signal state for " + entry.symbol);
         }
     }
 
+    /**
+     * Brings the persisted rolling SMA window for the symbol up to date and returns
+     * {price, sma}, or null if Yahoo Finance has too little history for the period.
+     * Throws if the history could not be fetched at all.
+     *
+     * A window saved by an earlier run (or rebuilt from the on-device HistoryStore) only
+     * needs the closes since its last day, so the request asks Yahoo for exactly that
+     * span, or nothing at all when {@code recent} (closes from a batched quote, may be
+     * null) already covers it. Without either it is seeded from full history. Committed
+     * closes are appended to the store.
+     * Today's bar is still moving, so it is never committed: it is used as the live price
+     * for a provisional SMA instead. On days without a bar (weekends, holidays, before
+     * the open) the latest committed close and its SMA are returned.
+     */
+    static double[] evaluateRollingSma(Context ctx, String symbol, int period, PriceSeries recent) throws IOException {
+        int today = (int) BarchartSnapshot.tradingDay(System.currentTimeMillis());
+        HistoryStore store = HistoryStore.get(ctx);
+        RollingSma window = RollingSma.load(ctx, symbol, period);
+        PriceSeries stored = null;
+        if (window == null || !window.isReady()) {
+            window = null;
+            // A period not seen before can still be seeded from closes already on the device
+            stored = store.tail(symbol, period);
+            if (stored != null && stored.size() < period) {
+                stored = null;
+            }
+        }
+
+        PriceSeries series;
+        if (window != null || stored != null) {
+            // Only the missing tail; starting at the last known day picks up a late correction
+            int lastKnownDay = window != null ? window.lastDay() : stored.lastDay();
+            if (recent != null && !recent.isEmpty() && recent.dayAt(0) <= lastKnownDay) {
+                // The batched quote already reaches back to the last known day
+                series = recent;
+            } else {
+                series = getHistorySince(yahooSymbol(symbol), lastKnownDay);
+            }
+        } else {
+            series = getHistoricalData(yahooSymbol(symbol), period + 1);
+        }
+        if (series == null) {
+            throw new IOException("No history from Yahoo Finance for " + symbol);
+        }
+        if (series.isEmpty()) {
+            return null;
+        }
+
+        PriceSeries committed = series.slice(0, series.floorIndex(today - 1) + 1);
+        store.append(symbol, committed);
+        if (window == null) {
+            // Stored closes plus the fetched tail, overlapping days taken from the fetch
+            PriceSeries history = stored != null ? stored.merge(committed) : committed;
+            window = RollingSma.seed(history, period);
+            Log.d(TAG, "Seeded SMA" + period + " window for " + symbol + " from " + history);
+        } else {
+            for (int i = 0; i < committed.size(); i++) {
+                int day = committed.dayAt(i);
+                if (day >= window.lastDay()) {
+                    window.push(day, committed.closeAt(i));
+                }
+            }
+        }
+        if (!window.isReady()) {
+            Log.w(TAG, "Not enough history for SMA" + period + " of " + symbol + ": " + window.size() + " closes");
+            return null;
+        }
+        window.save(ctx, symbol);
 
-    private static double computeSMA(JSONObject series, List<String> dates, int period) throws Exception {
-        if (dates.size() < period) throw new IllegalArgumentException("Not enough data for SMA");
-        double sum = 0.0;
-        for (int i = 0; i < period; i++) {
-            JSONObject day = series.getJSONObject(dates.get(i));
-            sum += day.getDouble("4. close");
+        int todayIndex = series.indexOf(today);
+        if (todayIndex >= 0) {
+            double live = series.closeAt(todayIndex);
+            return new double[]{live, window.provisional(live)};
         }
-        return sum / period;
+        return new double[]{window.lastClose(), window.value()};
+    }
+
+    /** Yahoo Finance ticker for a symbol; the barchart.com index symbols differ. */
+    static String yahooSymbol(String symbol) {
+        return SymbolMap.yahoo(symbol);
     }
 
     // Made package-private for testing
@@ -144,203 +341,94 @@ public class SMAWorker extends Worker {
         return "HOLD";
     }
 
-    private static String today() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-        return sdf.format(new Date());
+    /**
+     * The New York trading date at {@code nowMillis}, as yyyy-MM-dd. Saved with the
+     * signal, it is the same day {@link VolatilityGate} counts the horizon up to.
+     */
+    static String tradingDate(long nowMillis) {
+        return LocalDate.ofEpochDay(BarchartSnapshot.tradingDay(nowMillis)).toString();
     }
 
     /**
      * Fetches current price and 200-day SMA from barchart.com.
-     * Returns a JSONObject with "currentPrice" and "sma200" keys.
+     * Returns a JSONObject with "currentPrice" and "sma200" keys, plus "smaN" for the
+     * other moving-average periods on the page.
      * Returns null if data cannot be retrieved.
      * Made package-private for testing.
      */
     static JSONObject getBarchartData(String symbol) {
-        HttpURLConnection connection = null;
-        BufferedReader reader = null;
+        BarchartSnapshot snapshot = getBarchartSnapshot(symbol);
+        if (snapshot == null) {
+            return null;
+        }
         try {
-            Log.d(TAG, "Fetching data from barchart.com for symbol: " + symbol);
-            
-            String urlString = "https://www.barchart.com/stocks/quotes/" + symbol + "/technical-analysis";
-            URL url = new URL(urlString);
-            connection = (HttpURLConnection) url.openConnection();
-            
-            // Set User-Agent to mimic a browser request (required by barchart.com)
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/142.0.0.0 Safari/537.36");
-            connection.setRequestProperty("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.7");
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(15000);
-            connection.setReadTimeout(15000);
-            
-            int responseCode = connection.getResponseCode();
-            Log.d(TAG, "Barchart.com API response code: " + responseCode);
-            
-            if (responseCode != HttpURLConnection.HTTP_OK) {
-                Log.e(TAG, "Barchart.com API returned error code: " + responseCode);
-                return null;
-            }
-            
-            // Read response
-            reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+            return snapshot.toJson();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to convert barchart.com snapshot for symbol: " + symbol, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the barchart.com technical-analysis page for the symbol,
+     * downloading it only if none is cached with a fresh price, see BarchartSnapshot.
+     * Concurrent callers for the same symbol share one download.
+     * Returns null if data cannot be retrieved.
+     */
+    static BarchartSnapshot getBarchartSnapshot(String symbol) {
+        BarchartSnapshot cached = BarchartSnapshot.cached(symbol, System.currentTimeMillis());
+        if (cached != null) {
+            Log.d(TAG, "Using cached barchart.com snapshot: " + cached);
+            return cached;
+        }
+        return BARCHART_FLIGHTS.execute(symbol, () -> {
+            BarchartSnapshot snapshot = fetchBarchartSnapshot(symbol);
+            if (snapshot != null) {
+                BarchartSnapshot.cache(snapshot);
             }
-            
-            String html = response.toString();
-            
-            // Extract current price from JSON data in script tag
-            double currentPrice = 0.0;
-            try {
-                // Try multiple patterns to find the price
-                // Pattern 1: "lastPrice":681.53 or "lastPrice":"681.53" or "lastPrice":"23,413.67"
-                int lastPriceStart = html.indexOf("\"lastPrice\":");
-                if (lastPriceStart > 0) {
-                    int valueStart = lastPriceStart + 12; // length of "lastPrice":
-                    // Skip whitespace
-                    while (valueStart < html.length() && html.charAt(valueStart) == ' ') {
-                        valueStart++;
-                    }
-                    
-                    // Check if value is quoted
-                    boolean isQuoted = valueStart < html.length() && (html.charAt(valueStart) == '"' || html.charAt(valueStart) == '\'');
-                    char quoteChar = isQuoted ? html.charAt(valueStart) : 0;
-                    
-                    // Skip opening quote if present
-                    if (isQuoted) {
-                        valueStart++;
-                    }
-                    
-                    // Find the end - look for closing quote if quoted, or comma/} if not quoted
-                    int valueEnd = valueStart;
-                    if (isQuoted) {
-                        // Find closing quote
-                        while (valueEnd < html.length() && html.charAt(valueEnd) != quoteChar) {
-                            valueEnd++;
-                        }
-                    } else {
-                        // Find comma, }, or newline
-                        while (valueEnd < html.length()) {
-                            char c = html.charAt(valueEnd);
-                            if (c == ',' || c == '}' || c == '\n') {
-                                break;
-                            }
-                            valueEnd++;
-                        }
-                    }
-                    
-                    if (valueEnd > valueStart) {
-                        String priceStr = html.substring(valueStart, valueEnd).trim().replace(",", "");
-                        try {
-                            currentPrice = Double.parseDouble(priceStr);
-                            Log.d(TAG, "Extracted current price (method 1): " + currentPrice + " from string: " + html.substring(valueStart, valueEnd));
-                        } catch (NumberFormatException e) {
-                            Log.w(TAG, "Failed to parse price string: " + priceStr);
-                        }
-                    }
-                }
-                
-                // Pattern 2: Look in currentSymbol object if method 1 failed
-                if (currentPrice <= 0) {
-                    int currentSymbolStart = html.indexOf("\"currentSymbol\":");
-                    if (currentSymbolStart > 0) {
-                        int lastPriceStart2 = html.indexOf("\"lastPrice\":", currentSymbolStart);
-                        if (lastPriceStart2 > 0 && lastPriceStart2 < currentSymbolStart + 5000) { // within reasonable distance
-                            int valueStart = lastPriceStart2 + 12;
-                            // Skip whitespace
-                            while (valueStart < html.length() && html.charAt(valueStart) == ' ') {
-                                valueStart++;
-                            }
-                            
-                            // Check if value is quoted
-                            boolean isQuoted = valueStart < html.length() && (html.charAt(valueStart) == '"' || html.charAt(valueStart) == '\'');
-                            char quoteChar = isQuoted ? html.charAt(valueStart) : 0;
-                            
-                            // Skip opening quote if present
-                            if (isQuoted) {
-                                valueStart++;
-                            }
-                            
-                            // Find the end - look for closing quote if quoted, or comma/} if not quoted
-                            int valueEnd = valueStart;
-                            if (isQuoted) {
-                                // Find closing quote
-                                while (valueEnd < html.length() && html.charAt(valueEnd) != quoteChar) {
-                                    valueEnd++;
-                                }
-                            } else {
-                                // Find comma, }, or newline
-                                while (valueEnd < html.length()) {
-                                    char c = html.charAt(valueEnd);
-                                    if (c == ',' || c == '}' || c == '\n') {
-                                        break;
-                                    }
-                                    valueEnd++;
-                                }
-                            }
-                            
-                            if (valueEnd > valueStart) {
-                                String priceStr = html.substring(valueStart, valueEnd).trim().replace(",", "");
-                                try {
-                                    currentPrice = Double.parseDouble(priceStr);
-                                    Log.d(TAG, "Extracted current price (method 2): " + currentPrice + " from string: " + html.substring(valueStart, valueEnd));
-                                } catch (NumberFormatException e) {
-                                    Log.w(TAG, "Failed to parse price string: " + priceStr);
-                                }
-                            }
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to extract current price from JSON", e);
+            return snapshot;
+        });
+    }
+
+    private static BarchartSnapshot fetchBarchartSnapshot(String symbol) {
+        Log.d(TAG, "Fetching data from barchart.com for symbol: " + symbol);
+        String urlString = "https://www.barchart.com/stocks/quotes/" + symbol + "/technical-analysis";
+        return downloadBarchartSnapshot(symbol, urlString);
+    }
+
+    private static BarchartSnapshot downloadBarchartSnapshot(String symbol, String urlString) {
+        // Set User-Agent to mimic a browser request (required by barchart.com).
+        // Not through the HTTP cache: the scan stops early, so the page is never read whole
+        // and only the parsed snapshot is kept, see BarchartSnapshot.
+        try (SharedHttpClient.Response response = HttpCache.fetch(urlString, null,
+                "User-Agent", BARCHART_USER_AGENT,
+                "Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.7")) {
+            Log.d(TAG, "Barchart.com API response code: " + response.code + (response.fromCache ? " (cached)" : ""));
+            
+            if (!response.isOk()) {
+                Log.e(TAG, "Barchart.com API returned error code: " + response.code);
+                return null;
             }
             
-            // Extract 200-day SMA from HTML table
-            double sma200 = 0.0;
-            try {
-                // Look for the 200-Day row in the table - handle various formats
-                int rowStart = html.indexOf("<td>200-Day</td>");
-                if (rowStart < 0) {
-                    rowStart = html.indexOf("<td>200 Day</td>");
-                }
-                if (rowStart < 0) {
-                    rowStart = html.indexOf("200-Day");
-                }
-                
-                if (rowStart > 0) {
-                    // Find the next <td> tag after "200-Day" which contains the SMA value
-                    // Skip the first <td> (which contains "200-Day") and get the second one
-                    int firstTdEnd = html.indexOf("</td>", rowStart);
-                    if (firstTdEnd > 0) {
-                        int tdStart = html.indexOf("<td", firstTdEnd);
-                        if (tdStart > 0) {
-                            int valueStart = html.indexOf(">", tdStart) + 1;
-                            int valueEnd = html.indexOf("<", valueStart);
-                            if (valueEnd > valueStart) {
-                                String smaStr = html.substring(valueStart, valueEnd).trim().replace(",", "").replace("$", "");
-                                sma200 = Double.parseDouble(smaStr);
-                                Log.d(TAG, "Extracted 200-day SMA: " + sma200);
-                            }
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to extract 200-day SMA from HTML", e);
+            // Scan the page as it streams in; stops as soon as price and SMA are found
+            BarchartPageScanner.Result page = BarchartPageScanner.scan(response.body());
+            Log.d(TAG, "Scanned " + page.bytesRead + " bytes from barchart.com" + (page.earlyExit ? " (stopped early)" : "")
+                    + ", price from " + (page.priceFromCurrentSymbol ? "currentSymbol" : "first lastPrice"));
+
+            if (page.challenge) {
+                Log.e(TAG, "Barchart.com returned a bot-challenge page for symbol: " + symbol);
+                return null;
             }
-            
-            if (currentPrice <= 0 || sma200 <= 0) {
+
+            double currentPrice = page.currentPrice;
+            double sma200 = page.sma200;
+            if (!page.isValid()) {
                 Log.e(TAG, "Failed to extract valid data - currentPrice: " + currentPrice + ", sma200: " + sma200);
                 return null;
             }
             
-            JSONObject result = new JSONObject();
-            result.put("currentPrice", currentPrice);
-            result.put("sma200", sma200);
-            
             Log.i(TAG, "Successfully fetched data from barchart.com - Price: " + currentPrice + ", SMA200: " + sma200);
-            return result;
+            return BarchartSnapshot.fromScan(symbol, page, System.currentTimeMillis());
             
         } catch (IOException e) {
             Log.e(TAG, "IO error fetching data from barchart.com for symbol: " + symbol, e);
@@ -348,133 +436,70 @@ public class SMAWorker extends Worker {
         } catch (Exception e) {
             Log.e(TAG, "Unexpected error fetching data from barchart.com for symbol: " + symbol, e);
             return null;
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    Log.w(TAG, "Error closing reader", e);
-                }
-            }
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
 
     /**
-     * Fetches historical daily data from Yahoo Finance API for SMA calculation.
-     * Returns a JSONObject with time series data in format similar to Alpha Vantage:
-     * { "YYYY-MM-DD": { "4. close": price }, ... }
+     * Fetches daily closes from Yahoo Finance for SMA calculation as a PriceSeries
+     * (oldest first, null closes dropped, one close per New York trading day).
+     * The requested range grows with daysNeeded so multi-year windows are covered.
      * Returns null if data cannot be retrieved.
      * Made package-private for testing.
-     * @deprecated Use getBarchartData instead
      */
-    @Deprecated
-    static JSONObject getHistoricalData(String symbol, int daysNeeded) {
-        HttpURLConnection connection = null;
-        BufferedReader reader = null;
-        try {
-            Log.d(TAG, "Fetching historical data from Yahoo Finance for symbol: " + symbol + ", days needed: " + daysNeeded);
-            
-            // Request 1 year of data to ensure we have at least 200 trading days
-            // 1 year = ~252 trading days, which is more than enough for 200-day SMA
-            String urlString = "https://query1.finance.yahoo.com/v8/finance/chart/" + symbol + "?interval=1d&range=1y";
-            URL url = new URL(urlString);
-            connection = (HttpURLConnection) url.openConnection();
-            
-            // Set User-Agent to mimic a browser request (required by Yahoo Finance)
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(15000); // 15 seconds for historical data
-            connection.setReadTimeout(15000);
-            
-            int responseCode = connection.getResponseCode();
-            Log.d(TAG, "Yahoo Finance historical data API response code: " + responseCode);
-            
-            if (responseCode != HttpURLConnection.HTTP_OK) {
-                Log.e(TAG, "Yahoo Finance API returned error code: " + responseCode);
+    static PriceSeries getHistoricalData(String symbol, int daysNeeded) {
+        String query = "range=" + historyRange(daysNeeded);
+        return HISTORY_FLIGHTS.execute(symbol + "?" + query,
+                () -> fetchHistory(symbol, query, daysNeeded, HttpCache.YAHOO_HISTORY));
+    }
+
+    /**
+     * Fetches only the daily closes from {@code fromDay} (New York epoch day, inclusive)
+     * up to now. With closes kept on the device this is usually a bar or two, a few
+     * hundred bytes instead of a year of history.
+     * Returns null if data cannot be retrieved.
+     */
+    static PriceSeries getHistorySince(String symbol, int fromDay) {
+        // period2 is "now", so the URL is never requested twice: not worth caching
+        return HISTORY_FLIGHTS.execute(symbol + "?since=" + fromDay,
+                () -> fetchHistory(symbol, deltaQuery(fromDay, System.currentTimeMillis()), 0, null));
+    }
+
+    /** period1/period2 query for the bars from {@code fromDay} through {@code nowMillis}. */
+    static String deltaQuery(int fromDay, long nowMillis) {
+        // Midnight UTC is before the open in New York on the same date
+        long period1 = fromDay * 86400L;
+        long period2 = Math.max(nowMillis / 1000, period1 + 86400L);
+        return "period1=" + period1 + "&period2=" + period2;
+    }
+
+    private static PriceSeries fetchHistory(String symbol, String query, int daysNeeded, HttpCache.Policy policy) {
+        Log.d(TAG, "Fetching historical data from Yahoo Finance for symbol: " + symbol + " (" + query + ")");
+        String urlString = "https://query1.finance.yahoo.com/v8/finance/chart/" + symbol
+                + "?interval=1d&" + query;
+        // Set User-Agent to mimic a browser request (required by Yahoo Finance)
+        try (SharedHttpClient.Response response = HttpCache.fetch(urlString, policy,
+                "User-Agent", YAHOO_USER_AGENT, "Accept", "application/json")) {
+            Log.d(TAG, "Yahoo Finance historical data API response code: " + response.code + (response.fromCache ? " (cached)" : ""));
+            
+            if (!response.isOk()) {
+                Log.e(TAG, "Yahoo Finance API returned error code: " + response.code);
                 return null;
             }
             
-            // Read response
-            reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            
-            // Parse JSON response
-            JSONObject jsonResponse = new JSONObject(response.toString());
-            JSONObject chart = jsonResponse.optJSONObject("chart");
+            YahooChartDecoder.Chart chart = YahooChartDecoder.decode(response.body());
             if (chart == null) {
-                Log.e(TAG, "Invalid response structure from Yahoo Finance");
+                Log.e(TAG, "Invalid or mismatched chart data from Yahoo Finance");
                 return null;
             }
             
-            JSONArray result = chart.optJSONArray("result");
-            if (result == null || result.length() == 0) {
-                Log.e(TAG, "No result data from Yahoo Finance");
-                return null;
-            }
-            
-            JSONObject resultObj = result.getJSONObject(0);
-            JSONArray timestamps = resultObj.optJSONArray("timestamp");
-            JSONObject indicators = resultObj.optJSONObject("indicators");
-            
-            if (timestamps == null || indicators == null) {
-                Log.e(TAG, "Missing timestamp or indicators in Yahoo Finance response");
-                return null;
-            }
-            
-            JSONArray quote = indicators.optJSONArray("quote");
-            if (quote == null || quote.length() == 0) {
-                Log.e(TAG, "No quote data in Yahoo Finance response");
-                return null;
-            }
-            
-            JSONObject quoteData = quote.getJSONObject(0);
-            JSONArray closes = quoteData.optJSONArray("close");
-            
-            if (closes == null || timestamps.length() != closes.length()) {
-                Log.e(TAG, "Mismatch between timestamps and close prices");
-                return null;
-            }
-            
-            // Convert Yahoo Finance format to Alpha Vantage-like format for compatibility
-            JSONObject timeSeries = new JSONObject();
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
-            sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-            
-            for (int i = 0; i < timestamps.length(); i++) {
-                long timestamp = timestamps.getLong(i) * 1000; // Convert seconds to milliseconds
-                Date date = new Date(timestamp);
-                String dateStr = sdf.format(date);
-                
-                // Skip null/NaN close prices
-                if (closes.isNull(i)) {
-                    continue;
-                }
-                
-                double close = closes.getDouble(i);
-                if (Double.isNaN(close) || close <= 0) {
-                    continue;
-                }
-                
-                JSONObject dayData = new JSONObject();
-                dayData.put("4. close", close);
-                timeSeries.put(dateStr, dayData);
-            }
-            
-            if (timeSeries.length() < daysNeeded) {
-                Log.w(TAG, "Not enough data points from Yahoo Finance: " + timeSeries.length() + " < " + daysNeeded);
+            PriceSeries series = PriceSeries.fromChart(chart);
+            if (series.size() < daysNeeded) {
+                Log.w(TAG, "Not enough data points from Yahoo Finance: " + series.size() + " < " + daysNeeded);
                 // Still return what we have, let the caller decide
             }
             
-            Log.i(TAG, "Successfully fetched " + timeSeries.length() + " days of historical data from Yahoo Finance");
-            return timeSeries;
+            Log.i(TAG, "Successfully fetched " + series.size() + " days of historical data from Yahoo Finance");
+            return series;
             
         } catch (IOException e) {
             Log.e(TAG, "IO error fetching historical data from Yahoo Finance for symbol: " + symbol, e);
@@ -482,96 +507,55 @@ public class SMAWorker extends Worker {
         } catch (Exception e) {
             Log.e(TAG, "Unexpected error fetching historical data from Yahoo Finance for symbol: " + symbol, e);
             return null;
-        } finally {
-            // Clean up resources
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    Log.w(TAG, "Error closing reader", e);
-                }
-            }
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
 
+    /**
+     * Smallest Yahoo range that covers the given number of trading days
+     * (about 252 per year) with some slack for holidays and null bars.
+     */
+    static String historyRange(int tradingDays) {
+        if (tradingDays <= 4) return "5d";
+        if (tradingDays <= 18) return "1mo";
+        if (tradingDays <= 55) return "3mo";
+        if (tradingDays <= 240) return "1y";
+        if (tradingDays <= 480) return "2y";
+        if (tradingDays <= 1200) return "5y";
+        return "10y";
+    }
+
     /**
      * Fetches the latest real-time stock price from Yahoo Finance API using direct HTTP request.
      * Returns 0.0 if the price cannot be retrieved.
      * Made package-private for testing.
      */
     static double getLatestPrice(String symbol) {
-        HttpURLConnection connection = null;
-        BufferedReader reader = null;
-        try {
-            Log.d(TAG, "Fetching latest price from Yahoo Finance for symbol: " + symbol);
-            
-            // Yahoo Finance API endpoint
-            String urlString = "https://query1.finance.yahoo.com/v8/finance/chart/" + symbol + "?interval=1d&range=1d";
-            URL url = new URL(urlString);
-            connection = (HttpURLConnection) url.openConnection();
-            
-            // Set User-Agent to mimic a browser request (required by Yahoo Finance)
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(10000); // 10 seconds
-            connection.setReadTimeout(10000); // 10 seconds
-            
-            int responseCode = connection.getResponseCode();
-            Log.d(TAG, "Yahoo Finance API response code: " + responseCode);
-            
-            if (responseCode != HttpURLConnection.HTTP_OK) {
-                Log.e(TAG, "Yahoo Finance API returned error code: " + responseCode);
+        Double price = PRICE_FLIGHTS.execute(symbol, () -> fetchLatestPrice(symbol));
+        return price != null ? price : 0.0;
+    }
+
+    private static double fetchLatestPrice(String symbol) {
+        Log.d(TAG, "Fetching latest price from Yahoo Finance for symbol: " + symbol);
+        // Yahoo Finance API endpoint
+        String urlString = "https://query1.finance.yahoo.com/v8/finance/chart/" + symbol + "?interval=1d&range=1d";
+        // Set User-Agent to mimic a browser request (required by Yahoo Finance)
+        try (SharedHttpClient.Response response = HttpCache.fetch(urlString, HttpCache.YAHOO_QUOTE,
+                "User-Agent", YAHOO_USER_AGENT, "Accept", "application/json")) {
+            Log.d(TAG, "Yahoo Finance API response code: " + response.code + (response.fromCache ? " (cached)" : ""));
+            
+            if (!response.isOk()) {
+                Log.e(TAG, "Yahoo Finance API returned error code: " + response.code);
                 return 0.0;
             }
             
-            // Read response
-            reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            
-            // Parse JSON response
-            JSONObject jsonResponse = new JSONObject(response.toString());
-            JSONObject chart = jsonResponse.optJSONObject("chart");
+            YahooChartDecoder.Chart chart = YahooChartDecoder.decode(response.body());
             if (chart == null) {
-                Log.e(TAG, "Invalid response structure from Yahoo Finance");
-                return 0.0;
-            }
-            
-            JSONArray result = chart.optJSONArray("result");
-            if (result == null || result.length() == 0) {
                 Log.e(TAG, "No result data from Yahoo Finance");
                 return 0.0;
             }
             
-            JSONObject resultObj = result.getJSONObject(0);
-            JSONObject meta = resultObj.optJSONObject("meta");
-            if (meta == null) {
-                Log.e(TAG, "No meta data from Yahoo Finance");
-                return 0.0;
-            }
-            
-            // Try to get regular market price first
-            double price = 0.0;
-            if (meta.has("regularMarketPrice")) {
-                price = meta.getDouble("regularMarketPrice");
-                Log.d(TAG, "Got regular market price: " + price);
-            } else if (meta.has("previousClose")) {
-                // Fallback to previous close if market is closed
-                price = meta.getDouble("previousClose");
-                Log.d(TAG, "Using previous close price: " + price);
-            } else if (meta.has("chartPreviousClose")) {
-                // Another fallback option
-                price = meta.getDouble("chartPreviousClose");
-                Log.d(TAG, "Using chart previous close price: " + price);
-            }
-            
+            // Regular market price first, then previous close if the market is closed
+            double price = chart.latestPrice();
             if (price <= 0) {
                 Log.e(TAG, "Invalid price from Yahoo Finance for symbol: " + symbol);
                 return 0.0;
@@ -586,18 +570,6 @@ public class SMAWorker extends Worker {
         } catch (Exception e) {
             Log.e(TAG, "Unexpected error fetching price from Yahoo Finance for symbol: " + symbol, e);
             return 0.0;
-        } finally {
-            // Clean up resources
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    Log.w(TAG, "Error closing reader", e);
-                }
-            }
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
 
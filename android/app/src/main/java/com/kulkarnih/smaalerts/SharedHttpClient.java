@@ -0,0 +1,309 @@
+package com.kulkarnih.smaalerts;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The one place the app opens HTTP connections.
+ *
+ * A response body that is read to the end (or drained on close) returns its socket to
+ * HttpURLConnection's keep-alive pool, so a watchlist run talks to each host over one
+ * warm connection. A body abandoned with a long or unknown remainder, such as a page
+ * the scanner stopped early on, is disconnect()ed instead of downloaded. All HTTPS
+ * requests share one SSLSocketFactory, and with it one TLS session cache, so even a
+ * new socket resumes the previous session instead of doing a full handshake.
+ *
+ * Requests ask for gzip and bodies are inflated as they stream in, which keeps the
+ * early-exit page scanner and the JSON decoders working on the fly. Timeouts are
+ * configured per host, and cut shorter when the calling thread has a deadline (see
+ * {@link RetryEngine}).
+ */
+final class SharedHttpClient {
+    private static final String TAG = "SharedHttpClient";
+
+    /** Pooled idle connections per host (HttpURLConnection's default is 5). */
+    private static final String MAX_CONNECTIONS = "8";
+    /** A remainder longer than this is not worth draining to save its connection. */
+    private static final int DRAIN_LIMIT_BYTES = 64 * 1024;
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = 15000;
+    static final int DEFAULT_READ_TIMEOUT_MS = 20000;
+
+    private static final ConcurrentHashMap<String, int[]> HOST_TIMEOUTS = new ConcurrentHashMap<>();
+    /** Wall-clock deadline for requests made on this thread, 0 for none. */
+    private static final ThreadLocal<long[]> CALL_DEADLINE = ThreadLocal.withInitial(() -> new long[1]);
+    private static final SSLSocketFactory SSL_SOCKET_FACTORY;
+
+    private static final AtomicLong REQUESTS = new AtomicLong();
+    private static final AtomicLong WIRE_BYTES = new AtomicLong();
+    private static final AtomicLong BODY_BYTES = new AtomicLong();
+
+    static {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", MAX_CONNECTIONS);
+
+        SSLSocketFactory factory;
+        try {
+            factory = SSLContext.getDefault().getSocketFactory();
+        } catch (NoSuchAlgorithmException e) {
+            Log.w(TAG, "No default SSLContext, using the platform socket factory", e);
+            factory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+        SSL_SOCKET_FACTORY = factory;
+
+        setTimeouts("www.barchart.com", 15000, 15000);
+        setTimeouts("query1.finance.yahoo.com", 10000, 15000);
+    }
+
+    private SharedHttpClient() {}
+
+    /** Sets the connect and read timeouts used for every request to {@code host}. */
+    static void setTimeouts(String host, int connectTimeoutMs, int readTimeoutMs) {
+        HOST_TIMEOUTS.put(host, new int[]{connectTimeoutMs, readTimeoutMs});
+    }
+
+    /**
+     * Caps the timeouts of requests made on this thread so they end by
+     * {@code deadlineMillis}; a request started after the deadline fails at once.
+     */
+    static void setCallDeadline(long deadlineMillis) {
+        CALL_DEADLINE.get()[0] = deadlineMillis;
+    }
+
+    static void clearCallDeadline() {
+        CALL_DEADLINE.get()[0] = 0;
+    }
+
+    /** This thread's deadline, or 0 if it has none. */
+    static long callDeadline() {
+        return CALL_DEADLINE.get()[0];
+    }
+
+    /**
+     * An open response. The body is decompressed on the fly; closing the response
+     * drains a remainder known to be short so the connection can be reused, and drops
+     * the connection otherwise.
+     *
+     * A response can also be served from {@link HttpCache}: then there is no connection,
+     * and the body is the stored copy.
+     */
+    static final class Response implements Closeable {
+        final int code;
+        final boolean fromCache;
+        private final HttpURLConnection connection; // null when served from the cache
+        private final Closeable onClose;
+        private InputStream body;
+        private CountingInputStream wire; // compressed bytes read, null until body() is opened
+        private CountingInputStream decoded;
+
+        private Response(HttpURLConnection connection, int code, boolean fromCache, InputStream body, Closeable onClose) {
+            this.connection = connection;
+            this.code = code;
+            this.fromCache = fromCache;
+            this.body = body;
+            this.onClose = onClose;
+        }
+
+        /** A 200 response whose body is a stored copy. */
+        static Response cached(InputStream body) {
+            return new Response(null, HttpURLConnection.HTTP_OK, true, body, null);
+        }
+
+        /**
+         * This response with its body replaced by {@code body}; closing it runs
+         * {@code onClose} instead of the usual drain.
+         */
+        Response withBody(InputStream body, Closeable onClose) {
+            return new Response(connection, code, false, body, onClose);
+        }
+
+        boolean isOk() {
+            return code == HttpURLConnection.HTTP_OK;
+        }
+
+        /** Response header, or null if absent or the response came from the cache. */
+        String header(String name) {
+            return connection != null ? connection.getHeaderField(name) : null;
+        }
+
+        /** Decoded body stream (the error body for 4xx/5xx responses, empty if there is none). */
+        InputStream body() throws IOException {
+            if (body == null) {
+                InputStream raw = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+                if (raw == null) {
+                    raw = new ByteArrayInputStream(new byte[0]);
+                }
+                wire = new CountingInputStream(raw, WIRE_BYTES);
+                InputStream counted = wire;
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    try {
+                        counted = new GZIPInputStream(counted, 8192);
+                    } catch (EOFException e) {
+                        // gzip header on an empty body
+                        counted = new ByteArrayInputStream(new byte[0]);
+                    }
+                }
+                decoded = new CountingInputStream(counted, BODY_BYTES);
+                body = decoded;
+            }
+            return body;
+        }
+
+        /**
+         * Whether the unread rest of the body is short enough to drain: the body ended, or
+         * Content-Length says at most DRAIN_LIMIT_BYTES are left.
+         */
+        private boolean drainable() {
+            if (decoded == null || decoded.ended) return true;
+            int length = connection.getContentLength(); // -1 when unknown, as when chunked
+            return length >= 0 && length - wire.count <= DRAIN_LIMIT_BYTES;
+        }
+
+        /** Reads the whole decoded body as UTF-8. */
+        String bodyString() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            InputStream in = body();
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (onClose != null) {
+                    onClose.close();
+                    return;
+                }
+                InputStream in = body();
+                if (connection != null && !drainable()) {
+                    // Cheaper to open a new connection than to download the rest
+                    connection.disconnect();
+                    in.close();
+                    return;
+                }
+                if (connection != null) {
+                    byte[] buffer = new byte[8192];
+                    int drained = 0;
+                    int n;
+                    while (drained < DRAIN_LIMIT_BYTES && (n = in.read(buffer)) != -1) {
+                        drained += n;
+                    }
+                }
+                in.close();
+            } catch (IOException e) {
+                Log.d(TAG, "Connection not reusable: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends a GET and returns once the status line and headers are in.
+     * {@code headers} are name/value pairs. The caller must close the response.
+     */
+    static Response get(String urlString, String... headers) throws IOException {
+        URL url = new URL(urlString);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(SSL_SOCKET_FACTORY);
+        }
+        int[] timeouts = HOST_TIMEOUTS.get(url.getHost());
+        int connectTimeout = timeouts != null ? timeouts[0] : DEFAULT_CONNECT_TIMEOUT_MS;
+        int readTimeout = timeouts != null ? timeouts[1] : DEFAULT_READ_TIMEOUT_MS;
+        long deadline = callDeadline();
+        if (deadline > 0) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                throw new SocketTimeoutException("Deadline passed before requesting " + url.getHost());
+            }
+            connectTimeout = (int) Math.min(connectTimeout, left);
+            readTimeout = (int) Math.min(readTimeout, left);
+        }
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setRequestProperty("Connection", "keep-alive");
+        for (int i = 0; i + 1 < headers.length; i += 2) {
+            connection.setRequestProperty(headers[i], headers[i + 1]);
+        }
+        REQUESTS.incrementAndGet();
+        return new Response(connection, connection.getResponseCode(), false, null, null);
+    }
+
+    /** {requests, compressed bytes received, decoded body bytes} since start or the last reset. */
+    static long[] stats() {
+        return new long[]{REQUESTS.get(), WIRE_BYTES.get(), BODY_BYTES.get()};
+    }
+
+    static void resetStats() {
+        REQUESTS.set(0);
+        WIRE_BYTES.set(0);
+        BODY_BYTES.set(0);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+        long count;
+        boolean ended;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                counter.incrementAndGet();
+                count++;
+            } else {
+                ended = true;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                counter.addAndGet(n);
+                count += n;
+            } else if (n == -1) {
+                ended = true;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            counter.addAndGet(skipped);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,570 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-device log of every evaluation the daily run makes, kept under
+ * files/signal_log/. The prefs only keep the last signal of each entry; this keeps
+ * the history, for auditing the signals and for the page to chart them.
+ *
+ * File layout (big-endian), modelled on {@link HistoryStore}:
+ * <pre>
+ *   header  32 bytes: magic, version, record count, first day, last day, 2 reserved, CRC32 of the above
+ *   records 40 bytes: epoch day (int), symbol id (short), signal (byte), reserved (byte),
+ *                     price (double), SMA (double), percent (float), fetch latency ms (int),
+ *                     SMA period (short), reserved (short), CRC32 of the above
+ * </pre>
+ * Symbol ids are line numbers in symbols.txt, which only ever grows. Records are in
+ * day order, and the header count is the commit point: records are written and forced
+ * past the count before the header is rewritten, so a torn append is never seen.
+ * There is at most one record per day and symbol: logging a symbol again on the
+ * newest day (a retried run) rewrites its record in place, which its checksum guards.
+ *
+ * Two indexes live in memory and are rebuilt in one pass when the log is opened: the
+ * day of every INDEX_STRIDE-th record, which a date range binary searches before
+ * scanning at most one stride of records, and the positions of each symbol's records
+ * by signal, which answer "when was this symbol last in SELL" with one binary search.
+ * The log is bounded to MAX_RECORDS; older records are compacted away.
+ */
+final class SignalLog {
+    private static final String TAG = "SignalLog";
+
+    /** Signal codes as stored; the index of each signal from {@link SMAWorker#determineSignal}. */
+    static final String[] SIGNALS = {"HOLD", "BUY", "SELL", "SELL 80%", "SELL ALL"};
+
+    /** About ten years of daily runs for a watchlist of four. */
+    static final int MAX_RECORDS = 10000;
+    private static final int COMPACT_SLACK = 500;
+    static final int INDEX_STRIDE = 64;
+
+    private static final int MAGIC = 0x534D4153; // "SMAS"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 40;
+
+    /** One logged evaluation. */
+    static final class Record {
+        final int day;
+        final String symbol;
+        final String signal;
+        final double price;
+        final double sma;
+        final float percent;
+        final int latencyMillis; // -1 if not measured
+        final int smaPeriod;
+
+        Record(int day, String symbol, String signal, double price, double sma, float percent,
+               int latencyMillis, int smaPeriod) {
+            this.day = day;
+            this.symbol = symbol;
+            this.signal = signal;
+            this.price = price;
+            this.sma = sma;
+            this.percent = percent;
+            this.latencyMillis = latencyMillis;
+            this.smaPeriod = smaPeriod;
+        }
+
+        @Override
+        public String toString() {
+            return symbol + " " + signal + " on day " + day + " (" + percent + "% vs SMA" + smaPeriod + ")";
+        }
+    }
+
+    /** Growable list of record positions, in increasing order. */
+    private static final class Positions {
+        int[] items = new int[8];
+        int size;
+
+        void add(int position) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            int at = size;
+            // Only a record rewritten in place can land before the end
+            while (at > 0 && items[at - 1] > position) at--;
+            System.arraycopy(items, at, items, at + 1, size - at);
+            items[at] = position;
+            size++;
+        }
+
+        void remove(int position) {
+            int at = Arrays.binarySearch(items, 0, size, position);
+            if (at < 0) return;
+            System.arraycopy(items, at + 1, items, at, size - at - 1);
+            size--;
+        }
+    }
+
+    private static SignalLog instance;
+
+    private final File dir;
+    private final CRC32 crc = new CRC32();
+    private final byte[] crcScratch = new byte[RECORD_SIZE];
+
+    // In-memory state, valid once loaded
+    private boolean loaded;
+    private int count;
+    private int firstDay = HistoryStore.NO_DAY;
+    private int lastDay = HistoryStore.NO_DAY;
+    private final List<String> symbols = new ArrayList<>();
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+    private int[] sparseDays = new int[16]; // day of record i * INDEX_STRIDE
+    private final Map<Integer, Positions> bySignal = new HashMap<>(); // symbol id * SIGNALS.length + signal code
+
+    SignalLog(File dir) {
+        this.dir = dir;
+    }
+
+    static synchronized SignalLog get(Context ctx) {
+        if (instance == null) {
+            instance = new SignalLog(new File(ctx.getApplicationContext().getFilesDir(), "signal_log"));
+        }
+        return instance;
+    }
+
+    static int signalCode(String signal) {
+        for (int i = 0; i < SIGNALS.length; i++) {
+            if (SIGNALS[i].equals(signal)) return i;
+        }
+        return -1;
+    }
+
+    // ===== Writes =====
+
+    /**
+     * Logs the non-null {@code results} as evaluated on epoch day {@code day}. Days
+     * before the newest logged one are refused, so the log stays in day order. A symbol
+     * already logged for the day has its record replaced. Returns the number of records
+     * written, appended or replaced.
+     */
+    synchronized int append(int day, List<WatchlistEvaluator.Evaluation> results) {
+        try {
+            load();
+            if (count > 0 && day < lastDay) {
+                Log.w(TAG, "Refusing to log day " + day + " after day " + lastDay);
+                return 0;
+            }
+            // The day's records so far, by symbol id; they are all at the end of the log
+            Map<Integer, Integer> logged = new HashMap<>();
+            if (count > 0 && day == lastDay) {
+                try (RandomAccessFile file = new RandomAccessFile(dataFile(), "r")) {
+                    MappedByteBuffer map = map(file);
+                    for (int i = count - 1; i >= 0 && map.getInt(HEADER_SIZE + i * RECORD_SIZE) == day; i--) {
+                        logged.put((int) map.getShort(HEADER_SIZE + i * RECORD_SIZE + 4), i);
+                    }
+                }
+            }
+            // One record per symbol; a symbol listed twice keeps its last result
+            Map<Integer, WatchlistEvaluator.Evaluation> bySymbol = new LinkedHashMap<>();
+            for (WatchlistEvaluator.Evaluation result : results) {
+                if (result != null && signalCode(result.signal) >= 0) {
+                    bySymbol.put(symbolId(result.entry.symbol), result);
+                }
+            }
+            if (bySymbol.isEmpty()) return 0;
+
+            ByteBuffer appended = ByteBuffer.allocate(bySymbol.size() * RECORD_SIZE);
+            ByteBuffer replaced = ByteBuffer.allocate(bySymbol.size() * RECORD_SIZE);
+            List<Integer> replacedAt = new ArrayList<>();
+            for (Map.Entry<Integer, WatchlistEvaluator.Evaluation> entry : bySymbol.entrySet()) {
+                WatchlistEvaluator.Evaluation result = entry.getValue();
+                Integer position = logged.get(entry.getKey());
+                if (position != null) replacedAt.add(position);
+                int latency = (int) Math.min(Integer.MAX_VALUE, result.latencyMillis);
+                putRecord(position != null ? replaced : appended, day, entry.getKey(), signalCode(result.signal),
+                        result.price, result.sma, (float) result.percent, latency, result.smaPeriod);
+            }
+            appended.flip();
+            replaced.flip();
+            int appendedCount = appended.remaining() / RECORD_SIZE;
+
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+            try (RandomAccessFile file = new RandomAccessFile(dataFile(), "rw")) {
+                FileChannel channel = file.getChannel();
+                writeFully(channel, appended.duplicate(), HEADER_SIZE + (long) count * RECORD_SIZE);
+                for (int i = 0; i < replacedAt.size(); i++) {
+                    int position = replacedAt.get(i);
+                    unindex(channel, position);
+                    ByteBuffer record = replaced.duplicate();
+                    record.position(i * RECORD_SIZE).limit((i + 1) * RECORD_SIZE);
+                    writeFully(channel, record, HEADER_SIZE + (long) position * RECORD_SIZE);
+                    index(replaced, i * RECORD_SIZE, position);
+                }
+                channel.force(false);
+                if (appendedCount > 0) {
+                    int start = count;
+                    if (count == 0) firstDay = day;
+                    count += appendedCount;
+                    lastDay = day;
+                    writeHeader(channel);
+                    for (int i = 0; i < appendedCount; i++) {
+                        index(appended, i * RECORD_SIZE, start + i);
+                    }
+                }
+            }
+            if (count > MAX_RECORDS + COMPACT_SLACK) {
+                compact(MAX_RECORDS);
+            }
+            return bySymbol.size();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to log " + results.size() + " evaluations", e);
+            loaded = false;
+            return 0;
+        }
+    }
+
+    /**
+     * Rewrites the log keeping only the newest {@code keepRecords} records, through a
+     * temp file renamed over the original.
+     */
+    synchronized boolean compact(int keepRecords) {
+        File temp = new File(dir, "signals.tmp");
+        try {
+            load();
+            int keep = Math.min(keepRecords, count);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + keep * RECORD_SIZE);
+            buffer.position(HEADER_SIZE);
+            if (keep > 0) {
+                try (RandomAccessFile file = new RandomAccessFile(dataFile(), "r")) {
+                    MappedByteBuffer map = map(file);
+                    map.position(HEADER_SIZE + (count - keep) * RECORD_SIZE).limit(HEADER_SIZE + count * RECORD_SIZE);
+                    buffer.put(map);
+                }
+            }
+            int oldCount = count;
+            count = keep;
+            firstDay = keep > 0 ? buffer.getInt(HEADER_SIZE) : HistoryStore.NO_DAY;
+            lastDay = keep > 0 ? lastDay : HistoryStore.NO_DAY;
+            buffer.position(0);
+            putHeader(buffer);
+            buffer.position(0);
+            try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+                FileChannel channel = file.getChannel();
+                channel.truncate(0);
+                writeFully(channel, buffer, 0);
+                channel.force(true);
+            }
+            if (!temp.renameTo(dataFile())) {
+                throw new IOException("rename failed");
+            }
+            loaded = false;
+            Log.i(TAG, "Compacted signal log from " + oldCount + " to " + keep + " records");
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compact signal log", e);
+            loaded = false;
+            if (temp.exists() && !temp.delete()) {
+                Log.w(TAG, "Could not delete " + temp);
+            }
+            return false;
+        }
+    }
+
+    synchronized void clear() {
+        for (File file : new File[]{dataFile(), symbolsFile()}) {
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Could not delete " + file);
+            }
+        }
+        loaded = false;
+    }
+
+    // ===== Queries =====
+
+    synchronized int size() {
+        try {
+            load();
+            return count;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not open signal log", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Records from epoch day {@code fromDay} to {@code toDay} inclusive, oldest first,
+     * for {@code symbol} only unless it is null. Empty if the log cannot be read.
+     */
+    synchronized List<Record> range(int fromDay, int toDay, String symbol) {
+        List<Record> records = new ArrayList<>();
+        try {
+            load();
+            Integer symbolId = symbol != null ? symbolIds.get(symbol) : null;
+            if (count == 0 || fromDay > toDay || (symbol != null && symbolId == null)) return records;
+            try (RandomAccessFile file = new RandomAccessFile(dataFile(), "r")) {
+                MappedByteBuffer map = map(file);
+                for (int i = firstAtOrAfter(map, fromDay); i < count; i++) {
+                    int offset = HEADER_SIZE + i * RECORD_SIZE;
+                    if (map.getInt(offset) > toDay) break;
+                    if (symbolId == null || map.getShort(offset + 4) == symbolId) {
+                        records.add(readRecord(map, offset));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read signal log", e);
+        }
+        return records;
+    }
+
+    /** The latest record of {@code symbol} in {@code signal}, or null if it never was. */
+    synchronized Record lastWithSignal(String symbol, String signal) {
+        return lastWithSignal(symbol, signal, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The latest record of {@code symbol} in {@code signal} on or before epoch day
+     * {@code onOrBeforeDay}, or null if there is none.
+     */
+    synchronized Record lastWithSignal(String symbol, String signal, int onOrBeforeDay) {
+        try {
+            load();
+            Integer symbolId = symbolIds.get(symbol);
+            int code = signalCode(signal);
+            Positions positions = symbolId != null && code >= 0 ? bySignal.get(symbolId * SIGNALS.length + code) : null;
+            if (positions == null || positions.size == 0) return null;
+            try (RandomAccessFile file = new RandomAccessFile(dataFile(), "r")) {
+                MappedByteBuffer map = map(file);
+                // Last position whose record day is on or before the bound
+                int low = 0;
+                int high = positions.size - 1;
+                int found = -1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    if (map.getInt(HEADER_SIZE + positions.items[mid] * RECORD_SIZE) <= onOrBeforeDay) {
+                        found = mid;
+                        low = mid + 1;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                return found < 0 ? null : readRecord(map, HEADER_SIZE + positions.items[found] * RECORD_SIZE);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read signal log", e);
+            return null;
+        }
+    }
+
+    // ===== Internals =====
+
+    /** Index of the first record on or after {@code day}, or count if there is none. */
+    private int firstAtOrAfter(MappedByteBuffer map, int day) {
+        // Last sampled record strictly before the day: the first match is in its stride
+        int blocks = (count + INDEX_STRIDE - 1) / INDEX_STRIDE;
+        int low = 0;
+        int high = blocks - 1;
+        int block = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (sparseDays[mid] < day) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int i = block * INDEX_STRIDE;
+        while (i < count && map.getInt(HEADER_SIZE + i * RECORD_SIZE) < day) {
+            i++;
+        }
+        return i;
+    }
+
+    private Record readRecord(ByteBuffer map, int offset) {
+        int symbolId = map.getShort(offset + 4);
+        String symbol = symbolId < symbols.size() ? symbols.get(symbolId) : "?";
+        return new Record(map.getInt(offset), symbol, SIGNALS[map.get(offset + 6)],
+                map.getDouble(offset + 8), map.getDouble(offset + 16), map.getFloat(offset + 24),
+                map.getInt(offset + 28), map.getShort(offset + 32));
+    }
+
+    /** Adds the record at {@code offset} in {@code buffer}, stored at {@code position}, to the indexes. */
+    private void index(ByteBuffer buffer, int offset, int position) {
+        if (position % INDEX_STRIDE == 0) {
+            int slot = position / INDEX_STRIDE;
+            if (slot == sparseDays.length) sparseDays = Arrays.copyOf(sparseDays, slot * 2);
+            sparseDays[slot] = buffer.getInt(offset);
+        }
+        int key = buffer.getShort(offset + 4) * SIGNALS.length + buffer.get(offset + 6);
+        Positions positions = bySignal.get(key);
+        if (positions == null) {
+            positions = new Positions();
+            bySignal.put(key, positions);
+        }
+        positions.add(position);
+    }
+
+    /** Removes the record stored at {@code position} from the signal index, before it is rewritten. */
+    private void unindex(FileChannel channel, int position) throws IOException {
+        ByteBuffer old = ByteBuffer.allocate(RECORD_SIZE);
+        while (old.hasRemaining() && channel.read(old, HEADER_SIZE + (long) position * RECORD_SIZE + old.position()) > 0) {
+            // keep reading
+        }
+        Positions positions = bySignal.get(old.getShort(4) * SIGNALS.length + old.get(6));
+        if (positions != null) positions.remove(position);
+    }
+
+    /**
+     * Reads the symbol table and header and rebuilds the indexes. A bad header, or a
+     * record that fails its checksum or breaks the day order, ends the log there.
+     */
+    private void load() throws IOException {
+        if (loaded) return;
+        count = 0;
+        firstDay = HistoryStore.NO_DAY;
+        lastDay = HistoryStore.NO_DAY;
+        bySignal.clear();
+        loadSymbols();
+        File data = dataFile();
+        if (data.exists()) {
+            try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+                FileChannel channel = file.getChannel();
+                int stored = readHeader(channel);
+                long available = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+                int candidates = stored >= 0 ? stored : (int) Math.max(0, Math.min(available, Integer.MAX_VALUE));
+                if (candidates > 0) {
+                    MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                            HEADER_SIZE + (long) candidates * RECORD_SIZE);
+                    for (int i = 0; i < candidates; i++) {
+                        int offset = HEADER_SIZE + i * RECORD_SIZE;
+                        int day = map.getInt(offset);
+                        if (!recordValid(map, offset) || (count > 0 && day < lastDay)
+                                || map.get(offset + 6) < 0 || map.get(offset + 6) >= SIGNALS.length) break;
+                        if (count == 0) firstDay = day;
+                        lastDay = day;
+                        index(map, offset, i);
+                        count++;
+                    }
+                }
+                if (count != stored) {
+                    Log.w(TAG, "Rebuilt signal log header from " + count + " valid records");
+                    writeHeader(channel);
+                }
+            }
+        }
+        loaded = true;
+    }
+
+    /** Reads symbols.txt, cutting off a line torn by a crash so the next symbol starts cleanly. */
+    private void loadSymbols() throws IOException {
+        symbols.clear();
+        symbolIds.clear();
+        File file = symbolsFile();
+        if (!file.exists()) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            int start = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] != '\n') continue;
+                String symbol = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+                symbolIds.put(symbol, symbols.size());
+                symbols.add(symbol);
+                start = i + 1;
+            }
+            if (start < bytes.length) {
+                Log.w(TAG, "Dropping a torn symbol table line");
+                raf.setLength(start);
+            }
+        }
+    }
+
+    /** The symbol's id, adding it to the symbol table (forced to disk) if it is new. */
+    private int symbolId(String symbol) throws IOException {
+        Integer id = symbolIds.get(symbol);
+        if (id != null) return id;
+        if (symbols.size() >= Short.MAX_VALUE) throw new IOException("symbol table full");
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+        try (FileOutputStream out = new FileOutputStream(symbolsFile(), true)) {
+            out.write((symbol + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        symbolIds.put(symbol, symbols.size());
+        symbols.add(symbol);
+        return symbols.size() - 1;
+    }
+
+    private MappedByteBuffer map(RandomAccessFile file) throws IOException {
+        return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + (long) count * RECORD_SIZE);
+    }
+
+    /** The stored record count, or -1 if the header is missing or corrupt. */
+    private int readHeader(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) return -1;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // keep reading
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return -1;
+        if (checksum(buffer, 0, HEADER_SIZE - 4) != buffer.getInt(HEADER_SIZE - 4)) return -1;
+        int stored = buffer.getInt(8);
+        return stored >= 0 && channel.size() >= HEADER_SIZE + (long) stored * RECORD_SIZE ? stored : -1;
+    }
+
+    private void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        putHeader(buffer);
+        buffer.flip();
+        writeFully(channel, buffer, 0);
+        channel.force(false);
+    }
+
+    private void putHeader(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(firstDay).putInt(lastDay).putInt(0).putInt(0);
+        buffer.putInt(checksum(buffer, start, HEADER_SIZE - 4));
+    }
+
+    private void putRecord(ByteBuffer buffer, int day, int symbolId, int signal, double price, double sma,
+                           float percent, int latencyMillis, int smaPeriod) {
+        int start = buffer.position();
+        buffer.putInt(day).putShort((short) symbolId).put((byte) signal).put((byte) 0)
+                .putDouble(price).putDouble(sma).putFloat(percent).putInt(latencyMillis)
+                .putShort((short) smaPeriod).putShort((short) 0);
+        buffer.putInt(checksum(buffer, start, RECORD_SIZE - 4));
+    }
+
+    private boolean recordValid(ByteBuffer buffer, int offset) {
+        return checksum(buffer, offset, RECORD_SIZE - 4) == buffer.getInt(offset + RECORD_SIZE - 4);
+    }
+
+    private int checksum(ByteBuffer buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            crcScratch[i] = buffer.get(offset + i);
+        }
+        crc.reset();
+        crc.update(crcScratch, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private File dataFile() {
+        return new File(dir, "signals.bin");
+    }
+
+    private File symbolsFile() {
+        return new File(dir, "symbols.txt");
+    }
+}
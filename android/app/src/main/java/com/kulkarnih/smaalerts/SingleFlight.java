@@ -0,0 +1,81 @@
+package com.kulkarnih.smaalerts;
+
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses concurrent loads of the same key from one source into a single call.
+ *
+ * The first caller for a key runs the load on its own thread; anyone asking for the
+ * same key while it is in flight waits for that call and gets the same result, so the
+ * JS bridge, the worker and a repeated UI fetch never download or parse the same page
+ * twice at once. Once the call finishes the key is released, and later callers start
+ * a fresh load (usually answered by the caches behind it).
+ *
+ * Bookkeeping is a ConcurrentHashMap of in-flight tasks: joining or starting a flight
+ * is a single putIfAbsent, so unrelated symbols never wait on each other.
+ */
+final class SingleFlight<V> {
+    private static final String TAG = "SingleFlight";
+
+    private final String source;
+    private final ConcurrentHashMap<String, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+
+    SingleFlight(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Result of {@code loader} for {@code key}, shared with every concurrent caller for
+     * the same key. Returns null if the load failed (or this thread was interrupted
+     * while waiting).
+     */
+    V execute(String key, Callable<V> loader) {
+        FutureTask<V> task = new FutureTask<>(loader);
+        FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+        if (existing != null) {
+            joined.incrementAndGet();
+            Log.d(TAG, "Joining in-flight " + source + " load for " + key);
+            return await(existing, key);
+        }
+        started.incrementAndGet();
+        try {
+            task.run();
+        } finally {
+            inFlight.remove(key, task);
+        }
+        return await(task, key);
+    }
+
+    private V await(FutureTask<V> task, String key) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(TAG, source + " load failed for " + key, e.getCause());
+            return null;
+        }
+    }
+
+    /** Number of keys currently being loaded. */
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    /** {loads started, callers that joined an in-flight load}. */
+    long[] stats() {
+        return new long[]{started.get(), joined.get()};
+    }
+}
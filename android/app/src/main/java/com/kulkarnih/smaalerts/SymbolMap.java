@@ -0,0 +1,45 @@
+package com.kulkarnih.smaalerts;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Translates the app's symbols to each data source's tickers.
+ *
+ * The app stores barchart.com symbols (the index picker offers "$SPX" and "$NASX"),
+ * which other providers spell differently: Yahoo Finance calls them "^GSPC" and
+ * "^IXIC". Symbols without an entry, such as ordinary stock and ETF tickers, are the
+ * same everywhere.
+ */
+final class SymbolMap {
+    static final String BARCHART = "barchart";
+    static final String YAHOO = "yahoo";
+    static final String LOCAL = "local";
+
+    private static final Map<String, Map<String, String>> TABLE;
+
+    static {
+        Map<String, String> yahoo = new HashMap<>();
+        yahoo.put("$SPX", "^GSPC");
+        yahoo.put("$NASX", "^IXIC");
+
+        Map<String, Map<String, String>> table = new HashMap<>();
+        table.put(YAHOO, Collections.unmodifiableMap(yahoo));
+        TABLE = Collections.unmodifiableMap(table);
+    }
+
+    private SymbolMap() {}
+
+    /** {@code symbol} as the named source spells it. */
+    static String forSource(String source, String symbol) {
+        Map<String, String> mapping = TABLE.get(source);
+        if (mapping == null) return symbol;
+        String mapped = mapping.get(symbol);
+        return mapped != null ? mapped : symbol;
+    }
+
+    static String yahoo(String symbol) {
+        return forSource(YAHOO, symbol);
+    }
+}
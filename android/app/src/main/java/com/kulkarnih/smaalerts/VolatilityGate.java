@@ -0,0 +1,252 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decides, before a run fetches anything, how much work each watchlist entry needs.
+ *
+ * Most days a symbol's gap to its SMA is far from every {@link SMAWorker#determineSignal}
+ * boundary. The gate measures how far: the smallest log price move that would carry
+ * the last evaluated gap onto a boundary, in units of the symbol's daily volatility
+ * scaled by the square root of the trading days since that evaluation. Volatility
+ * comes from the closes in the HistoryStore: the larger of the standard deviation of
+ * daily log returns and their 95th absolute percentile over 1.96, so a fat-tailed
+ * history is not mistaken for a calm one.
+ *
+ * Under QUOTE_SIGMAS the entry is evaluated in full. Up to SKIP_SIGMAS it is
+ * downgraded to a quote check: the batched quote's recent closes advance the rolling
+ * window with no further request, and the barchart.com hedge is never started.
+ * Beyond that the entry is skipped outright, unless notifications are daily, since the
+ * user then expects a fresh value every day. The horizon grows with every skipped day,
+ * so a skip cannot repeat for long, and past MAX_SKIP_DAYS the entry is always
+ * evaluated.
+ *
+ * Skips are checked after the fact. The first evaluation after a skip compares its
+ * signal with the one held when the skip began, and a difference counts as a wrong
+ * skip. That count is an upper bound, since the flip may have happened after the
+ * skipped run.
+ */
+final class VolatilityGate {
+    private static final String TAG = "VolatilityGate";
+
+    enum Decision { FULL, QUOTE, SKIP }
+
+    static final double QUOTE_SIGMAS = 3.0;
+    static final double SKIP_SIGMAS = 6.0;
+    static final int MAX_SKIP_DAYS = 4;
+    /** Daily returns looked at, and the fewest that give a usable estimate. */
+    static final int LOOKBACK = 120;
+    static final int MIN_RETURNS = 40;
+    /** Floor so a flat stretch of history never reads as zero risk. */
+    static final double MIN_SIGMA = 0.002;
+
+    /** Per-run decisions; the entries to evaluate are the ones not skipped, in order. */
+    static final class Plan {
+        final List<Watchlist.Entry> entries;
+        private final Map<Watchlist.Entry, Decision> decisions;
+        private final List<Watchlist.Entry> active;
+
+        Plan(List<Watchlist.Entry> entries, Map<Watchlist.Entry, Decision> decisions) {
+            this.entries = entries;
+            this.decisions = decisions;
+            List<Watchlist.Entry> active = new ArrayList<>(entries.size());
+            for (Watchlist.Entry entry : entries) {
+                if (decision(entry) != Decision.SKIP) active.add(entry);
+            }
+            this.active = Collections.unmodifiableList(active);
+        }
+
+        /** Every entry evaluated in full. */
+        static Plan full(List<Watchlist.Entry> entries) {
+            return new Plan(entries, new IdentityHashMap<>());
+        }
+
+        Decision decision(Watchlist.Entry entry) {
+            Decision decision = decisions.get(entry);
+            return decision != null ? decision : Decision.FULL;
+        }
+
+        List<Watchlist.Entry> active() {
+            return active;
+        }
+
+        int skipped() {
+            return entries.size() - active.size();
+        }
+    }
+
+    private VolatilityGate() {}
+
+    /** Decides every entry of a run starting at {@code nowMillis}, recording the skips. */
+    static Plan plan(Context ctx, List<Watchlist.Entry> entries, long nowMillis) {
+        boolean daily = "daily".equals(PrefsHelper.settings(ctx).notifFrequency);
+        int today = (int) BarchartSnapshot.tradingDay(nowMillis);
+        HistoryStore store = HistoryStore.get(ctx);
+        Map<Watchlist.Entry, Decision> decisions = new IdentityHashMap<>();
+        for (Watchlist.Entry entry : entries) {
+            Decision decision = decide(ctx, store, entry, today, !daily);
+            decisions.put(entry, decision);
+            if (decision == Decision.SKIP) {
+                recordSkip(ctx, entry);
+            }
+        }
+        return new Plan(entries, decisions);
+    }
+
+    private static Decision decide(Context ctx, HistoryStore store, Watchlist.Entry entry, int today, boolean allowSkip) {
+        PrefsHelper.LastSignal last = PrefsHelper.lastSignal(ctx, entry);
+        if (last.signal.isEmpty()) {
+            return Decision.FULL;
+        }
+        int days = horizonDays(last.date, today);
+        if (days < 0 || days > MAX_SKIP_DAYS) {
+            return Decision.FULL;
+        }
+        double sigma = sigma(store.tail(entry.symbol, LOOKBACK + 1));
+        if (sigma <= 0) {
+            Log.d(TAG, entry.symbol + ": not enough stored history for a volatility estimate");
+            return Decision.FULL;
+        }
+        double pct = last.percent;
+        double move = requiredMove(pct, entry.buy, entry.sell);
+        double sigmas = move / (sigma * Math.sqrt(days));
+        Decision decision = classify(sigmas, allowSkip);
+        Log.i(TAG, String.format(Locale.US, "%s: %.2f%% from SMA needs a %.2f%% move, %.1f sigma over %d day(s): %s",
+                entry.symbol, pct, move * 100, sigmas, days, decision));
+        return decision;
+    }
+
+    static Decision classify(double sigmas, boolean allowSkip) {
+        if (sigmas >= SKIP_SIGMAS && allowSkip) return Decision.SKIP;
+        if (sigmas >= QUOTE_SIGMAS) return Decision.QUOTE;
+        return Decision.FULL;
+    }
+
+    /**
+     * Smallest absolute log price move that takes a gap of {@code pct} percent to a
+     * signal boundary, with the SMA held still.
+     */
+    static double requiredMove(double pct, float buy, float sell) {
+        double level = 1 + pct / 100.0;
+        if (level <= 0) return 0;
+        double move = Double.MAX_VALUE;
+        for (double boundary : new double[]{buy, -sell, 30.0, 40.0}) {
+            move = Math.min(move, Math.abs(Math.log((1 + boundary / 100.0) / level)));
+        }
+        return move;
+    }
+
+    /**
+     * Daily volatility of {@code closes} as a log-return fraction, or 0 if there are
+     * fewer than MIN_RETURNS returns.
+     */
+    static double sigma(PriceSeries closes) {
+        if (closes == null || closes.size() - 1 < MIN_RETURNS) return 0;
+        int n = closes.size() - 1;
+        double[] returns = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            returns[i] = Math.log(closes.closeAt(i + 1) / closes.closeAt(i));
+            sum += returns[i];
+        }
+        double mean = sum / n;
+        double squares = 0;
+        for (int i = 0; i < n; i++) {
+            double d = returns[i] - mean;
+            squares += d * d;
+            returns[i] = Math.abs(returns[i]);
+        }
+        double stdDev = Math.sqrt(squares / (n - 1));
+        Arrays.sort(returns);
+        double p95 = returns[Math.min(n - 1, (int) Math.ceil(0.95 * n) - 1)];
+        return Math.max(MIN_SIGMA, Math.max(stdDev, p95 / 1.96));
+    }
+
+    /**
+     * Trading days after {@code lastDate} (the yyyy-MM-dd New York trading date the last
+     * signal was saved on) up to and including the epoch day {@code today}, at least 1;
+     * -1 if the date cannot be read.
+     */
+    static int horizonDays(String lastDate, int today) {
+        long from;
+        try {
+            from = LocalDate.parse(lastDate).toEpochDay();
+        } catch (DateTimeParseException | NullPointerException e) {
+            return -1;
+        }
+        int days = 0;
+        for (long day = from + 1; day <= today; day++) {
+            if (MarketCalendar.isTradingDay(day)) days++;
+        }
+        return Math.max(1, days);
+    }
+
+    // ===== Quote checks =====
+
+    /**
+     * Evaluates {@code entry} from the batched quote alone, when its recent closes reach
+     * back to the saved rolling window so no request is needed. Returns null otherwise.
+     */
+    static WatchlistEvaluator.Evaluation quoteCheck(Context ctx, Watchlist.Entry entry, Map<String, BatchQuoteClient.Quote> quotes) {
+        BatchQuoteClient.Quote quote = quotes.get(SMAWorker.yahooSymbol(entry.symbol));
+        RollingSma window = RollingSma.load(ctx, entry.symbol, entry.smaPeriod);
+        if (quote == null || quote.recent == null || quote.recent.isEmpty()
+                || window == null || !window.isReady() || quote.recent.dayAt(0) > window.lastDay()) {
+            Log.d(TAG, entry.symbol + ": quote does not cover the SMA window, evaluating in full");
+            return null;
+        }
+        DataSource.Reading reading;
+        try {
+            reading = new YahooDataSource(ctx, quotes).fetch(entry.symbol, entry.smaPeriod);
+        } catch (IOException e) {
+            Log.w(TAG, entry.symbol + ": quote check failed, evaluating in full", e);
+            return null;
+        }
+        if (reading == null) return null;
+        Log.i(TAG, "Quote check for " + reading);
+        return new WatchlistEvaluator.Evaluation(entry, reading.price, reading.sma, reading.smaPeriod);
+    }
+
+    // ===== Skip accounting =====
+
+    private static void recordSkip(Context ctx, Watchlist.Entry entry) {
+        String pendingKey = entry.stateKey(PrefsHelper.KEY_SKIPPED_SIGNAL);
+        if (PrefsHelper.getString(ctx, pendingKey, null) == null) {
+            PrefsHelper.putString(ctx, pendingKey, PrefsHelper.lastSignal(ctx, entry).signal);
+        }
+        PrefsHelper.putInt(ctx, PrefsHelper.KEY_GATE_SKIPS, PrefsHelper.getInt(ctx, PrefsHelper.KEY_GATE_SKIPS, 0) + 1);
+    }
+
+    /** Checks a fresh evaluation against the signal held when its entry was last skipped. */
+    static void recordEvaluation(Context ctx, WatchlistEvaluator.Evaluation result) {
+        String pendingKey = result.entry.stateKey(PrefsHelper.KEY_SKIPPED_SIGNAL);
+        String skippedSignal = PrefsHelper.getString(ctx, pendingKey, null);
+        if (skippedSignal == null) return;
+        PrefsHelper.remove(ctx, pendingKey);
+        if (!skippedSignal.equals(result.signal)) {
+            int wrong = PrefsHelper.getInt(ctx, PrefsHelper.KEY_GATE_WRONG_SKIPS, 0) + 1;
+            PrefsHelper.putInt(ctx, PrefsHelper.KEY_GATE_WRONG_SKIPS, wrong);
+            Log.w(TAG, "Possibly wrong skip for " + result.entry.symbol + ": signal went from "
+                    + skippedSignal + " to " + result.signal + " (" + wrong + " so far)");
+        }
+    }
+
+    /** {skips, wrong skips} since install. */
+    static int[] stats(Context ctx) {
+        return new int[]{
+                PrefsHelper.getInt(ctx, PrefsHelper.KEY_GATE_SKIPS, 0),
+                PrefsHelper.getInt(ctx, PrefsHelper.KEY_GATE_WRONG_SKIPS, 0)};
+    }
+}
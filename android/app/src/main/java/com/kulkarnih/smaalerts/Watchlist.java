@@ -0,0 +1,121 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The symbols evaluated on each worker run.
+ *
+ * The primary entry is always the index selected in the UI, with the UI's SMA period
+ * and thresholds, and keeps its signal state under the original KEY_LAST_* keys.
+ * Further symbols come from KEY_WATCHLIST, a JSON array such as
+ * {@code [{"symbol":"QQQ","sma":200,"buy":4,"sell":3}]}; omitted fields default to the
+ * primary entry's values. Each additional symbol keeps its own last-signal state under
+ * the same keys suffixed with "_" + symbol.
+ */
+final class Watchlist {
+    private static final String TAG = "Watchlist";
+
+    /** Upper bound on symbols per run, so a bad setting cannot schedule hundreds of fetches. */
+    static final int MAX_ENTRIES = 32;
+
+    static final class Entry {
+        final String symbol;
+        final int smaPeriod;
+        final float buy;
+        final float sell;
+        final boolean primary;
+
+        Entry(String symbol, int smaPeriod, float buy, float sell, boolean primary) {
+            this.symbol = symbol;
+            this.smaPeriod = smaPeriod;
+            this.buy = buy;
+            this.sell = sell;
+            this.primary = primary;
+        }
+
+        /** Preference key for this entry's copy of a per-symbol state key such as KEY_LAST_SIGNAL. */
+        String stateKey(String key) {
+            return primary ? key : key + "_" + symbol;
+        }
+
+        @Override
+        public String toString() {
+            return symbol + " (SMA" + smaPeriod + ", buy " + buy + "%, sell " + sell + "%)";
+        }
+    }
+
+    private Watchlist() {}
+
+    static List<Entry> load(Context ctx) {
+        PrefsHelper.Settings settings = PrefsHelper.settings(ctx);
+        String index = settings.index;
+
+        // Handle case where index might be stored as string "null" from JavaScript
+        String symbol = "$SPX"; // Default
+        if (index != null && !index.isEmpty() && !"null".equalsIgnoreCase(index)) {
+            symbol = index;
+        }
+        Entry primary = new Entry(symbol, settings.smaPeriod, settings.buy, settings.sell, true);
+        return parse(settings.watchlist, primary);
+    }
+
+    /**
+     * The primary entry followed by the valid, distinct entries of {@code json}.
+     * Malformed items are skipped; a malformed list yields just the primary entry.
+     */
+    static List<Entry> parse(String json, Entry primary) {
+        List<Entry> entries = new ArrayList<>();
+        entries.add(primary);
+        if (json == null || json.isEmpty() || "null".equalsIgnoreCase(json)) {
+            return Collections.unmodifiableList(entries);
+        }
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length() && entries.size() < MAX_ENTRIES; i++) {
+                JSONObject item = array.optJSONObject(i);
+                String symbol = item != null ? item.optString("symbol", "").trim() : array.optString(i, "").trim();
+                if (symbol.isEmpty() || contains(entries, symbol)) continue;
+                int period = item != null ? item.optInt("sma", primary.smaPeriod) : primary.smaPeriod;
+                float buy = item != null ? (float) item.optDouble("buy", primary.buy) : primary.buy;
+                float sell = item != null ? (float) item.optDouble("sell", primary.sell) : primary.sell;
+                if (period <= 0 || Float.isNaN(buy) || Float.isNaN(sell)) {
+                    Log.w(TAG, "Skipping invalid watchlist entry: " + array.opt(i));
+                    continue;
+                }
+                entries.add(new Entry(symbol, period, buy, sell, false));
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Ignoring malformed watchlist: " + json, e);
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    /** Validates and stores the additional symbols. Returns false if {@code json} is not a JSON array. */
+    static boolean save(Context ctx, String json) {
+        if (json == null) return false;
+        try {
+            new JSONArray(json);
+        } catch (JSONException e) {
+            Log.w(TAG, "Rejecting malformed watchlist: " + json);
+            return false;
+        }
+        PrefsHelper.putString(ctx, PrefsHelper.KEY_WATCHLIST, json);
+        return true;
+    }
+
+    private static boolean contains(List<Entry> entries, String symbol) {
+        for (Entry entry : entries) {
+            if (entry.symbol.equals(symbol)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,218 @@
+package com.kulkarnih.smaalerts;
+
+import android.util.Log;
+
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates every watchlist entry in one pass on a small bounded pool, so a run takes
+ * about as long as its slowest fetch rather than the sum of all of them.
+ *
+ * Each entry gets its own time budget, counted from when it actually starts (entries
+ * queued behind a full pool are not charged for the wait). An entry that overruns is
+ * cancelled and reported as failed; the others are unaffected.
+ */
+final class WatchlistEvaluator {
+    private static final String TAG = "WatchlistEvaluator";
+
+    static final int MAX_PARALLEL = 4;
+    static final long SYMBOL_TIMEOUT_MS = 30_000;
+
+    private static final ScheduledExecutorService WATCHDOG =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("watchlist-watchdog"));
+
+    /** Result for one entry. */
+    static final class Evaluation {
+        final Watchlist.Entry entry;
+        final double price;
+        final double sma;
+        final int smaPeriod; // the period actually used, which may differ from the entry's
+        final double percent;
+        final String signal;
+        /** Time the evaluator took, set by evaluateAll and evaluateAllAsync; -1 if not measured. */
+        long latencyMillis = -1;
+
+        Evaluation(Watchlist.Entry entry, double price, double sma, int smaPeriod) {
+            this.entry = entry;
+            this.price = price;
+            this.sma = sma;
+            this.smaPeriod = smaPeriod;
+            this.percent = ((price - sma) / sma) * 100.0;
+            this.signal = SMAWorker.determineSignal(percent, entry.buy, entry.sell);
+        }
+    }
+
+    /** Fetches and evaluates one entry; returns null (or throws) on failure. */
+    interface Evaluator {
+        Evaluation evaluate(Watchlist.Entry entry) throws Exception;
+    }
+
+    /** Starts evaluating one entry; the future's value is null on failure. */
+    interface AsyncEvaluator {
+        ListenableFuture<Evaluation> start(Watchlist.Entry entry);
+    }
+
+    private WatchlistEvaluator() {}
+
+    /**
+     * Evaluates all entries with at most {@code parallelism} in flight and
+     * {@code timeoutMs} each. The result list is in entry order with null for every
+     * entry that failed or timed out.
+     */
+    static List<Evaluation> evaluateAll(List<Watchlist.Entry> entries, Evaluator evaluator, int parallelism, long timeoutMs) {
+        List<Evaluation> results = new ArrayList<>(entries.size());
+        if (entries.isEmpty()) return results;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, entries.size()), daemonThreads("watchlist"));
+        List<FutureTask<Evaluation>> tasks = new ArrayList<>(entries.size());
+        long start = System.currentTimeMillis();
+        try {
+            for (Watchlist.Entry entry : entries) {
+                FutureTask<Evaluation> task = new FutureTask<>(() -> {
+                    long started = System.currentTimeMillis();
+                    Evaluation evaluation = evaluator.evaluate(entry);
+                    if (evaluation != null) evaluation.latencyMillis = System.currentTimeMillis() - started;
+                    return evaluation;
+                });
+                tasks.add(task);
+                pool.execute(() -> {
+                    ScheduledFuture<?> watchdog = WATCHDOG.schedule(() -> {
+                        if (task.cancel(true)) {
+                            Log.w(TAG, "Timed out after " + timeoutMs + " ms: " + entry.symbol);
+                        }
+                    }, timeoutMs, TimeUnit.MILLISECONDS);
+                    try {
+                        task.run();
+                    } finally {
+                        watchdog.cancel(false);
+                    }
+                });
+            }
+
+            for (int i = 0; i < tasks.size(); i++) {
+                String symbol = entries.get(i).symbol;
+                try {
+                    Evaluation evaluation = tasks.get(i).get();
+                    if (evaluation == null) {
+                        Log.w(TAG, "No data for " + symbol);
+                    }
+                    results.add(evaluation);
+                } catch (CancellationException e) {
+                    results.add(null);
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Evaluation failed for " + symbol, e.getCause());
+                    results.add(null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while evaluating watchlist");
+            Thread.currentThread().interrupt();
+            for (FutureTask<Evaluation> task : tasks) {
+                task.cancel(true);
+            }
+            while (results.size() < entries.size()) {
+                results.add(null);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Log.i(TAG, "Evaluated " + entries.size() + " symbols in " + (System.currentTimeMillis() - start) + " ms");
+        return results;
+    }
+
+    /**
+     * evaluateAll without a pool: at most {@code parallelism} entries are started at a
+     * time, the next one starting when one finishes, and each gets {@code timeoutMs}
+     * from its start. No thread waits on any of them. Cancelling the returned future
+     * cancels the entries still running.
+     */
+    static ListenableFuture<List<Evaluation>> evaluateAllAsync(List<Watchlist.Entry> entries, AsyncEvaluator evaluator,
+                                                               int parallelism, long timeoutMs) {
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            int count = entries.size();
+            Evaluation[] results = new Evaluation[count];
+            if (count == 0) {
+                completer.set(new ArrayList<>());
+                return "evaluateAllAsync";
+            }
+            long start = System.currentTimeMillis();
+            List<ListenableFuture<Evaluation>> started = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger next = new AtomicInteger();
+            AtomicInteger remaining = new AtomicInteger(count);
+            completer.addCancellationListener(() -> {
+                synchronized (started) {
+                    for (ListenableFuture<Evaluation> future : started) {
+                        future.cancel(false);
+                    }
+                }
+            }, AsyncFutures.DIRECT);
+
+            Runnable[] launch = new Runnable[1];
+            launch[0] = () -> {
+                int index = next.getAndIncrement();
+                if (index >= count) return;
+                Watchlist.Entry entry = entries.get(index);
+                long launched = System.currentTimeMillis();
+                ListenableFuture<Evaluation> future;
+                try {
+                    future = AsyncFutures.withTimeout(evaluator.start(entry), timeoutMs);
+                } catch (RuntimeException e) {
+                    future = AsyncFutures.immediate(null);
+                    Log.e(TAG, "Evaluation failed for " + entry.symbol, e);
+                }
+                started.add(future);
+                ListenableFuture<Evaluation> done = future;
+                future.addListener(() -> {
+                    try {
+                        results[index] = AsyncFutures.getDone(done);
+                        if (results[index] == null) {
+                            Log.w(TAG, "No data for " + entry.symbol);
+                        } else {
+                            results[index].latencyMillis = System.currentTimeMillis() - launched;
+                        }
+                    } catch (CancellationException e) {
+                        Log.w(TAG, "Cancelled: " + entry.symbol);
+                    } catch (ExecutionException e) {
+                        Log.e(TAG, "Evaluation failed for " + entry.symbol, e.getCause());
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        Log.i(TAG, "Evaluated " + count + " symbols in " + (System.currentTimeMillis() - start) + " ms");
+                        completer.set(Arrays.asList(results));
+                    } else {
+                        launch[0].run();
+                    }
+                }, AsyncFutures.DIRECT);
+            };
+            for (int i = 0; i < Math.min(parallelism, count); i++) {
+                launch[0].run();
+            }
+            return "evaluateAllAsync";
+        });
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
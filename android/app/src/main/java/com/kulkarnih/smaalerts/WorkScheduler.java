@@ -10,49 +10,85 @@ import androidx.work.OneTimeWorkRequest;
 import androidx.work.WorkManager;
 import androidx.work.WorkInfo;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public final class WorkScheduler {
     private static final String TAG = "WorkScheduler";
     private static final String UNIQUE_WORK_NAME = "SMA_DAILY_ANALYSIS";
-    private static final ZoneId NY_ZONE = ZoneId.of("America/New_York");
     private static final long MIN_DELAY_MS = 60000; // Minimum 1 minute delay
     private static final long MAX_DELAY_MS = 7 * 24 * 60 * 60 * 1000; // Maximum 7 days delay
 
     private WorkScheduler() {}
 
+    /**
+     * Makes sure the next daily run is pending. A no-op when a run is already scheduled
+     * for the current settings (see {@link #fingerprint}): app start, the settings
+     * capture and boot all call this, and re-enqueueing the same work each time only
+     * churns WorkManager's database.
+     */
     public static void scheduleDailyAnalysis(Context context) {
+        String fingerprint = fingerprint(context);
+        if (isScheduled(context, fingerprint, System.currentTimeMillis())) {
+            Log.d(TAG, "Next analysis already scheduled for " + fingerprint);
+            verifyPending(context);
+            return;
+        }
+        enqueue(context, fingerprint, ExistingWorkPolicy.REPLACE);
+    }
+
+    /**
+     * Schedules the next run whatever was recorded; for the worker, whose own run is
+     * the pending one. The run is appended to the unique work, so it waits for the
+     * calling worker to finish instead of cancelling it as REPLACE would. A worker that
+     * returns retry must not call this: the retry runs it again, and that run schedules
+     * the next one.
+     */
+    public static void rescheduleAfterRun(Context context) {
+        enqueue(context, fingerprint(context), ExistingWorkPolicy.APPEND_OR_REPLACE);
+    }
+
+    /**
+     * The settings a scheduled run depends on: notification time and frequency, and
+     * the watchlist. A change to any of them schedules again.
+     */
+    static String fingerprint(Context ctx) {
+        PrefsHelper.Settings settings = PrefsHelper.settings(ctx);
+        String watchlist = settings.index + "|" + (settings.watchlist != null ? settings.watchlist : "");
+        return settings.notifHour + ":" + settings.notifMinute + "|" + settings.notifFrequency + "|"
+                + Integer.toHexString(watchlist.hashCode());
+    }
+
+    /** Whether a run for {@code fingerprint} was enqueued and is still due after {@code nowMillis}. */
+    static boolean isScheduled(Context ctx, String fingerprint, long nowMillis) {
+        return fingerprint.equals(PrefsHelper.getString(ctx, PrefsHelper.KEY_SCHEDULE_FINGERPRINT, null))
+                && PrefsHelper.getLong(ctx, PrefsHelper.KEY_SCHEDULE_RUN_AT, 0) > nowMillis;
+    }
+
+    static void recordScheduled(Context ctx, String fingerprint, long runAtMillis) {
+        PrefsHelper.edit(ctx)
+                .putString(PrefsHelper.KEY_SCHEDULE_FINGERPRINT, fingerprint)
+                .putLong(PrefsHelper.KEY_SCHEDULE_RUN_AT, runAtMillis)
+                .apply();
+    }
+
+    private static void clearScheduled(Context ctx) {
+        PrefsHelper.edit(ctx)
+                .remove(PrefsHelper.KEY_SCHEDULE_FINGERPRINT)
+                .remove(PrefsHelper.KEY_SCHEDULE_RUN_AT)
+                .apply();
+    }
+
+    private static void enqueue(Context context, String fingerprint, ExistingWorkPolicy policy) {
         try {
             WorkManager workManager = WorkManager.getInstance(context);
-            
-            // Check work status for logging, but always proceed with rescheduling
-            // This is important because when called from within the worker (after completion),
-            // the work may still appear as RUNNING briefly, but we need to reschedule anyway
-            try {
-                List<WorkInfo> workInfos = workManager.getWorkInfosForUniqueWork(UNIQUE_WORK_NAME).get();
-                if (workInfos != null && !workInfos.isEmpty()) {
-                    WorkInfo workInfo = workInfos.get(0);
-                    WorkInfo.State state = workInfo.getState();
-                    Log.d(TAG, "Existing work state: " + state + ", will cancel and reschedule");
-                    
-                    // Only skip if work is truly running and we're being called from outside the worker
-                    // (e.g., from UI). When called from within the worker after completion,
-                    // we need to reschedule even if state appears as RUNNING briefly.
-                    // Since we can't distinguish the caller, we'll always reschedule to be safe.
-                }
-            } catch (Exception e) {
-                Log.w(TAG, "Could not check work status, proceeding with reschedule", e);
-            }
-            
-            // Always cancel existing work and reschedule
-            // This ensures we always have a fresh schedule, even if called from within the worker
-            workManager.cancelUniqueWork(UNIQUE_WORK_NAME);
 
             Duration delay = calculateDelayUntilNextRun(context);
             long delayMs = delay.toMillis();
@@ -71,7 +107,7 @@ public final class WorkScheduler {
             Log.d(TAG, "Scheduling next analysis in " + (delayMs / 1000 / 60) + " minutes");
 
             // Create work request with constraints
-            OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(SMAWorker.class)
+            OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(AsyncSMAWorker.class)
                     .setInitialDelay(delayMs, TimeUnit.MILLISECONDS)
                     .setConstraints(new Constraints.Builder()
                             .setRequiredNetworkType(NetworkType.CONNECTED)
@@ -80,8 +116,8 @@ public final class WorkScheduler {
                     .addTag("sma_analysis")
                     .build();
 
-            WorkManager.getInstance(context)
-                    .enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.REPLACE, request);
+            workManager.enqueueUniqueWork(UNIQUE_WORK_NAME, policy, request);
+            recordScheduled(context, fingerprint, System.currentTimeMillis() + delayMs);
 
             Log.i(TAG, "Daily SMA analysis scheduled successfully");
             
@@ -90,24 +126,43 @@ public final class WorkScheduler {
             
         } catch (Exception e) {
             Log.e(TAG, "Failed to schedule daily analysis", e);
+            clearScheduled(context);
             // Try to schedule a fallback
             scheduleFallbackAnalysis(context);
         }
     }
 
+    /**
+     * Schedules again if WorkManager no longer has the recorded run, e.g. after the app's
+     * data was restored without its WorkManager database. Only queries, never waits.
+     */
+    private static void verifyPending(Context context) {
+        try {
+            onWorkInfos(WorkManager.getInstance(context), workInfos -> {
+                for (WorkInfo workInfo : workInfos) {
+                    if (!workInfo.getState().isFinished()) return;
+                }
+                Log.w(TAG, "Recorded run is no longer pending, scheduling again");
+                enqueue(context, fingerprint(context), ExistingWorkPolicy.REPLACE);
+            });
+        } catch (Exception e) {
+            Log.w(TAG, "Could not check pending work", e);
+        }
+    }
+
     static Duration calculateDelayUntilNextRun() {
         try {
-            // Default to 3:30 PM America/New_York, weekdays only
+            // Default to 3:30 PM America/New_York, trading days only
             LocalTime runTime = LocalTime.of(15, 30);
-            ZonedDateTime nowNY = ZonedDateTime.now(NY_ZONE);
+            ZonedDateTime nowNY = ZonedDateTime.now(MarketCalendar.NY_ZONE);
 
-            ZonedDateTime candidate = ZonedDateTime.of(LocalDate.now(NY_ZONE), runTime, NY_ZONE);
+            ZonedDateTime candidate = ZonedDateTime.of(LocalDate.now(MarketCalendar.NY_ZONE), runTime, MarketCalendar.NY_ZONE);
             if (nowNY.compareTo(candidate) >= 0) {
                 candidate = candidate.plusDays(1);
             }
 
-            // Skip weekends
-            while (candidate.getDayOfWeek().getValue() >= 6) { // 6=Sat, 7=Sun
+            // Skip weekends and exchange holidays
+            while (!MarketCalendar.isTradingDay(candidate.toLocalDate())) {
                 candidate = candidate.plusDays(1);
             }
 
@@ -128,12 +183,21 @@ public final class WorkScheduler {
     }
 
     static Duration calculateDelayUntilNextRun(Context ctx) {
+        return calculateDelayUntilNextRun(ctx, ZonedDateTime.now());
+    }
+
+    /**
+     * Delay from {@code nowLocal} to the user's notification time on the next day that
+     * brings a new close: days whose New York date is a weekend or exchange holiday are
+     * skipped, since a run then would only fetch the close already reported.
+     */
+    static Duration calculateDelayUntilNextRun(Context ctx, ZonedDateTime nowLocal) {
         try {
-            int hour = PrefsHelper.getInt(ctx, PrefsHelper.KEY_NOTIF_HOUR, 15);
-            int minute = PrefsHelper.getInt(ctx, PrefsHelper.KEY_NOTIF_MIN, 30);
-            
+            PrefsHelper.Settings settings = PrefsHelper.settings(ctx);
+            int hour = settings.notifHour;
+            int minute = settings.notifMinute;
+
             // Schedule at user's local time (not converted to NY time)
-            ZonedDateTime nowLocal = ZonedDateTime.now();
             ZonedDateTime candidate = ZonedDateTime.of(nowLocal.toLocalDate(), LocalTime.of(hour, minute), nowLocal.getZone());
             
             // If the time has already passed today, schedule for tomorrow
@@ -141,11 +205,9 @@ public final class WorkScheduler {
                 candidate = candidate.plusDays(1);
             }
 
-            // Note: Removed weekend skip - users may want notifications on weekends too
-            // If you want to skip weekends, uncomment the following:
-            // while (candidate.getDayOfWeek().getValue() >= 6) {
-            //     candidate = candidate.plusDays(1);
-            // }
+            while (!MarketCalendar.isTradingDay(candidate.withZoneSameInstant(MarketCalendar.NY_ZONE).toLocalDate())) {
+                candidate = candidate.plusDays(1);
+            }
 
             long millis = candidate.toInstant().toEpochMilli() - nowLocal.toInstant().toEpochMilli();
             if (millis < 0) millis = 0;
@@ -165,7 +227,7 @@ public final class WorkScheduler {
     private static void scheduleFallbackAnalysis(Context context) {
         try {
             Log.w(TAG, "Scheduling fallback analysis");
-            OneTimeWorkRequest fallbackRequest = new OneTimeWorkRequest.Builder(SMAWorker.class)
+            OneTimeWorkRequest fallbackRequest = new OneTimeWorkRequest.Builder(AsyncSMAWorker.class)
                     .setInitialDelay(1, TimeUnit.HOURS) // Run in 1 hour
                     .setConstraints(new Constraints.Builder()
                             .setRequiredNetworkType(NetworkType.CONNECTED)
@@ -185,23 +247,40 @@ public final class WorkScheduler {
 
     private static void logWorkStatus(Context context) {
         try {
-            WorkManager workManager = WorkManager.getInstance(context);
-            List<WorkInfo> workInfos = workManager.getWorkInfosForUniqueWork(UNIQUE_WORK_NAME).get();
-            
-            for (WorkInfo workInfo : workInfos) {
-                Log.d(TAG, "Work status: " + workInfo.getState() + 
-                          ", Tags: " + workInfo.getTags() +
-                          ", Run attempt count: " + workInfo.getRunAttemptCount());
-            }
+            onWorkInfos(WorkManager.getInstance(context), workInfos -> {
+                for (WorkInfo workInfo : workInfos) {
+                    Log.d(TAG, "Work status: " + workInfo.getState() +
+                              ", Tags: " + workInfo.getTags() +
+                              ", Run attempt count: " + workInfo.getRunAttemptCount());
+                }
+            });
         } catch (Exception e) {
             Log.w(TAG, "Could not log work status", e);
         }
     }
 
+    private interface WorkInfosCallback {
+        void onWorkInfos(List<WorkInfo> workInfos);
+    }
+
+    /** Hands the unique work's infos to {@code callback} once WorkManager has them, without blocking. */
+    private static void onWorkInfos(WorkManager workManager, WorkInfosCallback callback) {
+        ListenableFuture<List<WorkInfo>> query = workManager.getWorkInfosForUniqueWork(UNIQUE_WORK_NAME);
+        query.addListener(() -> {
+            try {
+                List<WorkInfo> workInfos = AsyncFutures.getDone(query);
+                callback.onWorkInfos(workInfos != null ? workInfos : Collections.emptyList());
+            } catch (Exception e) {
+                Log.w(TAG, "Could not check work status", e);
+            }
+        }, AsyncFutures.DIRECT);
+    }
+
     public static void cancelAllWork(Context context) {
         try {
             WorkManager.getInstance(context).cancelUniqueWork(UNIQUE_WORK_NAME);
             WorkManager.getInstance(context).cancelUniqueWork(UNIQUE_WORK_NAME + "_fallback");
+            clearScheduled(context);
             Log.i(TAG, "All SMA analysis work cancelled");
         } catch (Exception e) {
             Log.e(TAG, "Failed to cancel work", e);
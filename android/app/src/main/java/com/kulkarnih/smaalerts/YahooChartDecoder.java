@@ -0,0 +1,199 @@
+package com.kulkarnih.smaalerts;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming decoder for Yahoo Finance v8 chart responses.
+ * Reads "timestamp" and "indicators.quote[0].close" straight into primitive arrays
+ * and drops null closes as it goes, instead of materialising the whole org.json tree.
+ * Everything else in the payload (open/high/low/volume, adjclose, events) is skipped.
+ */
+final class YahooChartDecoder {
+
+    private YahooChartDecoder() {}
+
+    /**
+     * Decoded chart: parallel arrays of bar timestamps (epoch seconds) and closes,
+     * oldest first, with null and non-positive closes already removed.
+     */
+    static final class Chart {
+        final long[] timestamps;
+        final double[] closes;
+        /** Meta price fields; 0 when absent. */
+        final double regularMarketPrice;
+        final double previousClose;
+        final double chartPreviousClose;
+
+        Chart(long[] timestamps, double[] closes, double regularMarketPrice, double previousClose, double chartPreviousClose) {
+            this.timestamps = timestamps;
+            this.closes = closes;
+            this.regularMarketPrice = regularMarketPrice;
+            this.previousClose = previousClose;
+            this.chartPreviousClose = chartPreviousClose;
+        }
+
+        int size() {
+            return closes.length;
+        }
+
+        /** Same fallback order getLatestPrice has always used. */
+        double latestPrice() {
+            if (regularMarketPrice > 0) return regularMarketPrice;
+            if (previousClose > 0) return previousClose;
+            return chartPreviousClose;
+        }
+    }
+
+    /**
+     * Decodes a chart response. Returns null if the payload has no result, or if the
+     * timestamp and close arrays disagree in length. The caller owns the stream.
+     */
+    static Chart decode(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Chart chart = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("chart".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                chart = readChart(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return chart;
+    }
+
+    private static Chart readChart(JsonReader reader) throws IOException {
+        Chart chart = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("result".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    chart = readResult(reader);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return chart;
+    }
+
+    /** Reads one chart result object (meta, timestamp, indicators), as also embedded in spark responses. */
+    static Chart readResult(JsonReader reader) throws IOException {
+        long[] timestamps = new long[0];
+        int timestampCount = 0;
+        double[] closes = new double[0];
+        int closeCount = -1;
+        double[] meta = new double[3];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("meta".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readMeta(reader, meta);
+            } else if ("timestamp".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                timestamps = new long[256];
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (timestampCount == timestamps.length) {
+                        timestamps = Arrays.copyOf(timestamps, timestampCount * 2);
+                    }
+                    timestamps[timestampCount++] = reader.nextLong();
+                }
+                reader.endArray();
+            } else if ("indicators".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("quote".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                if ("close".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                                    closes = new double[256];
+                                    closeCount = 0;
+                                    reader.beginArray();
+                                    while (reader.hasNext()) {
+                                        if (closeCount == closes.length) {
+                                            closes = Arrays.copyOf(closes, closeCount * 2);
+                                        }
+                                        if (reader.peek() == JsonToken.NULL) {
+                                            reader.nextNull();
+                                            closes[closeCount++] = Double.NaN;
+                                        } else {
+                                            closes[closeCount++] = reader.nextDouble();
+                                        }
+                                    }
+                                    reader.endArray();
+                                } else {
+                                    reader.skipValue();
+                                }
+                            }
+                            reader.endObject();
+                        }
+                        while (reader.hasNext()) {
+                            reader.skipValue();
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (closeCount < 0) {
+            // A range with no bars (e.g. a fresh listing) still has usable meta prices
+            closeCount = 0;
+            if (timestampCount != 0) return null;
+        }
+        if (timestampCount != closeCount) {
+            return null;
+        }
+
+        // Compact in place, dropping null/NaN/non-positive closes
+        int kept = 0;
+        for (int i = 0; i < closeCount; i++) {
+            double close = closes[i];
+            if (!Double.isNaN(close) && close > 0) {
+                timestamps[kept] = timestamps[i];
+                closes[kept] = close;
+                kept++;
+            }
+        }
+        return new Chart(Arrays.copyOf(timestamps, kept), Arrays.copyOf(closes, kept), meta[0], meta[1], meta[2]);
+    }
+
+    private static void readMeta(JsonReader reader, double[] meta) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            int slot = "regularMarketPrice".equals(name) ? 0
+                    : "previousClose".equals(name) ? 1
+                    : "chartPreviousClose".equals(name) ? 2 : -1;
+            if (slot >= 0 && reader.peek() == JsonToken.NUMBER) {
+                meta[slot] = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
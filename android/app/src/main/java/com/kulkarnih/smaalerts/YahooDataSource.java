@@ -0,0 +1,38 @@
+package com.kulkarnih.smaalerts;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Price and SMA from Yahoo Finance daily closes, kept in the persisted rolling window.
+ *
+ * {@code quotes} are this run's batched quotes keyed by Yahoo ticker; when a symbol's
+ * recent closes cover the gap since the window's last day, no further request is made.
+ */
+final class YahooDataSource implements DataSource {
+    private final Context ctx;
+    private final Map<String, BatchQuoteClient.Quote> quotes;
+
+    YahooDataSource(Context ctx, Map<String, BatchQuoteClient.Quote> quotes) {
+        this.ctx = ctx;
+        this.quotes = quotes != null ? quotes : Collections.emptyMap();
+    }
+
+    @Override
+    public String name() {
+        return SymbolMap.YAHOO;
+    }
+
+    @Override
+    public Reading fetch(String symbol, int smaPeriod) throws IOException {
+        BatchQuoteClient.Quote quote = quotes.get(SymbolMap.yahoo(symbol));
+        double[] rolling = SMAWorker.evaluateRollingSma(ctx, symbol, smaPeriod, quote != null ? quote.recent : null);
+        if (rolling == null) {
+            return null;
+        }
+        return new Reading(symbol, rolling[0], rolling[1], smaPeriod, name(), Reading.LIVE);
+    }
+}
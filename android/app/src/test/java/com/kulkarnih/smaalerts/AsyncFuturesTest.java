@@ -0,0 +1,92 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@RunWith(RobolectricTestRunner.class)
+public class AsyncFuturesTest {
+
+    /** Keeps completers reachable so pending futures are not failed as garbage collected. */
+    private final List<CallbackToFutureAdapter.Completer<String>> completers = new ArrayList<>();
+
+    private ListenableFuture<String> pending() {
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            completers.add(completer);
+            return "pending";
+        });
+    }
+
+    @Test
+    public void testTransformChainsSteps() throws Exception {
+        ListenableFuture<String> input = pending();
+        ListenableFuture<Integer> length = AsyncFutures.transform(input, String::length, AsyncFutures.DIRECT);
+        ListenableFuture<Integer> doubled = AsyncFutures.transformAsync(length,
+                value -> AsyncFutures.immediate(value * 2), AsyncFutures.DIRECT);
+        assertFalse(doubled.isDone());
+
+        completers.get(0).set("abcd");
+        assertEquals(8, (int) doubled.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailuresPropagateAndCanBeCaught() throws Exception {
+        ListenableFuture<Integer> failed = AsyncFutures.transform(AsyncFutures.immediate("x"), value -> {
+            throw new IllegalStateException("boom");
+        }, AsyncFutures.DIRECT);
+        try {
+            AsyncFutures.transform(failed, value -> value + 1, AsyncFutures.DIRECT).get(1, TimeUnit.SECONDS);
+            fail("Expected the step's failure");
+        } catch (ExecutionException e) {
+            assertEquals("boom", e.getCause().getMessage());
+        }
+
+        ListenableFuture<Integer> recovered = AsyncFutures.catching(failed, error -> -1, AsyncFutures.DIRECT);
+        assertEquals(-1, (int) recovered.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeoutCancelsInput() throws Exception {
+        ListenableFuture<String> input = pending();
+        ListenableFuture<String> limited = AsyncFutures.withTimeout(input, 100);
+        try {
+            limited.get(5, TimeUnit.SECONDS);
+            fail("Expected a timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(input.isCancelled());
+
+        ListenableFuture<String> quick = pending();
+        ListenableFuture<String> inTime = AsyncFutures.withTimeout(quick, 5_000);
+        completers.get(1).set("done");
+        assertEquals("done", inTime.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancellingTheChainCancelsTheStepInProgress() {
+        ListenableFuture<String> first = pending();
+        ListenableFuture<String> second = pending();
+        ListenableFuture<String> chain = AsyncFutures.transformAsync(first, value -> second, AsyncFutures.DIRECT);
+        completers.get(0).set("first");
+        assertFalse(chain.isDone());
+
+        chain.cancel(false);
+        assertTrue(second.isCancelled());
+    }
+}
@@ -0,0 +1,150 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+@RunWith(RobolectricTestRunner.class)
+public class BarchartPageScannerTest {
+
+    private static final String PAGE_HEAD = "<!doctype html><html><head><title>$SPX Technical Analysis</title></head><body>\n"
+            + "<script>var bcData = {\"currentSymbol\":{\"symbol\":\"$SPX\",\"lastPrice\":\"6,734.11\",\"priceChange\":\"+12.40\"}};</script>\n";
+
+    private static final String MA_TABLE = "<table><tr><th>Period</th><th>Moving Average</th></tr>\n"
+            + "<tr><td>5-Day</td><td>$6,701.02</td><td>+33.09</td></tr>\n"
+            + "<tr><td>20-Day</td><td>$6,655.87</td><td>+78.24</td></tr>\n"
+            + "<tr><td>50-Day</td><td>$6,512.20</td><td>+221.91</td></tr>\n"
+            + "<tr><td>100 Day</td><td>$6,301.54</td><td>+432.57</td></tr>\n"
+            + "<tr><td>200-Day</td><td class=\"right\">$5,987.45</td><td>+746.66</td></tr>\n"
+            + "</table>\n";
+
+    private static InputStream stream(String html) {
+        return new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String padding(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes);
+        while (sb.length() < bytes) {
+            sb.append("<div class=\"filler\">lorem ipsum dolor sit amet</div>\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testScan_extractsQuotedPriceAndSma() throws Exception {
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(stream(PAGE_HEAD + MA_TABLE));
+        assertTrue(result.isValid());
+        assertEquals(6734.11, result.currentPrice, 0.001);
+        assertEquals(5987.45, result.sma200, 0.001);
+    }
+
+    @Test
+    public void testScan_capturesEveryMovingAverageRow() throws Exception {
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(stream(PAGE_HEAD + MA_TABLE));
+        assertEquals(6701.02, result.movingAverage(5), 0.001);
+        assertEquals(6655.87, result.movingAverage(20), 0.001);
+        assertEquals(6512.20, result.movingAverage(50), 0.001);
+        assertEquals(6301.54, result.movingAverage(100), 0.001);
+        assertEquals(5987.45, result.movingAverage(200), 0.001);
+        assertEquals(0.0, result.movingAverage(150), 0.0);
+        assertTrue(result.priceFromCurrentSymbol);
+    }
+
+    @Test
+    public void testScan_capturesChangeAndVolumeColumns() throws Exception {
+        String table = "<table><tr><td>50-Day</td><td>$6,512.20</td><td>+221.91</td>"
+                + "<td><span class=\"up\">+3.41%</span></td><td>2,345,678</td></tr>\n"
+                + "<tr><td>200-Day</td><td>$5,987.45</td><td>-12.50</td><td>-0.21%</td><td>1.5M</td></tr>\n"
+                + "</table>";
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(stream(PAGE_HEAD + table));
+        assertEquals(6512.20, result.movingAverage(50), 0.001);
+        assertEquals(221.91, result.column(50, BarchartPageScanner.COL_PRICE_CHANGE), 0.001);
+        assertEquals(3.41, result.column(50, BarchartPageScanner.COL_PERCENT_CHANGE), 0.001);
+        assertEquals(2345678, result.column(50, BarchartPageScanner.COL_AVERAGE_VOLUME), 0.5);
+        assertEquals(-12.50, result.column(200, BarchartPageScanner.COL_PRICE_CHANGE), 0.001);
+        assertEquals(1500000, result.column(200, BarchartPageScanner.COL_AVERAGE_VOLUME), 0.5);
+        assertTrue(result.earlyExit);
+    }
+
+    @Test
+    public void testScan_missingColumnsAreNaN() throws Exception {
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(stream(PAGE_HEAD + MA_TABLE));
+        assertEquals(746.66, result.column(200, BarchartPageScanner.COL_PRICE_CHANGE), 0.001);
+        assertTrue(Double.isNaN(result.column(200, BarchartPageScanner.COL_AVERAGE_VOLUME)));
+    }
+
+    @Test
+    public void testScan_extractsUnquotedPrice() throws Exception {
+        String html = "<script>{\"lastPrice\": 681.53,\"x\":1}</script>" + MA_TABLE;
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(stream(html));
+        assertEquals(681.53, result.currentPrice, 0.001);
+        assertEquals(5987.45, result.sma200, 0.001);
+    }
+
+    @Test
+    public void testScan_skipsUnparseablePriceAndUsesNextOne() throws Exception {
+        String html = "{\"lastPrice\":null}{\"currentSymbol\":{\"lastPrice\":\"23,413.67\"}}" + MA_TABLE;
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(stream(html));
+        assertEquals(23413.67, result.currentPrice, 0.001);
+    }
+
+    @Test
+    public void testScan_stopsReadingOnceBothValuesFound() throws Exception {
+        String html = PAGE_HEAD + MA_TABLE + padding(512 * 1024);
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(stream(html));
+        assertTrue(result.isValid());
+        assertTrue("Should stop early", result.earlyExit);
+        assertTrue("Should not read the trailing page, read " + result.bytesRead,
+                result.bytesRead < 16 * 1024);
+    }
+
+    @Test
+    public void testScan_markersSplitAcrossReads() throws Exception {
+        // Deliver the page one byte at a time so every marker straddles a read boundary
+        InputStream oneByteAtATime = new ByteArrayInputStream((PAGE_HEAD + MA_TABLE).getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(oneByteAtATime);
+        assertEquals(6734.11, result.currentPrice, 0.001);
+        assertEquals(5987.45, result.sma200, 0.001);
+    }
+
+    @Test
+    public void testScan_fallsBackToBareRowLabel() throws Exception {
+        String html = PAGE_HEAD + "<tr><td class=\"label\">200-Day</td><td>5,900.00</td></tr>";
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(stream(html));
+        assertTrue(result.isValid());
+        assertFalse("Bare label needs the whole page to rule out a table row", result.earlyExit);
+        assertEquals(5900.00, result.sma200, 0.001);
+    }
+
+    @Test
+    public void testScan_recognisesChallengePage() throws Exception {
+        String html = "<html><head><title>Just a moment...</title></head><body>"
+                + "<script>window._cf_chl_opt={}</script>" + padding(256 * 1024);
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(stream(html));
+        assertTrue(result.challenge);
+        assertFalse(result.isValid());
+        assertTrue(result.bytesRead < BarchartPageScanner.CHALLENGE_WINDOW_BYTES);
+    }
+
+    @Test
+    public void testScan_missingDataIsInvalid() throws Exception {
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(stream("<html><body>Not found</body></html>"));
+        assertFalse(result.isValid());
+        assertFalse(result.challenge);
+        assertEquals(0.0, result.currentPrice, 0.0);
+        assertEquals(0.0, result.sma200, 0.0);
+    }
+}
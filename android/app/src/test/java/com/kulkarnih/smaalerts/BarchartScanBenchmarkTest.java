@@ -0,0 +1,145 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+
+import android.util.Log;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * The single-pass byte scanner against the indexOf chain getBarchartData used before it
+ * (decode the whole page, then search it once per marker). The default suite only checks
+ * that both extract the same values; the timings are @Ignore'd wall-clock benchmarks to
+ * run by hand, and log MB/s for both.
+ *
+ * The scanner wins by stopping at the moving-average table. Over a whole page it is not
+ * faster than the indexOf chain: with the table at the end it measured about 0.7x.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BarchartScanBenchmarkTest {
+    private static final String TAG = "BarchartScanBenchmark";
+
+    private static final int WARMUP = 30;
+    private static final int ITERATIONS = 50;
+
+    private static byte[] syntheticPage(boolean tableAtEnd) {
+        StringBuilder filler = new StringBuilder();
+        while (filler.length() < 200 * 1024) {
+            filler.append("<script>window.__cfg={\"widget\":\"quote-strip\",\"symbols\":[\"AAPL\",\"MSFT\"],\"ts\":1731600000};</script>\n");
+            filler.append("<div class=\"bc-nav\"><a href=\"/stocks/quotes/SPY\">SPY 200-Day Moving Average</a></div>\n");
+        }
+        String head = "<!doctype html><html><head><title>$SPX Technical Analysis</title></head><body>\n";
+        String symbol = "<script>var bcData={\"currentSymbol\":{\"symbol\":\"$SPX\",\"lastPrice\":\"6,734.11\"}};</script>\n";
+        String table = "<table><tr><td>5-Day</td><td>$6,701.02</td></tr><tr><td>20-Day</td><td>$6,655.87</td></tr>"
+                + "<tr><td>50-Day</td><td>$6,512.20</td></tr><tr><td>100-Day</td><td>$6,301.54</td></tr>"
+                + "<tr><td>200-Day</td><td>$5,987.45</td></tr></table>\n";
+        String page = tableAtEnd
+                ? head + filler + filler + symbol + table + "</body></html>"
+                : head + filler + symbol + table + filler + "</body></html>";
+        return page.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** The pre-streaming extraction, kept here only as the benchmark baseline. */
+    private static double[] legacyExtract(byte[] page) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(page)));
+        StringBuilder response = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            response.append(line);
+        }
+        String html = response.toString();
+
+        double currentPrice = 0.0;
+        int lastPriceStart = html.indexOf("\"lastPrice\":");
+        if (lastPriceStart > 0) {
+            int valueStart = lastPriceStart + 12;
+            boolean quoted = html.charAt(valueStart) == '"';
+            if (quoted) valueStart++;
+            int valueEnd = valueStart;
+            while (valueEnd < html.length()) {
+                char c = html.charAt(valueEnd);
+                if (quoted ? c == '"' : (c == ',' || c == '}')) break;
+                valueEnd++;
+            }
+            currentPrice = Double.parseDouble(html.substring(valueStart, valueEnd).trim().replace(",", ""));
+        }
+        if (currentPrice <= 0) {
+            html.indexOf("\"currentSymbol\":");
+        }
+
+        double sma200 = 0.0;
+        int rowStart = html.indexOf("<td>200-Day</td>");
+        if (rowStart < 0) rowStart = html.indexOf("<td>200 Day</td>");
+        if (rowStart < 0) rowStart = html.indexOf("200-Day");
+        if (rowStart > 0) {
+            int firstTdEnd = html.indexOf("</td>", rowStart);
+            int tdStart = html.indexOf("<td", firstTdEnd);
+            int valueStart = html.indexOf(">", tdStart) + 1;
+            int valueEnd = html.indexOf("<", valueStart);
+            sma200 = Double.parseDouble(html.substring(valueStart, valueEnd).trim().replace(",", "").replace("$", ""));
+        }
+        return new double[]{currentPrice, sma200};
+    }
+
+    private static double[] scannerExtract(byte[] page) throws Exception {
+        BarchartPageScanner.Result result = BarchartPageScanner.scan(new ByteArrayInputStream(page));
+        return new double[]{result.currentPrice, result.sma200};
+    }
+
+    private interface Extractor {
+        double[] extract(byte[] page) throws Exception;
+    }
+
+    private static double megabytesPerSecond(Extractor extractor, byte[] page) throws Exception {
+        for (int i = 0; i < WARMUP; i++) extractor.extract(page);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) extractor.extract(page);
+        long elapsed = System.nanoTime() - start;
+        return (page.length * (double) ITERATIONS / (1024.0 * 1024.0)) / (elapsed / 1e9);
+    }
+
+    private static void assertSameValues(byte[] page) throws Exception {
+        double[] legacy = legacyExtract(page);
+        double[] scanned = scannerExtract(page);
+        assertEquals(legacy[0], scanned[0], 0.0001);
+        assertEquals(legacy[1], scanned[1], 0.0001);
+    }
+
+    private static void compare(String label, byte[] page) throws Exception {
+        assertSameValues(page);
+        double legacyRate = megabytesPerSecond(BarchartScanBenchmarkTest::legacyExtract, page);
+        double scannerRate = megabytesPerSecond(BarchartScanBenchmarkTest::scannerExtract, page);
+        Log.i(TAG, String.format(Locale.US,
+                "%s (%d KB): indexOf chain %.1f MB/s, byte scanner %.1f MB/s (%.1fx)",
+                label, page.length / 1024, legacyRate, scannerRate, scannerRate / legacyRate));
+    }
+
+    @Test
+    public void testScannerMatchesLegacyExtraction() throws Exception {
+        assertSameValues(syntheticPage(false));
+        assertSameValues(syntheticPage(true));
+    }
+
+    @Ignore("Wall-clock benchmark, run by hand")
+    @Test
+    public void benchmark_tableMidPage() throws Exception {
+        // Typical layout: the scanner stops at the table, the old code read and searched everything
+        compare("table mid-page", syntheticPage(false));
+    }
+
+    @Ignore("Wall-clock benchmark, run by hand")
+    @Test
+    public void benchmark_tableAtEnd() throws Exception {
+        // Worst case for the scanner: no early exit, a full pass over the page
+        compare("table at end", syntheticPage(true));
+    }
+}
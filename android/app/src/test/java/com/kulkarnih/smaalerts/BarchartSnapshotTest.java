@@ -0,0 +1,94 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+@RunWith(RobolectricTestRunner.class)
+public class BarchartSnapshotTest {
+
+    private static final String PAGE = "<script>{\"currentSymbol\":{\"lastPrice\":\"6,734.11\"}}</script>"
+            + "<table><tr><td>5-Day</td><td>6,701.02</td><td>+33.09</td><td>+0.49%</td><td>2,100,000</td></tr>"
+            + "<tr><td>50-Day</td><td>6,512.20</td><td>+221.91</td><td>+3.41%</td><td>2,300,000</td></tr>"
+            + "<tr><td>200-Day</td><td>5,987.45</td><td>+746.66</td><td>+12.47%</td><td>2,500,000</td></tr></table>";
+
+    // 2024-11-14 15:30 in New York
+    private static final long NOW = ZonedDateTime.of(2024, 11, 14, 15, 30, 0, 0, ZoneId.of("America/New_York"))
+            .toInstant().toEpochMilli();
+
+    private static BarchartSnapshot snapshot(String symbol, String html, long now) throws Exception {
+        BarchartPageScanner.Result page = BarchartPageScanner.scan(
+                new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)));
+        return BarchartSnapshot.fromScan(symbol, page, now);
+    }
+
+    @After
+    public void tearDown() {
+        BarchartSnapshot.clearCache();
+    }
+
+    @Test
+    public void testFromScan_exposesEveryListedPeriod() throws Exception {
+        BarchartSnapshot snapshot = snapshot("$SPX", PAGE, NOW);
+        assertNotNull(snapshot);
+        assertEquals(6734.11, snapshot.lastPrice, 0.001);
+        assertTrue(snapshot.supports(5));
+        assertTrue(snapshot.supports(50));
+        assertTrue(snapshot.supports(200));
+        assertFalse("20-Day row is not on this page", snapshot.supports(20));
+        assertEquals(6512.20, snapshot.movingAverage(50), 0.001);
+        assertEquals(0.0, snapshot.movingAverage(20), 0.0);
+        assertEquals(2500000, snapshot.row(200).averageVolume, 0.5);
+        assertEquals(12.47, snapshot.row(200).percentChange, 0.001);
+    }
+
+    @Test
+    public void testFromScan_invalidPageGivesNull() throws Exception {
+        assertNull(snapshot("$SPX", "<html>nothing here</html>", NOW));
+    }
+
+    @Test
+    public void testToJson_keepsLegacyKeys() throws Exception {
+        JSONObject json = snapshot("$SPX", PAGE, NOW).toJson();
+        assertEquals(6734.11, json.getDouble("currentPrice"), 0.001);
+        assertEquals(5987.45, json.getDouble("sma200"), 0.001);
+        assertEquals(6701.02, json.getDouble("sma5"), 0.001);
+        assertFalse(json.has("sma20"));
+        assertEquals(2500000, json.getDouble("avgVolume200"), 0.5);
+    }
+
+    @Test
+    public void testCache_servedOnlyWhilePriceIsFresh() throws Exception {
+        // Taken at 15:30 New York, during the regular session
+        BarchartSnapshot snapshot = snapshot("$SPX", PAGE, NOW);
+        BarchartSnapshot.cache(snapshot);
+
+        long minute = 60 * 1000L;
+        assertSame(snapshot, BarchartSnapshot.cached("$SPX", NOW + 4 * minute));
+        assertNull(BarchartSnapshot.cached("$NASX", NOW + 4 * minute));
+        // Later the same day the price has moved, so the page is downloaded again
+        assertNull(BarchartSnapshot.cached("$SPX", NOW + 6 * minute));
+        assertNull(BarchartSnapshot.cached("$SPX", NOW + 2 * 60 * minute));
+
+        // Taken after the post-market session: the price holds until the next open, within the day
+        long evening = NOW + 5 * 60 * minute;   // 20:30 New York
+        BarchartSnapshot closed = snapshot("$SPX", PAGE, evening);
+        BarchartSnapshot.cache(closed);
+        assertSame(closed, BarchartSnapshot.cached("$SPX", evening + 60 * minute));
+        assertNull(BarchartSnapshot.cached("$SPX", evening + 7 * 60 * minute));   // 03:30 the next day
+    }
+}
@@ -0,0 +1,145 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatchQuoteClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    /** One spark entry with two daily bars (Mon 2024-01-15 settled, Tue 2024-01-16 live). */
+    private static String entry(String symbol, double price) {
+        long monday = LocalDate.of(2024, 1, 15).toEpochDay() * 86400L + 14 * 3600 + 30 * 60;
+        long tuesday = monday + 86400L;
+        return "{\"symbol\":\"" + symbol + "\",\"response\":[{\"meta\":{\"symbol\":\"" + symbol + "\",\"regularMarketPrice\":" + price + "},"
+                + "\"timestamp\":[" + monday + "," + tuesday + "],"
+                + "\"indicators\":{\"quote\":[{\"close\":[" + (price - 1) + "," + price + "]}]}}]}";
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v7/finance/spark", exchange -> {
+            String query = exchange.getRequestURI().getRawQuery();
+            requests.add(query);
+            String symbolsParam = query.substring("symbols=".length(), query.indexOf('&'));
+            List<String> symbols = Arrays.asList(URLDecoder.decode(symbolsParam, "UTF-8").split(","));
+
+            int status = 200;
+            StringBuilder body = new StringBuilder("{\"spark\":{\"result\":[");
+            boolean first = true;
+            for (String symbol : symbols) {
+                if (symbol.equals("FAIL")) status = 500;
+                if (symbol.equals("MISSING")) continue;
+                if (!first) body.append(',');
+                first = false;
+                if (symbol.equals("EMPTY")) {
+                    body.append("{\"symbol\":\"EMPTY\",\"response\":[]}");
+                } else {
+                    body.append(entry(symbol, 100.0 + symbol.length()));
+                }
+            }
+            body.append("],\"error\":null}}");
+            byte[] bytes = status == 200 ? body.toString().getBytes(StandardCharsets.UTF_8) : new byte[0];
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testDemultiplexesBatches() {
+        BatchQuoteClient client = new BatchQuoteClient(baseUrl, 2);
+
+        Map<String, BatchQuoteClient.Quote> quotes = client.fetch(Arrays.asList("A", "BB", "CCC", "DDDD", "EEEEE", "A"));
+
+        // Five distinct symbols in batches of two
+        assertEquals(3, requests.size());
+        assertEquals(5, quotes.size());
+        assertEquals(103.0, quotes.get("CCC").price, 0.0);
+        assertEquals(105.0, quotes.get("EEEEE").price, 0.0);
+
+        PriceSeries recent = quotes.get("A").recent;
+        assertEquals(2, recent.size());
+        assertEquals((int) LocalDate.of(2024, 1, 15).toEpochDay(), recent.dayAt(0));
+        assertEquals(100.0, recent.closeAt(0), 0.0);
+    }
+
+    @Test
+    public void testPartialFailureKeepsOtherSymbols() {
+        BatchQuoteClient client = new BatchQuoteClient(baseUrl, 2);
+
+        // Batch 1: A, MISSING  Batch 2: FAIL, BB (HTTP 500)  Batch 3: EMPTY, CCC
+        Map<String, BatchQuoteClient.Quote> quotes = client.fetch(Arrays.asList("A", "MISSING", "FAIL", "BB", "EMPTY", "CCC"));
+
+        assertEquals(3, requests.size());
+        assertEquals(2, quotes.size());
+        assertTrue(quotes.containsKey("A"));
+        assertTrue(quotes.containsKey("CCC"));
+        assertFalse(quotes.containsKey("BB"));
+        assertFalse(quotes.containsKey("EMPTY"));
+    }
+
+    @Test
+    public void testSymbolsAreEncoded() {
+        BatchQuoteClient client = new BatchQuoteClient(baseUrl, 20);
+
+        assertEquals(105.0, client.fetchPrice("^GSPC"), 0.0);
+        assertEquals("symbols=%5EGSPC&range=5d&interval=1d", requests.get(0));
+        assertEquals(0.0, client.fetchPrice("MISSING"), 0.0);
+    }
+
+    @Test
+    public void testUnreachableServer() {
+        server.stop(0);
+        BatchQuoteClient client = new BatchQuoteClient(baseUrl, 20);
+
+        assertTrue(client.fetch(Arrays.asList("A", "B")).isEmpty());
+        assertTrue(client.fetch(Collections.<String>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testDecodeIgnoresUnrequestedSymbols() throws Exception {
+        String json = "{\"spark\":{\"result\":[" + entry("A", 10.0) + "," + entry("Z", 20.0) + "],\"error\":null}}";
+        Map<String, BatchQuoteClient.Quote> quotes = new HashMap<>();
+
+        BatchQuoteClient.decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                Collections.singletonList("A"), quotes);
+
+        assertEquals(1, quotes.size());
+        assertEquals(10.0, quotes.get("A").price, 0.0);
+    }
+}
@@ -0,0 +1,73 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class BytePatternMatcherTest {
+
+    /** Returns "id@endOffset" for every match, in stream order. */
+    private static List<String> run(BytePatternMatcher matcher, String text) {
+        List<String> found = new ArrayList<>();
+        int state = matcher.start();
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < bytes.length; i++) {
+            state = matcher.step(state, bytes[i]);
+            for (int id : matcher.matches(state)) {
+                found.add(id + "@" + i);
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void testClassicOverlappingPatterns() {
+        BytePatternMatcher matcher = new BytePatternMatcher("he", "she", "his", "hers");
+        List<String> found = run(matcher, "ushers");
+        // "she" and "he" both end at index 3, "hers" ends at index 5
+        assertEquals(List.of("0@3", "1@3", "3@5"), found);
+    }
+
+    @Test
+    public void testPatternThatIsSuffixOfAnother() {
+        BytePatternMatcher matcher = new BytePatternMatcher("<td>200-Day</td>", "200-Day", "</td>");
+        List<String> found = run(matcher, "<tr><td>200-Day</td><td>1</td>");
+        assertEquals(List.of("1@14", "0@19", "2@19", "2@29"), found);
+    }
+
+    @Test
+    public void testRestartsAfterPartialMatch() {
+        BytePatternMatcher matcher = new BytePatternMatcher("\"lastPrice\":");
+        assertEquals(List.of("0@17"), run(matcher, "\"lastP\"lastPrice\":1"));
+    }
+
+    @Test
+    public void testNonPatternBytesResetToRoot() {
+        BytePatternMatcher matcher = new BytePatternMatcher("abc");
+        int state = matcher.start();
+        for (byte b : "ab".getBytes(StandardCharsets.US_ASCII)) state = matcher.step(state, b);
+        state = matcher.step(state, (byte) 0xE2); // first byte of a UTF-8 sequence
+        assertEquals(matcher.start(), state);
+        assertArrayEquals(new int[0], matcher.matches(state));
+    }
+
+    @Test
+    public void testPatternMetadata() {
+        BytePatternMatcher matcher = new BytePatternMatcher("a", "abcd");
+        assertEquals(2, matcher.patternCount());
+        assertEquals(4, matcher.patternLength(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPatternRejected() {
+        new BytePatternMatcher("abc", "");
+    }
+}
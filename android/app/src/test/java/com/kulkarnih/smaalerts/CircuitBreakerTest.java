@@ -0,0 +1,178 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class CircuitBreakerTest {
+
+    private static final CircuitBreaker.Config CONFIG = new CircuitBreaker.Config(3, 1000, 3000);
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", CONFIG);
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        breaker.onSuccess();
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        breaker.onFailure(100);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allowRequest(500));
+        assertTrue(breaker.isOpen(500));
+        assertFalse(breaker.isOpen(1100));
+    }
+
+    @Test
+    public void testHalfOpenAllowsSingleProbe() {
+        CircuitBreaker breaker = open();
+        assertTrue(breaker.allowRequest(1000));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.allowRequest(1001));
+        assertFalse(breaker.allowRequest(1002));
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.allowRequest(1003));
+    }
+
+    @Test
+    public void testFailedProbeDoublesOpenPeriodUpToMax() {
+        CircuitBreaker breaker = open();
+        assertTrue(breaker.allowRequest(1000));
+        breaker.onFailure(1000);
+        assertFalse(breaker.allowRequest(2999));
+        assertTrue(breaker.allowRequest(3000));
+        breaker.onFailure(3000);
+        // Capped at 3000 ms
+        assertFalse(breaker.allowRequest(5999));
+        assertTrue(breaker.allowRequest(6000));
+
+        breaker.onSuccess();
+        breaker.onFailure(7000);
+        breaker.onFailure(7000);
+        breaker.onFailure(7000);
+        // Back to the base period after recovering
+        assertTrue(breaker.allowRequest(8000));
+    }
+
+    private static CircuitBreaker open() {
+        CircuitBreaker breaker = new CircuitBreaker("test", CONFIG);
+        for (int i = 0; i < CONFIG.failureThreshold; i++) {
+            breaker.onFailure(0);
+        }
+        return breaker;
+    }
+
+    @Test
+    public void testStateSurvivesEncode() {
+        CircuitBreaker breaker = open();
+        CircuitBreaker restored = new CircuitBreaker("test", CONFIG);
+        restored.decodeInto(breaker.encode());
+        assertEquals(CircuitBreaker.State.OPEN, restored.state());
+        assertFalse(restored.allowRequest(999));
+        assertTrue(restored.allowRequest(1000));
+
+        // A probe cut short by the process dying is retried on the next run
+        CircuitBreaker again = new CircuitBreaker("test", CONFIG);
+        again.decodeInto(restored.encode());
+        assertTrue(again.allowRequest(0));
+
+        again.decodeInto("garbage");
+        assertEquals(CircuitBreaker.State.CLOSED, again.state());
+    }
+
+    @Test
+    public void testLoadAndSaveWithConfiguredThreshold() {
+        Context context = RuntimeEnvironment.getApplication();
+        PrefsHelper.putInt(context, PrefsHelper.KEY_BREAKER_FAILURES, 1);
+        PrefsHelper.putInt(context, PrefsHelper.KEY_BREAKER_OPEN_MINUTES, 10);
+        CircuitBreaker.load(context, "persisted");
+        CircuitBreaker.of("persisted").onFailure(0);
+        assertEquals(CircuitBreaker.State.OPEN, CircuitBreaker.of("persisted").state());
+        CircuitBreaker.save(context, "persisted");
+
+        CircuitBreaker.of("persisted").onSuccess();
+        CircuitBreaker.load(context, "persisted");
+        assertFalse(CircuitBreaker.of("persisted").allowRequest(599_999));
+        assertTrue(CircuitBreaker.of("persisted").allowRequest(600_000));
+    }
+
+    @Test
+    public void testGuardedSourceFailsFastWhileOpen() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        DataSource flaky = new DataSource() {
+            @Override
+            public String name() {
+                return "flaky";
+            }
+
+            @Override
+            public Reading fetch(String symbol, int smaPeriod) {
+                calls.incrementAndGet();
+                if (symbol.equals("THROW")) throw new IllegalStateException("down");
+                return symbol.equals("OK") ? new Reading(symbol, 1, 1, smaPeriod, "flaky", Reading.LIVE) : null;
+            }
+        };
+        CircuitBreaker breaker = new CircuitBreaker("flaky", new CircuitBreaker.Config(2, 60_000, 60_000));
+        GuardedDataSource guarded = new GuardedDataSource(flaky, breaker);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                guarded.fetch("THROW", 200);
+                fail("Expected the delegate's exception");
+            } catch (IllegalStateException expected) {
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertNull(guarded.fetch("OK", 200));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testEmptyAnswersDoNotTripTheBreaker() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        DataSource young = new DataSource() {
+            @Override
+            public String name() {
+                return "young";
+            }
+
+            @Override
+            public Reading fetch(String symbol, int smaPeriod) {
+                calls.incrementAndGet();
+                // Healthy, but too little history for the period
+                return symbol.equals("OK") ? new Reading(symbol, 1, 1, smaPeriod, "young", Reading.LIVE) : null;
+            }
+        };
+        CircuitBreaker breaker = new CircuitBreaker("young", new CircuitBreaker.Config(2, 60_000, 60_000));
+        GuardedDataSource guarded = new GuardedDataSource(young, breaker);
+
+        for (int i = 0; i < 5; i++) {
+            assertNull(guarded.fetch("IPO", 200));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(5, calls.get());
+
+        // An empty answer to the half-open probe lets the next request probe again
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertTrue(breaker.allowRequest(60_000));
+        breaker.onNeutral();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertTrue(breaker.allowRequest(60_000));
+    }
+}
@@ -0,0 +1,96 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+
+/** The symbol table and the sources that need no network. */
+@RunWith(RobolectricTestRunner.class)
+public class DataSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSymbolMap() {
+        assertEquals("^GSPC", SymbolMap.yahoo("$SPX"));
+        assertEquals("^IXIC", SymbolMap.yahoo("$NASX"));
+        assertEquals("URTH", SymbolMap.yahoo("URTH"));
+        assertEquals("$SPX", SymbolMap.forSource(SymbolMap.BARCHART, "$SPX"));
+        assertEquals("$SPX", SymbolMap.forSource("unknown", "$SPX"));
+        assertEquals("^GSPC", SMAWorker.yahooSymbol("$SPX"));
+    }
+
+    @Test
+    public void testLocalFileSource() {
+        HistoryStore store = new HistoryStore(folder.getRoot());
+        LocalFileDataSource source = new LocalFileDataSource(store);
+        assertNull(source.fetch("URTH", 3));
+
+        store.append("URTH", PriceSeries.of(new int[]{100, 101, 102, 103}, new double[]{1, 2, 3, 4}));
+        DataSource.Reading reading = source.fetch("URTH", 3);
+        assertEquals(4.0, reading.price, 0.0);
+        assertEquals(3.0, reading.sma, 1e-9);
+        assertEquals(103, reading.asOfDay);
+        assertEquals(SymbolMap.LOCAL, reading.source);
+        assertNull(source.fetch("URTH", 5));
+    }
+
+    private static BarchartDataSource barchart(String json) {
+        SharedPreferences prefs = RuntimeEnvironment.getApplication().getSharedPreferences("data_source_test", Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+        return new BarchartDataSource(new MarketDataRepository(prefs, new MarketDataRepository.Source() {
+            @Override
+            public double fetchPrice(String symbol) {
+                return 0;
+            }
+
+            @Override
+            public String fetchBarchart(String symbol) {
+                return json;
+            }
+        }));
+    }
+
+    @Test
+    public void testBarchartSourceUsesRequestedPeriod() throws Exception {
+        DataSource.Reading reading = barchart("{\"currentPrice\":110,\"sma50\":100,\"sma200\":90}").fetch("$SPX", 50);
+        assertEquals(110, reading.price, 0.0);
+        assertEquals(100, reading.sma, 0.0);
+        assertEquals(50, reading.smaPeriod);
+        assertEquals(DataSource.Reading.LIVE, reading.asOfDay);
+    }
+
+    @Test
+    public void testBarchartSourceOnlySupportsPagePeriods() throws Exception {
+        BarchartDataSource source = barchart("{\"currentPrice\":110,\"sma200\":90}");
+        assertTrue(source.supports(200));
+        assertFalse(source.supports(150));
+        // No SMA200 in place of a period the page does not list
+        assertNull(source.fetch("$SPX", 150));
+    }
+
+    @Test
+    public void testBarchartSourceWithoutData() throws Exception {
+        assertNull(barchart("{\"currentPrice\":110}").fetch("$SPX", 200));
+    }
+
+    @Test(expected = IOException.class)
+    public void testBarchartFetchFailureIsThrown() throws Exception {
+        // Counted against the source's circuit breaker, unlike a page without the period
+        barchart(null).fetch("$SPX", 200);
+    }
+}
@@ -0,0 +1,175 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class HedgedDataSourceTest {
+
+    private static int sourceCount;
+
+    /** Answers after {@code delayMs} with {@code price}, or null when price is 0. */
+    private static final class FakeSource implements DataSource {
+        final String name = "fake" + (++sourceCount);
+        final long delayMs;
+        final double price;
+        final AtomicInteger calls = new AtomicInteger();
+        int onlyPeriod; // 0 for any period
+
+        FakeSource(long delayMs, double price) {
+            this.delayMs = delayMs;
+            this.price = price;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public boolean supports(int smaPeriod) {
+            return onlyPeriod == 0 || onlyPeriod == smaPeriod;
+        }
+
+        @Override
+        public Reading fetch(String symbol, int smaPeriod) throws Exception {
+            calls.incrementAndGet();
+            Thread.sleep(delayMs);
+            if (price < 0) throw new IllegalStateException("boom");
+            return price == 0 ? null : new Reading(symbol, price, price - 10, smaPeriod, name, Reading.LIVE);
+        }
+    }
+
+    private static void warm(FakeSource source, long latencyMs) {
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            LatencyTracker.of(source.name()).record(latencyMs);
+        }
+    }
+
+    @Test
+    public void testFastPrimaryIsNotHedged() throws Exception {
+        FakeSource primary = new FakeSource(10, 100);
+        FakeSource secondary = new FakeSource(10, 200);
+        HedgedDataSource hedged = new HedgedDataSource(primary, secondary);
+
+        DataSource.Reading reading = hedged.fetch("SPY", 200);
+        assertEquals(100, reading.price, 0.0);
+        assertEquals(primary.name(), reading.source);
+        assertEquals(0, secondary.calls.get());
+        assertEquals(0, hedged.hedgedCount());
+        assertEquals(1, LatencyTracker.of(primary.name()).size());
+    }
+
+    @Test
+    public void testSlowPrimaryIsHedgedAfterItsP95() throws Exception {
+        FakeSource primary = new FakeSource(3000, 100);
+        FakeSource secondary = new FakeSource(20, 200);
+        warm(primary, 300);
+        HedgedDataSource hedged = new HedgedDataSource(primary, secondary);
+        assertEquals(300, hedged.hedgeDelayMillis());
+
+        long start = System.currentTimeMillis();
+        DataSource.Reading reading = hedged.fetch("SPY", 200);
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals(secondary.name(), reading.source);
+        assertEquals(1, hedged.hedgedCount());
+        assertTrue("took " + elapsed + " ms", elapsed < 1500);
+    }
+
+    @Test
+    public void testPrimaryWinsIfItFinishesFirstAfterHedging() throws Exception {
+        FakeSource primary = new FakeSource(400, 100);
+        FakeSource secondary = new FakeSource(2000, 200);
+        warm(primary, 250);
+        HedgedDataSource hedged = new HedgedDataSource(primary, secondary);
+
+        DataSource.Reading reading = hedged.fetch("SPY", 200);
+        assertEquals(primary.name(), reading.source);
+        assertEquals(1, secondary.calls.get());
+    }
+
+    @Test
+    public void testAsyncFetchOccupiesThreadsOnlyForRequests() throws Exception {
+        FakeSource primary = new FakeSource(3000, 100);
+        FakeSource secondary = new FakeSource(20, 200);
+        warm(primary, 300);
+        HedgedDataSource hedged = new HedgedDataSource(primary, secondary);
+        ExecutorService pool = Executors.newCachedThreadPool();
+        AtomicInteger tasks = new AtomicInteger();
+        Executor counting = task -> {
+            tasks.incrementAndGet();
+            pool.execute(task);
+        };
+        try {
+            long start = System.currentTimeMillis();
+            ListenableFuture<DataSource.Reading> future = hedged.fetchAsync("SPY", 200, counting);
+            assertTrue(System.currentTimeMillis() - start < 200);
+            DataSource.Reading reading = future.get(2, TimeUnit.SECONDS);
+            assertEquals(secondary.name(), reading.source);
+            // One task per request; the hedge was started by a timer, not a waiting thread
+            assertEquals(2, tasks.get());
+            assertEquals(1, hedged.hedgedCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedPrimaryFallsBackImmediately() throws Exception {
+        FakeSource secondary = new FakeSource(10, 200);
+        for (FakeSource primary : new FakeSource[]{new FakeSource(10, 0), new FakeSource(10, -1)}) {
+            HedgedDataSource hedged = new HedgedDataSource(primary, secondary);
+            long start = System.currentTimeMillis();
+            assertEquals(200, hedged.fetch("SPY", 200).price, 0.0);
+            assertTrue(System.currentTimeMillis() - start < HedgedDataSource.DEFAULT_HEDGE_DELAY_MS);
+            assertEquals(0, hedged.hedgedCount());
+        }
+    }
+
+    @Test
+    public void testSourceWithoutThePeriodIsNotAsked() throws Exception {
+        FakeSource primary = new FakeSource(3000, 0);
+        FakeSource secondary = new FakeSource(10, 200);
+        secondary.onlyPeriod = 200;
+        warm(primary, 300);
+        HedgedDataSource hedged = new HedgedDataSource(primary, secondary);
+
+        // Slow, then empty: still no SMA200 standing in for the SMA150
+        assertNull(hedged.fetch("SPY", 150));
+        assertEquals(0, secondary.calls.get());
+        assertEquals(0, hedged.hedgedCount());
+
+        primary.onlyPeriod = 50;
+        DataSource.Reading reading = hedged.fetch("SPY", 200);
+        assertEquals(secondary.name(), reading.source);
+        assertEquals(1, primary.calls.get());
+    }
+
+    @Test
+    public void testBothFailing() throws Exception {
+        HedgedDataSource hedged = new HedgedDataSource(new FakeSource(10, 0), new FakeSource(10, -1));
+        assertNull(hedged.fetch("SPY", 200));
+    }
+
+    @Test
+    public void testHedgeDelayHasAFloor() {
+        FakeSource primary = new FakeSource(0, 1);
+        warm(primary, 5);
+        assertEquals(HedgedDataSource.MIN_HEDGE_DELAY_MS, new HedgedDataSource(primary, primary).hedgeDelayMillis());
+        FakeSource cold = new FakeSource(0, 1);
+        assertEquals(HedgedDataSource.DEFAULT_HEDGE_DELAY_MS, new HedgedDataSource(cold, cold).hedgeDelayMillis());
+    }
+}
@@ -0,0 +1,164 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+@RunWith(RobolectricTestRunner.class)
+public class HistoryStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private HistoryStore store;
+
+    @Before
+    public void setUp() {
+        dir = new File(folder.getRoot(), "history");
+        store = new HistoryStore(dir);
+    }
+
+    private static PriceSeries series(int firstDay, double... closes) {
+        int[] days = new int[closes.length];
+        for (int i = 0; i < days.length; i++) days[i] = firstDay + i;
+        return PriceSeries.of(days, closes);
+    }
+
+    private static byte[] record(int day, double close) {
+        ByteBuffer buffer = ByteBuffer.allocate(HistoryStore.RECORD_SIZE);
+        buffer.putInt(day).putDouble(close);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, 12);
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    @Test
+    public void testAppendAndRead() {
+        assertEquals(0, store.size("$SPX"));
+        assertEquals(HistoryStore.NO_DAY, store.lastDay("$SPX"));
+
+        assertEquals(3, store.append("$SPX", series(100, 1.0, 2.0, 3.0)));
+
+        PriceSeries read = store.read("$SPX");
+        assertEquals(3, read.size());
+        assertEquals(100, read.dayAt(0));
+        assertEquals(3.0, read.lastClose(), 0.0);
+        assertEquals(102, store.lastDay("$SPX"));
+
+        PriceSeries tail = store.tail("$SPX", 2);
+        assertEquals(2, tail.size());
+        assertEquals(101, tail.dayAt(0));
+        assertTrue(new File(dir, "%24SPX.bin").exists());
+    }
+
+    @Test
+    public void testOverlapIsDeduplicatedAndLastDayCorrected() {
+        store.append("URTH", series(100, 1.0, 2.0, 3.0));
+
+        // 100..102 already stored; 102 corrected, 103..104 new
+        assertEquals(3, store.append("URTH", series(100, 1.0, 2.0, 3.5, 4.0, 5.0)));
+        // Nothing new
+        assertEquals(0, store.append("URTH", series(101, 2.0, 3.5, 4.0, 5.0)));
+
+        PriceSeries read = store.read("URTH");
+        assertEquals(5, read.size());
+        assertEquals(3.5, read.closeOn(102), 0.0);
+        assertEquals(5.0, read.closeOn(104), 0.0);
+    }
+
+    @Test
+    public void testSurvivesReopen() {
+        store.append("URTH", series(100, 1.0, 2.0));
+        store.append("URTH", series(102, 3.0));
+
+        HistoryStore reopened = new HistoryStore(dir);
+        assertEquals(3, reopened.size("URTH"));
+        assertEquals(2.0, reopened.read("URTH").sma(3), 1e-12);
+    }
+
+    @Test
+    public void testLeftoverJournalIsReplayedAndTornTailDropped() throws Exception {
+        store.append("URTH", series(100, 1.0, 2.0));
+
+        // A crash after the journal was forced but before the data file was updated
+        try (RandomAccessFile journal = new RandomAccessFile(new File(dir, "URTH.jnl"), "rw")) {
+            journal.write(record(101, 2.0));
+            journal.write(record(102, 3.0));
+            journal.write(record(103, 4.0));
+            byte[] torn = record(104, 5.0);
+            journal.write(torn, 0, 9);
+        }
+
+        HistoryStore reopened = new HistoryStore(dir);
+        PriceSeries read = reopened.read("URTH");
+        assertEquals(4, read.size());
+        assertEquals(103, read.lastDay());
+        assertFalse(new File(dir, "URTH.jnl").exists());
+    }
+
+    @Test
+    public void testCorruptHeaderIsRebuiltFromRecords() throws Exception {
+        store.append("URTH", series(100, 1.0, 2.0, 3.0));
+        try (RandomAccessFile data = new RandomAccessFile(new File(dir, "URTH.bin"), "rw")) {
+            data.seek(8);
+            data.writeInt(0); // count no longer matches its checksum
+        }
+
+        HistoryStore reopened = new HistoryStore(dir);
+        assertEquals(3, reopened.size("URTH"));
+        assertEquals(102, reopened.read("URTH").lastDay());
+    }
+
+    @Test
+    public void testCorruptRecordDiscardsHistory() throws Exception {
+        store.append("URTH", series(100, 1.0, 2.0, 3.0));
+        try (RandomAccessFile data = new RandomAccessFile(new File(dir, "URTH.bin"), "rw")) {
+            data.seek(HistoryStore.HEADER_SIZE + HistoryStore.RECORD_SIZE + 6);
+            data.write(0x7F);
+        }
+
+        assertNull(store.read("URTH"));
+        assertEquals(0, store.size("URTH"));
+        // And it can be rebuilt
+        assertEquals(1, store.append("URTH", series(200, 9.0)));
+    }
+
+    @Test
+    public void testCompactionKeepsNewestRecords() {
+        double[] closes = new double[3000];
+        for (int i = 0; i < closes.length; i++) closes[i] = 100.0 + i;
+        store.append("URTH", series(10000, closes));
+
+        // Past the retention limit plus slack, so the append compacted
+        assertEquals(HistoryStore.MAX_RECORDS, store.size("URTH"));
+        PriceSeries read = store.read("URTH");
+        assertEquals(10000 + 2999, read.lastDay());
+        assertEquals(10000 + 3000 - HistoryStore.MAX_RECORDS, read.dayAt(0));
+
+        assertTrue(store.compact("URTH", 10));
+        assertEquals(10, store.size("URTH"));
+        assertEquals(3099.0, new HistoryStore(dir).read("URTH").lastClose(), 0.0);
+    }
+
+    @Test
+    public void testFileBase() {
+        assertEquals("%24SPX", HistoryStore.fileBase("$SPX"));
+        assertEquals("%5EGSPC", HistoryStore.fileBase("^GSPC"));
+        assertEquals("BRK.B", HistoryStore.fileBase("BRK.B"));
+    }
+}
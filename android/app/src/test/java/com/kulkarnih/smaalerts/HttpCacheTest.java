@@ -0,0 +1,249 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class HttpCacheTest {
+
+    private static final ZoneId NY = ZoneId.of("America/New_York");
+    private static final long NOW = LocalDateTime.of(2024, 1, 16, 10, 0).atZone(NY).toInstant().toEpochMilli();
+    private static final HttpCache.Policy ONE_MINUTE = HttpCache.ttl(60_000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+    private HttpCache cache;
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final List<String> ifNoneMatch = new CopyOnWriteArrayList<>();
+    private volatile String version = "v1";
+
+    private static String longBody(String version) {
+        StringBuilder sb = new StringBuilder(version);
+        for (int i = 0; i < 5000; i++) {
+            sb.append(" line ").append(i);
+        }
+        return sb.toString();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/etag", exchange -> {
+            String tag = "\"" + version + "\"";
+            String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+            ifNoneMatch.add(String.valueOf(condition));
+            exchange.getResponseHeaders().set("ETag", tag);
+            if (tag.equals(condition)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            send(exchange, 200, "body " + version);
+        });
+        server.createContext("/plain", exchange -> send(exchange, 200, longBody(version)));
+        server.createContext("/large", exchange -> {
+            downloads.incrementAndGet();
+            byte[] chunk = new byte[64 * 1024];
+            Arrays.fill(chunk, (byte) 'x');
+            exchange.sendResponseHeaders(200, 64L * chunk.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 64; i++) {
+                    out.write(chunk);
+                }
+            } catch (java.io.IOException e) {
+                // The client hung up after the part it wanted
+            }
+        });
+        server.createContext("/missing", exchange -> send(exchange, 404, "not found"));
+        server.createContext("/chart", exchange -> send(exchange, 200, TestDataHelper.createYahooChartJson(400, 100.0, 0) + "\n"));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        cache = new HttpCache(folder.newFolder("http"), HttpCache.DEFAULT_MAX_BYTES);
+    }
+
+    private void send(com.sun.net.httpserver.HttpExchange exchange, int status, String body) throws java.io.IOException {
+        downloads.incrementAndGet();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String get(String path, long now) throws Exception {
+        try (SharedHttpClient.Response response = cache.get(baseUrl + path, ONE_MINUTE, now)) {
+            return response.bodyString();
+        }
+    }
+
+    @Test
+    public void testFreshEntryIsServedFromDisk() throws Exception {
+        assertEquals("body v1", get("/etag", NOW));
+        try (SharedHttpClient.Response response = cache.get(baseUrl + "/etag", ONE_MINUTE, NOW + 30_000)) {
+            assertTrue(response.fromCache);
+            assertEquals("body v1", response.bodyString());
+        }
+        assertEquals(1, downloads.get());
+        assertEquals(1, ifNoneMatch.size());
+        assertArrayEquals(new long[]{1, 1, 0}, cache.stats());
+    }
+
+    @Test
+    public void testExpiredEntryIsRevalidatedWithEtag() throws Exception {
+        get("/etag", NOW);
+        assertEquals("body v1", get("/etag", NOW + 120_000));
+        assertEquals(1, downloads.get());
+        assertEquals("\"v1\"", ifNoneMatch.get(1));
+        assertArrayEquals(new long[]{0, 1, 1}, cache.stats());
+
+        // The 304 renewed the entry, so it is fresh again
+        assertEquals("body v1", get("/etag", NOW + 150_000));
+        assertEquals(2, ifNoneMatch.size());
+    }
+
+    @Test
+    public void testChangedResourceIsDownloadedAgain() throws Exception {
+        get("/etag", NOW);
+        version = "v2";
+        assertEquals("body v2", get("/etag", NOW + 120_000));
+        assertEquals(2, downloads.get());
+        assertEquals("body v2", get("/etag", NOW + 130_000));
+        assertArrayEquals(new long[]{1, 2, 0}, cache.stats());
+    }
+
+    @Test
+    public void testExpiredEntryWithoutValidatorsIsRefetched() throws Exception {
+        get("/plain", NOW);
+        version = "v2";
+        assertEquals(longBody("v2"), get("/plain", NOW + 120_000));
+        assertEquals(2, downloads.get());
+    }
+
+    @Test
+    public void testPartiallyReadBodyIsNotStored() throws Exception {
+        SharedHttpClient.resetStats();
+        try (SharedHttpClient.Response response = cache.get(baseUrl + "/large", ONE_MINUTE, NOW)) {
+            InputStream body = response.body();
+            byte[] start = new byte[16];
+            assertEquals(16, body.read(start));
+        }
+        // Neither the rest of the 4 MB body nor a drain of it for connection reuse
+        assertTrue(SharedHttpClient.stats()[1] < 256 * 1024);
+        String[] left = folder.getRoot().toPath().resolve("http").toFile().list();
+        assertEquals(0, left != null ? left.length : 0);
+
+        try (SharedHttpClient.Response response = cache.get(baseUrl + "/large", ONE_MINUTE, NOW + 1000)) {
+            assertFalse(response.fromCache);
+        }
+        assertEquals(2, downloads.get());
+    }
+
+    @Test
+    public void testBodyReadToTheEndIsStored() throws Exception {
+        assertEquals(longBody("v1"), get("/plain", NOW));
+        assertEquals(longBody("v1"), get("/plain", NOW + 1000));
+        assertEquals(1, downloads.get());
+    }
+
+    @Test
+    public void testDecodedChartIsStored() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            try (SharedHttpClient.Response response = cache.get(baseUrl + "/chart", ONE_MINUTE, NOW + i * 1000)) {
+                // The decoder stops at the closing brace, before the end of the stream
+                YahooChartDecoder.Chart chart = YahooChartDecoder.decode(response.body());
+                assertEquals(400, chart.size());
+                assertEquals(i == 1, response.fromCache);
+            }
+        }
+        assertEquals(1, downloads.get());
+        assertArrayEquals(new long[]{1, 1, 0}, cache.stats());
+    }
+
+    @Test
+    public void testErrorResponsesAreNotStored() throws Exception {
+        try (SharedHttpClient.Response response = cache.get(baseUrl + "/missing", ONE_MINUTE, NOW)) {
+            assertFalse(response.isOk());
+        }
+        try (SharedHttpClient.Response response = cache.get(baseUrl + "/missing", ONE_MINUTE, NOW + 1000)) {
+            assertEquals(404, response.code);
+            assertFalse(response.fromCache);
+        }
+        assertEquals(2, downloads.get());
+    }
+
+    @Test
+    public void testInvalidateDropsEntry() throws Exception {
+        get("/plain", NOW);
+        cache.invalidate(baseUrl + "/plain");
+        get("/plain", NOW + 1000);
+        assertEquals(2, downloads.get());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        HttpCache small = new HttpCache(folder.newFolder("small"), 10_000);
+        try (SharedHttpClient.Response response = small.get(baseUrl + "/etag", ONE_MINUTE, NOW)) {
+            response.bodyString();
+        }
+        // The plain body alone is over the limit, so everything older is evicted
+        try (SharedHttpClient.Response response = small.get(baseUrl + "/plain", ONE_MINUTE, NOW)) {
+            response.bodyString();
+        }
+        try (SharedHttpClient.Response response = small.get(baseUrl + "/etag", ONE_MINUTE, NOW + 1000)) {
+            assertFalse(response.fromCache);
+        }
+    }
+
+    @Test
+    public void testNextMarketClose() {
+        long tuesdayClose = LocalDateTime.of(2024, 1, 16, 16, 0).atZone(NY).toInstant().toEpochMilli();
+        assertEquals(tuesdayClose, MarketCalendar.nextClose(NOW));
+
+        long fridayClose = LocalDateTime.of(2024, 1, 19, 16, 0).atZone(NY).toInstant().toEpochMilli();
+        long mondayClose = LocalDateTime.of(2024, 1, 22, 16, 0).atZone(NY).toInstant().toEpochMilli();
+        assertEquals(mondayClose, MarketCalendar.nextClose(fridayClose));
+        long saturday = LocalDateTime.of(2024, 1, 20, 12, 0).atZone(NY).toInstant().toEpochMilli();
+        assertEquals(mondayClose, MarketCalendar.nextClose(saturday));
+    }
+
+    @Test
+    public void testFetchWithoutPolicyBypassesCache() throws Exception {
+        assertNull(HttpCache.installedStats());
+        try (SharedHttpClient.Response response = HttpCache.fetch(baseUrl + "/plain", null)) {
+            assertFalse(response.fromCache);
+        }
+        assertEquals(1, downloads.get());
+    }
+}
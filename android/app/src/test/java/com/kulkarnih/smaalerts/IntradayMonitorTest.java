@@ -0,0 +1,100 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class IntradayMonitorTest {
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+    }
+
+    private static long ny(int month, int day, int hour, int minute) {
+        return LocalDateTime.of(2024, month, day, hour, minute).atZone(MarketCalendar.NY_ZONE).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void testBoundaryDistance() {
+        assertEquals(0.2, IntradayMonitor.boundaryDistance(3.8, 4.0f, 3.0f), 1e-9);
+        assertEquals(0.5, IntradayMonitor.boundaryDistance(-2.5, 4.0f, 3.0f), 1e-9);
+        assertEquals(5.0, IntradayMonitor.boundaryDistance(35.0, 4.0f, 3.0f), 1e-9);
+        assertEquals(1.0, IntradayMonitor.boundaryDistance(41.0, 4.0f, 3.0f), 1e-9);
+    }
+
+    @Test
+    public void testIntervalBacksOffWithDistance() {
+        assertEquals(IntradayMonitor.MIN_INTERVAL_MS, IntradayMonitor.pollIntervalMillis(0.0));
+        assertEquals(2 * IntradayMonitor.MIN_INTERVAL_MS, IntradayMonitor.pollIntervalMillis(0.5));
+        assertEquals(4 * IntradayMonitor.MIN_INTERVAL_MS, IntradayMonitor.pollIntervalMillis(1.0));
+        assertEquals(IntradayMonitor.MAX_INTERVAL_MS, IntradayMonitor.pollIntervalMillis(10.0));
+        assertEquals(IntradayMonitor.MAX_INTERVAL_MS, IntradayMonitor.pollIntervalMillis(Double.MAX_VALUE));
+        long previous = 0;
+        for (double distance = 0; distance < 5; distance += 0.1) {
+            long interval = IntradayMonitor.pollIntervalMillis(distance);
+            assertTrue(interval >= previous);
+            previous = interval;
+        }
+    }
+
+    @Test
+    public void testPollsOnlyDuringRegularSession() {
+        long morning = ny(1, 16, 10, 0);
+        assertEquals(morning + 300_000, IntradayMonitor.nextPollAt(morning, 300_000));
+        // Past the close, the next poll is the next day's open
+        assertEquals(ny(1, 17, 9, 30), IntradayMonitor.nextPollAt(ny(1, 16, 15, 55), 600_000));
+        // Before the open, and over a holiday weekend (Monday is Martin Luther King Day)
+        assertEquals(ny(1, 16, 9, 30), IntradayMonitor.nextPollAt(ny(1, 16, 7, 0), 0));
+        assertEquals(ny(1, 16, 9, 30), IntradayMonitor.nextPollAt(ny(1, 13, 12, 0), 0));
+    }
+
+    @Test
+    public void testDailyRequestCap() {
+        PrefsHelper.putInt(context, PrefsHelper.KEY_INTRADAY_MAX_REQUESTS, 3);
+        long monday = ny(1, 22, 10, 0);
+        assertTrue(IntradayMonitor.tryAcquireRequests(context, monday, 2));
+        assertFalse(IntradayMonitor.tryAcquireRequests(context, monday, 2));
+        assertTrue(IntradayMonitor.tryAcquireRequests(context, monday, 1));
+        assertFalse(IntradayMonitor.tryAcquireRequests(context, monday + 60_000, 1));
+        // A new trading day starts a new count
+        assertTrue(IntradayMonitor.tryAcquireRequests(context, ny(1, 23, 10, 0), 3));
+        assertEquals(1, IntradayMonitor.requestsPerPoll(1));
+        assertEquals(2, IntradayMonitor.requestsPerPoll(BatchQuoteClient.DEFAULT_BATCH_SIZE + 1));
+    }
+
+    @Test
+    public void testEvaluateUsesSavedWindowAndRecordsChange() {
+        PrefsHelper.putString(context, PrefsHelper.KEY_INDEX, "SPY");
+        PrefsHelper.putInt(context, PrefsHelper.KEY_SMA, 3);
+        PrefsHelper.putString(context, PrefsHelper.KEY_LAST_SIGNAL, "BUY");
+        PrefsHelper.putString(context, PrefsHelper.KEY_NOTIF_FREQUENCY, "disabled");
+        RollingSma.seed(PriceSeries.of(new int[]{19740, 19741, 19742}, new double[]{100, 100, 100}), 3).save(context, "SPY");
+
+        // Live 106 over two committed 100s: SMA 102, 3.92% above, just under the buy line
+        Map<String, BatchQuoteClient.Quote> quotes = Collections.singletonMap(SMAWorker.yahooSymbol("SPY"),
+                new BatchQuoteClient.Quote(SMAWorker.yahooSymbol("SPY"), 106.0, null));
+        double distance = IntradayMonitor.evaluate(context, Watchlist.load(context), quotes);
+        assertEquals(4.0 - 400.0 / 102.0, distance, 1e-6);
+        assertEquals("HOLD", PrefsHelper.getString(context, PrefsHelper.KEY_LAST_SIGNAL, ""));
+
+        // No quote: nothing evaluated
+        assertEquals(Double.MAX_VALUE, IntradayMonitor.evaluate(context, Watchlist.load(context),
+                Collections.<String, BatchQuoteClient.Quote>emptyMap()), 0.0);
+    }
+}
@@ -0,0 +1,58 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class LatencyTrackerTest {
+
+    @Test
+    public void testPercentile() {
+        LatencyTracker tracker = new LatencyTracker();
+        assertEquals(-1, tracker.percentile(0.95, -1));
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(i);
+        }
+        // Only the last CAPACITY samples (51..100) are kept
+        assertEquals(LatencyTracker.CAPACITY, tracker.size());
+        assertEquals(98, tracker.percentile(0.95, -1));
+        assertEquals(75, tracker.percentile(0.5, -1));
+        assertEquals(100, tracker.percentile(1.0, -1));
+    }
+
+    @Test
+    public void testEncodeKeepsOrder() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 1; i <= LatencyTracker.CAPACITY + 2; i++) {
+            tracker.record(i * 10);
+        }
+        LatencyTracker copy = new LatencyTracker();
+        copy.decodeInto(tracker.encode());
+        assertEquals(tracker.encode(), copy.encode());
+        assertEquals("30", copy.encode().split(",")[0]);
+
+        copy.decodeInto("5,x,7");
+        assertEquals("5,7", copy.encode());
+        copy.decodeInto(null);
+        assertEquals(0, copy.size());
+    }
+
+    @Test
+    public void testSharedTrackersPersist() {
+        Context context = RuntimeEnvironment.getApplication();
+        assertSame(LatencyTracker.of("persist-test"), LatencyTracker.of("persist-test"));
+        LatencyTracker.of("persist-test").record(120);
+        LatencyTracker.save(context, "persist-test");
+
+        LatencyTracker.of("persist-test").decodeInto("");
+        LatencyTracker.load(context, "persist-test");
+        assertEquals("120", LatencyTracker.of("persist-test").encode());
+    }
+}
@@ -0,0 +1,80 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+@RunWith(RobolectricTestRunner.class)
+public class MarketCalendarTest {
+
+    private static long ny(int year, int month, int day, int hour, int minute) {
+        return LocalDateTime.of(year, month, day, hour, minute).atZone(MarketCalendar.NY_ZONE).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void testHolidaysAndWeekends() {
+        assertFalse(MarketCalendar.isTradingDay(LocalDate.of(2024, 3, 29))); // Good Friday
+        assertFalse(MarketCalendar.isTradingDay(LocalDate.of(2025, 1, 9))); // national day of mourning
+        assertFalse(MarketCalendar.isTradingDay(LocalDate.of(2026, 7, 3))); // July 4th observed on Friday
+        assertFalse(MarketCalendar.isTradingDay(LocalDate.of(2027, 12, 24))); // Christmas observed on Friday
+        assertFalse(MarketCalendar.isTradingDay(LocalDate.of(2024, 1, 20))); // Saturday
+        assertTrue(MarketCalendar.isTradingDay(LocalDate.of(2024, 1, 16)));
+        // New Year's Day on a Saturday is not observed on the Friday before
+        assertTrue(MarketCalendar.isTradingDay(LocalDate.of(2027, 12, 31)));
+        // Past the table only weekends are known
+        assertTrue(MarketCalendar.isTradingDay(LocalDate.of(MarketCalendar.LAST_YEAR + 1, 12, 25)));
+    }
+
+    @Test
+    public void testEarlyCloses() {
+        assertEquals(LocalTime.of(13, 0), MarketCalendar.closeTime(LocalDate.of(2025, 11, 28)));
+        assertEquals(LocalTime.of(13, 0), MarketCalendar.closeTime(LocalDate.of(2024, 7, 3)));
+        assertEquals(LocalTime.of(16, 0), MarketCalendar.closeTime(LocalDate.of(2025, 11, 26)));
+        assertNull(MarketCalendar.closeTime(LocalDate.of(2025, 11, 27)));
+    }
+
+    @Test
+    public void testSessions() {
+        assertEquals(MarketCalendar.Session.PRE, MarketCalendar.session(ny(2024, 11, 29, 9, 0)));
+        assertEquals(MarketCalendar.Session.REGULAR, MarketCalendar.session(ny(2024, 11, 29, 12, 59)));
+        // Early close: post-market starts at 13:00 and ends at 17:00
+        assertEquals(MarketCalendar.Session.POST, MarketCalendar.session(ny(2024, 11, 29, 13, 0)));
+        assertEquals(MarketCalendar.Session.CLOSED, MarketCalendar.session(ny(2024, 11, 29, 17, 0)));
+        assertEquals(MarketCalendar.Session.CLOSED, MarketCalendar.session(ny(2024, 11, 28, 12, 0)));
+        assertEquals(MarketCalendar.Session.POST, MarketCalendar.session(ny(2024, 11, 27, 19, 59)));
+    }
+
+    @Test
+    public void testNextOpenAndCloseSkipClosedDays() {
+        // Thursday evening before Good Friday
+        long thursday = ny(2024, 3, 28, 18, 0);
+        assertEquals(ny(2024, 4, 1, 9, 30), MarketCalendar.nextOpen(thursday));
+        assertEquals(ny(2024, 4, 1, 16, 0), MarketCalendar.nextClose(thursday));
+        assertEquals(ny(2024, 4, 1, 4, 0), MarketCalendar.nextSessionStart(thursday));
+        // Day after Thanksgiving closes early
+        assertEquals(ny(2024, 11, 29, 13, 0), MarketCalendar.nextClose(ny(2024, 11, 27, 17, 0)));
+        // Strictly after: at the open itself the next open is the following day's
+        assertEquals(ny(2024, 1, 17, 9, 30), MarketCalendar.nextOpen(ny(2024, 1, 16, 9, 30)));
+        assertEquals(LocalDate.of(2024, 1, 16), MarketCalendar.nextTradingDay(LocalDate.of(2024, 1, 13)));
+    }
+
+    @Test
+    public void testTableIsInRange() {
+        for (int year = MarketCalendar.FIRST_YEAR; year <= MarketCalendar.LAST_YEAR; year++) {
+            // Every year in the table closes on Thanksgiving and trades the day after
+            LocalDate thanksgiving = LocalDate.of(year, 11, 22);
+            while (thanksgiving.getDayOfWeek().getValue() != 4) thanksgiving = thanksgiving.plusDays(1);
+            assertFalse(String.valueOf(year), MarketCalendar.isTradingDay(thanksgiving));
+            assertEquals(String.valueOf(year), LocalTime.of(13, 0), MarketCalendar.closeTime(thanksgiving.plusDays(1)));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** The batched signal entries returned to the web page. */
+@RunWith(RobolectricTestRunner.class)
+public class MarketDataPluginTest {
+
+    @Test
+    public void testSignalEntry() throws Exception {
+        JSONObject data = new JSONObject("{\"currentPrice\":110,\"sma200\":100}");
+        JSONObject entry = MarketDataPlugin.signal("$SPX", data, 4.0f, 3.0f);
+        assertEquals("$SPX", entry.getString("symbol"));
+        assertEquals(110, entry.getDouble("price"), 0.0);
+        assertEquals(100, entry.getDouble("sma"), 0.0);
+        assertEquals(10.0, entry.getDouble("percentDiff"), 1e-9);
+        assertEquals("BUY", entry.getString("signal"));
+        assertFalse(entry.has("asOf"));
+    }
+
+    @Test
+    public void testSignalEntryKeepsStoredDate() throws Exception {
+        JSONObject data = new JSONObject("{\"currentPrice\":95,\"sma200\":100,\"asOf\":\"2024-03-01\"}");
+        JSONObject entry = MarketDataPlugin.signal("URTH", data, 4.0f, 3.0f);
+        assertEquals("SELL", entry.getString("signal"));
+        assertEquals("2024-03-01", entry.getString("asOf"));
+    }
+
+    @Test
+    public void testSignalEntryRejectsInvalidData() throws Exception {
+        JSONObject entry = MarketDataPlugin.signal("URTH", new JSONObject("{\"currentPrice\":95,\"sma200\":0}"), 4.0f, 3.0f);
+        assertTrue(entry.has("error"));
+        assertFalse(entry.has("signal"));
+    }
+}
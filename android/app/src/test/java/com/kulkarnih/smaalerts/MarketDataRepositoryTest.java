@@ -0,0 +1,141 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class MarketDataRepositoryTest {
+
+    private static final ZoneId NY = ZoneId.of("America/New_York");
+
+    private SharedPreferences prefs;
+    private final AtomicInteger priceLoads = new AtomicInteger();
+    private final AtomicInteger barchartLoads = new AtomicInteger();
+    private volatile double price = 101.5;
+
+    private final MarketDataRepository.Source source = new MarketDataRepository.Source() {
+        @Override
+        public double fetchPrice(String symbol) {
+            priceLoads.incrementAndGet();
+            return price;
+        }
+
+        @Override
+        public String fetchBarchart(String symbol) {
+            barchartLoads.incrementAndGet();
+            return symbol.equals("DOWN") ? null : "{\"currentPrice\":" + price + ",\"sma200\":90}";
+        }
+    };
+
+    private static long ny(int month, int day, int hour, int minute) {
+        return LocalDateTime.of(2024, month, day, hour, minute).atZone(NY).toInstant().toEpochMilli();
+    }
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        prefs = context.getSharedPreferences("market_data_test", Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+    }
+
+    @Test
+    public void testRepeatPriceLookupIsServedFromMemory() {
+        MarketDataRepository repository = new MarketDataRepository(prefs, source);
+        long now = ny(1, 16, 10, 0);
+        assertEquals(101.5, repository.latestPrice("SPY", now), 0.0);
+        assertEquals(101.5, repository.latestPrice("SPY", now + 10_000), 0.0);
+        assertEquals(1, priceLoads.get());
+        assertArrayEquals(new long[]{1, 0, 1}, repository.stats());
+    }
+
+    @Test
+    public void testPriceExpiresQuicklyDuringSession() {
+        MarketDataRepository repository = new MarketDataRepository(prefs, source);
+        long now = ny(1, 16, 10, 0);
+        repository.latestPrice("SPY", now);
+        price = 102.0;
+        assertEquals(102.0, repository.latestPrice("SPY", now + 60_000), 0.0);
+        assertEquals(2, priceLoads.get());
+    }
+
+    @Test
+    public void testClosedMarketValuesLastUntilNextOpen() {
+        MarketDataRepository repository = new MarketDataRepository(prefs, source);
+        long fridayNight = ny(1, 19, 21, 0);
+        repository.barchartData("SPY", fridayNight);
+        repository.barchartData("SPY", ny(1, 22, 9, 29));
+        assertEquals(1, barchartLoads.get());
+        repository.barchartData("SPY", ny(1, 22, 9, 30));
+        assertEquals(2, barchartLoads.get());
+    }
+
+    @Test
+    public void testDiskTierSurvivesNewInstance() {
+        long now = ny(1, 16, 10, 0);
+        new MarketDataRepository(prefs, source).barchartData("SPY", now);
+
+        MarketDataRepository restarted = new MarketDataRepository(prefs, source);
+        assertEquals("{\"currentPrice\":101.5,\"sma200\":90}", restarted.barchartData("SPY", now + 1000));
+        assertEquals("{\"currentPrice\":101.5,\"sma200\":90}", restarted.barchartData("SPY", now + 2000));
+        assertEquals(1, barchartLoads.get());
+        assertArrayEquals(new long[]{1, 1, 0}, restarted.stats());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        MarketDataRepository repository = new MarketDataRepository(prefs, source);
+        long now = ny(1, 16, 10, 0);
+        assertNull(repository.barchartData("DOWN", now));
+        assertNull(repository.barchartData("DOWN", now + 1000));
+        assertEquals(2, barchartLoads.get());
+
+        price = 0;
+        assertEquals(0.0, repository.latestPrice("SPY", now), 0.0);
+        price = 99;
+        assertEquals(99.0, repository.latestPrice("SPY", now + 1000), 0.0);
+    }
+
+    @Test
+    public void testPutPriceAndInvalidate() {
+        MarketDataRepository repository = new MarketDataRepository(prefs, source);
+        repository.putPrice("QQQ", 420.0);
+        assertEquals(420.0, repository.latestPrice("QQQ"), 0.0);
+        assertEquals(0, priceLoads.get());
+
+        repository.invalidate("QQQ");
+        assertEquals(101.5, repository.latestPrice("QQQ"), 0.0);
+        assertEquals(1, priceLoads.get());
+    }
+
+    @Test
+    public void testMalformedDiskEntryIsDropped() {
+        prefs.edit().putString("price_SPY", "garbage").commit();
+        MarketDataRepository repository = new MarketDataRepository(prefs, source);
+        assertEquals(101.5, repository.latestPrice("SPY", ny(1, 16, 10, 0)), 0.0);
+        assertEquals(1, priceLoads.get());
+    }
+
+    @Test
+    public void testSessions() {
+        assertEquals(MarketCalendar.Session.CLOSED, MarketCalendar.session(ny(1, 16, 3, 59)));
+        assertEquals(MarketCalendar.Session.PRE, MarketCalendar.session(ny(1, 16, 9, 29)));
+        assertEquals(MarketCalendar.Session.REGULAR, MarketCalendar.session(ny(1, 16, 9, 30)));
+        assertEquals(MarketCalendar.Session.POST, MarketCalendar.session(ny(1, 16, 16, 0)));
+        assertEquals(MarketCalendar.Session.CLOSED, MarketCalendar.session(ny(1, 16, 20, 0)));
+        assertEquals(MarketCalendar.Session.CLOSED, MarketCalendar.session(ny(1, 20, 12, 0)));
+    }
+}
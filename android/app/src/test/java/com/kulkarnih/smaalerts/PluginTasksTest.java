@@ -0,0 +1,171 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(RobolectricTestRunner.class)
+public class PluginTasksTest {
+
+    private final PluginTasks tasks = new PluginTasks(1, 1);
+
+    @After
+    public void tearDown() {
+        tasks.shutdown();
+    }
+
+    /** Records the outcome and counts down when it arrives. */
+    private static final class Recorder implements PluginTasks.Callback<String> {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<String> result = new AtomicReference<>();
+        final AtomicReference<Exception> error = new AtomicReference<>();
+        final AtomicInteger answers = new AtomicInteger();
+        volatile boolean cancelled;
+
+        @Override
+        public void onResult(String value) {
+            result.set(value);
+            answers.incrementAndGet();
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            error.set(e);
+            answers.incrementAndGet();
+            done.countDown();
+        }
+
+        @Override
+        public void onCancelled() {
+            cancelled = true;
+            answers.incrementAndGet();
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void testDeliversResultAndError() throws Exception {
+        Recorder ok = new Recorder();
+        assertTrue(tasks.submit("ok", () -> "42", ok));
+        assertTrue(ok.done.await(5, TimeUnit.SECONDS));
+        assertEquals("42", ok.result.get());
+
+        Recorder failing = new Recorder();
+        assertTrue(tasks.submit("failing", () -> {
+            throw new IllegalStateException("boom");
+        }, failing));
+        assertTrue(failing.done.await(5, TimeUnit.SECONDS));
+        assertEquals("boom", failing.error.get().getMessage());
+        assertNull(failing.result.get());
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        Recorder first = new Recorder();
+        assertTrue(tasks.submit("running", () -> {
+            running.countDown();
+            release.await();
+            return "first";
+        }, first));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(tasks.submit("queued", () -> "second", new Recorder()));
+        assertFalse(tasks.submit("rejected", () -> "third", new Recorder()));
+        assertEquals(2, tasks.pending());
+
+        release.countDown();
+        assertTrue(first.done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancelAllAnswersQueuedAndRunningCalls() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        Recorder inFlight = new Recorder();
+        Recorder queued = new Recorder();
+        tasks.submit("running", () -> {
+            running.countDown();
+            release.await();
+            finished.countDown();
+            return "stale";
+        }, inFlight);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        tasks.submit("queued", () -> "never", queued);
+
+        tasks.cancelAll();
+        assertEquals(0, tasks.pending());
+        // Both promises settle at once, without waiting for the running work
+        assertTrue(inFlight.cancelled);
+        assertTrue(queued.cancelled);
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(1, inFlight.answers.get());
+        assertNull(inFlight.result.get());
+        assertEquals(1, queued.answers.get());
+    }
+
+    @Test
+    public void testFastTasksAreAnsweredOnce() throws Exception {
+        PluginTasks wide = new PluginTasks(4, 64);
+        try {
+            Recorder[] recorders = new Recorder[50];
+            for (int i = 0; i < recorders.length; i++) {
+                recorders[i] = new Recorder();
+                assertTrue(wide.submit("fast" + i, () -> "done", recorders[i]));
+            }
+            for (Recorder recorder : recorders) {
+                assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+                assertEquals("done", recorder.result.get());
+            }
+            assertEquals(0, wide.pending());
+        } finally {
+            wide.shutdown();
+        }
+    }
+
+    @Test
+    public void testDropAllDropsQueuedAndRunningResults() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        Recorder inFlight = new Recorder();
+        Recorder queued = new Recorder();
+        tasks.submit("running", () -> {
+            running.countDown();
+            release.await();
+            finished.countDown();
+            return "stale";
+        }, inFlight);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        tasks.submit("queued", () -> "never", queued);
+
+        tasks.dropAll();
+        assertEquals(0, tasks.pending());
+        release.countDown();
+        // The running task completes, but its page is gone
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertFalse(inFlight.done.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(queued.done.await(50, TimeUnit.MILLISECONDS));
+
+        // The new page's calls are answered as usual
+        Recorder next = new Recorder();
+        assertTrue(tasks.submit("next", () -> "fresh", next));
+        assertTrue(next.done.await(5, TimeUnit.SECONDS));
+        assertEquals("fresh", next.result.get());
+    }
+}
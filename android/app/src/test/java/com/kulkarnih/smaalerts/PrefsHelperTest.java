@@ -1,7 +1,11 @@
 package com.kulkarnih.smaalerts;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import android.content.Context;
 import android.content.SharedPreferences;
@@ -45,4 +49,80 @@ public class PrefsHelperTest {
         assertEquals(200, PrefsHelper.getInt(context, PrefsHelper.KEY_SMA, 0));
         assertEquals(0, PrefsHelper.getInt(context, "nonexistent", 0));
     }
+
+    @Test
+    public void testSettingsSnapshotIsReusedUntilChanged() {
+        PrefsHelper.Settings settings = PrefsHelper.settings(context);
+        assertEquals("$SPX", settings.index);
+        assertEquals(200, settings.smaPeriod);
+        assertNull(settings.watchlist);
+        assertSame(settings, PrefsHelper.settings(context));
+
+        PrefsHelper.putString(context, PrefsHelper.KEY_NOTIF_FREQUENCY, "daily");
+        PrefsHelper.Settings changed = PrefsHelper.settings(context);
+        assertNotSame(settings, changed);
+        assertEquals("daily", changed.notifFrequency);
+        assertSame(changed, PrefsHelper.settings(context));
+    }
+
+    @Test
+    public void testRunStateWritesKeepTheSettingsSnapshot() {
+        PrefsHelper.Settings settings = PrefsHelper.settings(context);
+        PrefsHelper.edit(context)
+                .putString(PrefsHelper.KEY_LAST_SIGNAL, "BUY")
+                .putString(PrefsHelper.KEY_BREAKER_PREFIX + "yahoo", "CLOSED")
+                .putInt(PrefsHelper.KEY_GATE_SKIPS, 3)
+                .commit();
+        context.getSharedPreferences("sma_alerts_prefs", Context.MODE_PRIVATE)
+                .edit().putLong(PrefsHelper.KEY_SCHEDULE_RUN_AT, 1L).commit();
+        assertSame(settings, PrefsHelper.settings(context));
+    }
+
+    @Test
+    public void testLastSignalIsReusedUntilWritten() {
+        Watchlist.Entry primary = new Watchlist.Entry("$SPX", 200, 4f, 3f, true);
+        Watchlist.Entry qqq = new Watchlist.Entry("QQQ", 50, 4f, 3f, false);
+        PrefsHelper.LastSignal first = PrefsHelper.lastSignal(context, primary);
+        assertEquals("", first.signal);
+        assertEquals("", first.date);
+        assertSame(first, PrefsHelper.lastSignal(context, primary));
+
+        PrefsHelper.edit(context)
+                .putString(qqq.stateKey(PrefsHelper.KEY_LAST_SIGNAL), "SELL")
+                .putFloat(qqq.stateKey(PrefsHelper.KEY_LAST_PERCENT), -3.5f)
+                .putString(qqq.stateKey(PrefsHelper.KEY_LAST_DATE), "2024-01-16")
+                .commit();
+        PrefsHelper.LastSignal last = PrefsHelper.lastSignal(context, qqq);
+        assertEquals("SELL", last.signal);
+        assertEquals(-3.5f, last.percent, 0.001f);
+        assertEquals("2024-01-16", last.date);
+        assertEquals("", PrefsHelper.lastSignal(context, primary).signal);
+
+        PrefsHelper.putString(context, PrefsHelper.KEY_LAST_SIGNAL, "HOLD");
+        assertEquals("HOLD", PrefsHelper.lastSignal(context, primary).signal);
+        assertSame(PrefsHelper.lastSignal(context, qqq), PrefsHelper.lastSignal(context, qqq));
+    }
+
+    @Test
+    public void testSettingsFollowWritesMadeElsewhere() {
+        assertFalse(PrefsHelper.settings(context).intradayEnabled);
+        context.getSharedPreferences("sma_alerts_prefs", Context.MODE_PRIVATE)
+                .edit().putBoolean(PrefsHelper.KEY_INTRADAY_ENABLED, true).commit();
+        assertTrue(PrefsHelper.settings(context).intradayEnabled);
+    }
+
+    @Test
+    public void testBatchWritesEveryChangeTogether() {
+        PrefsHelper.putString(context, PrefsHelper.KEY_LAST_DATE, "2024-01-16");
+        assertTrue(PrefsHelper.edit(context)
+                .putString(PrefsHelper.KEY_LAST_SIGNAL, "SELL")
+                .putFloat(PrefsHelper.KEY_LAST_PERCENT, -3.5f)
+                .remove(PrefsHelper.KEY_LAST_DATE)
+                .putInt(PrefsHelper.KEY_SMA, 50)
+                .commit());
+        assertEquals("SELL", PrefsHelper.getString(context, PrefsHelper.KEY_LAST_SIGNAL, ""));
+        assertEquals(-3.5f, PrefsHelper.getFloat(context, PrefsHelper.KEY_LAST_PERCENT, 0f), 0.001f);
+        assertNull(PrefsHelper.getString(context, PrefsHelper.KEY_LAST_DATE, null));
+        assertEquals(50, PrefsHelper.settings(context).smaPeriod);
+    }
 }
@@ -0,0 +1,159 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+@RunWith(RobolectricTestRunner.class)
+public class PriceSeriesTest {
+
+    private static int day(int year, int month, int dayOfMonth) {
+        return (int) LocalDate.of(year, month, dayOfMonth).toEpochDay();
+    }
+
+    @Test
+    public void testLookupByDate() {
+        PriceSeries series = PriceSeries.of(
+                new int[]{day(2024, 1, 10), day(2024, 1, 11), day(2024, 1, 12), day(2024, 1, 16)},
+                new double[]{100.0, 101.0, 102.0, 103.0});
+
+        assertEquals(2, series.indexOf(day(2024, 1, 12)));
+        assertTrue(series.indexOf(day(2024, 1, 13)) < 0);
+        assertEquals(102.0, series.closeOn(day(2024, 1, 12)), 0.0);
+        assertTrue(Double.isNaN(series.closeOn(day(2024, 1, 15))));
+
+        // Weekend and holiday resolve to the previous trading day
+        assertEquals(2, series.floorIndex(day(2024, 1, 15)));
+        assertEquals(3, series.floorIndex(day(2024, 2, 1)));
+        assertEquals(-1, series.floorIndex(day(2024, 1, 9)));
+        assertEquals(LocalDate.of(2024, 1, 16), series.dateAt(3));
+    }
+
+    @Test
+    public void testSMA() {
+        PriceSeries series = TestDataHelper.createPriceSeries(1.0, 2.0, 3.0, 4.0, 5.0);
+
+        assertEquals(4.0, series.sma(3), 1e-12);
+        assertEquals(3.0, series.sma(5), 1e-12);
+        assertEquals(2.0, series.smaAt(2, 3), 1e-12);
+        assertEquals(5.0, series.lastClose(), 0.0);
+    }
+
+    @Test
+    public void testSMA_notEnoughData() {
+        PriceSeries series = TestDataHelper.createPriceSeries(1.0, 2.0, 3.0);
+        try {
+            series.sma(4);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // Same contract as the old computeSMA
+        }
+    }
+
+    @Test
+    public void testMockSeriesHitsTargetSMA() {
+        PriceSeries series = TestDataHelper.createPriceSeries(4200.0, 4000.0, 200);
+
+        assertEquals(200, series.size());
+        assertEquals(4200.0, series.lastClose(), 0.0);
+        assertEquals(4000.0, series.sma(200), 1e-9);
+        assertEquals(TestDataHelper.SERIES_END_DAY, series.lastDay());
+    }
+
+    @Test
+    public void testRejectsUnsortedDays() {
+        try {
+            PriceSeries.of(new int[]{day(2024, 1, 11), day(2024, 1, 10)}, new double[]{1.0, 2.0});
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testDefensiveCopies() {
+        int[] days = {day(2024, 1, 10), day(2024, 1, 11)};
+        double[] closes = {1.0, 2.0};
+        PriceSeries series = PriceSeries.of(days, closes);
+        closes[1] = 99.0;
+        series.closes()[0] = 99.0;
+
+        assertEquals(1.0, series.closeAt(0), 0.0);
+        assertEquals(2.0, series.closeAt(1), 0.0);
+    }
+
+    @Test
+    public void testFromChart_usesNewYorkDate() throws Exception {
+        // 2024-03-08 21:00 EST is 2024-03-09 02:00 UTC; must still be the 8th
+        long lateFriday = LocalDate.of(2024, 3, 9).toEpochDay() * 86400L + 2 * 3600;
+        long monday = LocalDate.of(2024, 3, 11).toEpochDay() * 86400L + 13 * 3600 + 30 * 60;
+        YahooChartDecoder.Chart chart = new YahooChartDecoder.Chart(
+                new long[]{lateFriday, monday}, new double[]{10.0, 11.0}, 0, 0, 0);
+
+        PriceSeries series = PriceSeries.fromChart(chart);
+
+        assertEquals(2, series.size());
+        assertEquals(day(2024, 3, 8), series.dayAt(0));
+        assertEquals(day(2024, 3, 11), series.dayAt(1));
+    }
+
+    @Test
+    public void testFromChart_sameDayBarReplacesEarlier() {
+        long open = LocalDate.of(2024, 3, 11).toEpochDay() * 86400L + 13 * 3600 + 30 * 60;
+        YahooChartDecoder.Chart chart = new YahooChartDecoder.Chart(
+                new long[]{open, open + 3600}, new double[]{10.0, 10.5}, 0, 0, 0);
+
+        PriceSeries series = PriceSeries.fromChart(chart);
+
+        assertEquals(1, series.size());
+        assertEquals(10.5, series.lastClose(), 0.0);
+    }
+
+    @Test
+    public void testFromDecodedChart() throws Exception {
+        String json = TestDataHelper.createYahooChartJson(260, 100.0, 0);
+        YahooChartDecoder.Chart chart = YahooChartDecoder.decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        PriceSeries series = PriceSeries.fromChart(chart);
+
+        assertEquals(260, series.size());
+        // Closes climb by 0.1 per bar, so the last 200 average the middle of that run
+        assertEquals(100.0 + 159.5 * 0.1, series.sma(200), 1e-9);
+    }
+
+    @Test
+    public void testMergeDeduplicatesOverlap() {
+        PriceSeries stored = PriceSeries.of(new int[]{10, 11, 12}, new double[]{1.0, 2.0, 3.0});
+        PriceSeries fetched = PriceSeries.of(new int[]{12, 13, 14}, new double[]{3.5, 4.0, 5.0});
+
+        PriceSeries merged = stored.merge(fetched);
+
+        assertEquals(5, merged.size());
+        assertEquals(3.5, merged.closeOn(12), 0.0);
+        assertEquals(14, merged.lastDay());
+        assertEquals(10, merged.dayAt(0));
+    }
+
+    @Test
+    public void testMergeInterleavedAndEmpty() {
+        PriceSeries a = PriceSeries.of(new int[]{1, 3, 5}, new double[]{1.0, 3.0, 5.0});
+        PriceSeries b = PriceSeries.of(new int[]{2, 3, 4}, new double[]{2.0, 30.0, 4.0});
+
+        PriceSeries merged = a.merge(b);
+        assertEquals(5, merged.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, merged.dayAt(i));
+        }
+        assertEquals(30.0, merged.closeOn(3), 0.0);
+        assertEquals(a, a.merge(PriceSeries.EMPTY));
+        assertEquals(b, PriceSeries.EMPTY.merge(b));
+    }
+}
@@ -0,0 +1,243 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(RobolectricTestRunner.class)
+public class RetryEngineTest {
+
+    private final RetryEngine engine = new RetryEngine(new Random(42));
+
+    /** Short delays so the tests run quickly. */
+    private static final RetryEngine.Policy FAST = new RetryEngine.Policy(3, 10, 40, 5000, 50);
+
+    @Test
+    public void testClassification() {
+        assertTrue(RetryEngine.isRetryable(new RetryEngine.HttpStatusException(503)));
+        assertTrue(RetryEngine.isRetryable(new RetryEngine.HttpStatusException(429)));
+        assertTrue(RetryEngine.isRetryable(new RetryEngine.HttpStatusException(408)));
+        assertFalse(RetryEngine.isRetryable(new RetryEngine.HttpStatusException(404)));
+        assertFalse(RetryEngine.isRetryable(new RetryEngine.HttpStatusException(401)));
+        assertTrue(RetryEngine.isRetryable(new SocketTimeoutException()));
+        assertTrue(RetryEngine.isRetryable(new IOException("reset")));
+        assertFalse(RetryEngine.isRetryable(new JSONException("bad json")));
+        assertFalse(RetryEngine.isRetryable(new IllegalStateException()));
+    }
+
+    @Test
+    public void testBackoffIsJitteredAndCapped() {
+        RetryEngine.Policy policy = new RetryEngine.Policy(10, 100, 400, 60_000, 100);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(engine.backoffMillis(policy, 2) < 100);
+            assertTrue(engine.backoffMillis(policy, 3) < 200);
+            assertTrue(engine.backoffMillis(policy, 9) < 400);
+        }
+        long first = engine.backoffMillis(policy, 9);
+        boolean varied = false;
+        for (int i = 0; i < 10 && !varied; i++) {
+            varied = engine.backoffMillis(policy, 9) != first;
+        }
+        assertTrue("Delays should be jittered", varied);
+    }
+
+    @Test
+    public void testRetriesTransientFailuresAndNulls() {
+        AtomicInteger calls = new AtomicInteger();
+        RetryEngine.Outcome<String> outcome = engine.await("flaky", FAST, (attempt, budget) -> {
+            int n = calls.incrementAndGet();
+            if (n == 1) throw new RetryEngine.HttpStatusException(503);
+            if (n == 2) return null;
+            return "ok";
+        });
+        assertTrue(outcome.isSuccess());
+        assertEquals("ok", outcome.value);
+        assertEquals(3, outcome.attempts.size());
+        assertEquals("HttpStatusException", outcome.attempts.get(0).result);
+        assertEquals("null", outcome.attempts.get(1).result);
+        assertEquals("ok", outcome.attempts.get(2).result);
+        assertEquals(0, outcome.attempts.get(0).delayMillis);
+    }
+
+    @Test
+    public void testStopsOnNonRetryableError() {
+        AtomicInteger calls = new AtomicInteger();
+        RetryEngine.Outcome<String> outcome = engine.await("missing", FAST, (attempt, budget) -> {
+            calls.incrementAndGet();
+            throw new RetryEngine.HttpStatusException(404);
+        });
+        assertFalse(outcome.isSuccess());
+        assertEquals(1, calls.get());
+        assertEquals(404, ((RetryEngine.HttpStatusException) outcome.error).code);
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() {
+        RetryEngine.Outcome<String> outcome = engine.await("down", FAST, (attempt, budget) -> {
+            throw new IOException("down");
+        });
+        assertFalse(outcome.isSuccess());
+        assertEquals(FAST.maxAttempts, outcome.attempts.size());
+        assertEquals("down", outcome.error.getMessage());
+        assertTrue(engine.stats()[3] >= 1);
+    }
+
+    @Test
+    public void testDeadlineIsSplitAcrossAttempts() {
+        RetryEngine.Policy policy = new RetryEngine.Policy(3, 0, 0, 3000, 100);
+        List<Long> budgets = new ArrayList<>();
+        long start = System.nanoTime();
+        RetryEngine.Outcome<String> outcome = engine.await("slow", policy, (attempt, budget) -> {
+            budgets.add(budget);
+            Thread.sleep(budget);
+            return null;
+        });
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertNull(outcome.value);
+        // Each attempt gets about a third of what is left, so the whole call fits the deadline
+        assertTrue("First budget " + budgets.get(0), budgets.get(0) <= 1000 && budgets.get(0) >= 900);
+        assertTrue("Took " + elapsed + " ms", elapsed < 3500);
+    }
+
+    @Test
+    public void testAttemptDeadlineCapsHttpTimeouts() throws Exception {
+        // A server that accepts but never answers: without the deadline the read would take 20 s
+        try (ServerSocket server = new ServerSocket(0)) {
+            String url = "http://127.0.0.1:" + server.getLocalPort() + "/";
+            RetryEngine.Policy policy = new RetryEngine.Policy(1, 0, 0, 500, 100);
+            long start = System.nanoTime();
+            RetryEngine.Outcome<Integer> outcome = engine.await("hang", policy, (attempt, budget) -> {
+                try (SharedHttpClient.Response response = SharedHttpClient.get(url)) {
+                    return response.code;
+                }
+            });
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertFalse(outcome.isSuccess());
+            assertTrue(outcome.error instanceof SocketTimeoutException);
+            assertTrue("Took " + elapsed + " ms", elapsed < 2000);
+        }
+        assertEquals(0, SharedHttpClient.callDeadline());
+    }
+
+    @Test
+    public void testExecuteDoesNotBlockAndCanBeCancelled() throws Exception {
+        RetryEngine.Policy policy = new RetryEngine.Policy(3, 500, 500, 10_000, 50);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<RetryEngine.Outcome<String>> result = new AtomicReference<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch firstAttempt = new CountDownLatch(1);
+        RetryEngine.Handle handle = engine.<String>execute("cancelled", policy, (attempt, budget) -> {
+            calls.incrementAndGet();
+            firstAttempt.countDown();
+            return null;
+        }, outcome -> {
+            result.set(outcome);
+            done.countDown();
+        });
+        assertTrue(firstAttempt.await(5, TimeUnit.SECONDS));
+        handle.cancel();
+        // The scheduled retry is dropped and the listener told so
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(result.get().error instanceof CancellationException);
+        Thread.sleep(700);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testCallsDoNotQueueBehindBlockedAttempts() throws Exception {
+        // More concurrent calls than the worker ever runs, every attempt blocking
+        int count = 3 * WatchlistEvaluator.MAX_PARALLEL;
+        RetryEngine.Policy policy = new RetryEngine.Policy(1, 0, 0, 2000, 100);
+        CountDownLatch started = new CountDownLatch(count);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(count);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Long> budgets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            engine.<String>execute("blocked " + i, policy, (attempt, budget) -> {
+                synchronized (budgets) {
+                    budgets.add(budget);
+                }
+                started.countDown();
+                return release.await(5, TimeUnit.SECONDS) ? "ok" : null;
+            }, outcome -> {
+                if (outcome.isSuccess()) succeeded.incrementAndGet();
+                done.countDown();
+            });
+        }
+        // Every first attempt starts at once, with its full budget
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(count, succeeded.get());
+        for (long budget : budgets) {
+            assertTrue("Budget " + budget, budget >= 1500);
+        }
+    }
+
+    @Test
+    public void testSubmitAsyncRetriesFromListeners() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        List<Long> deadlines = new ArrayList<>();
+        ListenableFuture<RetryEngine.Outcome<String>> future = engine.submitAsync("async", FAST, (attempt, budget, executor) -> {
+            int n = calls.incrementAndGet();
+            deadlines.add(SharedHttpClient.callDeadline());
+            // The work completes the future later, on the attempt pool
+            return CallbackToFutureAdapter.<String>getFuture(completer -> {
+                executor.execute(() -> {
+                    if (n == 1) completer.setException(new SocketTimeoutException());
+                    else completer.set(n == 2 ? null : "ok");
+                });
+                return "attempt " + n;
+            });
+        });
+        RetryEngine.Outcome<String> outcome = future.get(5, TimeUnit.SECONDS);
+        assertEquals("ok", outcome.value);
+        assertEquals(3, outcome.attempts.size());
+        assertEquals("SocketTimeoutException", outcome.attempts.get(0).result);
+        assertEquals("null", outcome.attempts.get(1).result);
+        for (long deadline : deadlines) {
+            assertTrue(deadline > 0);
+        }
+    }
+
+    @Test
+    public void testAwaitRunsOnTheCallingThread() {
+        Thread caller = Thread.currentThread();
+        SharedHttpClient.setCallDeadline(System.currentTimeMillis() + 60_000);
+        long outer = SharedHttpClient.callDeadline();
+        try {
+            RetryEngine.Outcome<Long> outcome = engine.await("inline", FAST, (attempt, budget) -> {
+                assertTrue(Thread.currentThread() == caller);
+                return SharedHttpClient.callDeadline();
+            });
+            // The attempt got its own, shorter deadline; the caller's is restored after it
+            assertTrue(outcome.value < outer);
+            assertEquals(outer, SharedHttpClient.callDeadline());
+        } finally {
+            SharedHttpClient.clearCallDeadline();
+        }
+    }
+}
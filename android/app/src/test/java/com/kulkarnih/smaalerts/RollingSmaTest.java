@@ -0,0 +1,140 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class RollingSmaTest {
+
+    @Test
+    public void testWindowFillsAndRolls() {
+        RollingSma window = new RollingSma(3);
+        window.push(1, 10.0);
+        window.push(2, 20.0);
+        assertFalse(window.isReady());
+        assertEquals(0.0, window.value(), 0.0);
+
+        window.push(3, 30.0);
+        assertTrue(window.isReady());
+        assertEquals(20.0, window.value(), 1e-12);
+
+        // 10 drops out
+        window.push(4, 60.0);
+        assertEquals(110.0 / 3, window.value(), 1e-12);
+        assertEquals(60.0, window.lastClose(), 0.0);
+        assertEquals(4, window.lastDay());
+    }
+
+    @Test
+    public void testSameDayReplacesAndOlderDayIgnored() {
+        RollingSma window = new RollingSma(2);
+        window.push(1, 10.0);
+        window.push(2, 20.0);
+
+        assertTrue(window.push(2, 30.0));
+        assertEquals(20.0, window.value(), 1e-12);
+        assertFalse(window.push(1, 99.0));
+        assertEquals(20.0, window.value(), 1e-12);
+        assertEquals(2, window.size());
+    }
+
+    @Test
+    public void testProvisionalDoesNotCommit() {
+        RollingSma window = new RollingSma(3);
+        window.push(1, 10.0);
+        window.push(2, 20.0);
+        // One short of full: the live price completes the window
+        assertEquals(20.0, window.provisional(30.0), 1e-12);
+
+        window.push(3, 30.0);
+        // Full: the live price replaces the oldest close
+        assertEquals((20.0 + 30.0 + 70.0) / 3, window.provisional(70.0), 1e-12);
+        assertEquals(20.0, window.value(), 1e-12);
+        assertEquals(3, window.lastDay());
+    }
+
+    @Test
+    public void testMatchesSeriesSMA() {
+        double[] closes = new double[400];
+        for (int i = 0; i < closes.length; i++) {
+            closes[i] = 4000.0 + 150.0 * Math.sin(i / 9.0) + i * 0.37;
+        }
+        PriceSeries series = TestDataHelper.createPriceSeries(closes);
+
+        RollingSma window = new RollingSma(200);
+        for (int i = 0; i < series.size(); i++) {
+            window.push(series.dayAt(i), series.closeAt(i));
+            if (i >= 199) {
+                assertEquals(series.smaAt(i, 200), window.value(), 1e-9);
+            }
+        }
+        assertEquals(series.sma(200), RollingSma.seed(series, 200).value(), 1e-9);
+    }
+
+    @Test
+    public void testCompensatedSumDoesNotDrift() {
+        // Large and tiny values alternating is where a plain running sum loses digits
+        RollingSma window = new RollingSma(10);
+        for (int day = 0; day < 1_000_000; day++) {
+            window.push(day, day % 2 == 0 ? 1e8 : 1e-3);
+        }
+        double expected = (5 * 1e8 + 5 * 1e-3) / 10;
+        assertEquals(expected, window.value(), 1e-9);
+    }
+
+    @Test
+    public void testEncodeDecodeRoundTrip() {
+        RollingSma window = new RollingSma(4);
+        for (int day = 10; day < 17; day++) {
+            window.push(day, 100.0 + day);
+        }
+
+        RollingSma restored = RollingSma.decode(window.encode(), 4);
+
+        assertEquals(window.value(), restored.value(), 1e-12);
+        assertEquals(window.lastDay(), restored.lastDay());
+        assertEquals(window.lastClose(), restored.lastClose(), 0.0);
+        // And it keeps rolling from where it was
+        window.push(17, 50.0);
+        restored.push(17, 50.0);
+        assertEquals(window.value(), restored.value(), 1e-12);
+    }
+
+    @Test
+    public void testDecodeRejectsWrongPeriodAndGarbage() {
+        RollingSma window = new RollingSma(4);
+        window.push(1, 1.0);
+
+        assertNull(RollingSma.decode(window.encode(), 5));
+        assertNull(RollingSma.decode("not base64 !!", 4));
+        assertNull(RollingSma.decode("AAAA", 4));
+        assertNull(RollingSma.decode(null, 4));
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        Context context = RuntimeEnvironment.getApplication();
+        RollingSma window = new RollingSma(3);
+        window.push(5, 1.0);
+        window.push(6, 2.0);
+        window.push(7, 3.0);
+        window.save(context, "$SPX");
+
+        RollingSma loaded = RollingSma.load(context, "$SPX", 3);
+        assertEquals(2.0, loaded.value(), 1e-12);
+        assertNull(RollingSma.load(context, "$SPX", 200));
+        assertNull(RollingSma.load(context, "URTH", 3));
+
+        RollingSma.clear(context, "$SPX", 3);
+        assertNull(RollingSma.load(context, "$SPX", 3));
+    }
+}
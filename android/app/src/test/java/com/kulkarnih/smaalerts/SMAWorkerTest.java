@@ -11,9 +11,7 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.time.LocalDate;
 
 @RunWith(RobolectricTestRunner.class)
 public class SMAWorkerTest {
@@ -62,17 +60,30 @@ public class SMAWorkerTest {
     }
 
     @Test
-    public void testComputeSMA() throws Exception {
-        // Create mock time series data
-        List<String> dates = new ArrayList<>();
-        for (int i = 0; i < 250; i++) {
-            dates.add("2024-01-" + String.format("%02d", (i % 30) + 1));
-        }
-        Collections.sort(dates, Collections.reverseOrder());
-
-        // Mock JSON structure would be needed for full test
-        // This is a basic structure test
-        assertNotNull("Dates list should not be null", dates);
-        assertEquals("Should have 250 dates", 250, dates.size());
+    public void testComputeSMA() {
+        PriceSeries series = TestDataHelper.createPriceSeries(4200.0, 4000.0, 200);
+        assertNotNull("Series should not be null", series);
+        assertEquals("Should have 200 days", 200, series.size());
+        assertEquals(4000.0, series.sma(200), 0.0001);
+
+        double pct = ((series.lastClose() - series.sma(200)) / series.sma(200)) * 100.0;
+        assertEquals("BUY", SMAWorker.determineSignal(pct, 4.0f, 3.0f));
+    }
+
+    @Test
+    public void testDeltaQueryStartsAtLastStoredDay() {
+        int lastStored = (int) LocalDate.of(2024, 1, 12).toEpochDay();
+        long now = LocalDate.of(2024, 1, 16).toEpochDay() * 86400_000L + 15 * 3600_000L;
+
+        String query = SMAWorker.deltaQuery(lastStored, now);
+
+        assertEquals("period1=" + (lastStored * 86400L) + "&period2=" + (now / 1000), query);
+    }
+
+    @Test
+    public void testDeltaQueryAlwaysSpansADay() {
+        int today = (int) LocalDate.of(2024, 1, 16).toEpochDay();
+        String query = SMAWorker.deltaQuery(today, today * 86400_000L);
+        assertEquals("period1=" + (today * 86400L) + "&period2=" + (today * 86400L + 86400L), query);
     }
 }
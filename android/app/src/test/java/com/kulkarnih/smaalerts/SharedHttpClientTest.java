@@ -0,0 +1,172 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPOutputStream;
+
+@RunWith(RobolectricTestRunner.class)
+public class SharedHttpClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final List<Integer> remotePorts = new CopyOnWriteArrayList<>();
+    private final List<String> acceptEncodings = new CopyOnWriteArrayList<>();
+
+    private static final String BODY;
+
+    static {
+        StringBuilder sb = new StringBuilder("{\"closes\":[");
+        for (int i = 0; i < 2000; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(4000 + (i % 50));
+        }
+        BODY = sb.append("]}").toString();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/gzip", exchange -> {
+            remotePorts.add(exchange.getRemoteAddress().getPort());
+            acceptEncodings.add(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(BODY.getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.createContext("/plain", exchange -> {
+            remotePorts.add(exchange.getRemoteAddress().getPort());
+            byte[] bytes = "hello".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(exchange.getRequestURI().getPath().endsWith("missing") ? 404 : 200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.createContext("/large", exchange -> {
+            remotePorts.add(exchange.getRemoteAddress().getPort());
+            byte[] chunk = new byte[64 * 1024];
+            exchange.sendResponseHeaders(200, exchange.getRequestURI().getQuery() != null ? 0 : 16L * chunk.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 16; i++) {
+                    out.write(chunk);
+                }
+            } catch (IOException e) {
+                // The client hung up after the part it wanted
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException ignored) {
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        SharedHttpClient.resetStats();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        SharedHttpClient.setTimeouts("127.0.0.1", SharedHttpClient.DEFAULT_CONNECT_TIMEOUT_MS, SharedHttpClient.DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    @Test
+    public void testGzipBodyIsInflated() throws Exception {
+        try (SharedHttpClient.Response response = SharedHttpClient.get(baseUrl + "/gzip")) {
+            assertTrue(response.isOk());
+            assertEquals(BODY, response.bodyString());
+        }
+        assertEquals("gzip", acceptEncodings.get(0));
+
+        long[] stats = SharedHttpClient.stats();
+        assertEquals(1, stats[0]);
+        assertEquals(BODY.length(), stats[2]);
+        assertTrue("wire bytes " + stats[1] + " should be below body bytes " + stats[2], stats[1] < stats[2]);
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try (SharedHttpClient.Response response = SharedHttpClient.get(baseUrl + "/gzip")) {
+                assertEquals(BODY, response.bodyString());
+            }
+        }
+        assertEquals(3, remotePorts.size());
+        assertEquals(remotePorts.get(0), remotePorts.get(1));
+        assertEquals(remotePorts.get(0), remotePorts.get(2));
+    }
+
+    @Test
+    public void testUnreadBodyIsDrainedOnClose() throws Exception {
+        try (SharedHttpClient.Response response = SharedHttpClient.get(baseUrl + "/plain")) {
+            assertTrue(response.isOk());
+        }
+        try (SharedHttpClient.Response response = SharedHttpClient.get(baseUrl + "/plain")) {
+            assertEquals("hello", response.bodyString());
+        }
+        assertEquals(remotePorts.get(0), remotePorts.get(1));
+    }
+
+    @Test
+    public void testLongRemainderIsNotDrained() throws Exception {
+        // One body with a Content-Length, one chunked with an unknown length
+        for (String url : new String[]{baseUrl + "/large", baseUrl + "/large?chunked"}) {
+            SharedHttpClient.resetStats();
+            try (SharedHttpClient.Response response = SharedHttpClient.get(url)) {
+                byte[] start = new byte[16];
+                assertEquals(16, response.body().read(start));
+            }
+            long wire = SharedHttpClient.stats()[1];
+            assertTrue("read " + wire + " bytes of an abandoned body", wire < 16 * 1024);
+        }
+    }
+
+    @Test
+    public void testErrorStatusExposesBody() throws Exception {
+        try (SharedHttpClient.Response response = SharedHttpClient.get(baseUrl + "/plain/missing")) {
+            assertFalse(response.isOk());
+            assertEquals(404, response.code);
+            assertEquals("hello", response.bodyString());
+        }
+    }
+
+    @Test
+    public void testPerHostReadTimeout() {
+        SharedHttpClient.setTimeouts("127.0.0.1", 1000, 200);
+        long start = System.currentTimeMillis();
+        try {
+            SharedHttpClient.get(baseUrl + "/slow");
+            fail("Expected a read timeout");
+        } catch (IOException expected) {
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue("timed out after " + elapsed + " ms", elapsed < 900);
+        }
+    }
+}
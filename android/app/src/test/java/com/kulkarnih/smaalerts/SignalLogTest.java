@@ -0,0 +1,151 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class SignalLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private SignalLog log;
+
+    private final Watchlist.Entry spy = new Watchlist.Entry("SPY", 200, 4.0f, 3.0f, true);
+    private final Watchlist.Entry qqq = new Watchlist.Entry("QQQ", 50, 4.0f, 3.0f, false);
+
+    @Before
+    public void setUp() {
+        dir = new File(folder.getRoot(), "signal_log");
+        log = new SignalLog(dir);
+    }
+
+    /** An evaluation {@code pct} percent from an SMA of 100. */
+    private static WatchlistEvaluator.Evaluation at(Watchlist.Entry entry, double pct) {
+        WatchlistEvaluator.Evaluation evaluation = new WatchlistEvaluator.Evaluation(entry, 100 + pct, 100, entry.smaPeriod);
+        evaluation.latencyMillis = 250;
+        return evaluation;
+    }
+
+    /** Days 1000..1000+days-1, SPY cycling through BUY, HOLD and SELL, QQQ always HOLD. */
+    private void fill(int days) {
+        double[] cycle = {5.0, 0.0, -5.0};
+        for (int day = 0; day < days; day++) {
+            assertEquals(2, log.append(1000 + day, Arrays.asList(at(spy, cycle[day % 3]), at(qqq, 1.0))));
+        }
+    }
+
+    @Test
+    public void testRecordsRoundTrip() {
+        assertEquals(1, log.append(19740, Arrays.asList(null, at(qqq, -3.5))));
+        List<SignalLog.Record> records = new SignalLog(dir).range(0, Integer.MAX_VALUE, null);
+        assertEquals(1, records.size());
+        SignalLog.Record record = records.get(0);
+        assertEquals(19740, record.day);
+        assertEquals("QQQ", record.symbol);
+        assertEquals("SELL", record.signal);
+        assertEquals(96.5, record.price, 1e-9);
+        assertEquals(100.0, record.sma, 1e-9);
+        assertEquals(-3.5f, record.percent, 1e-4f);
+        assertEquals(250, record.latencyMillis);
+        assertEquals(50, record.smaPeriod);
+    }
+
+    @Test
+    public void testRangeAcrossIndexStrides() {
+        fill(200);
+        assertEquals(400, log.size());
+        // A range starting and ending inside strides
+        List<SignalLog.Record> records = log.range(1070, 1079, null);
+        assertEquals(20, records.size());
+        assertEquals(1070, records.get(0).day);
+        assertEquals(1079, records.get(19).day);
+        List<SignalLog.Record> spyOnly = log.range(1070, 1079, "SPY");
+        assertEquals(10, spyOnly.size());
+        for (SignalLog.Record record : spyOnly) {
+            assertEquals("SPY", record.symbol);
+        }
+        assertEquals(2, log.range(999, 1000, null).size());
+        assertTrue(log.range(1300, 1400, null).isEmpty());
+        assertTrue(log.range(1000, 1100, "DIA").isEmpty());
+    }
+
+    @Test
+    public void testLastWithSignal() {
+        fill(200);
+        // Day 1199: 199 % 3 == 1, HOLD; the last BUY was day 1198 and the last SELL day 1197
+        assertEquals(1197, log.lastWithSignal("SPY", "SELL").day);
+        assertEquals(1198, log.lastWithSignal("SPY", "BUY").day);
+        assertEquals(1101, log.lastWithSignal("SPY", "SELL", 1103).day);
+        assertNull(log.lastWithSignal("SPY", "SELL", 1001));
+        assertNull(log.lastWithSignal("QQQ", "SELL"));
+        assertNull(log.lastWithSignal("DIA", "HOLD"));
+
+        // Indexes rebuilt from the file agree
+        SignalLog reopened = new SignalLog(dir);
+        assertEquals(1197, reopened.lastWithSignal("SPY", "SELL").day);
+        assertEquals(400, reopened.size());
+    }
+
+    @Test
+    public void testTornAppendIsIgnored() throws Exception {
+        fill(3);
+        // A crash after records were written but before the header count was updated
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, "signals.bin"), "rw")) {
+            file.seek(file.length());
+            file.write(new byte[SignalLog.RECORD_SIZE + 7]);
+        }
+        SignalLog reopened = new SignalLog(dir);
+        assertEquals(6, reopened.size());
+        assertEquals(1, reopened.append(1003, Arrays.asList(at(spy, 5.0))));
+        assertEquals(7, new SignalLog(dir).size());
+        assertEquals(1003, new SignalLog(dir).lastWithSignal("SPY", "BUY").day);
+    }
+
+    @Test
+    public void testDayLoggedAgainReplacesItsRecords() {
+        fill(2);
+        // A retried run logs day 1001 again: SPY turns SELL and DIA is new
+        Watchlist.Entry dia = new Watchlist.Entry("DIA", 200, 4.0f, 3.0f, false);
+        assertEquals(3, log.append(1001, Arrays.asList(at(spy, -5.0), at(qqq, 2.0), at(dia, 0.0))));
+        assertEquals(5, log.size());
+        List<SignalLog.Record> spyRecords = log.range(1001, 1001, "SPY");
+        assertEquals(1, spyRecords.size());
+        assertEquals("SELL", spyRecords.get(0).signal);
+        assertEquals(1001, log.lastWithSignal("SPY", "SELL").day);
+        assertNull(log.lastWithSignal("SPY", "HOLD"));
+        assertEquals(1000, log.lastWithSignal("SPY", "BUY").day);
+
+        SignalLog reopened = new SignalLog(dir);
+        assertEquals(5, reopened.size());
+        assertEquals(1, reopened.range(1001, 1001, "QQQ").size());
+        assertEquals(102.0, reopened.range(1001, 1001, "QQQ").get(0).price, 1e-9);
+        assertEquals(1001, reopened.lastWithSignal("SPY", "SELL").day);
+        assertNull(reopened.lastWithSignal("SPY", "HOLD"));
+    }
+
+    @Test
+    public void testDayOrderAndCompaction() {
+        fill(10);
+        assertEquals(0, log.append(1005, Arrays.asList(at(spy, 5.0))));
+        assertTrue(log.compact(6));
+        assertEquals(6, log.size());
+        assertEquals(1007, log.range(0, Integer.MAX_VALUE, null).get(0).day);
+        assertEquals(1009, new SignalLog(dir).lastWithSignal("SPY", "BUY").day);
+        assertNull(log.lastWithSignal("SPY", "SELL", 1006));
+    }
+}
@@ -0,0 +1,101 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<PriceSeries> flights = new SingleFlight<>("test");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        PriceSeries series = PriceSeries.of(new int[]{1, 2}, new double[]{10, 11});
+
+        int callers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<PriceSeries>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> flights.execute("SPY", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return series;
+                })));
+            }
+            // Let every caller reach the in-flight task before the load finishes
+            long deadline = System.currentTimeMillis() + 5000;
+            while (flights.stats()[1] < callers - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<PriceSeries> result : results) {
+                assertSame(series, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertArrayEquals(new long[]{1, callers - 1}, flights.stats());
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    public void testDifferentKeysDoNotWaitOnEachOther() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>("test");
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slow = pool.submit(() -> flights.execute("SLOW", () -> {
+                slowStarted.countDown();
+                release.await();
+                return "slow";
+            }));
+            assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+            assertEquals("fast", flights.execute("FAST", () -> "fast"));
+            assertEquals(1, flights.inFlight());
+            release.countDown();
+            assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureIsSharedAndKeyIsReleased() {
+        SingleFlight<String> flights = new SingleFlight<>("test");
+        assertNull(flights.execute("SPY", () -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals(0, flights.inFlight());
+        assertEquals("ok", flights.execute("SPY", () -> "ok"));
+        assertArrayEquals(new long[]{2, 0}, flights.stats());
+    }
+
+    @Test
+    public void testSequentialCallsLoadAgain() {
+        SingleFlight<Integer> flights = new SingleFlight<>("test");
+        AtomicInteger loads = new AtomicInteger();
+        flights.execute("SPY", loads::incrementAndGet);
+        flights.execute("SPY", loads::incrementAndGet);
+        assertEquals(2, loads.get());
+    }
+}
@@ -6,6 +6,9 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
 /**
@@ -13,92 +16,51 @@ import java.util.stream.Collectors;
  */
 public class TestDataHelper {
 
+    /** Last trading day of the generated series: 2024-01-15, a Monday. */
+    public static final int SERIES_END_DAY = (int) LocalDate.of(2024, 1, 15).toEpochDay();
+
     /**
-     * Create mock API response that produces a specific signal
+     * Create a daily series whose SMA over {@code period} equals smaValue exactly
+     * and whose most recent close is currentPrice
      * @param currentPrice The price to use for the most recent day
      * @param smaValue The SMA value to target
-     * @param period Number of days for SMA calculation (minimum 200)
-     * @return JSONObject representing the API response
+     * @param period Number of days for SMA calculation (series has at least 200 days)
      */
-    public static JSONObject createMockResponse(double currentPrice, double smaValue, int period) throws Exception {
-        JSONObject response = new JSONObject();
-        JSONObject timeSeries = new JSONObject();
-        
-        // Generate enough data points for SMA calculation
+    public static PriceSeries createPriceSeries(double currentPrice, double smaValue, int period) {
         int daysNeeded = Math.max(period, 200);
-        
-        // For SMA calculation, we need the average of the last 'period' days to equal smaValue
-        // So sum of last 'period' days should be smaValue * period
-        double targetSum = smaValue * period;
-        
-        // Create data points
-        // Most recent day uses currentPrice
-        // Previous days use calculated values to achieve target SMA
-        double basePrice = smaValue;
-        double priceVariation = (targetSum - currentPrice - (basePrice * (period - 1))) / period;
-        
-        // Generate dates (most recent first)
-        for (int i = 0; i < daysNeeded; i++) {
-            String date = String.format("2024-01-%02d", 15 - (i % 15));
-            JSONObject dayData = new JSONObject();
-            
-            if (i == 0) {
-                // Most recent day - use currentPrice
-                dayData.put("1. open", String.format("%.2f", currentPrice * 0.99));
-                dayData.put("2. high", String.format("%.2f", currentPrice * 1.01));
-                dayData.put("3. low", String.format("%.2f", currentPrice * 0.98));
-                dayData.put("4. close", String.format("%.2f", currentPrice));
-            } else {
-                // Previous days - use calculated price to achieve target SMA
-                double dayPrice = basePrice + (priceVariation * (1.0 - (double)i / period));
-                dayData.put("1. open", String.format("%.2f", dayPrice * 0.99));
-                dayData.put("2. high", String.format("%.2f", dayPrice * 1.01));
-                dayData.put("3. low", String.format("%.2f", dayPrice * 0.98));
-                dayData.put("4. close", String.format("%.2f", dayPrice));
-            }
-            
-            dayData.put("5. volume", "1000000");
-            timeSeries.put(date, dayData);
+        double[] closes = new double[daysNeeded];
+
+        // The other period - 1 days in the window share what is left of the target sum
+        double otherPrice = period > 1 ? (smaValue * period - currentPrice) / (period - 1) : smaValue;
+        for (int i = 0; i < daysNeeded - 1; i++) {
+            closes[i] = i >= daysNeeded - period ? otherPrice : smaValue;
         }
-        
-        response.put("Time Series (Daily)", timeSeries);
-        response.put("Meta Data", new JSONObject()
-            .put("1. Information", "Daily Prices")
-            .put("2. Symbol", "SPY")
-            .put("3. Last Refreshed", "2024-01-15")
-            .put("4. Output Size", "Full size")
-            .put("5. Time Zone", "US/Eastern"));
-        
-        return response;
+        closes[daysNeeded - 1] = currentPrice;
+        return createPriceSeries(closes);
     }
 
     /**
-     * Create a simple mock response with all previous days at SMA value
+     * Create a simple series with all previous days at SMA value
      * and current day at specified price
      */
-    public static JSONObject createSimpleMockResponse(double currentPrice, double smaValue, int period) throws Exception {
-        JSONObject response = new JSONObject();
-        JSONObject timeSeries = new JSONObject();
-        
-        int daysNeeded = Math.max(period, 200);
-        
-        for (int i = 0; i < daysNeeded; i++) {
-            String date = String.format("2024-01-%02d", 15 - (i % 15));
-            JSONObject dayData = new JSONObject();
-            
-            double price = (i == 0) ? currentPrice : smaValue;
-            
-            dayData.put("1. open", String.format("%.2f", price * 0.99));
-            dayData.put("2. high", String.format("%.2f", price * 1.01));
-            dayData.put("3. low", String.format("%.2f", price * 0.98));
-            dayData.put("4. close", String.format("%.2f", price));
-            dayData.put("5. volume", "1000000");
-            
-            timeSeries.put(date, dayData);
+    public static PriceSeries createSimplePriceSeries(double currentPrice, double smaValue, int period) {
+        double[] closes = new double[Math.max(period, 200)];
+        Arrays.fill(closes, smaValue);
+        closes[closes.length - 1] = currentPrice;
+        return createPriceSeries(closes);
+    }
+
+    /**
+     * Create a series from closes (oldest first), one per weekday, ending on SERIES_END_DAY
+     */
+    public static PriceSeries createPriceSeries(double... closes) {
+        int[] days = new int[closes.length];
+        int day = SERIES_END_DAY;
+        for (int i = closes.length - 1; i >= 0; i--) {
+            while (LocalDate.ofEpochDay(day).getDayOfWeek().getValue() >= 6) day--;
+            days[i] = day--;
         }
-        
-        response.put("Time Series (Daily)", timeSeries);
-        return response;
+        return PriceSeries.of(days, closes);
     }
 
     /**
@@ -108,6 +70,37 @@ public class TestDataHelper {
         return ((price - sma) / sma) * 100.0;
     }
 
+    /**
+     * Build a Yahoo Finance v8 chart response with one bar per weekday.
+     * Closes climb by 0.1 per bar from startPrice; every nullEvery-th close is null
+     * (0 disables nulls), the way Yahoo reports halted or not-yet-settled bars.
+     */
+    public static String createYahooChartJson(int bars, double startPrice, int nullEvery) {
+        StringBuilder timestamps = new StringBuilder();
+        StringBuilder closes = new StringBuilder();
+        StringBuilder volumes = new StringBuilder();
+        long day = 19000; // 2022-01-08, epoch day
+        for (int i = 0; i < bars; i++) {
+            while (LocalDate.ofEpochDay(day).getDayOfWeek().getValue() >= 6) day++;
+            if (i > 0) {
+                timestamps.append(',');
+                closes.append(',');
+                volumes.append(',');
+            }
+            timestamps.append(day * 86400L + 14 * 3600 + 30 * 60);
+            closes.append(nullEvery > 0 && i % nullEvery == nullEvery - 1 ? "null" : String.format(Locale.US, "%.4f", startPrice + i * 0.1));
+            volumes.append(1000000 + i);
+            day++;
+        }
+        return "{\"chart\":{\"result\":[{\"meta\":{\"currency\":\"USD\",\"symbol\":\"SPY\",\"regularMarketPrice\":"
+                + String.format(Locale.US, "%.4f", startPrice + bars * 0.1)
+                + ",\"chartPreviousClose\":" + String.format(Locale.US, "%.4f", startPrice)
+                + ",\"validRanges\":[\"1d\",\"5d\",\"1y\"]},"
+                + "\"timestamp\":[" + timestamps + "],"
+                + "\"indicators\":{\"quote\":[{\"open\":[" + closes + "],\"close\":[" + closes + "],\"volume\":[" + volumes + "]}],"
+                + "\"adjclose\":[{\"adjclose\":[" + closes + "]}]}}],\"error\":null}}";
+    }
+
     /**
      * Load test data from resources
      */
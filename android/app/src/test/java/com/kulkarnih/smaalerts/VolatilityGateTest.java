@@ -0,0 +1,154 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+@RunWith(RobolectricTestRunner.class)
+public class VolatilityGateTest {
+
+    private static final int FIRST_DAY = (int) LocalDate.of(2023, 10, 2).toEpochDay();
+
+    private Context context;
+    private final Watchlist.Entry entry = new Watchlist.Entry("GATE", 200, 4.0f, 3.0f, false);
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        HistoryStore.get(context).delete(entry.symbol);
+        PrefsHelper.putString(context, PrefsHelper.KEY_NOTIF_FREQUENCY, "on_change");
+        PrefsHelper.putInt(context, PrefsHelper.KEY_GATE_SKIPS, 0);
+        PrefsHelper.putInt(context, PrefsHelper.KEY_GATE_WRONG_SKIPS, 0);
+        PrefsHelper.remove(context, entry.stateKey(PrefsHelper.KEY_SKIPPED_SIGNAL));
+    }
+
+    /** {@code count} closes alternating up and down by {@code step}. */
+    private static PriceSeries zigzag(int count, double step) {
+        int[] days = new int[count];
+        double[] closes = new double[count];
+        for (int i = 0; i < count; i++) {
+            days[i] = FIRST_DAY + i;
+            closes[i] = i % 2 == 0 ? 100.0 : 100.0 * (1 + step);
+        }
+        return PriceSeries.of(days, closes);
+    }
+
+    private static long ny(int month, int day, int hour) {
+        return LocalDateTime.of(2024, month, day, hour, 0).atZone(MarketCalendar.NY_ZONE).toInstant().toEpochMilli();
+    }
+
+    private void lastEvaluated(String signal, float percent, String date) {
+        PrefsHelper.putString(context, entry.stateKey(PrefsHelper.KEY_LAST_SIGNAL), signal);
+        PrefsHelper.putFloat(context, entry.stateKey(PrefsHelper.KEY_LAST_PERCENT), percent);
+        PrefsHelper.putString(context, entry.stateKey(PrefsHelper.KEY_LAST_DATE), date);
+    }
+
+    @Test
+    public void testSigma() {
+        assertEquals(0.0, VolatilityGate.sigma(zigzag(VolatilityGate.MIN_RETURNS, 0.01)), 0.0);
+        assertEquals(0.0, VolatilityGate.sigma(null), 0.0);
+        double sigma = VolatilityGate.sigma(zigzag(61, 0.01));
+        // Every move is about 1%, so both the deviation and the percentile say so
+        assertEquals(Math.log(1.01), sigma, 1e-3);
+        // A flat history still has the floor
+        assertEquals(VolatilityGate.MIN_SIGMA, VolatilityGate.sigma(zigzag(61, 0.0)), 0.0);
+    }
+
+    @Test
+    public void testRequiredMoveAndHorizon() {
+        assertEquals(-Math.log(0.97), VolatilityGate.requiredMove(0.0, 4.0f, 3.0f), 1e-9);
+        assertEquals(Math.log(1.15 / 1.04), VolatilityGate.requiredMove(15.0, 4.0f, 3.0f), 1e-9);
+        assertEquals(Math.log(1.40 / 1.35), VolatilityGate.requiredMove(35.0, 4.0f, 3.0f), 1e-9);
+
+        int wednesday = (int) LocalDate.of(2024, 1, 17).toEpochDay();
+        // Friday to Wednesday over Martin Luther King Day: Tuesday and Wednesday
+        assertEquals(2, VolatilityGate.horizonDays("2024-01-12", wednesday));
+        assertEquals(1, VolatilityGate.horizonDays("2024-01-17", wednesday));
+        assertEquals(-1, VolatilityGate.horizonDays("", wednesday));
+    }
+
+    @Test
+    public void testEveningRunKeepsItsTradingDate() {
+        // Thursday 9pm in New York is already Friday in UTC
+        long thursdayEvening = LocalDateTime.of(2024, 1, 11, 21, 0)
+                .atZone(MarketCalendar.NY_ZONE).toInstant().toEpochMilli();
+        String saved = SMAWorker.tradingDate(thursdayEvening);
+        assertEquals("2024-01-11", saved);
+        long wednesdayEvening = LocalDateTime.of(2024, 1, 17, 21, 0)
+                .atZone(MarketCalendar.NY_ZONE).toInstant().toEpochMilli();
+        // Friday, Tuesday and Wednesday
+        assertEquals(3, VolatilityGate.horizonDays(saved, (int) BarchartSnapshot.tradingDay(wednesdayEvening)));
+    }
+
+    @Test
+    public void testClassify() {
+        assertEquals(VolatilityGate.Decision.FULL, VolatilityGate.classify(1.0, true));
+        assertEquals(VolatilityGate.Decision.QUOTE, VolatilityGate.classify(4.0, true));
+        assertEquals(VolatilityGate.Decision.SKIP, VolatilityGate.classify(10.0, true));
+        assertEquals(VolatilityGate.Decision.QUOTE, VolatilityGate.classify(10.0, false));
+    }
+
+    @Test
+    public void testFarFromBoundariesIsSkipped() {
+        HistoryStore.get(context).append(entry.symbol, zigzag(121, 0.005));
+        // 15% above the SMA: a 9.6% move to the buy line is about 20 sigma
+        lastEvaluated("BUY", 15.0f, "2024-01-16");
+        VolatilityGate.Plan plan = VolatilityGate.plan(context, Collections.singletonList(entry), ny(1, 17, 15));
+        assertEquals(VolatilityGate.Decision.SKIP, plan.decision(entry));
+        assertTrue(plan.active().isEmpty());
+        assertEquals(1, plan.skipped());
+        assertEquals(1, VolatilityGate.stats(context)[0]);
+
+        // Daily notifications need a value every day: downgraded instead
+        PrefsHelper.putString(context, PrefsHelper.KEY_NOTIF_FREQUENCY, "daily");
+        plan = VolatilityGate.plan(context, Collections.singletonList(entry), ny(1, 17, 15));
+        assertEquals(VolatilityGate.Decision.QUOTE, plan.decision(entry));
+    }
+
+    @Test
+    public void testNearBoundaryOrUnknownIsFull() {
+        HistoryStore.get(context).append(entry.symbol, zigzag(121, 0.005));
+        lastEvaluated("HOLD", 3.8f, "2024-01-16");
+        assertEquals(VolatilityGate.Decision.FULL,
+                VolatilityGate.plan(context, Collections.singletonList(entry), ny(1, 17, 15)).decision(entry));
+        // Too long since the last evaluation
+        lastEvaluated("BUY", 15.0f, "2024-01-02");
+        assertEquals(VolatilityGate.Decision.FULL,
+                VolatilityGate.plan(context, Collections.singletonList(entry), ny(1, 17, 15)).decision(entry));
+        // No stored history
+        HistoryStore.get(context).delete(entry.symbol);
+        lastEvaluated("BUY", 15.0f, "2024-01-16");
+        assertEquals(VolatilityGate.Decision.FULL,
+                VolatilityGate.plan(context, Collections.singletonList(entry), ny(1, 17, 15)).decision(entry));
+    }
+
+    @Test
+    public void testWrongSkipsAreCounted() {
+        HistoryStore.get(context).append(entry.symbol, zigzag(121, 0.005));
+        lastEvaluated("BUY", 15.0f, "2024-01-16");
+        VolatilityGate.plan(context, Collections.singletonList(entry), ny(1, 17, 15));
+        VolatilityGate.plan(context, Collections.singletonList(entry), ny(1, 18, 15));
+
+        // Still a buy when evaluated again: the skips were right
+        VolatilityGate.recordEvaluation(context, new WatchlistEvaluator.Evaluation(entry, 110, 100, 200));
+        assertEquals(0, VolatilityGate.stats(context)[1]);
+        assertNull(PrefsHelper.getString(context, entry.stateKey(PrefsHelper.KEY_SKIPPED_SIGNAL), null));
+
+        VolatilityGate.plan(context, Collections.singletonList(entry), ny(1, 17, 15));
+        VolatilityGate.recordEvaluation(context, new WatchlistEvaluator.Evaluation(entry, 100, 100, 200));
+        assertEquals(3, VolatilityGate.stats(context)[0]);
+        assertEquals(1, VolatilityGate.stats(context)[1]);
+    }
+}
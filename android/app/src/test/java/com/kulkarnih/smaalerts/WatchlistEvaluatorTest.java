@@ -0,0 +1,179 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class WatchlistEvaluatorTest {
+
+    private static List<Watchlist.Entry> entries(String... symbols) {
+        List<Watchlist.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < symbols.length; i++) {
+            entries.add(new Watchlist.Entry(symbols[i], 200, 4.0f, 3.0f, i == 0));
+        }
+        return entries;
+    }
+
+    @Test
+    public void testEvaluation() {
+        Watchlist.Entry entry = new Watchlist.Entry("QQQ", 200, 4.0f, 3.0f, false);
+        WatchlistEvaluator.Evaluation evaluation = new WatchlistEvaluator.Evaluation(entry, 105.0, 100.0, 200);
+
+        assertEquals(5.0, evaluation.percent, 1e-9);
+        assertEquals("BUY", evaluation.signal);
+    }
+
+    @Test
+    public void testRunTimeScalesWithSlowestFetch() {
+        List<Watchlist.Entry> entries = entries("A", "B", "C", "D");
+
+        long start = System.currentTimeMillis();
+        List<WatchlistEvaluator.Evaluation> results = WatchlistEvaluator.evaluateAll(entries, entry -> {
+            Thread.sleep(300);
+            return new WatchlistEvaluator.Evaluation(entry, 100.0, 100.0, 200);
+        }, 4, 5_000);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(4, results.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(entries.get(i).symbol, results.get(i).entry.symbol);
+        }
+        // Serially this would be 1200 ms
+        assertTrue("took " + elapsed + " ms", elapsed < 1000);
+    }
+
+    @Test
+    public void testParallelismIsBounded() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        List<WatchlistEvaluator.Evaluation> results = WatchlistEvaluator.evaluateAll(entries("A", "B", "C", "D", "E", "F"), entry -> {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            Thread.sleep(50);
+            inFlight.decrementAndGet();
+            return new WatchlistEvaluator.Evaluation(entry, 100.0, 100.0, 200);
+        }, 2, 5_000);
+
+        assertEquals(6, results.size());
+        assertTrue(maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void testSlowAndFailingSymbolsDoNotSinkTheRest() {
+        List<WatchlistEvaluator.Evaluation> results = WatchlistEvaluator.evaluateAll(entries("OK", "SLOW", "BROKEN", "EMPTY"), entry -> {
+            switch (entry.symbol) {
+                case "SLOW":
+                    Thread.sleep(10_000);
+                    break;
+                case "BROKEN":
+                    throw new IllegalStateException("boom");
+                case "EMPTY":
+                    return null;
+            }
+            return new WatchlistEvaluator.Evaluation(entry, 100.0, 100.0, 200);
+        }, 4, 200);
+
+        assertNotNull(results.get(0));
+        assertNull(results.get(1));
+        assertNull(results.get(2));
+        assertNull(results.get(3));
+    }
+
+    @Test
+    public void testTimeoutCountsFromStartNotFromQueueing() {
+        // One worker thread: the second entry waits ~150 ms in the queue but only runs ~150 ms itself
+        List<WatchlistEvaluator.Evaluation> results = WatchlistEvaluator.evaluateAll(entries("A", "B"), entry -> {
+            Thread.sleep(150);
+            return new WatchlistEvaluator.Evaluation(entry, 100.0, 100.0, 200);
+        }, 1, 250);
+
+        assertNotNull(results.get(0));
+        assertNotNull(results.get(1));
+    }
+
+    /** An async evaluator that answers from a background thread after {@code delayMs}. */
+    private static WatchlistEvaluator.AsyncEvaluator delayed(long delayMs, AtomicInteger inFlight, AtomicInteger maxInFlight) {
+        return entry -> CallbackToFutureAdapter.getFuture(completer -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            new Thread(() -> {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException ignored) {
+                }
+                inFlight.decrementAndGet();
+                if (entry.symbol.equals("NONE")) {
+                    completer.set(null);
+                } else if (entry.symbol.equals("FAIL")) {
+                    completer.setException(new IllegalStateException("boom"));
+                } else {
+                    completer.set(new WatchlistEvaluator.Evaluation(entry, 100.0, 100.0, 200));
+                }
+            }).start();
+            return entry.symbol;
+        });
+    }
+
+    @Test
+    public void testAsyncEvaluationIsBoundedAndOrdered() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Watchlist.Entry> entries = entries("A", "NONE", "C", "FAIL", "E", "F");
+
+        List<WatchlistEvaluator.Evaluation> results = WatchlistEvaluator.evaluateAllAsync(entries,
+                delayed(100, inFlight, maxInFlight), 2, 5_000).get(5, TimeUnit.SECONDS);
+
+        assertEquals(6, results.size());
+        assertEquals("A", results.get(0).entry.symbol);
+        assertNull(results.get(1));
+        assertNull(results.get(3));
+        assertEquals("F", results.get(5).entry.symbol);
+        assertTrue("max in flight " + maxInFlight.get(), maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void testAsyncTimeoutAndCancellation() throws Exception {
+        List<Watchlist.Entry> entries = entries("SLOW", "B");
+        List<ListenableFuture<WatchlistEvaluator.Evaluation>> started = new ArrayList<>();
+        // Held so the never-completed futures are not failed as garbage collected
+        List<Object> completers = new ArrayList<>();
+        WatchlistEvaluator.AsyncEvaluator evaluator = entry -> {
+            if (!entry.symbol.equals("SLOW")) {
+                return AsyncFutures.immediate(new WatchlistEvaluator.Evaluation(entry, 100.0, 100.0, 200));
+            }
+            ListenableFuture<WatchlistEvaluator.Evaluation> never = CallbackToFutureAdapter.getFuture(completer -> {
+                completers.add(completer);
+                return "never";
+            });
+            started.add(never);
+            return never;
+        };
+
+        List<WatchlistEvaluator.Evaluation> results = WatchlistEvaluator.evaluateAllAsync(entries, evaluator, 2, 200)
+                .get(5, TimeUnit.SECONDS);
+        assertNull(results.get(0));
+        assertNotNull(results.get(1));
+        // The timed-out fetch was cancelled rather than left running
+        assertTrue(started.get(0).isCancelled());
+
+        ListenableFuture<List<WatchlistEvaluator.Evaluation>> pending =
+                WatchlistEvaluator.evaluateAllAsync(entries("SLOW"), evaluator, 1, 60_000);
+        pending.cancel(false);
+        assertTrue(started.get(1).isCancelled());
+    }
+}
@@ -0,0 +1,99 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class WatchlistTest {
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        PrefsHelper.putString(context, PrefsHelper.KEY_INDEX, "$SPX");
+        PrefsHelper.putInt(context, PrefsHelper.KEY_SMA, 200);
+        PrefsHelper.putFloat(context, PrefsHelper.KEY_BUY, 4.0f);
+        PrefsHelper.putFloat(context, PrefsHelper.KEY_SELL, 3.0f);
+    }
+
+    @Test
+    public void testPrimaryOnlyByDefault() {
+        List<Watchlist.Entry> entries = Watchlist.load(context);
+
+        assertEquals(1, entries.size());
+        Watchlist.Entry primary = entries.get(0);
+        assertEquals("$SPX", primary.symbol);
+        assertEquals(200, primary.smaPeriod);
+        assertTrue(primary.primary);
+        assertEquals(PrefsHelper.KEY_LAST_SIGNAL, primary.stateKey(PrefsHelper.KEY_LAST_SIGNAL));
+    }
+
+    @Test
+    public void testEntriesWithOwnThresholdsAndState() {
+        assertTrue(Watchlist.save(context,
+                "[{\"symbol\":\"QQQ\",\"sma\":50,\"buy\":2.5,\"sell\":1.5},{\"symbol\":\"URTH\"},\"VTI\"]"));
+
+        List<Watchlist.Entry> entries = Watchlist.load(context);
+
+        assertEquals(4, entries.size());
+        Watchlist.Entry qqq = entries.get(1);
+        assertEquals("QQQ", qqq.symbol);
+        assertEquals(50, qqq.smaPeriod);
+        assertEquals(2.5f, qqq.buy, 0.0f);
+        assertEquals(1.5f, qqq.sell, 0.0f);
+        assertFalse(qqq.primary);
+        assertEquals(PrefsHelper.KEY_LAST_SIGNAL + "_QQQ", qqq.stateKey(PrefsHelper.KEY_LAST_SIGNAL));
+
+        // Omitted fields come from the main settings
+        Watchlist.Entry urth = entries.get(2);
+        assertEquals(200, urth.smaPeriod);
+        assertEquals(4.0f, urth.buy, 0.0f);
+        assertEquals("VTI", entries.get(3).symbol);
+    }
+
+    @Test
+    public void testDuplicatesAndInvalidEntriesSkipped() {
+        Watchlist.Entry primary = new Watchlist.Entry("$SPX", 200, 4.0f, 3.0f, true);
+        List<Watchlist.Entry> entries = Watchlist.parse(
+                "[{\"symbol\":\"$SPX\"},{\"symbol\":\"QQQ\"},{\"symbol\":\"QQQ\"},{\"symbol\":\"\"},{\"symbol\":\"X\",\"sma\":0}]",
+                primary);
+
+        assertEquals(2, entries.size());
+        assertEquals("QQQ", entries.get(1).symbol);
+    }
+
+    @Test
+    public void testMalformedWatchlistFallsBackToPrimary() {
+        Watchlist.Entry primary = new Watchlist.Entry("$SPX", 200, 4.0f, 3.0f, true);
+
+        assertEquals(1, Watchlist.parse("{not json", primary).size());
+        assertEquals(1, Watchlist.parse("null", primary).size());
+        assertFalse(Watchlist.save(context, "{not json"));
+        assertFalse(Watchlist.save(context, null));
+    }
+
+    @Test
+    public void testEntryCountIsBounded() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) json.append(',');
+            json.append("\"S").append(i).append('"');
+        }
+        json.append(']');
+
+        Watchlist.Entry primary = new Watchlist.Entry("$SPX", 200, 4.0f, 3.0f, true);
+        assertEquals(Watchlist.MAX_ENTRIES, Watchlist.parse(json.toString(), primary).size());
+    }
+}
@@ -1,5 +1,8 @@
 package com.kulkarnih.smaalerts;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -13,6 +16,7 @@ import org.robolectric.RuntimeEnvironment;
 
 import java.time.Duration;
 import java.time.LocalTime;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 
 @RunWith(RobolectricTestRunner.class)
@@ -51,7 +55,7 @@ public class WorkSchedulerTest {
         assertNotNull("Delay should not be null", delay);
         assertTrue("Delay should be positive", delay.toMillis() >= 0);
         
-        // Verify delay is reasonable (should be less than 24 hours if time hasn't passed today)
+        // Verify delay is reasonable (the next 7:30 whose New York date is a trading day)
         ZonedDateTime now = ZonedDateTime.now();
         LocalTime userTime = LocalTime.of(7, 30);
         ZonedDateTime scheduledTime = ZonedDateTime.of(now.toLocalDate(), userTime, now.getZone());
@@ -59,6 +63,9 @@ public class WorkSchedulerTest {
         if (now.compareTo(scheduledTime) >= 0) {
             scheduledTime = scheduledTime.plusDays(1);
         }
+        while (!MarketCalendar.isTradingDay(scheduledTime.withZoneSameInstant(MarketCalendar.NY_ZONE).toLocalDate())) {
+            scheduledTime = scheduledTime.plusDays(1);
+        }
         
         long expectedDelay = scheduledTime.toInstant().toEpochMilli() - now.toInstant().toEpochMilli();
         // Allow some tolerance (within 1 minute) due to test execution time
@@ -80,15 +87,16 @@ public class WorkSchedulerTest {
         
         Duration delay = WorkScheduler.calculateDelayUntilNextRun(context);
         assertNotNull("Delay should not be null", delay);
-        // Should schedule for tomorrow, so delay should be less than 24 hours but more than 0
+        // Should schedule for tomorrow, or the first trading day after it (at most a
+        // holiday weekend away), so delay should be under 4 days but more than 0
         assertTrue("Delay should be positive", delay.toMillis() > 0);
-        assertTrue("Delay should be less than 24 hours", delay.toMillis() < 24 * 60 * 60 * 1000);
+        assertTrue("Delay should be less than 4 days", delay.toMillis() < 4 * 24 * 60 * 60 * 1000);
     }
 
     @Test
     public void testCalculateDelayUntilNextRun_WorksOnWeekends() {
-        // Test that scheduling works on weekends (weekend skip was removed)
-        // Set a time in the future
+        // Test that scheduling works when called on a weekend: the run moves to the next
+        // trading day instead. Set a time in the future
         ZonedDateTime now = ZonedDateTime.now();
         int futureHour = (now.getHour() + 2) % 24;
         
@@ -98,8 +106,29 @@ public class WorkSchedulerTest {
         Duration delay = WorkScheduler.calculateDelayUntilNextRun(context);
         assertNotNull("Delay should not be null", delay);
         assertTrue("Delay should be positive", delay.toMillis() >= 0);
-        // Should work on weekends now (no skip)
-        assertTrue("Should schedule even on weekends", delay.toMillis() < 7 * 24 * 60 * 60 * 1000);
+        assertTrue("Should schedule within a week", delay.toMillis() < 7 * 24 * 60 * 60 * 1000);
+    }
+
+    @Test
+    public void testCalculateDelayUntilNextRun_SkipsHolidaysAndWeekends() {
+        PrefsHelper.putInt(context, PrefsHelper.KEY_NOTIF_HOUR, 15);
+        PrefsHelper.putInt(context, PrefsHelper.KEY_NOTIF_MIN, 30);
+        // Thursday after the run: Friday is Good Friday, so the next run is Monday
+        ZonedDateTime thursday = ZonedDateTime.of(2024, 3, 28, 16, 0, 0, 0, MarketCalendar.NY_ZONE);
+        ZonedDateTime monday = ZonedDateTime.of(2024, 4, 1, 15, 30, 0, 0, MarketCalendar.NY_ZONE);
+        assertEquals(Duration.between(thursday, monday), WorkScheduler.calculateDelayUntilNextRun(context, thursday));
+    }
+
+    @Test
+    public void testCalculateDelayUntilNextRun_UsesNewYorkDateOfLocalTime() {
+        PrefsHelper.putInt(context, PrefsHelper.KEY_NOTIF_HOUR, 7);
+        PrefsHelper.putInt(context, PrefsHelper.KEY_NOTIF_MIN, 30);
+        ZoneId tokyo = ZoneId.of("Asia/Tokyo");
+        // Tuesday 7:30 in Tokyo is Martin Luther King Day evening in New York: no new close
+        ZonedDateTime mondayMorning = ZonedDateTime.of(2024, 1, 15, 8, 0, 0, 0, tokyo);
+        ZonedDateTime wednesday = ZonedDateTime.of(2024, 1, 17, 7, 30, 0, 0, tokyo);
+        assertEquals(Duration.between(mondayMorning, wednesday),
+                WorkScheduler.calculateDelayUntilNextRun(context, mondayMorning));
     }
 
     @Test
@@ -109,6 +138,51 @@ public class WorkSchedulerTest {
         // In a real test, you'd verify the work is actually scheduled
     }
 
+    @Test
+    public void testFingerprintTracksScheduleSettings() {
+        PrefsHelper.putInt(context, PrefsHelper.KEY_NOTIF_HOUR, 9);
+        PrefsHelper.putInt(context, PrefsHelper.KEY_NOTIF_MIN, 15);
+        PrefsHelper.putString(context, PrefsHelper.KEY_NOTIF_FREQUENCY, "daily");
+        String base = WorkScheduler.fingerprint(context);
+        assertEquals(base, WorkScheduler.fingerprint(context));
+
+        PrefsHelper.putInt(context, PrefsHelper.KEY_NOTIF_MIN, 16);
+        String minute = WorkScheduler.fingerprint(context);
+        assertNotEquals(base, minute);
+
+        PrefsHelper.putString(context, PrefsHelper.KEY_NOTIF_FREQUENCY, "on_change");
+        String frequency = WorkScheduler.fingerprint(context);
+        assertNotEquals(minute, frequency);
+
+        PrefsHelper.putString(context, PrefsHelper.KEY_WATCHLIST, "[\"QQQ\"]");
+        assertNotEquals(frequency, WorkScheduler.fingerprint(context));
+    }
+
+    @Test
+    public void testIsScheduledOnlyForPendingRunWithSameSettings() {
+        long now = System.currentTimeMillis();
+        String fingerprint = WorkScheduler.fingerprint(context);
+        assertFalse(WorkScheduler.isScheduled(context, fingerprint, now));
+
+        WorkScheduler.recordScheduled(context, fingerprint, now + 60_000);
+        assertTrue(WorkScheduler.isScheduled(context, fingerprint, now));
+        // Once the run is due, the next call schedules again
+        assertFalse(WorkScheduler.isScheduled(context, fingerprint, now + 60_000));
+
+        PrefsHelper.putInt(context, PrefsHelper.KEY_NOTIF_HOUR, 6);
+        assertFalse(WorkScheduler.isScheduled(context, WorkScheduler.fingerprint(context), now));
+    }
+
+    @Test
+    public void testFailedSchedulingIsNotRecorded() {
+        // WorkManager is not initialized under Robolectric, so enqueueing fails
+        String fingerprint = WorkScheduler.fingerprint(context);
+        WorkScheduler.recordScheduled(context, "stale", System.currentTimeMillis() + 60_000);
+        WorkScheduler.rescheduleAfterRun(context);
+        assertFalse(WorkScheduler.isScheduled(context, fingerprint, System.currentTimeMillis()));
+        assertFalse(WorkScheduler.isScheduled(context, "stale", System.currentTimeMillis()));
+    }
+
     @Test
     public void testCancelAllWork() {
         // Test that cancelAllWork doesn't throw exceptions
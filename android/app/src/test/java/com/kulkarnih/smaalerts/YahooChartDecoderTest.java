@@ -0,0 +1,95 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+@RunWith(RobolectricTestRunner.class)
+public class YahooChartDecoderTest {
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDecode_readsTimestampsAndCloses() throws Exception {
+        String json = "{\"chart\":{\"result\":[{\"meta\":{\"regularMarketPrice\":101.5,\"previousClose\":100.0},"
+                + "\"timestamp\":[1700000000,1700086400,1700172800],"
+                + "\"indicators\":{\"quote\":[{\"close\":[99.5,100.25,101.0],\"volume\":[1,2,3]}]}}],\"error\":null}}";
+        YahooChartDecoder.Chart chart = YahooChartDecoder.decode(stream(json));
+        assertNotNull(chart);
+        assertEquals(3, chart.size());
+        assertEquals(1700086400L, chart.timestamps[1]);
+        assertEquals(101.0, chart.closes[2], 0.0);
+        assertEquals(101.5, chart.latestPrice(), 0.0);
+    }
+
+    @Test
+    public void testDecode_skipsNullCloses() throws Exception {
+        String json = "{\"chart\":{\"result\":[{\"timestamp\":[1,2,3,4],"
+                + "\"indicators\":{\"quote\":[{\"close\":[10.0,null,12.0,null]}]}}]}}";
+        YahooChartDecoder.Chart chart = YahooChartDecoder.decode(stream(json));
+        assertEquals(2, chart.size());
+        assertEquals(1L, chart.timestamps[0]);
+        assertEquals(3L, chart.timestamps[1]);
+        assertEquals(12.0, chart.closes[1], 0.0);
+    }
+
+    @Test
+    public void testDecode_indicatorsBeforeTimestamps() throws Exception {
+        String json = "{\"chart\":{\"result\":[{\"indicators\":{\"quote\":[{\"close\":[5.0,6.0]}]},"
+                + "\"timestamp\":[100,200]}]}}";
+        YahooChartDecoder.Chart chart = YahooChartDecoder.decode(stream(json));
+        assertEquals(2, chart.size());
+        assertEquals(200L, chart.timestamps[1]);
+    }
+
+    @Test
+    public void testDecode_mismatchedLengthsGivesNull() throws Exception {
+        String json = "{\"chart\":{\"result\":[{\"timestamp\":[1,2,3],"
+                + "\"indicators\":{\"quote\":[{\"close\":[10.0,11.0]}]}}]}}";
+        assertNull(YahooChartDecoder.decode(stream(json)));
+    }
+
+    @Test
+    public void testDecode_errorResponseGivesNull() throws Exception {
+        String json = "{\"chart\":{\"result\":null,\"error\":{\"code\":\"Not Found\",\"description\":\"No data found\"}}}";
+        assertNull(YahooChartDecoder.decode(stream(json)));
+    }
+
+    @Test
+    public void testDecode_metaFallbackOrder() throws Exception {
+        String json = "{\"chart\":{\"result\":[{\"meta\":{\"chartPreviousClose\":42.0}}]}}";
+        YahooChartDecoder.Chart chart = YahooChartDecoder.decode(stream(json));
+        assertEquals(0, chart.size());
+        assertEquals(42.0, chart.latestPrice(), 0.0);
+    }
+
+    @Test
+    public void testDecode_largeGeneratedChart() throws Exception {
+        YahooChartDecoder.Chart chart = YahooChartDecoder.decode(stream(TestDataHelper.createYahooChartJson(2520, 100.0, 50)));
+        assertEquals(2520 - 2520 / 50, chart.size());
+        for (int i = 1; i < chart.size(); i++) {
+            assertEquals("Timestamps must stay ascending", true, chart.timestamps[i] > chart.timestamps[i - 1]);
+        }
+    }
+
+    @Test
+    public void testHistoryRange() {
+        assertEquals("5d", SMAWorker.historyRange(2));
+        assertEquals("1mo", SMAWorker.historyRange(10));
+        assertEquals("3mo", SMAWorker.historyRange(51));
+        assertEquals("1y", SMAWorker.historyRange(200));
+        assertEquals("2y", SMAWorker.historyRange(400));
+        assertEquals("5y", SMAWorker.historyRange(1000));
+        assertEquals("10y", SMAWorker.historyRange(2000));
+    }
+}
@@ -0,0 +1,142 @@
+package com.kulkarnih.smaalerts;
+
+import static org.junit.Assert.assertEquals;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The streaming Yahoo chart decoder against the org.json path getHistoricalData used
+ * before it (full tree, then a JSONObject keyed by date with a nested "4. close" object
+ * per day). The default suite only checks that both produce the same 200-day SMA; the
+ * latency and allocation comparisons are @Ignore'd benchmarks to run by hand, and log
+ * their numbers.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class YahooHistoryBenchmarkTest {
+    private static final String TAG = "YahooHistoryBenchmark";
+
+    private static final int PERIOD = 200;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 40;
+
+    /** The pre-streaming decode + SMA, kept here only as the benchmark baseline. */
+    private static double legacySma(byte[] payload) throws Exception {
+        JSONObject jsonResponse = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+        JSONObject resultObj = jsonResponse.getJSONObject("chart").getJSONArray("result").getJSONObject(0);
+        JSONArray timestamps = resultObj.getJSONArray("timestamp");
+        JSONArray closes = resultObj.getJSONObject("indicators").getJSONArray("quote").getJSONObject(0).getJSONArray("close");
+
+        JSONObject timeSeries = new JSONObject();
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < timestamps.length(); i++) {
+            String dateStr = sdf.format(new Date(timestamps.getLong(i) * 1000));
+            if (closes.isNull(i)) continue;
+            double close = closes.getDouble(i);
+            if (Double.isNaN(close) || close <= 0) continue;
+            JSONObject dayData = new JSONObject();
+            dayData.put("4. close", close);
+            timeSeries.put(dateStr, dayData);
+        }
+
+        List<String> dates = new ArrayList<>();
+        Iterator<String> keys = timeSeries.keys();
+        while (keys.hasNext()) dates.add(keys.next());
+        Collections.sort(dates, Collections.reverseOrder());
+        double sum = 0.0;
+        for (int i = 0; i < PERIOD; i++) {
+            sum += timeSeries.getJSONObject(dates.get(i)).getDouble("4. close");
+        }
+        return sum / PERIOD;
+    }
+
+    private static double streamingSma(byte[] payload) throws Exception {
+        YahooChartDecoder.Chart chart = YahooChartDecoder.decode(new ByteArrayInputStream(payload));
+        return PriceSeries.fromChart(chart).sma(PERIOD);
+    }
+
+    private interface Decoder {
+        double sma(byte[] payload) throws Exception;
+    }
+
+    /** Returns {microseconds per call, bytes allocated per call}. */
+    private static long[] measure(Decoder decoder, byte[] payload) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) decoder.sma(payload);
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) decoder.sma(payload);
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        return new long[]{elapsed / 1000 / ITERATIONS, allocated / ITERATIONS};
+    }
+
+    private static byte[] payload(int bars) {
+        return TestDataHelper.createYahooChartJson(bars, 100.0, 97).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void compare(String label, int bars) throws Exception {
+        byte[] payload = payload(bars);
+        assertEquals(legacySma(payload), streamingSma(payload), 1e-9);
+
+        long[] legacy = measure(YahooHistoryBenchmarkTest::legacySma, payload);
+        long[] streaming = measure(YahooHistoryBenchmarkTest::streamingSma, payload);
+        Log.i(TAG, String.format(Locale.US,
+                "%s (%d bars, %d KB): org.json %d us / %d KB alloc, streaming %d us / %d KB alloc",
+                label, bars, payload.length / 1024,
+                legacy[0], legacy[1] / 1024, streaming[0], streaming[1] / 1024));
+    }
+
+    @Test
+    public void testStreamingMatchesLegacySma() throws Exception {
+        for (int bars : new int[]{252, 1260, 2520}) {
+            byte[] payload = payload(bars);
+            assertEquals(legacySma(payload), streamingSma(payload), 1e-9);
+        }
+    }
+
+    @Test
+    public void testDailyDeltaDecodes() throws Exception {
+        // What a period1/period2 request returns on a normal day: the last stored bar and today's
+        byte[] delta = TestDataHelper.createYahooChartJson(2, 100.0, 0).getBytes(StandardCharsets.UTF_8);
+        assertEquals(2, PriceSeries.fromChart(YahooChartDecoder.decode(new ByteArrayInputStream(delta))).size());
+    }
+
+    @Ignore("Wall-clock benchmark, run by hand")
+    @Test
+    public void benchmark_oneYear() throws Exception {
+        compare("1y", 252);
+    }
+
+    @Ignore("Wall-clock benchmark, run by hand")
+    @Test
+    public void benchmark_fiveYears() throws Exception {
+        compare("5y", 1260);
+    }
+
+    @Ignore("Wall-clock benchmark, run by hand")
+    @Test
+    public void benchmark_tenYears() throws Exception {
+        compare("10y", 2520);
+    }
+}